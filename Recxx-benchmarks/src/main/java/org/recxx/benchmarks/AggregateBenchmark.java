@@ -0,0 +1,80 @@
+package org.recxx.benchmarks;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.recxx.data.Dataset;
+import org.recxx.data.RowBuffer;
+import org.recxx.facades.FileFacadeWorker;
+
+/**
+ * AbstractRecFeed.aggregateData: adding the compare columns of a duplicate row to the row already loaded, once for
+ * every row. Only numeric columns can be aggregated, so there's no type mix.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AggregateBenchmark {
+
+	@Param({ "10000", "100000" })
+	public int rows;
+
+	@Param({ "5", "20" })
+	public int columns;
+
+	private FileFacadeWorker worker;
+
+	private File propertiesFile;
+
+	private Dataset data;
+
+	private int[] comparePositions;
+
+	private RowBuffer[] duplicates;
+
+	@Setup
+	public void setUp() throws Exception {
+		Benchmarks.prepare();
+		BenchmarkData generated = BenchmarkData.generate(rows, columns, 1, "numeric", BenchmarkData.SEED);
+		data = generated.toDataset();
+		comparePositions = generated.getComparePositions();
+
+		BenchmarkData duplicateRows = generated.withBreaks(1.0, BenchmarkData.SEED + 1);
+		duplicates = new RowBuffer[rows];
+		for (int row = 0; row < rows; row++) {
+			duplicates[row] = data.newRowBuffer();
+			duplicateRows.fill(duplicates[row], duplicateRows.getRow(row));
+		}
+
+		propertiesFile = Benchmarks.emptyPropertiesFile();
+		worker = Benchmarks.newWorker(propertiesFile);
+	}
+
+	@TearDown
+	public void tearDown() {
+		propertiesFile.delete();
+	}
+
+	@Benchmark
+	public Dataset aggregateData() throws Exception {
+		for (int row = 0; row < duplicates.length; row++) {
+			worker.aggregateData(data, comparePositions, duplicates[row], row);
+		}
+		return data;
+	}
+}
@@ -0,0 +1,276 @@
+package org.recxx.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Properties;
+import java.util.Random;
+
+import org.recxx.data.ColumnType;
+import org.recxx.data.CompositeKey;
+import org.recxx.data.Dataset;
+import org.recxx.data.RowBuffer;
+
+/**
+ * <p>
+ * Rows for the benchmarks, generated from a seed so that every run of a benchmark sees the same data. The first
+ * keyWidth columns make up a unique key, the first a string and the rest integers, and every other column is compared.
+ * </p>
+ *
+ * <p>
+ * The types of the compare columns follow the type mix: 'numeric' makes them all doubles, 'text' all strings and
+ * 'mixed' cycles through double, integer, string and long.
+ * </p>
+ */
+public final class BenchmarkData {
+
+	public static final long SEED = 20110713L;
+
+	private static final String[] MIXED_TYPES = { "java.lang.Double", "java.lang.Integer", "java.lang.String",
+	        "java.lang.Long" };
+
+	private final String[] columnNames;
+
+	private final String[] classNames;
+
+	private final int keyWidth;
+
+	private final String[][] values;
+
+	private BenchmarkData(String[] columnNames, String[] classNames, int keyWidth, String[][] values) {
+		this.columnNames = columnNames;
+		this.classNames = classNames;
+		this.keyWidth = keyWidth;
+		this.values = values;
+	}
+
+	/**
+	 * @param rows
+	 *            number of rows
+	 * @param columns
+	 *            number of columns, key columns included
+	 * @param keyWidth
+	 *            number of key columns
+	 * @param typeMix
+	 *            'numeric', 'text' or 'mixed'
+	 * @param seed
+	 *            seed of the values
+	 * @return the generated rows
+	 */
+	public static BenchmarkData generate(int rows, int columns, int keyWidth, String typeMix, long seed) {
+		if (keyWidth < 1 || columns <= keyWidth) {
+			throw new IllegalArgumentException("Need at least one key column and one compare column, not " + keyWidth
+			        + " of " + columns);
+		}
+		String[] columnNames = new String[columns];
+		String[] classNames = new String[columns];
+		for (int column = 0; column < columns; column++) {
+			if (column < keyWidth) {
+				columnNames[column] = "Key" + column;
+				classNames[column] = column == 0 ? "java.lang.String" : "java.lang.Integer";
+			} else {
+				columnNames[column] = "Value" + column;
+				classNames[column] = compareType(typeMix, column - keyWidth);
+			}
+		}
+
+		Random random = new Random(seed);
+		String[][] values = new String[rows][columns];
+		for (int row = 0; row < rows; row++) {
+			// keys are unique by row, however wide
+			int remaining = row;
+			for (int column = keyWidth - 1; column > 0; column--) {
+				values[row][column] = String.valueOf(remaining % 97);
+				remaining /= 97;
+			}
+			values[row][0] = "B" + remaining;
+
+			for (int column = keyWidth; column < columns; column++) {
+				values[row][column] = randomValue(classNames[column], random);
+			}
+		}
+		return new BenchmarkData(columnNames, classNames, keyWidth, values);
+	}
+
+	/**
+	 * @param breakRatio
+	 *            fraction of the rows to change
+	 * @param seed
+	 *            seed of the rows and values changed
+	 * @return a copy of these rows with one compare column of that fraction of them changed
+	 */
+	public BenchmarkData withBreaks(double breakRatio, long seed) {
+		Random random = new Random(seed);
+		String[][] broken = new String[values.length][];
+		for (int row = 0; row < values.length; row++) {
+			broken[row] = values[row].clone();
+			if (random.nextDouble() < breakRatio) {
+				int column = keyWidth + random.nextInt(columnNames.length - keyWidth);
+				broken[row][column] = randomValue(classNames[column], random);
+			}
+		}
+		return new BenchmarkData(columnNames, classNames, keyWidth, broken);
+	}
+
+	private static String compareType(String typeMix, int index) {
+		if ("numeric".equals(typeMix)) {
+			return "java.lang.Double";
+		} else if ("text".equals(typeMix)) {
+			return "java.lang.String";
+		} else if ("mixed".equals(typeMix)) {
+			return MIXED_TYPES[index % MIXED_TYPES.length];
+		}
+		throw new IllegalArgumentException("Unknown type mix " + typeMix);
+	}
+
+	private static String randomValue(String className, Random random) {
+		if ("java.lang.Double".equals(className)) {
+			return String.valueOf(Math.round(random.nextDouble() * 1000000) / 100.0);
+		} else if ("java.lang.Integer".equals(className)) {
+			return String.valueOf(random.nextInt(100000));
+		} else if ("java.lang.Long".equals(className)) {
+			return String.valueOf(random.nextLong() >>> 20);
+		}
+		return "S" + Integer.toString(random.nextInt(1 << 30), 36);
+	}
+
+	public int size() {
+		return values.length;
+	}
+
+	public String[] getColumnNames() {
+		return columnNames;
+	}
+
+	public String[] getClassNames() {
+		return classNames;
+	}
+
+	public String[] getRow(int row) {
+		return values[row];
+	}
+
+	public int[] getKeyPositions() {
+		int[] positions = new int[keyWidth];
+		for (int i = 0; i < keyWidth; i++) {
+			positions[i] = i;
+		}
+		return positions;
+	}
+
+	public int[] getComparePositions() {
+		int[] positions = new int[columnNames.length - keyWidth];
+		for (int i = 0; i < positions.length; i++) {
+			positions[i] = keyWidth + i;
+		}
+		return positions;
+	}
+
+	/**
+	 * @param delimiter
+	 *            column delimiter
+	 * @param file
+	 *            file to write, with the column names as its first line
+	 * @throws IOException
+	 *             if it can't be written
+	 */
+	public void writeFile(File file, String delimiter) throws IOException {
+		BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+		try {
+			writeLine(writer, columnNames, delimiter);
+			for (String[] row : values) {
+				writeLine(writer, row, delimiter);
+			}
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static void writeLine(BufferedWriter writer, String[] fields, String delimiter) throws IOException {
+		for (int i = 0; i < fields.length; i++) {
+			if (i > 0) {
+				writer.write(delimiter);
+			}
+			writer.write(fields[i]);
+		}
+		writer.newLine();
+	}
+
+	/**
+	 * @param file
+	 *            file written by writeFile
+	 * @param delimiter
+	 *            its delimiter
+	 * @return the properties a FileFacadeWorker reads it with
+	 */
+	public Properties fileProperties(File file, String delimiter) {
+		Properties properties = new Properties();
+		properties.setProperty("filePath", file.getPath());
+		properties.setProperty("delimiter", delimiter);
+		properties.setProperty("columnsSupplied", "true");
+		properties.setProperty("dataTypesSupplied", "false");
+		properties.setProperty("columnDataTypes", join(classNames, 0, classNames.length));
+		properties.setProperty("key", join(columnNames, 0, keyWidth));
+		properties.setProperty("columnsToCompare", join(columnNames, keyWidth, columnNames.length));
+		properties.setProperty("aggregate", "false");
+		properties.setProperty("appendDelimiter", "false");
+		properties.setProperty("handleNullsAsZero", "true");
+		properties.setProperty("dateFormat", "yyyyMMdd");
+		return properties;
+	}
+
+	private static String join(String[] values, int from, int to) {
+		StringBuilder joined = new StringBuilder();
+		for (int i = from; i < to; i++) {
+			if (i > from) {
+				joined.append(' ');
+			}
+			joined.append(values[i]);
+		}
+		return joined.toString();
+	}
+
+	/**
+	 * @return the rows loaded into an indexed Dataset, as a source would load them
+	 */
+	public Dataset toDataset() {
+		ColumnType[] types = Dataset.typesForClassNames(classNames);
+		Dataset data = new Dataset(columnNames, types, getKeyPositions());
+		RowBuffer buffer = data.newRowBuffer();
+		CompositeKey.Builder builder = new CompositeKey.Builder();
+		for (String[] row : values) {
+			fill(buffer, row);
+			builder.reset();
+			for (int column = 0; column < keyWidth; column++) {
+				buffer.addToKey(column, builder);
+			}
+			data.add(builder.build(), buffer);
+		}
+		return data;
+	}
+
+	/**
+	 * @param buffer
+	 *            buffer of the rows' column types
+	 * @param row
+	 *            row of values
+	 */
+	public void fill(RowBuffer buffer, String[] row) {
+		buffer.clear();
+		for (int column = 0; column < row.length; column++) {
+			buffer.set(column, parse(classNames[column], row[column]));
+		}
+	}
+
+	private static Object parse(String className, String value) {
+		if ("java.lang.Double".equals(className)) {
+			return Double.valueOf(value);
+		} else if ("java.lang.Integer".equals(className)) {
+			return Integer.valueOf(value);
+		} else if ("java.lang.Long".equals(className)) {
+			return Long.valueOf(value);
+		}
+		return value;
+	}
+}
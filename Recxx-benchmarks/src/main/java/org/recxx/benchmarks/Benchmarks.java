@@ -0,0 +1,45 @@
+package org.recxx.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.DecimalFormat;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.recxx.Recxx;
+import org.recxx.facades.FileFacadeWorker;
+
+/**
+ * set up shared by the benchmarks
+ */
+final class Benchmarks {
+
+	// held, so that the level set on it isn't lost when it's garbage collected
+	private static final Logger RECXX_LOGGER = Logger.getLogger("org.recxx");
+
+	private Benchmarks() {
+	}
+
+	/**
+	 * silence the progress logging, and set the formatter a Recxx run would set from its properties
+	 */
+	static void prepare() {
+		RECXX_LOGGER.setLevel(Level.OFF);
+		Recxx.m_dpFormatter = new DecimalFormat("#.00000000000");
+	}
+
+	/**
+	 * @return an empty properties file, which a worker needs to be created but which the benchmarks don't use
+	 * @throws IOException
+	 *             if it can't be created
+	 */
+	static File emptyPropertiesFile() throws IOException {
+		File file = File.createTempFile("recxxBenchmark", ".properties");
+		file.deleteOnExit();
+		return file;
+	}
+
+	static FileFacadeWorker newWorker(File propertiesFile) {
+		return new FileFacadeWorker("benchmark", propertiesFile.getPath());
+	}
+}
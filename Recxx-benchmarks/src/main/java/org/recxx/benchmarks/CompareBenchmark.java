@@ -0,0 +1,87 @@
+package org.recxx.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.recxx.compare.ComparisonPlan;
+import org.recxx.compare.DifferenceListener;
+import org.recxx.data.CompositeKey;
+import org.recxx.data.Dataset;
+
+/**
+ * The per cell comparison of Recxx.recData: every compare column of every matched pair of rows, through the
+ * ComparisonPlan recData builds, with a break ratio of the rows differing in one column
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CompareBenchmark {
+
+	@Param({ "10000", "100000" })
+	public int rows;
+
+	@Param({ "5", "20" })
+	public int columns;
+
+	@Param({ "1", "3" })
+	public int keyWidth;
+
+	@Param({ "0.0", "0.01", "0.5" })
+	public double breakRatio;
+
+	@Param({ "numeric", "mixed" })
+	public String typeMix;
+
+	private ComparisonPlan plan;
+
+	private CompositeKey[] keys;
+
+	@Setup
+	public void setUp() {
+		Benchmarks.prepare();
+		BenchmarkData generated = BenchmarkData.generate(rows, columns, keyWidth, typeMix, BenchmarkData.SEED);
+		Dataset data1 = generated.toDataset();
+		Dataset data2 = generated.withBreaks(breakRatio, BenchmarkData.SEED + 1).toDataset();
+		int[] comparePositions = generated.getComparePositions();
+		plan = new ComparisonPlan(data1, comparePositions, data2, comparePositions, 0.01f, 0.0001f);
+
+		keys = new CompositeKey[rows];
+		for (int row = 0; row < rows; row++) {
+			keys[row] = data1.getKey(row);
+		}
+	}
+
+	@Benchmark
+	public void compare(final Blackhole blackhole) {
+		DifferenceListener listener = new DifferenceListener() {
+			public void difference(CompositeKey key, String columnName1, Object value1, String columnName2,
+			        Object value2, String percentageDiff, String absDiff) {
+				blackhole.consume(value1);
+				blackhole.consume(value2);
+				blackhole.consume(percentageDiff);
+			}
+
+			public void missing(CompositeKey key, boolean inFirst, String columnName, Object value) {
+				blackhole.consume(value);
+			}
+		};
+		// the rows were generated in the same order, so they match row for row
+		for (int row = 0; row < keys.length; row++) {
+			blackhole.consume(plan.compare(row, row, keys[row], listener));
+		}
+	}
+}
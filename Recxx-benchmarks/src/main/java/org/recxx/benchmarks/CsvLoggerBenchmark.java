@@ -0,0 +1,146 @@
+package org.recxx.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.recxx.utils.CloseableUtils;
+import org.recxx.writer.BufferedWriterManager;
+import org.recxx.writer.CSVLogger;
+import org.recxx.writer.ChannelBufferedWriter;
+import org.recxx.writer.ChannelWriterManager;
+import org.recxx.writer.CompressedWriterManager;
+import org.recxx.writer.Compression;
+
+/**
+ * CSVLogger.write and writeLine: one line of a break report per operation. The 'discard' writer drops what is written,
+ * leaving only the logger's own cost; the others write a file, which is started afresh for every iteration.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CsvLoggerBenchmark {
+
+	private static final int ROWS = 4096;
+
+	@Param({ "5", "20" })
+	public int columns;
+
+	@Param({ "numeric", "mixed" })
+	public String typeMix;
+
+	@Param({ "discard", "buffered", "channel", "gzip" })
+	public String writer;
+
+	private String[][] rows;
+
+	private int next;
+
+	private File file;
+
+	private CSVLogger logger;
+
+	@Setup
+	public void setUp() {
+		Benchmarks.prepare();
+		BenchmarkData data = BenchmarkData.generate(ROWS, columns, 1, typeMix, BenchmarkData.SEED);
+		rows = new String[ROWS][];
+		for (int row = 0; row < ROWS; row++) {
+			rows[row] = data.getRow(row);
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void open() throws IOException {
+		file = File.createTempFile("csvLoggerBenchmark", ".csv");
+		logger = new CSVLogger();
+		logger.setBufferedWriterManager(newManager());
+		logger.setFilename(file.getPath());
+		logger.open();
+	}
+
+	@TearDown(Level.Iteration)
+	public void close() throws IOException {
+		logger.close();
+		file.delete();
+	}
+
+	private BufferedWriterManager newManager() {
+		CloseableUtils closeableUtils = new CloseableUtils();
+		if ("discard".equals(writer)) {
+			return new DiscardingWriterManager(closeableUtils);
+		} else if ("buffered".equals(writer)) {
+			return new BufferedWriterManager(closeableUtils);
+		} else if ("channel".equals(writer)) {
+			return new ChannelWriterManager(closeableUtils, ChannelBufferedWriter.DEFAULT_BUFFER_SIZE,
+			        ChannelBufferedWriter.Fsync.NEVER);
+		} else if ("gzip".equals(writer)) {
+			return new CompressedWriterManager(closeableUtils, Compression.GZIP);
+		}
+		throw new IllegalArgumentException("Unknown writer " + writer);
+	}
+
+	@Benchmark
+	public void writeLine() throws IOException {
+		String[] row = rows[next];
+		next = (next + 1) % ROWS;
+		int last = row.length - 1;
+		for (int column = 0; column < last; column++) {
+			logger.write(row[column]);
+		}
+		logger.writeLine(row[last]);
+	}
+
+	/**
+	 * opens a BufferedWriter which writes nowhere
+	 */
+	private static final class DiscardingWriterManager extends BufferedWriterManager {
+
+		private BufferedWriter bufferedWriter;
+
+		DiscardingWriterManager(CloseableUtils closeableUtils) {
+			super(closeableUtils);
+		}
+
+		@Override
+		public BufferedWriter open(File file) {
+			bufferedWriter = new BufferedWriter(new Writer() {
+				@Override
+				public void write(char[] chars, int offset, int length) {
+				}
+
+				@Override
+				public void flush() {
+				}
+
+				@Override
+				public void close() {
+				}
+			});
+			return bufferedWriter;
+		}
+
+		@Override
+		public void close() throws IOException {
+			bufferedWriter.close();
+		}
+	}
+}
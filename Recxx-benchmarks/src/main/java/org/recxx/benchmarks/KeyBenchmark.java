@@ -0,0 +1,108 @@
+package org.recxx.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.recxx.data.ColumnType;
+import org.recxx.data.CompositeKey;
+import org.recxx.data.Dataset;
+import org.recxx.data.RowBuffer;
+import org.recxx.facades.FileFacadeWorker;
+
+/**
+ * AbstractRecFeed.generateKey: building the key of a row, from a row buffer as the sources do now and from a list of
+ * objects as they used to
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeyBenchmark {
+
+	private static final int ROWS = 1024;
+
+	@Param({ "1", "2", "3", "5" })
+	public int keyWidth;
+
+	@Param({ "numeric", "text" })
+	public String typeMix;
+
+	private FileFacadeWorker worker;
+
+	private File propertiesFile;
+
+	private String[] columnNames;
+
+	private String[] keyColumns;
+
+	private RowBuffer[] buffers;
+
+	private ArrayList<Object>[] lists;
+
+	private final CompositeKey.Builder builder = new CompositeKey.Builder();
+
+	@Setup
+	@SuppressWarnings("unchecked")
+	public void setUp() throws Exception {
+		Benchmarks.prepare();
+		BenchmarkData data = BenchmarkData.generate(ROWS, keyWidth + 1, keyWidth, typeMix, BenchmarkData.SEED);
+		columnNames = data.getColumnNames();
+		keyColumns = Arrays.copyOf(columnNames, keyWidth);
+		ColumnType[] types = Dataset.typesForClassNames(data.getClassNames());
+
+		buffers = new RowBuffer[ROWS];
+		lists = new ArrayList[ROWS];
+		for (int row = 0; row < ROWS; row++) {
+			buffers[row] = new RowBuffer(types);
+			data.fill(buffers[row], data.getRow(row));
+			lists[row] = new ArrayList<Object>();
+			for (int column = 0; column < columnNames.length; column++) {
+				lists[row].add(buffers[row].get(column));
+			}
+		}
+
+		propertiesFile = Benchmarks.emptyPropertiesFile();
+		worker = Benchmarks.newWorker(propertiesFile);
+		// the first call sets the key column positions
+		worker.generateKey(columnNames, keyColumns, lists[0]);
+	}
+
+	@TearDown
+	public void tearDown() {
+		propertiesFile.delete();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void fromRowBuffer(Blackhole blackhole) {
+		for (RowBuffer buffer : buffers) {
+			blackhole.consume(worker.generateKey(buffer, builder));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(ROWS)
+	public void fromList(Blackhole blackhole) {
+		for (ArrayList<Object> list : lists) {
+			blackhole.consume(worker.generateKey(columnNames, keyColumns, list, builder));
+		}
+	}
+}
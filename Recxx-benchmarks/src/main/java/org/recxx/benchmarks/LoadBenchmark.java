@@ -0,0 +1,80 @@
+package org.recxx.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.recxx.data.Dataset;
+import org.recxx.facades.FileFacadeWorker;
+
+/**
+ * FileFacadeWorker.processFile: reading, parsing and keying a whole file into a Dataset
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LoadBenchmark {
+
+	@Param({ "10000", "100000" })
+	public int rows;
+
+	@Param({ "5", "20" })
+	public int columns;
+
+	@Param({ "1", "3" })
+	public int keyWidth;
+
+	@Param({ "numeric", "mixed" })
+	public String typeMix;
+
+	private File dataFile;
+
+	private File propertiesFile;
+
+	private Properties properties;
+
+	@Setup
+	public void setUp() throws Exception {
+		Benchmarks.prepare();
+		BenchmarkData data = BenchmarkData.generate(rows, columns, keyWidth, typeMix, BenchmarkData.SEED);
+		dataFile = File.createTempFile("loadBenchmark", ".csv");
+		data.writeFile(dataFile, ",");
+		properties = data.fileProperties(dataFile, ",");
+		propertiesFile = Benchmarks.emptyPropertiesFile();
+	}
+
+	@TearDown
+	public void tearDown() {
+		dataFile.delete();
+		propertiesFile.delete();
+	}
+
+	@Benchmark
+	public Dataset processFile() throws Exception {
+		BufferedReader reader = new BufferedReader(new FileReader(dataFile));
+		try {
+			FileFacadeWorker worker = Benchmarks.newWorker(propertiesFile);
+			worker.setRunTimeProperties(properties);
+			return worker.processFile(properties.getProperty("key"), reader, properties);
+		} finally {
+			reader.close();
+		}
+	}
+}
@@ -1,5 +1,14 @@
 package org.recxx;
 
+import org.recxx.data.ColumnType;
+import org.recxx.data.CompositeKey;
+import org.recxx.data.Dataset;
+import org.recxx.data.RowBuffer;
+import org.recxx.data.RowCursor;
+import org.recxx.facades.DatabaseFacadeWorker;
+import org.recxx.facades.WorkerScheduler;
+import org.recxx.metrics.EventBatch;
+import org.recxx.reader.ResultSetColumnReader;
 import org.recxx.utils.ArrayUtils;
 
 import java.io.File;
@@ -11,7 +20,6 @@ import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Properties;
 import java.util.logging.Level;
@@ -37,7 +45,11 @@ public abstract class AbstractRecFeed {
     protected boolean keyColumnPositionsSet = false;
     protected List<Integer> keyColumnPositions;
     protected String[] columns;
-    protected HashMap data;
+    protected Dataset data;
+    protected int rowsRead;
+    protected WorkerScheduler scheduler = new WorkerScheduler(WorkerScheduler.PLATFORM_THREADS);
+
+    private final CompositeKey.Builder keyBuilder = new CompositeKey.Builder();
 
     public DecimalFormat decimalFormatter = new DecimalFormat("##,##0");
 
@@ -48,6 +60,38 @@ public abstract class AbstractRecFeed {
         super();
     }
 
+    /**
+     * @return the number of rows read from the source by the last load,
+     * before they were keyed and aggregated
+     */
+    public int getRowsRead() {
+        return rowsRead;
+    }
+
+    /**
+     * @param scheduler creates the executors for the tasks a load is split into
+     */
+    public void setScheduler(WorkerScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * @return the data loaded, or null if it hasn't been loaded
+     */
+    public Dataset getLoadedData() {
+        return data;
+    }
+
+    /**
+     * fingerprint the compare columns of every loaded row - every column but
+     * the key - while still on the loading thread, so that identical rows can
+     * be matched without comparing them column by column
+     */
+    protected void fingerprintData() {
+        if (data != null)
+            data.fingerprint(data.getNonKeyPositions());
+    }
+
     /**
      * A general initalisation which sets the properties and the outputloggers
      *
@@ -117,30 +161,58 @@ public abstract class AbstractRecFeed {
      * @param columns    column names
      * @param keyColumns array of keys/
      * @param row        data row
-     * @return String    a unique key
+     * @return CompositeKey    a unique key
+     */
+    public CompositeKey generateKey(String[] columns, String[] keyColumns,
+                                    ArrayList row) {
+        return generateKey(columns, keyColumns, row, keyBuilder);
+    }
+
+    /**
+     * As generateKey(columns, keyColumns, row), but building the key with the
+     * given builder so that it can be called from more than one thread once the
+     * key column positions have been set.
+     *
+     * @param columns    column names
+     * @param keyColumns array of keys/
+     * @param row        data row
+     * @param builder    builder for this thread
+     * @return CompositeKey    a unique key
      */
-    public String generateKey(String[] columns, String[] keyColumns,
-                              ArrayList row) {
+    public CompositeKey generateKey(String[] columns, String[] keyColumns,
+                                    ArrayList row, CompositeKey.Builder builder) {
         if (!keyColumnPositionsSet) {
             // first time in, set the positions of the key in relation to the data
             keyColumnPositions = ArrayUtils.getColumnsPosition(columns, keyColumns);
             keyColumnPositionsSet = true;
         }
         // now generate a key from the row of data...
-        StringBuilder sb = new StringBuilder();
+        builder.reset();
         for (int keyColumnPosition : keyColumnPositions) {
-            Object o = row.get(keyColumnPosition);
-            if (o != null) {
-                sb.append(o.toString()).append("+");
-            }
+            builder.add(row.get(keyColumnPosition));
         }
-        return sb.toString();
+        return builder.build();
+    }
+
+    /**
+     * Generate the key of a row staged in a row buffer, once the key column
+     * positions have been set.
+     *
+     * @param row     data row
+     * @param builder builder for this thread
+     * @return CompositeKey    a unique key
+     */
+    public CompositeKey generateKey(RowBuffer row, CompositeKey.Builder builder) {
+        builder.reset();
+        for (int keyColumnPosition : keyColumnPositions) {
+            row.addToKey(keyColumnPosition, builder);
+        }
+        return builder.build();
     }
 
     /**
      * Given a key and java.sql.ResultSet, process the data and set the array of
-     * columns, and also return a HashMap of data, keyed on the unique key
-     * against an ArrayList representing a row.
+     * columns, and also return a Dataset of the rows, indexed on the unique key.
      *
      * @param key  unique key
      * @param rs   result set
@@ -148,132 +220,242 @@ public abstract class AbstractRecFeed {
      * @return HashMap  map of keys to data
      * @throws Exception in case of any problems.
      */
-    public HashMap processResultSet(String key, ResultSet rs, Properties prop) throws Exception {
-        HashMap data = new HashMap();
+    public Dataset processResultSet(String key, ResultSet rs, Properties prop) throws Exception {
         int count = 0;
         int[] compareColumnPosition = null;
 
-        boolean handleNullsAsZero = valueOf(prop.getProperty("handleNullsAsZero"));
         boolean aggregate = valueOf(prop.getProperty("aggregate"));
 
-        ResultSetMetaData meta = rs.getMetaData();
-        int columnCount = meta.getColumnCount();
-
-        String[] columns = getColumnsData(meta);
-        String[] columnsClassNames = getColumnsClassNameData(meta);
+        ResultSetCursor cursor = new ResultSetCursor(key, rs, prop);
+        Dataset data = new Dataset(cursor.getColumnNames(), cursor.getColumnTypes(),
+                cursor.getKeyPositions());
 
-        this.columns = columns;
+        // if we're aggregating, get the names of the compare columns to
+        // bucket
+        if (aggregate)
+            compareColumnPosition = ArrayUtils.getCompareColumnsPosition(this.columns,
+                    ArrayUtils.convertStringKeyToArray(key, null));
 
-        String[] keyColumns = ArrayUtils.convertStringKeyToArray(key, null);
+        while (cursor.next()) {
+            addRow(data, cursor.getKey(), cursor.getRow(), key, aggregate,
+                    compareColumnPosition);
 
-        if (ArrayUtils.keysPresentInColumns(keyColumns, columns)) {
-            // the key columns match with the meta data in the ResultSet so
-            // proceed...
+            count++;
 
-            // if we're aggregating, get the names of the compare columns to
-            // bucket
-            if (aggregate)
-                compareColumnPosition = ArrayUtils.getCompareColumnsPosition(this.columns,
-                        keyColumns);
-
-            while (rs.next()) {
-                ArrayList row = new ArrayList();
-
-                for (int i = 0; i < columnCount; i++) {
-                    Object o = rs.getObject(i + 1);
-
-                    // for doubles which are null, and handleNullsAsZero is true
-                    // default the value to 0.0
-                    if (o == null && columnsClassNames[i].equals("java.lang.Double") && handleNullsAsZero) {
-                        row.add(0.0);
-                    } else {
-                        try {
-                            // if its double of float, try and limit the dp by
-                            // using the pattern
-                            // specified in the properties file
-                            if (columnsClassNames[i].equals("java.lang.Double"))
-                                o = new Double(
-                                        (Recxx.m_dpFormatter.format(((Double) o)
-                                                .doubleValue())));
-                            else if (columnsClassNames[i]
-                                    .equals("java.lang.Float"))
-                                o = new Float(
-                                        (Recxx.m_dpFormatter.format(((Float) o)
-                                                .floatValue())));
-                        } catch (NumberFormatException nfe) {
-                            o = 0d;
-                        }
-
-                        // then add the row
-                        row.add(o);
-                    }
-                }
-
-                // try and save memory by trimming the arraylist to size
-                row.trimToSize();
-
-                String mapKey = generateKey(columns, keyColumns, row);
-
-                if (!mapKey.equals("")) {
-                    if (!data.containsKey(mapKey)) {
-                        data.put(mapKey, row);
-                    } else {
-                        if (aggregate)
-                            aggregateData(data, compareColumnPosition, row,
-                                    mapKey);
-                        else
-                            LOGGER.log(Level.WARNING, "Key of "
-                                    + key
-                                    + " is not unique (duplicate values found for "
-                                    + mapKey
-                                    + ") - unless aggregation is specified, the rec wont work!");
-                    }
-                } else {
-                    LOGGER.log(Level.WARNING, "Null key returned - discarding row");
-                }
-
-                count++;
-
-                if (count % 1000 == 0)
-                    LOGGER.log(Level.WARNING, "Loaded " + decimalFormatter.format(count)
-                            + " (aggregated "
-                            + decimalFormatter.format(data.size()) + ") row(s)");
-            }
-        } else {
-            throw new Exception("Specified key " + key
-                    + " not present in ResultSetMetaData");
+            if (count % 1000 == 0)
+                LOGGER.log(Level.WARNING, "Loaded " + decimalFormatter.format(count)
+                        + " (aggregated "
+                        + decimalFormatter.format(data.size()) + ") row(s)");
         }
 
         LOGGER.log(Level.WARNING, "Loaded " + decimalFormatter.format(count) + " (aggregated "
                 + decimalFormatter.format(data.size()) + ") row(s) in total");
+        rowsRead = count;
 
         return data;
     }
 
     /**
-     * given the data and the keys, aggregate the data
+     * key the row and add it to the data, aggregating or discarding it if the
+     * key has already been seen
+     *
+     * @param data                  data loaded so far
+     * @param mapKey                key generated for the row
+     * @param row                   row to add
+     * @param key                   key property, for logging
+     * @param aggregate             aggregate rows with the same key?
+     * @param compareColumnPosition columns to aggregate
+     * @throws Exception if the row can't be aggregated
+     */
+    protected void addRow(Dataset data, CompositeKey mapKey, RowBuffer row, String key,
+                          boolean aggregate, int[] compareColumnPosition) throws Exception {
+        if (mapKey.isEmpty()) {
+            LOGGER.log(Level.WARNING, "Null key returned - discarding row");
+            return;
+        }
+
+        int existingRow = data.find(mapKey);
+        if (existingRow < 0) {
+            data.add(mapKey, row);
+        } else if (aggregate) {
+            aggregateData(data, compareColumnPosition, row, existingRow);
+        } else {
+            warnNotUnique(key, mapKey);
+        }
+    }
+
+    /**
+     * warn that a row has been discarded as its key has already been loaded
+     *
+     * @param key    key column names
+     * @param mapKey key of the row
+     */
+    protected void warnNotUnique(String key, CompositeKey mapKey) {
+        LOGGER.log(Level.WARNING, "Key of "
+                + key
+                + " is not unique (duplicate values found for "
+                + mapKey
+                + ") - unless aggregation is specified, the rec wont work!");
+    }
+
+    /**
+     * convert a list of positions into an int array
+     *
+     * @param positions positions
+     * @return array of positions
+     */
+    protected static int[] toIntArray(List<Integer> positions) {
+        int[] array = new int[positions.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = positions.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * given the data and the row to add to an existing row, aggregate the data
      *
      * @param data
      * @param compareColumnPosition
      * @param row
-     * @param mapKey
+     * @param existingRow
      */
-    public void aggregateData(HashMap data, int[] compareColumnPosition, ArrayList row, String mapKey) throws Exception {
-        ArrayList existingRow = (ArrayList) data.get(mapKey);
-
-        try {
-            for (int i = 0; i < compareColumnPosition.length; i++) {
-                double value = (Double) existingRow.get(compareColumnPosition[i])
-                        + (Double) row.get(compareColumnPosition[i]);
-                existingRow.set(compareColumnPosition[i], value);
-            }
-        } catch (ClassCastException cse) {
-            LOGGER.log(Level.WARNING, cse.getMessage(), cse);
+    public void aggregateData(Dataset data, int[] compareColumnPosition, RowBuffer row, int existingRow) throws Exception {
+        if (!data.aggregate(existingRow, compareColumnPosition, row)) {
             throw new Exception(
                     "Unable to aggregate data as of 1 of the columns specified for comparision is not a numeric!");
-        } catch (IndexOutOfBoundsException ie) {
-            ie.printStackTrace();
         }
     }
 
-}
\ No newline at end of file
+
+    /**
+     * A cursor over the rows of a java.sql.ResultSet, keying each row as it is
+     * read. Creating one sets the array of columns and the key column
+     * positions from the ResultSetMetaData, and chooses a typed reader for
+     * each column. Closing it closes the ResultSet.
+     * <p/>
+     * A FetchEvent is raised for each fetch size's worth of rows read, or for
+     * each DEFAULT_FETCH_SIZE rows if the fetch size is left to the driver.
+     */
+    protected class ResultSetCursor implements RowCursor {
+        private final ResultSet rs;
+        private final ResultSetColumnReader[] readers;
+        private final String[] columnNames;
+        private final ColumnType[] types;
+        private final int[] keyPositions;
+        private final RowBuffer row;
+        private final CompositeKey.Builder builder = new CompositeKey.Builder();
+        private final String source;
+        private final int batchSize;
+        private CompositeKey rowKey;
+        private EventBatch batch;
+
+        /**
+         * @param key  unique key
+         * @param rs   result set
+         * @param prop properties to use.
+         * @throws Exception if the key isn't in the ResultSetMetaData
+         */
+        public ResultSetCursor(String key, ResultSet rs, Properties prop) throws Exception {
+            this.rs = rs;
+
+            ResultSetMetaData meta = rs.getMetaData();
+            columnNames = getColumnsData(meta);
+            String[] columnsClassNames = getColumnsClassNameData(meta);
+
+            String[] keyColumns = ArrayUtils.convertStringKeyToArray(key, null);
+
+            if (!ArrayUtils.keysPresentInColumns(keyColumns, columnNames)) {
+                throw new Exception("Specified key " + key
+                        + " not present in ResultSetMetaData");
+            }
+
+            // the key columns match with the meta data in the ResultSet so
+            // proceed...
+            List<Integer> positions = ArrayUtils.getColumnsPosition(columnNames, keyColumns);
+            keyPositions = toIntArray(positions);
+
+            // the cursors of a partitioned query are created on several threads
+            synchronized (AbstractRecFeed.this) {
+                columns = columnNames;
+                keyColumnPositions = positions;
+                keyColumnPositionsSet = true;
+            }
+
+            types = Dataset.typesForClassNames(columnsClassNames);
+            row = new RowBuffer(types);
+            readers = ResultSetColumnReader.forColumns(columnsClassNames,
+                    valueOf(prop.getProperty("handleNullsAsZero")), Recxx.m_dpFormatter);
+
+            source = prop.getProperty("alias");
+            batchSize = rs.getFetchSize() > 0 ? rs.getFetchSize() : DatabaseFacadeWorker.DEFAULT_FETCH_SIZE;
+        }
+
+        public String[] getColumnNames() {
+            return columnNames.clone();
+        }
+
+        public ColumnType[] getColumnTypes() {
+            return types.clone();
+        }
+
+        public int[] getKeyPositions() {
+            return keyPositions.clone();
+        }
+
+        public boolean next() throws SQLException {
+            if (batch == null) {
+                batch = EventBatch.begin(EventBatch.Kind.FETCH);
+            }
+
+            if (!rs.next()) {
+                rowKey = null;
+                commitBatch();
+                return false;
+            }
+
+            row.clear();
+            for (ResultSetColumnReader reader : readers) {
+                reader.read(rs, row);
+            }
+
+            batch.rows++;
+            if (batch.isRecorded())
+                batch.bytes += row.estimatedBytes();
+            if (batch.rows == batchSize)
+                commitBatch();
+
+            builder.reset();
+            for (int keyPosition : keyPositions) {
+                row.addToKey(keyPosition, builder);
+            }
+            rowKey = builder.build();
+            return true;
+        }
+
+        public CompositeKey getKey() {
+            return rowKey;
+        }
+
+        public RowBuffer getRow() {
+            return row;
+        }
+
+        private void commitBatch() {
+            if (batch.rows > 0 && batch.isRecorded()) {
+                batch.source = source;
+                batch.commit();
+            }
+            batch = null;
+        }
+
+        public void close() throws IOException {
+            try {
+                rs.close();
+            } catch (SQLException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+}
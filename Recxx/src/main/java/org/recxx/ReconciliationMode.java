@@ -1,5 +1,5 @@
 package org.recxx;
 
 public enum ReconciliationMode {
-	OW, TW
+	OW, TW, SORTED_MERGE
 }
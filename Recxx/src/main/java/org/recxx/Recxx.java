@@ -3,40 +3,81 @@ package org.recxx;
 import static java.lang.String.format;
 import static java.lang.String.valueOf;
 import static org.recxx.ReconciliationMode.OW;
+import static org.recxx.ReconciliationMode.SORTED_MERGE;
 import static org.recxx.ReconciliationMode.TW;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
-import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import org.recxx.compare.BreakDeltaListener;
+import org.recxx.compare.ComparisonPlan;
+import org.recxx.compare.DifferenceListener;
+import org.recxx.compare.GraceHashReconciler;
+import org.recxx.compare.IncrementalReconciler;
+import org.recxx.compare.KeyStatusListener;
+import org.recxx.compare.MultiwayReconciler;
+import org.recxx.compare.PipelinedReconciler;
+import org.recxx.compare.ReconciliationCounts;
+import org.recxx.compare.ReconciliationState;
+import org.recxx.compare.Reconciler;
+import org.recxx.compare.SortedMergeReconciler;
+import org.recxx.data.CompositeKey;
+import org.recxx.data.Dataset;
+import org.recxx.data.RowCursor;
 import org.recxx.exception.PropertiesFileException;
 import org.recxx.facades.DatabaseFacadeWorker;
 import org.recxx.facades.FileFacadeWorker;
 import org.recxx.facades.RecxxWorker;
+import org.recxx.facades.WorkerScheduler;
+import org.recxx.metrics.CountingCursor;
+import org.recxx.metrics.FlightRecording;
+import org.recxx.metrics.RunMetrics;
 import org.recxx.utils.ArrayUtils;
 import org.recxx.utils.CONSTANTS;
 import org.recxx.utils.CloseableUtils;
+import org.recxx.writer.AsyncDifferenceWriter;
 import org.recxx.writer.BufferedWriterManager;
 import org.recxx.writer.CSVLogger;
+import org.recxx.writer.ChannelBufferedWriter;
+import org.recxx.writer.ChannelWriterManager;
+import org.recxx.writer.CompressedWriterManager;
+import org.recxx.writer.Compression;
 
 /**
  * Generic SQL based reconciliation tool to allow comparison between data sources which support the JDBC/SQL protocols,
- * as well as files and/or from a database and additionally, from delimited files. This tool currently only supports
- * comparison between 2 data sets,
+ * as well as files and/or from a database and additionally, from delimited files. Usually 2 data sets are compared,
+ * but any number of them may be given as inputSource1, inputSource2, inputSource3 and so on, in which case each of
+ * them is compared with the first, and each key on which they don't all agree is reported along with which of them
+ * agree with the first, which break and which are missing. The first source is loaded and walked once however many
+ * it is compared with. More than 2 sources can only be loaded, not read through cursors, so can't be used with
+ * SORTED_MERGE, a memoryBudget or pipelined.
  * <p/>
  * Properties for the 2 data sources are specified, and then the data sources are loaded in separate threads and placed
- * into keyed HashMaps to allow comparison. When both data sets are loaded, the reconciliation process then takes place.
+ * into keyed data sets to allow comparison. The first source to fail to load fails the run, without waiting for the
+ * others. When both data sets are loaded, the reconciliation process then takes place.
  * The sets of sql specified for each data source must have the columns for comparison in the same order, even if their
  * names are different - every column not specified in the 'key' (see below) is compared. An aggregation property can
  * also be specified, to aggregate numerical columns in the data with the same key. This is of most use for aggregating
@@ -63,6 +104,55 @@ import org.recxx.writer.CSVLogger;
  * <li>*.rec.outputType = defaults to 'csv', which allows logging to csv file. Else, if set to 'err' logs to System.err</li>
  * <li>*.rec.logger.csv.file = if outputType set to 'csv', this property needs to be set, to specify the location of the
  * csv file</li>
+ * <li>*.rec.logger.csv.queueSize = number of differences which can be queued for the csv file. Differences are written
+ * to the file on a thread of their own, and the reconciliation only waits for it once this many are queued. Defaults to
+ * 8192</li>
+ * <li>*.rec.logger.csv.writer = 'buffered' (the default) to write the csv file through a BufferedWriter, or 'channel'
+ * to encode it straight into a large direct buffer which is written to the file's channel as it fills</li>
+ * <li>*.rec.logger.csv.bufferSize = bytes, optionally followed by k, m or g, of the 'channel' writer's buffer. Defaults
+ * to 1m</li>
+ * <li>*.rec.logger.csv.fsync = when the 'channel' writer forces the file to disk: NEVER (the default), ON_CLOSE or
+ * ON_FLUSH</li>
+ * <li>*.rec.logger.csv.compression = NONE or GZIP, to compress the csv file as it is written, on a thread of its own.
+ * Defaults to GZIP if the file's name ends in .gz, and NONE otherwise. A compressed file is always written through a
+ * BufferedWriter, whatever logger.csv.writer is set to</li>
+ * <li>*.rec.compareParallelism = number of threads used to compare the loaded data. The keys are split by hash into
+ * this many partitions, each reconciled on its own thread. Defaults to 1, which also keeps the differences in the order
+ * of the first data source</li>
+ * <li>*.rec.reconciliationMode = 'TW' (the default) for a two-way reconciliation, reporting the rows of either source
+ * missing from the other, or 'OW' for a one-way reconciliation, only looking for the rows of the first source in the
+ * second. 'SORTED_MERGE' is a two-way reconciliation of sources which are both already sorted by key: rather than
+ * being loaded, the sources are read row by row and merged, so memory use stays constant however big they are. Rows
+ * with the same key must be next to each other, and a source found not to be sorted fails the reconciliation</li>
+ * <li>*.rec.memoryBudget = bytes, optionally followed by k, m or g, that the loaded rows of both sources may take.
+ * When set, the sources are read one after the other rather than in separate threads, and once a source outgrows its
+ * half of the budget both are hash partitioned by key into temporary files and reconciled a partition at a time.
+ * Defaults to 0, which loads the sources in full with no limit</li>
+ * <li>*.rec.pipelined = if true, in TW or OW mode both sources are read through cursors on threads of their own, and
+ * once one has been read to the end the other is compared with it row by row as it is read, rather than being loaded
+ * first. The run takes roughly as long as the slower source, rather than as long as loading both and then comparing
+ * them, and the rows of the slower source read after the switch aren't kept. The faster source is held in full, as is
+ * the slower one up to the switch, so memory is only saved when one source is much faster than the other. Defaults to
+ * false. Ignored if a memoryBudget is set</li>
+ * <li>*.rec.workerThreads = 'platform' (the default) to load each source, and each range of a partitioned query, on
+ * a pooled OS thread, or 'virtual' to use a virtual thread for each, which needs Java 21 or later</li>
+ * <li>*.rec.spillPartitions = number of partitions each source is split into once spilled. Defaults to 64</li>
+ * <li>*.rec.spillDirectory = directory to write the partitions to. Defaults to the java.io.tmpdir directory</li>
+ * <li>*.rec.metrics.file = where to write a json report of the run: how long each phase took, the rows read from each
+ * source and how quickly, the differences found in each compare column, the bytes allocated, the heap high water mark
+ * and how busy the processors were kept. Defaults to the csv file's name with .metrics.json in place of its extension,
+ * or to no report if the output isn't csv. Set it to nothing for no report</li>
+ * <li>*.rec.metrics.jmx = if true, the same metrics are published while the run is going on as the MBean
+ * org.recxx:type=RunMetrics,name="<i>prefix</i>". Defaults to false</li>
+ * <li>*.rec.jfr.file = where to write a flight recording of the run, holding the Recxx events for each batch of rows
+ * parsed, fetched, compared and flushed to the csv file. Defaults to no recording</li>
+ * <li>*.rec.jfr.settings = the JDK configuration recorded along with the Recxx events, such as 'default' or 'profile',
+ * or 'none' for only the Recxx events. Defaults to 'default'</li>
+ * <li>*.rec.incremental.stateFile = where to keep how each key turned out, along with a fingerprint of its compare
+ * columns on each side. Each run then only compares the keys whose fingerprints have changed since the last run, and
+ * follows the differences of those with a Break Delta section listing every break as new, open or resolved. The
+ * counts in the summary are of every key. Only for TW or OW mode with 2 loaded sources. Defaults to a full
+ * reconciliation every run</li>
  * </ul>
  * <p/>
  * Database properties
@@ -74,6 +164,19 @@ import org.recxx.writer.CSVLogger;
  * <li>*.rec.inputSource<i>n</i>.db.jdbc.driver = JDBC driver to use to connect to the database</li>
  * <li>*.rec.inputSource<i>n</i>.db.sql = SQL to run on the database</li>
  * <li>*.rec.inputSource<i>n</i>.db.key = Unique key for data</li>
+ * <li>*.rec.inputSource<i>n</i>.db.fetchSize = number of rows fetched from the database at a time. The query is read
+ * through a forward only, read only cursor, so that the driver can stream its rows rather than hold them all. Defaults
+ * to 1000, and 0 leaves it to the driver</li>
+ * <li>*.rec.inputSource<i>n</i>.db.partitionColumn = column to split the query into ranges of. Each range is queried
+ * at the same time on its own connection, and the ranges are merged into the one loaded data set. The sql is run as a
+ * sub-query, so it must be valid as one</li>
+ * <li>*.rec.inputSource<i>n</i>.db.partitions = number of ranges of equal width to split the partition column's
+ * minimum to maximum into</li>
+ * <li>*.rec.inputSource<i>n</i>.db.partitionBoundaries = in place of partitions, the values to split the partition
+ * column at, separated by spaces and written as sql literals (ie 1000 2000 or '2011-08-01'). Null values fall in the
+ * first range</li>
+ * <li>*.rec.inputSource<i>n</i>.db.parallelism = number of ranges queried at the same time. No more than twice this many
+ * ranges are held waiting to be merged. Defaults to the number of processors</li>
  * </ul>
  * <p/>
  * File properties
@@ -92,6 +195,20 @@ import org.recxx.writer.CSVLogger;
  * <li>*.rec.inputSource<i>n</i>.file.columnsToCompare = In place of sql, the columns that are to be reconciled</li>
  * <li>*.rec.inputSource<i>n</i>.file.aggregate = if true, aggregates data rows with the same key, for the compare
  * columns</li>
+ * <li>*.rec.inputSource<i>n</i>.file.reader = defaults to 'stream', which reads the file line by line. If set to 'mmap'
+ * the file is memory mapped and parsed directly from its bytes, which is much quicker for large files (single character
+ * delimiters only)</li>
+ * <li>*.rec.inputSource<i>n</i>.file.parallelism = number of workers used to parse a memory mapped file, which is split
+ * into line aligned chunks parsed at the same time, or to decompress a block compressed (bgzip) file. Defaults to 1</li>
+ * <li>*.rec.inputSource<i>n</i>.file.chunkSize = size in bytes of each chunk parsed when parallelism is more than 1.
+ * Defaults to 64MB</li>
+ * <li>*.rec.inputSource<i>n</i>.file.snapshotDirectory = directory to keep a binary snapshot of the loaded source in.
+ * While the file and the properties it is loaded with are unchanged, later runs read the snapshot back rather than
+ * parsing the file again. Not used when the source is read through a cursor</li>
+ * <li>A file source may be gzipped, as told by its first bytes whatever its name. It is decompressed on a thread of its
+ * own as it is read, and always read line by line</li>
+ * <li>Sources which read the same file, or run the same query on the same database, with the same properties other
+ * than their alias are loaded once, and share the loaded data. Sources read through cursors are each read in full</li>
  * </ul>
  */
 public class Recxx extends AbstractRecFeed implements Runnable {
@@ -111,15 +228,44 @@ public class Recxx extends AbstractRecFeed implements Runnable {
 	protected String m_delimiter = " ";
 
 	private String m_outputType = "";
+	private int m_compareParallelism = 1;
+
+	private long m_memoryBudget = 0;
+
+	private int m_spillPartitions = GraceHashReconciler.DEFAULT_PARTITIONS;
+
+	private String m_spillDirectory = null;
+
+	private boolean m_pipelined = false;
+	private String m_stateFile = null;
+
+	private int m_numberOfInputs = 2;
+	private RunMetrics m_metrics;
+	private String m_metricsFile = null;
+	private boolean m_metricsJmx = false;
+	private String m_jfrFile = null;
+	private String m_jfrSettings = "default";
+	private FlightRecording m_flightRecording;
 	private boolean m_loggerInit = false;
 	private CSVLogger m_logger;
+	private AsyncDifferenceWriter m_differenceWriter;
+	private int m_differenceQueueSize = AsyncDifferenceWriter.DEFAULT_CAPACITY;
+	private String m_csvWriter = "buffered";
+	private int m_csvBufferSize = ChannelBufferedWriter.DEFAULT_BUFFER_SIZE;
+	private ChannelBufferedWriter.Fsync m_csvFsync = ChannelBufferedWriter.Fsync.NEVER;
+	private Compression m_csvCompression = Compression.NONE;
 	private final DecimalFormat m_dPercentageFormatter = new DecimalFormat("#.00%");
 	public static DecimalFormat m_dpFormatter;
 
 	protected HashMap m_propertiesMap;
 	protected HashMap m_dataToCompare = new HashMap();
 	protected int m_dataToCompareKey = 0;
-	protected ThreadGroup m_workerGroup = new ThreadGroup("Worker Group");
+	private WorkerScheduler m_scheduler;
+	private ExecutorService m_workerExecutor;
+	private CompletionService<Dataset> m_loads;
+	private int m_loadsStarted = 0;
+	// the order of each source sharing the load of another, with the properties of that other
+	private final Map<String, Properties> m_sharedLoads = new LinkedHashMap<String, Properties>();
 
 	Logger LOGGER = Logger.getLogger(Recxx.class.getName());
 
@@ -162,41 +308,105 @@ public class Recxx extends AbstractRecFeed implements Runnable {
 	 */
 	public void run() {
 
+		m_metrics = new RunMetrics(prefix);
+
 		try {
 			// firstly load up the properties....
+			RunMetrics.Phase phase = m_metrics.startPhase("properties");
 			loadProperties();
+			phase.end();
 
-			// then load the data sources in separate threads....
-			startThreads();
-
-			// now wait for the threads to finish
-			waitForThreads();
+			if (m_metricsJmx)
+				m_metrics.register();
+			if (m_jfrFile != null && m_jfrFile.trim().length() > 0)
+				m_flightRecording = new FlightRecording(new File(m_jfrFile), m_jfrSettings);
 
-			// now rec the data calling the correct method according to the mode
-			if (reconciliationMode.equalsIgnoreCase("TW"))
-				recData();
-			else
-				oldRecData();
+			if (reconciliationMode.equalsIgnoreCase(SORTED_MERGE.toString()) || m_memoryBudget > 0 || m_pipelined) {
+				// read both sources through cursors, rather than loading them in separate threads
+				cursorRecData();
+			} else {
+				// then load the data sources in separate threads....
+				phase = m_metrics.startPhase("load");
+				startLoads();
+
+				// now wait for them all to be loaded
+				waitForLoads();
+				shareLoads();
+				phase.end();
+
+				// now rec the data calling the correct method according to the mode
+				if (m_numberOfInputs > 2)
+					multiwayRecData(reconciliationMode.equalsIgnoreCase("TW"));
+				else if (reconciliationMode.equalsIgnoreCase("TW"))
+					recData();
+				else
+					oldRecData();
+			}
 
 			// tidy up any connections etc
+			phase = m_metrics.startPhase("flush");
 			close();
+			phase.end();
+
+			publishMetrics();
+			stopFlightRecording();
 
 		} catch (Exception e) {
 			e.printStackTrace();
+			try {
+				stopFlightRecording();
+			} catch (IOException ioe) {
+				ioe.printStackTrace();
+			}
 			System.exit(-1);
 		}
 
 	}
 
 	/**
-	 * close the csv logger, if open.
+	 * stop the clock on the run, and write out its metrics
+	 * 
+	 * @throws java.io.IOException
+	 *             if the report can't be written
+	 */
+	private void publishMetrics() throws IOException {
+		m_metrics.finish();
+		m_metrics.unregister();
+		if (m_metricsFile != null && m_metricsFile.trim().length() > 0)
+			m_metrics.writeReport(new File(m_metricsFile));
+		LOGGER.info("Run took " + decimalFormatter.format(m_metrics.getElapsedMillis()) + "ms: "
+		        + m_metrics.getPhaseMillis());
+	}
+
+	/**
+	 * stop the flight recording, if one was started, writing it to its file
+	 * 
+	 * @throws java.io.IOException
+	 *             if the recording can't be written
+	 */
+	private void stopFlightRecording() throws IOException {
+		if (m_flightRecording != null) {
+			FlightRecording recording = m_flightRecording;
+			m_flightRecording = null;
+			recording.close();
+		}
+	}
+
+	/**
+	 * close the csv logger, if open, once any differences still queued have been written.
 	 * 
 	 * @throws java.io.IOException
 	 *             if the file can't be closed
 	 */
 	private void close() throws IOException {
-		if (m_outputType.equals("csv") && m_logger != null)
-			m_logger.close();
+		if (m_outputType.equals("csv") && m_logger != null) {
+			try {
+				if (m_differenceWriter != null)
+					m_differenceWriter.close();
+			} finally {
+				m_logger.close();
+			}
+		}
 	}
 
 	/**
@@ -206,42 +416,58 @@ public class Recxx extends AbstractRecFeed implements Runnable {
 	 *             if an unequal number of columns is passed.
 	 */
 	private void recData() throws Exception {
+		reconcile(true);
+	}
 
-		String[] inputColumns1, inputColumns2;
+	/**
+	 * Method recData.
+	 * 
+	 * @throws Exception
+	 *             if there is a problem with the processing
+	 */
+	private void oldRecData() throws Exception {
+		reconcile(false);
+	}
+
+	/**
+	 * reconcile the two loaded data sources, either one-way, only looking for the rows of the first source in the
+	 * second, or two-way, also reporting the rows of the second source missing from the first.
+	 * 
+	 * @param twoWay
+	 *            is this a two-way reconciliation?
+	 * @throws Exception
+	 *             if an unequal number of columns is passed.
+	 */
+	private void reconcile(boolean twoWay) throws Exception {
 
-		HashMap inputData1, inputData2;
+		String[] inputColumns1, inputColumns2;
 
-		int inputData1Size, inputData2Size;
+		Dataset inputData1, inputData2;
 
 		Properties inputProperties1, inputProperties2;
 
 		String input1Alias, input2Alias;
 
-		int input1MatchedRows = 0;
+		ReconciliationCounts counts;
 		float tolerancePercentage, smallestAbsoluteValue;
 
+		ReconciliationState previousState, state = null;
+		final List<CompositeKey> deltaKeys = new ArrayList<CompositeKey>();
+		final List<BreakDeltaListener.Delta> deltas = new ArrayList<BreakDeltaListener.Delta>();
+
 		LOGGER.info("Starting to reconcile data sources...");
 
 		if (m_dataToCompare.size() >= 2) {
 			inputColumns1 = (String[]) ((HashMap) m_dataToCompare.get("1")).get(COLUMNS);
-			inputData1 = (HashMap) ((HashMap) m_dataToCompare.get("1")).get(DATA);
+			inputData1 = (Dataset) ((HashMap) m_dataToCompare.get("1")).get(DATA);
 			inputProperties1 = (Properties) ((HashMap) m_dataToCompare.get("1")).get(PROPERTIES);
-			inputData1Size = inputData1.size();
 
 			inputColumns2 = (String[]) ((HashMap) m_dataToCompare.get("2")).get(COLUMNS);
-			inputData2 = (HashMap) ((HashMap) m_dataToCompare.get("2")).get(DATA);
+			inputData2 = (Dataset) ((HashMap) m_dataToCompare.get("2")).get(DATA);
 			inputProperties2 = (Properties) ((HashMap) m_dataToCompare.get("2")).get(PROPERTIES);
-			inputData2Size = inputData2.size();
-
-			// need a position of the compare columns in the array - do this by
-			// making every column which isn't a
-			// key column, a compare column
-			int[] input1CompareColumnPosition =
-			        ArrayUtils.getCompareColumnsPosition(inputColumns1,
-			                ArrayUtils.convertStringKeyToArray((String) inputProperties1.get("key"), m_delimiter));
-			int[] input2CompareColumnPosition =
-			        ArrayUtils.getCompareColumnsPosition(inputColumns2,
-			                ArrayUtils.convertStringKeyToArray((String) inputProperties2.get("key"), m_delimiter));
+
+			int[] input1CompareColumnPosition = getCompareColumnsPosition(inputColumns1, inputProperties1);
+			int[] input2CompareColumnPosition = getCompareColumnsPosition(inputColumns2, inputProperties2);
 
 			input1Alias = (String) inputProperties1.get("alias");
 			input2Alias = (String) inputProperties2.get("alias");
@@ -254,501 +480,598 @@ public class Recxx extends AbstractRecFeed implements Runnable {
 			tolerancePercentage = Float.parseFloat(((String) inputProperties1.get("tolerance")));
 			smallestAbsoluteValue = Float.parseFloat(((String) inputProperties1.get("smallestAbsoluteValue")));
 
-			Iterator inputIterator = inputData1.keySet().iterator();
+			// choose how to compare each pair of columns once, up front
+			ComparisonPlan plan =
+			        new ComparisonPlan(inputData1, input1CompareColumnPosition, inputData2,
+			                input2CompareColumnPosition, tolerancePercentage, smallestAbsoluteValue);
+			if (plan.isFingerprinted())
+				LOGGER.info("Rows whose compare columns have the same fingerprint are matched without comparing them");
+			DifferenceListener listener =
+			        newDifferenceListener((String) inputProperties1.get("key"), (String) inputProperties2.get("key"),
+			                input1Alias, input2Alias);
 
 			LOGGER.info("Comparing " + decimalFormatter.format(inputData1.size()) + " rows from " + input1Alias
 			        + " with " + decimalFormatter.format(inputData2.size()) + " rows from " + input2Alias + " over "
 			        + input1CompareColumnPosition.length + " column(s)");
 
-			while (inputIterator.hasNext()) {
-				String key = (String) inputIterator.next();
-
-				boolean matchedRow = true;
-				boolean unhandledRow = false;
-
-				if (inputData2.containsKey(key)) {
-					// loop round the input1 columns to compare - a row is only
-					// deemed as matched
-					// if _all_ the columns selected to compare, match..
-					for (int i = 0; i < input1CompareColumnPosition.length; i++) {
-						Object o1 = ((ArrayList) inputData1.get(key)).get(input1CompareColumnPosition[i]);
-						Object o2 = ((ArrayList) inputData2.get(key)).get(input2CompareColumnPosition[i]);
-
-						if (o1 instanceof Double && o2 instanceof Double) {
-							// only look at rows greater than the absolute
-							// smallest value specified
-							if ((Math.abs((Double) o1) > smallestAbsoluteValue)
-							        && (Math.abs((Double) o2) > smallestAbsoluteValue)) {
-								double percentageDiff;
-								percentageDiff = calculatePercentageDifference((Double) o1, (Double) o2);
-								if (percentageDiff > tolerancePercentage) {
-									double absDiff;
-									absDiff = Math.abs((Double) o1 - (Double) o2);
-									logDifference((String) inputProperties1.get("key"), key, input1Alias,
-									        inputColumns1[input1CompareColumnPosition[i]], o1, input2Alias,
-									        inputColumns2[input2CompareColumnPosition[i]], o2, valueOf(percentageDiff),
-									        valueOf(absDiff));
-									matchedRow = false;
-								}
-							}
-						} else if (o1 instanceof BigDecimal && o2 instanceof Double) {
-							// only look at rows greater than the absolute
-							// smallest value specified
-							// NSB - 16/6/04 - Added as Oracle returns Big
-							// Decimals
-							if ((Math.abs(((BigDecimal) o1).doubleValue()) > smallestAbsoluteValue)
-							        && (Math.abs((Double) o2) > smallestAbsoluteValue)) {
-								double percentageDiff =
-								        Math.abs(((((BigDecimal) o1).doubleValue() - (Double) o2) / ((BigDecimal) o1)
-								                .doubleValue()) * 100);
-								if (percentageDiff > tolerancePercentage) {
-									double absDiff = Math.abs(((BigDecimal) o1).doubleValue() - (Double) o2);
-									logDifference((String) inputProperties1.get("key"), key, input1Alias,
-									        inputColumns1[input1CompareColumnPosition[i]], o1, input2Alias,
-									        inputColumns2[input2CompareColumnPosition[i]], o2, valueOf(percentageDiff),
-									        valueOf(absDiff));
-									matchedRow = false;
-								}
-							}
-						} else if (o1 instanceof Double && o2 instanceof BigDecimal) {
-							// only look at rows greater than the absolute
-							// smallest value specified
-							// NSB - 16/6/04 - Added as Oracle returns Big
-							// Decimals
-							if ((Math.abs((Double) o1) > smallestAbsoluteValue)
-							        && (((BigDecimal) o2).abs().doubleValue() > smallestAbsoluteValue)) {
-								double percentageDiff =
-								        Math.abs(((((Double) o1) - ((BigDecimal) o2).doubleValue()) / (Double) o1) * 100);
-								if (percentageDiff > tolerancePercentage) {
-									double absDiff = Math.abs((Double) o1 - ((BigDecimal) o2).doubleValue());
-									logDifference((String) inputProperties1.get("key"), key, input1Alias,
-									        inputColumns1[input1CompareColumnPosition[i]], o1, input2Alias,
-									        inputColumns2[input2CompareColumnPosition[i]], o2, valueOf(percentageDiff),
-									        valueOf(absDiff));
-									matchedRow = false;
-								}
-							}
-						} else if (o1 instanceof BigDecimal && o2 instanceof BigDecimal) {
-
-							if (((BigDecimal) o1).abs().compareTo(BigDecimal.valueOf(smallestAbsoluteValue)) == 1
-							        && ((BigDecimal) o2).abs().compareTo(BigDecimal.valueOf(smallestAbsoluteValue)) == 1) {
-								BigDecimal percentageDiff =
-								        ((BigDecimal) o1).subtract(((BigDecimal) o2))
-								                .divide(((BigDecimal) o1), 6, RoundingMode.HALF_UP)
-								                .multiply(BigDecimal.valueOf(100));
-								if (percentageDiff.compareTo(BigDecimal.valueOf(tolerancePercentage)) == 1) {
-									BigDecimal absDiff = ((BigDecimal) o1).subtract((BigDecimal) o2).abs();
-									logDifference((String) inputProperties1.get("key"), key, input1Alias,
-									        inputColumns1[input1CompareColumnPosition[i]], o1, input2Alias,
-									        inputColumns2[input2CompareColumnPosition[i]], o2, valueOf(percentageDiff),
-									        valueOf(absDiff));
-									matchedRow = false;
-								}
-							}
-						} else if (o1 instanceof Integer && o2 instanceof Integer) {
-							try {
-								// only look at rows greater than the absolute
-								// smallest value specified
-								if (Math.abs(((Integer) o1).intValue()) > smallestAbsoluteValue
-								        && Math.abs(((Integer) o2).intValue()) > smallestAbsoluteValue) {
-									int percentageDiff = Math.abs((((Integer) o1 - (Integer) o2) / (Integer) o1) * 100);
-									if (percentageDiff > tolerancePercentage) {
-										int absDiff = Math.abs((Integer) o1 - (Integer) o2);
-										logDifference((String) inputProperties1.get("key"), key, input1Alias,
-										        inputColumns1[input1CompareColumnPosition[i]], o1, input2Alias,
-										        inputColumns2[input2CompareColumnPosition[i]], o2,
-										        valueOf(percentageDiff), valueOf(absDiff));
-										matchedRow = false;
-									}
-								}
-							} catch (ArithmeticException ae) {
-								if (!o1.equals(o2)) {
-									logDifference((String) inputProperties1.get("key"), key, input1Alias,
-									        inputColumns1[input1CompareColumnPosition[i]], o1, input2Alias,
-									        inputColumns2[input2CompareColumnPosition[i]], o2, "", "");
-									matchedRow = false;
-								}
-
-							}
-						} else if (o1 instanceof String && o2 instanceof String) {
-							if (!o1.equals(o2)) {
-								logDifference((String) inputProperties1.get("key"), key, input1Alias,
-								        inputColumns1[input1CompareColumnPosition[i]], o1, input2Alias,
-								        inputColumns2[input2CompareColumnPosition[i]], o2, "", "");
-								matchedRow = false;
-							}
-						} else if (o1 instanceof Boolean && o2 instanceof Boolean) {
-
-							if (!(o1 == o2)) {
-								logDifference((String) inputProperties1.get("key"), key, input1Alias,
-								        inputColumns1[input1CompareColumnPosition[i]], o1, input2Alias,
-								        inputColumns2[input2CompareColumnPosition[i]], o2, "", "");
-								matchedRow = false;
-							}
-						} else if (o1 instanceof java.util.Date && o2 instanceof java.util.Date) {
-							if (!(o1 == o2)) {
-								logDifference((String) inputProperties1.get("key"), key, input1Alias,
-								        inputColumns1[input1CompareColumnPosition[i]], o1, input2Alias,
-								        inputColumns2[input2CompareColumnPosition[i]], o2, "", "");
-								matchedRow = false;
-							}
-						} else if (o1 == null || o2 == null) {
-							if (o1 == null && o2 == null) {
-								// do nothing
-							} else {
-								logDifference((String) inputProperties1.get("key"), key, input1Alias,
-								        inputColumns1[input1CompareColumnPosition[i]], o1, input2Alias,
-								        inputColumns2[input2CompareColumnPosition[i]], o2, "", "");
-								matchedRow = false;
-							}
-						} else {
-							LOGGER.severe("Either encountered 2 different data types, or un-handled data type!");
-							LOGGER.severe("O1= " + o1.getClass().getName() + ", O2= " + o2.getClass().getName());
-							unhandledRow = true;
-						}
-					}
-
-					if (matchedRow)
-						input1MatchedRows++;
-
-					// At this point we have:
-					// - Found a matching row
-					// - Checked all the columns which needed to be checked
-					//
-					// Provide that 'unhandledRow' is not true we can remove
-					// this row entry from inputData1 & inputData2
-					if (!unhandledRow) {
-						// remove from inputData1
-						inputIterator.remove();
-						// remove from inputData2
-						inputData2.remove(key);
+			RunMetrics.Phase phase = m_metrics.startPhase("compare");
+			if (m_stateFile != null) {
+				previousState =
+				        readState(describeReconciliation(inputColumns1, input1CompareColumnPosition, inputProperties1,
+				                inputColumns2, input2CompareColumnPosition, inputProperties2, twoWay));
+				state = new ReconciliationState(previousState.getTag());
+				IncrementalReconciler reconciler =
+				        new IncrementalReconciler(inputData1, input1CompareColumnPosition, inputData2,
+				                input2CompareColumnPosition, plan, twoWay);
+				counts = reconciler.reconcile(previousState, state, listener, new BreakDeltaListener() {
+					public void delta(CompositeKey key, Delta delta) {
+						deltaKeys.add(key);
+						deltas.add(delta);
 					}
-				}
+				});
+				LOGGER.info("Compared " + decimalFormatter.format(reconciler.getComparedKeys())
+				        + " key(s) changed since the last run, and left "
+				        + decimalFormatter.format(reconciler.getUnchangedKeys()) + " unchanged key(s) as they were");
+			} else {
+				Reconciler reconciler =
+				        new Reconciler(inputData1, input1CompareColumnPosition, inputData2,
+				                input2CompareColumnPosition, plan, twoWay);
+				counts = reconciler.reconcile(m_compareParallelism, listener);
 			}
+			phase.end();
+			m_metrics.addPhase("compare.missingRows", counts.getMissingNanos());
+			m_metrics.setCounts(counts);
 
-			// At this point the data in inputData1 & inputData2 are unmatched
-			// items only. ie enteries which are in one
-			// data set and not in the other.
-			//
-			// Now we just need to traverse each in turn and display them
-			inputIterator = inputData1.keySet().iterator();
-			while (inputIterator.hasNext()) {
-				String key = (String) inputIterator.next();
-				// for keys that are missing,show all the values that are actually there, vs 'Missing'
-				for (int anInput1CompareColumnPosition : input1CompareColumnPosition) {
-					Object o1 = ((ArrayList) inputData1.get(key)).get(anInput1CompareColumnPosition);
-
-					if ((o1 instanceof Double || o1 instanceof Integer || o1 instanceof String)) {
-						// only log a difference here, if o1 is <> 0.0, even if
-						// 02 is actually missing..
-						logDifference((String) inputProperties1.get("key"), key, input1Alias,
-						        inputColumns1[anInput1CompareColumnPosition], o1, input2Alias, "Missing", "Missing",
-						        "", "");
-					}
-				}
-			}
-			inputIterator = inputData2.keySet().iterator();
-			while (inputIterator.hasNext()) {
-				String key = (String) inputIterator.next();
-				// for keys that are missing,show all the values that are actually there, vs 'Missing'
-				for (int anInput2CompareColumnPosition : input2CompareColumnPosition) {
-					Object o1 = ((ArrayList) inputData2.get(key)).get(anInput2CompareColumnPosition);
-					if (((o1 instanceof Double) || (o1 instanceof Integer) || (o1 instanceof String))) {
-						// only log a difference here, if o1 is <> 0.0, even if
-						// 02 is actually missing..
-						logDifference((String) inputProperties2.get("key"), key, input2Alias, "Missing", "Missing",
-						        input1Alias, inputColumns2[anInput2CompareColumnPosition], o1, "", "");
-					}
-				}
-			}
+			LOGGER.info("Reconciled " + input1Alias + " with " + input2Alias + ": " + counts);
 		} else {
 			throw new Exception("A reconciliation requires 2 or more data inputs - current data inputs size is "
 			        + m_dataToCompare.size());
 		}
 
-		logSummary(input1Alias, inputData1Size, input2Alias, inputData2Size, input1MatchedRows);
+		RunMetrics.Phase phase = m_metrics.startPhase("flush");
+		if (state != null)
+			logBreakDeltas((String) inputProperties1.get("key"), input1Alias, input2Alias, deltaKeys, deltas);
+		logSummary(input1Alias, inputData1.size(), input2Alias, inputData2.size(), counts.getMatchedRows());
+		phase.end();
+
+		// only once the report is written, so a run that fails compares the same keys again next time
+		if (state != null) {
+			state.write(new File(m_stateFile));
+			LOGGER.info("Wrote the state of " + decimalFormatter.format(state.size()) + " key(s) to " + m_stateFile);
+		}
 	}
 
-	private double calculatePercentageDifference(Double o1, Double o2) {
-		double percentageDiff;
-		percentageDiff = Math.abs(o1 - o2) / o1 * 100;
-		return percentageDiff;
+	/**
+	 * @return a description of how the two sources are reconciled, which the state of the last run must have been
+	 *         kept with for its keys to be left as they were
+	 */
+	private static String describeReconciliation(String[] columns1, int[] compareColumns1, Properties properties1,
+	        String[] columns2, int[] compareColumns2, Properties properties2, boolean twoWay) {
+		StringBuilder reconciliation = new StringBuilder();
+		reconciliation.append("key1=").append(properties1.getProperty("key")).append('\n');
+		reconciliation.append("key2=").append(properties2.getProperty("key")).append('\n');
+		reconciliation.append("compareColumns1=");
+		for (int column : compareColumns1) {
+			reconciliation.append(columns1[column]).append(' ');
+		}
+		reconciliation.append("\ncompareColumns2=");
+		for (int column : compareColumns2) {
+			reconciliation.append(columns2[column]).append(' ');
+		}
+		reconciliation.append("\ntolerance=").append(properties1.getProperty("tolerance"));
+		reconciliation.append("\nsmallestAbsoluteValue=").append(properties1.getProperty("smallestAbsoluteValue"));
+		reconciliation.append("\nhandleNullsAsZero=").append(properties1.getProperty("handleNullsAsZero"));
+		reconciliation.append("\ndecimalPlacesPattern=").append(m_dpFormatter.toPattern());
+		reconciliation.append("\ntwoWay=").append(twoWay).append('\n');
+		return reconciliation.toString();
 	}
 
 	/**
-	 * Method recData.
+	 * @param reconciliation
+	 *            description of how the sources are reconciled now
+	 * @return the state of the last run, or an empty state if there isn't one, it was kept for a different
+	 *         reconciliation or it can't be read
+	 */
+	private ReconciliationState readState(String reconciliation) {
+		ReconciliationState previous;
+		try {
+			previous = ReconciliationState.read(new File(m_stateFile), reconciliation);
+		} catch (IOException e) {
+			LOGGER.log(Level.WARNING, "Unable to read the reconciliation state " + m_stateFile, e);
+			previous = new ReconciliationState(reconciliation);
+		}
+		if (previous.size() == 0)
+			LOGGER.info("No state of a last run like this one in " + m_stateFile + ", comparing every key");
+		return previous;
+	}
+
+	/**
+	 * reconcile the first loaded data source with each of the others in one pass, reporting the differences of each
+	 * pair, then the status of each source on every key they don't all agree on
 	 * 
+	 * @param twoWay
+	 *            is this a two-way reconciliation?
 	 * @throws Exception
-	 *             if there is a problem with the processing
+	 *             if a source wasn't loaded, or an unequal number of columns is passed.
 	 */
-	private void oldRecData() throws Exception {
-
-		String[] inputColumns1;
-		String[] inputColumns2;
-		HashMap inputData1;
-		HashMap inputData2;
-		Properties inputProperties1;
-		Properties inputProperties2;
-
-		String input1Alias;
-		String input2Alias;
-
-		int input1MatchedRows = 0;
-		float tolerancePercentage;
-		float smallestAbsoluteValue;
+	private void multiwayRecData(boolean twoWay) throws Exception {
+		int inputs = m_numberOfInputs;
+		Dataset[] data = new Dataset[inputs];
+		int[][] compareColumns = new int[inputs][];
+		Properties[] inputProperties = new Properties[inputs];
+		String[] aliases = new String[inputs];
+		int[] rowCounts = new int[inputs];
 
 		LOGGER.info("Starting to reconcile data sources...");
 
-		if (m_dataToCompare.size() >= 2) {
-			inputColumns1 = (String[]) ((HashMap) m_dataToCompare.get("1")).get(COLUMNS);
-			inputData1 = (HashMap) ((HashMap) m_dataToCompare.get("1")).get(DATA);
-			inputProperties1 = (Properties) ((HashMap) m_dataToCompare.get("1")).get(PROPERTIES);
+		for (int i = 0; i < inputs; i++) {
+			HashMap loaded = (HashMap) m_dataToCompare.get(valueOf(i + 1));
+			if (loaded == null)
+				throw new Exception("A reconciliation of " + inputs + " data inputs has only "
+				        + m_dataToCompare.size() + " loaded");
+
+			data[i] = (Dataset) loaded.get(DATA);
+			inputProperties[i] = (Properties) loaded.get(PROPERTIES);
+			compareColumns[i] = getCompareColumnsPosition((String[]) loaded.get(COLUMNS), inputProperties[i]);
+			aliases[i] = inputProperties[i].getProperty("alias");
+			rowCounts[i] = data[i].size();
+
+			if (compareColumns[i].length != compareColumns[0].length)
+				throw new Exception("Unequal number of columns to compare - " + compareColumns[0].length + " vs "
+				        + compareColumns[i].length + " in " + aliases[i]);
+		}
 
-			inputColumns2 = (String[]) ((HashMap) m_dataToCompare.get("2")).get(COLUMNS);
-			inputData2 = (HashMap) ((HashMap) m_dataToCompare.get("2")).get(DATA);
-			inputProperties2 = (Properties) ((HashMap) m_dataToCompare.get("2")).get(PROPERTIES);
+		float tolerancePercentage = Float.parseFloat(inputProperties[0].getProperty("tolerance"));
+		float smallestAbsoluteValue = Float.parseFloat(inputProperties[0].getProperty("smallestAbsoluteValue"));
+		String keyColumns = inputProperties[0].getProperty("key");
 
-			// need a position of the compare columns in the array - do this by
-			// making every column which isn't a
-			// key column, a compare column
-			int[] input1CompareColumnPosition =
-			        ArrayUtils.getCompareColumnsPosition(inputColumns1,
-			                ArrayUtils.convertStringKeyToArray((String) inputProperties1.get("key"), m_delimiter));
-			int[] input2CompareColumnPosition =
-			        ArrayUtils.getCompareColumnsPosition(inputColumns2,
-			                ArrayUtils.convertStringKeyToArray((String) inputProperties2.get("key"), m_delimiter));
+		DifferenceListener[] listeners = new DifferenceListener[inputs];
+		for (int i = 1; i < inputs; i++) {
+			listeners[i] = newComparedListener(keyColumns, aliases[0], aliases[i]);
+		}
+		final List<CompositeKey> keys = new ArrayList<CompositeKey>();
+		final List<KeyStatusListener.Status[]> statuses = new ArrayList<KeyStatusListener.Status[]>();
+		KeyStatusListener statusListener = new KeyStatusListener() {
+			public void status(CompositeKey key, Status[] keyStatuses) {
+				keys.add(key);
+				statuses.add(keyStatuses.clone());
+			}
+		};
+
+		LOGGER.info("Comparing " + decimalFormatter.format(rowCounts[0]) + " rows from " + aliases[0] + " with "
+		        + (inputs - 1) + " other sources over " + compareColumns[0].length + " column(s)");
+
+		RunMetrics.Phase phase = m_metrics.startPhase("compare");
+		ReconciliationCounts[] counts =
+		        new MultiwayReconciler(data, compareColumns, tolerancePercentage, smallestAbsoluteValue, twoWay)
+		                .reconcile(listeners, statusListener);
+		phase.end();
+
+		ReconciliationCounts total = new ReconciliationCounts();
+		int[] rowsMatched = new int[inputs];
+		for (int i = 1; i < inputs; i++) {
+			LOGGER.info("Reconciled " + aliases[0] + " with " + aliases[i] + ": " + counts[i]);
+			total.add(counts[i]);
+			rowsMatched[i] = counts[i].getMatchedRows();
+		}
+		m_metrics.addPhase("compare.missingRows", total.getMissingNanos());
+		m_metrics.setCounts(total);
+		LOGGER.info(decimalFormatter.format(keys.size()) + " key(s) on which the sources don't all agree");
+
+		phase = m_metrics.startPhase("flush");
+		logKeyStatuses(keyColumns, aliases, keys, statuses);
+		logSummary(aliases, rowCounts, rowsMatched);
+		phase.end();
+	}
 
-			input1Alias = (String) inputProperties1.get("alias");
-			input2Alias = (String) inputProperties2.get("alias");
+	/**
+	 * reconcile the two sources by reading a cursor over each of them. In SORTED_MERGE mode the cursors are merged,
+	 * and only the current row of each source is ever held. With a memory budget the sources are loaded within it, and
+	 * hash partitioned to disk once they outgrow it. Otherwise they are pipelined: both are read at once, and the
+	 * slower one is compared as it is read.
+	 * 
+	 * @throws Exception
+	 *             if a source can't be read or isn't sorted by key, or an unequal number of columns is passed.
+	 */
+	private void cursorRecData() throws Exception {
+		Properties inputProperties1 = getSourceProperties("1");
+		Properties inputProperties2 = getSourceProperties("2");
 
-			if (input1CompareColumnPosition.length != input2CompareColumnPosition.length)
-				throw new Exception("Unequal number of columns to compare - " + input1CompareColumnPosition.length
-				        + " vs " + input2CompareColumnPosition.length);
+		String input1Alias = (String) inputProperties1.get("alias");
+		String input2Alias = (String) inputProperties2.get("alias");
 
-			// now set the tolerance level as a percentage
-			tolerancePercentage = Float.parseFloat(((String) inputProperties1.get("tolerance")));
-			smallestAbsoluteValue = Float.parseFloat(((String) inputProperties1.get("smallestAbsoluteValue")));
+		LOGGER.info("Starting to reconcile data sources...");
 
-			Iterator inputIterator = inputData1.keySet().iterator();
+		RunMetrics.Phase phase = m_metrics.startPhase("reconcile");
+		RowCursor[] cursors = openCursors(inputProperties1, inputProperties2);
+		CountingCursor cursor1 = new CountingCursor(cursors[0]);
+		try {
+			CountingCursor cursor2 = new CountingCursor(cursors[1]);
+			try {
+				int[] input1CompareColumnPosition = getCompareColumnsPosition(cursor1.getColumnNames(), inputProperties1);
+				int[] input2CompareColumnPosition = getCompareColumnsPosition(cursor2.getColumnNames(), inputProperties2);
+
+				if (input1CompareColumnPosition.length != input2CompareColumnPosition.length)
+					throw new Exception("Unequal number of columns to compare - " + input1CompareColumnPosition.length
+					        + " vs " + input2CompareColumnPosition.length);
+
+				boolean aggregate1 = Boolean.valueOf(inputProperties1.getProperty("aggregate"));
+				boolean aggregate2 = Boolean.valueOf(inputProperties2.getProperty("aggregate"));
+				float tolerancePercentage = Float.parseFloat(inputProperties1.getProperty("tolerance"));
+				float smallestAbsoluteValue = Float.parseFloat(inputProperties1.getProperty("smallestAbsoluteValue"));
+				DifferenceListener listener =
+				        newDifferenceListener(inputProperties1.getProperty("key"), inputProperties2.getProperty("key"),
+				                input1Alias, input2Alias);
+
+				ReconciliationCounts counts;
+				int rowCount1, rowCount2;
+
+				if (reconciliationMode.equalsIgnoreCase(SORTED_MERGE.toString())) {
+					SortedMergeReconciler reconciler =
+					        new SortedMergeReconciler(cursor1, input1CompareColumnPosition, aggregate1, cursor2,
+					                input2CompareColumnPosition, aggregate2, tolerancePercentage, smallestAbsoluteValue);
+					counts = reconciler.reconcile(listener);
+					rowCount1 = reconciler.getRows1();
+					rowCount2 = reconciler.getRows2();
+				} else if (m_memoryBudget <= 0) {
+					PipelinedReconciler reconciler =
+					        new PipelinedReconciler(cursor1, input1CompareColumnPosition, aggregate1, cursor2,
+					                input2CompareColumnPosition, aggregate2, tolerancePercentage, smallestAbsoluteValue,
+					                reconciliationMode.equalsIgnoreCase(TW.toString()));
+					counts = reconciler.reconcile(listener);
+					rowCount1 = reconciler.getRows1();
+					rowCount2 = reconciler.getRows2();
+				} else {
+					GraceHashReconciler reconciler =
+					        new GraceHashReconciler(cursor1, input1CompareColumnPosition, aggregate1, cursor2,
+					                input2CompareColumnPosition, aggregate2, tolerancePercentage, smallestAbsoluteValue,
+					                reconciliationMode.equalsIgnoreCase(TW.toString()));
+					reconciler.setMemoryBudget(m_memoryBudget);
+					reconciler.setPartitions(m_spillPartitions);
+					reconciler.setSpillDirectory(m_spillDirectory == null ? null : new File(m_spillDirectory));
+					reconciler.setCompareParallelism(m_compareParallelism);
+					counts = reconciler.reconcile(listener);
+					rowCount1 = reconciler.getRows1();
+					rowCount2 = reconciler.getRows2();
+				}
 
-			LOGGER.info("Comparing " + decimalFormatter.format(inputData1.size()) + " rows from " + input1Alias
-			        + " with " + decimalFormatter.format(inputData2.size()) + " rows from " + input2Alias + " over "
-			        + input1CompareColumnPosition.length + " column(s)");
+				long nanos = phase.end();
+				m_metrics.addPhase("reconcile.missingRows", counts.getMissingNanos());
+				m_metrics.sourceLoaded(input1Alias, cursor1.getRows(), rowCount1, sourceBytes(inputProperties1), nanos);
+				m_metrics.sourceLoaded(input2Alias, cursor2.getRows(), rowCount2, sourceBytes(inputProperties2), nanos);
+				m_metrics.setCounts(counts);
 
-			while (inputIterator.hasNext()) {
-				String key = (String) inputIterator.next();
-
-				boolean matchedRow = true;
-
-				if (inputData2.containsKey(key)) {
-					// loop round the input1 columns to compare - a row is only
-					// deemed as matched
-					// if _all_ the columns selected to compare, match..
-					for (int i = 0; i < input1CompareColumnPosition.length; i++) {
-						Object o1 = ((ArrayList) inputData1.get(key)).get(input1CompareColumnPosition[i]);
-						Object o2 = ((ArrayList) inputData2.get(key)).get(input2CompareColumnPosition[i]);
-
-						if (o1 instanceof Double && o2 instanceof Double) {
-							// only look at rows greater than the absolute smallest value specified
-							if (Math.abs((Double) o1) > smallestAbsoluteValue
-							        && Math.abs((Double) o2) > smallestAbsoluteValue) {
-								double percentageDiff = Math.abs((((Double) o1 - (Double) o2) / ((Double) o1)) * 100);
-								if (percentageDiff > tolerancePercentage) {
-									double absDiff;
-									absDiff = Math.abs((Double) o1 - ((Double) o2));
-									logDifference((String) inputProperties1.get("key"), key, input1Alias,
-									        inputColumns1[input1CompareColumnPosition[i]], o1, input2Alias,
-									        inputColumns2[input2CompareColumnPosition[i]], o2, valueOf(percentageDiff),
-									        valueOf(absDiff));
-									matchedRow = false;
-								}
-							}
-						} else if (o1 instanceof BigDecimal && o2 instanceof Double) {
-							// only look at rows greater than the absolute smallest value specified
-							// NSB - 16/6/04 - Added as Oracle returns Big Decimals
-							if ((Math.abs(((BigDecimal) o1).doubleValue()) > smallestAbsoluteValue)
-							        && (Math.abs(((Double) o2)) > smallestAbsoluteValue)) {
-								double percentageDiff =
-								        Math.abs(((((BigDecimal) o1).doubleValue() - ((Double) o2)) / ((BigDecimal) o1)
-								                .doubleValue()) * 100);
-								if (percentageDiff > tolerancePercentage) {
-									double absDiff = Math.abs(((BigDecimal) o1).doubleValue() - ((Double) o2));
-									logDifference((String) inputProperties1.get("key"), key, input1Alias,
-									        inputColumns1[input1CompareColumnPosition[i]], o1, input2Alias,
-									        inputColumns2[input2CompareColumnPosition[i]], o2, valueOf(percentageDiff),
-									        valueOf(absDiff));
-									matchedRow = false;
-								}
-							}
-						} else if (o1 instanceof Double && o2 instanceof BigDecimal) {
-							// only look at rows greater than the absolute
-							// smallest value specified
-							// NSB - 16/6/04 - Added as Oracle returns Big
-							// Decimals
-							if ((Math.abs((Double) o1) > smallestAbsoluteValue)
-							        && (((BigDecimal) o2).abs().doubleValue() > smallestAbsoluteValue)) {
-								double percentageDiff =
-								        Math.abs((((Double) o1 - ((BigDecimal) o2).doubleValue()) / (Double) o1) * 100);
-								if (percentageDiff > tolerancePercentage) {
-									double absDiff = Math.abs((Double) o1 - ((BigDecimal) o2).doubleValue());
-									logDifference((String) inputProperties1.get("key"), key, input1Alias,
-									        inputColumns1[input1CompareColumnPosition[i]], o1, input2Alias,
-									        inputColumns2[input2CompareColumnPosition[i]], o2, valueOf(percentageDiff),
-									        valueOf(absDiff));
-									matchedRow = false;
-								}
-							}
-						} else if (o1 instanceof BigDecimal && o2 instanceof BigDecimal) {
-							if (((BigDecimal) o1).abs().compareTo(BigDecimal.valueOf(smallestAbsoluteValue)) == 1
-							        && ((BigDecimal) o2).abs().compareTo(BigDecimal.valueOf(smallestAbsoluteValue)) == 1) {
-								BigDecimal percentageDiff =
-								        ((BigDecimal) o1).subtract(((BigDecimal) o2))
-								                .divide(((BigDecimal) o1), 6, RoundingMode.HALF_UP)
-								                .multiply(BigDecimal.valueOf(100));
-								if (percentageDiff.compareTo(BigDecimal.valueOf(tolerancePercentage)) == 1) {
-									BigDecimal absDiff = ((BigDecimal) o1).subtract((BigDecimal) o2).abs();
-									logDifference((String) inputProperties1.get("key"), key, input1Alias,
-									        inputColumns1[input1CompareColumnPosition[i]], o1, input2Alias,
-									        inputColumns2[input2CompareColumnPosition[i]], o2, valueOf(percentageDiff),
-									        valueOf(absDiff));
-									matchedRow = false;
-								}
-							}
-						} else if (o1 instanceof Integer && o2 instanceof Integer) {
-							try {
-								// only look at rows greater than the absolute
-								// smallest value specified
-								if (Math.abs(((Integer) o1).intValue()) > smallestAbsoluteValue
-								        && Math.abs(((Integer) o2).intValue()) > smallestAbsoluteValue) {
-									int percentageDiff = Math.abs((((Integer) o1 - (Integer) o2) / (Integer) o1) * 100);
-									if (percentageDiff > tolerancePercentage) {
-										int absDiff = Math.abs((Integer) o1 - (Integer) o2);
-										logDifference((String) inputProperties1.get("key"), key, input1Alias,
-										        inputColumns1[input1CompareColumnPosition[i]], o1, input2Alias,
-										        inputColumns2[input2CompareColumnPosition[i]], o2,
-										        valueOf(percentageDiff), valueOf(absDiff));
-										matchedRow = false;
-									}
-								}
-							} catch (ArithmeticException ae) {
-								if (!o1.equals(o2)) {
-									logDifference((String) inputProperties1.get("key"), key, input1Alias,
-									        inputColumns1[input1CompareColumnPosition[i]], o1, input2Alias,
-									        inputColumns2[input2CompareColumnPosition[i]], o2, "", "");
-									matchedRow = false;
-								}
-
-							}
-						} else if (o1 instanceof String && o2 instanceof String) {
-							if (!(o1.equals(o2))) {
-								logDifference((String) inputProperties1.get("key"), key, input1Alias,
-								        inputColumns1[input1CompareColumnPosition[i]], o1, input2Alias,
-								        inputColumns2[input2CompareColumnPosition[i]], o2, "", "");
-								matchedRow = false;
-							}
-						} else if (o1 instanceof Boolean && o2 instanceof Boolean) {
-
-							if (!o1.equals(o2)) {
-								logDifference((String) inputProperties1.get("key"), key, input1Alias,
-								        inputColumns1[input1CompareColumnPosition[i]], o1, input2Alias,
-								        inputColumns2[input2CompareColumnPosition[i]], o2, "", "");
-								matchedRow = false;
-							}
-						} else if (o1 instanceof java.util.Date && o2 instanceof java.util.Date) {
-							if (!(o1.equals(o2))) {
-								logDifference((String) inputProperties1.get("key"), key, input1Alias,
-								        inputColumns1[input1CompareColumnPosition[i]], o1, input2Alias,
-								        inputColumns2[input2CompareColumnPosition[i]], o2, "", "");
-								matchedRow = false;
-							}
-						} else if (o1 == null || o2 == null) {
-							if (o1 == null && o2 == null) {
-								// do nothing
-							} else {
-								logDifference((String) inputProperties1.get("key"), key, input1Alias,
-								        inputColumns1[input1CompareColumnPosition[i]], o1, input2Alias,
-								        inputColumns2[input2CompareColumnPosition[i]], o2, "", "");
-								matchedRow = false;
-							}
-						} else {
-							LOGGER.severe("Either encountered 2 different data types, or un-handled data type!");
-							LOGGER.severe("O1= " + o1.getClass().getName() + ", O2= " + o2.getClass().getName());
-						}
-					}
+				LOGGER.info("Reconciled " + input1Alias + " with " + input2Alias + ": " + counts);
 
-				} else {
-					// for keys that are missing,show all the values that are actually there, vs 'Missing'
-					for (int anInput1CompareColumnPosition : input1CompareColumnPosition) {
-						Object o1 = ((ArrayList) inputData1.get(key)).get(anInput1CompareColumnPosition);
-
-						if ((o1 instanceof Double || o1 instanceof Integer || o1 instanceof String)) {
-							// only log a difference here, if o1 is <> 0.0, even
-							// if 02 is actually missing..
-							logDifference((String) inputProperties1.get("key"), key, input1Alias,
-							        inputColumns1[anInput1CompareColumnPosition], o1, input2Alias, "Missing",
-							        "Missing", "", "");
-							matchedRow = false;
-						}
-					}
+				phase = m_metrics.startPhase("flush");
+				logSummary(input1Alias, rowCount1, input2Alias, rowCount2, counts.getMatchedRows());
+				phase.end();
+			} finally {
+				cursor2.close();
+			}
+		} finally {
+			cursor1.close();
+		}
+	}
+
+	/**
+	 * open a cursor over each source, the second on a thread of its own, so that the query or file behind each is
+	 * opened at the same time
+	 * 
+	 * @param inputProperties1
+	 *            the properties of the first source
+	 * @param inputProperties2
+	 *            the properties of the second source
+	 * @return the cursors over the two sources
+	 * @throws Exception
+	 *             if either can't be opened, in which case neither is left open
+	 */
+	private RowCursor[] openCursors(Properties inputProperties1, final Properties inputProperties2) throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<RowCursor> opening2 = executor.submit(new Callable<RowCursor>() {
+				public RowCursor call() throws Exception {
+					return createWorker(inputProperties2).openCursor();
+				}
+			});
 
+			RowCursor cursor1;
+			try {
+				cursor1 = createWorker(inputProperties1).openCursor();
+			} catch (Exception e) {
+				opening2.cancel(true);
+				try {
+					opening2.get().close();
+				} catch (Exception ignored) {
+					// the first failure is the one reported
 				}
+				throw e;
+			}
 
-				if (matchedRow)
-					input1MatchedRows++;
+			try {
+				return new RowCursor[] { cursor1, opening2.get() };
+			} catch (ExecutionException e) {
+				cursor1.close();
+				throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
 			}
-		} else {
-			throw new Exception("A reconciliation requires 2 or more data inputs - current data inputs size is "
-			        + m_dataToCompare.size());
+		} finally {
+			executor.shutdown();
 		}
+	}
+
+	/**
+	 * @param bytes
+	 *            a number of bytes, optionally followed by k, m or g
+	 * @return the number of bytes
+	 */
+	static long parseBytes(String bytes) {
+		String value = bytes.trim().toLowerCase();
+		long multiplier = 1;
+		if (value.endsWith("k")) {
+			multiplier = 1024L;
+		} else if (value.endsWith("m")) {
+			multiplier = 1024L * 1024;
+		} else if (value.endsWith("g")) {
+			multiplier = 1024L * 1024 * 1024;
+		}
+		if (multiplier > 1) {
+			value = value.substring(0, value.length() - 1).trim();
+		}
+		return Long.parseLong(value) * multiplier;
+	}
+
+	/**
+	 * @param sourceProperties
+	 *            the properties of the source
+	 * @return the size of a file source, or -1 for a database source, whose bytes aren't known
+	 */
+	private static long sourceBytes(Properties sourceProperties) {
+		if (FILE_INPUT.equals(sourceProperties.getProperty("type")))
+			return new File(sourceProperties.getProperty("filePath")).length();
+		return -1;
+	}
 
-		logSummary(input1Alias, inputData1.size(), input2Alias, inputData2.size(), input1MatchedRows);
+	/**
+	 * @param order
+	 *            order of the source, "1" or "2"
+	 * @return the properties of the source
+	 * @throws PropertiesFileException
+	 *             if there is no source of that order
+	 */
+	private Properties getSourceProperties(String order) throws PropertiesFileException {
+		for (Object o : m_propertiesMap.values()) {
+			Properties sourceProperties = (Properties) o;
+			if (order.equals(sourceProperties.getProperty("order")))
+				return sourceProperties;
+		}
+		throw new PropertiesFileException("No properties found for Reconciliation Source " + order);
 	}
 
 	/**
-	 * wait for all the worker threads to finish....only returns after all have completed.
+	 * need a position of the compare columns in the array - do this by making every column which isn't a key column, a
+	 * compare column
 	 * 
-	 * @throws InterruptedException
-	 *             if there is a thread problem
+	 * @param columns
+	 *            the columns of the source
+	 * @param inputProperties
+	 *            the properties of the source
+	 * @return positions of the compare columns
+	 */
+	private int[] getCompareColumnsPosition(String[] columns, Properties inputProperties) {
+		return ArrayUtils.getCompareColumnsPosition(columns,
+		        ArrayUtils.convertStringKeyToArray((String) inputProperties.get("key"), m_delimiter));
+	}
+
+	/**
+	 * @param keyColumns1
+	 *            the key columns of the first source, for the csv header
+	 * @param keyColumns2
+	 *            the key columns of the second source, for the csv header
+	 * @param alias1
+	 *            alias of the first source
+	 * @param alias2
+	 *            alias of the second source
+	 * @return a listener which logs each difference found between matched rows, and the values of each row which is
+	 *         missing from the other source vs 'Missing'
 	 */
-	private void waitForThreads() throws InterruptedException {
-		Thread[] threads = new Thread[m_workerGroup.activeCount()];
+	private DifferenceListener newDifferenceListener(final String keyColumns1, final String keyColumns2,
+	        final String alias1, final String alias2) {
+		return new DifferenceListener() {
+			public void difference(CompositeKey key, String columnName1, Object value1, String columnName2,
+			        Object value2, String percentageDiff, String absDiff) {
+				m_metrics.difference(columnName1);
+				logDifference(keyColumns1, key, alias1, columnName1, value1, alias2, columnName2, value2,
+				        percentageDiff, absDiff);
+			}
 
-		m_workerGroup.enumerate(threads);
+			public void missing(CompositeKey key, boolean inFirst, String columnName, Object value) {
+				if (inFirst)
+					logDifference(keyColumns1, key, alias1, columnName, value, alias2, "Missing", "Missing", "", "");
+				else
+					logDifference(keyColumns2, key, alias2, "Missing", "Missing", alias1, columnName, value, "", "");
+			}
+		};
+	}
 
-		for (Thread thread : threads) {
-			if (thread.isAlive())
-				thread.join();
+	/**
+	 * @param keyColumns
+	 *            the key columns of the first source, for the csv header
+	 * @param alias1
+	 *            alias of the first source
+	 * @param alias
+	 *            alias of the source compared with it
+	 * @return a listener which logs each difference found between a row of the first source and one of the source
+	 *         compared with it, and the values of each row which is missing from the other source vs 'Missing'. As the
+	 *         differences of every source compared with the first are logged to the same csv file, the column names
+	 *         of the source compared are written as <i>alias</i>.<i>columnName</i>.
+	 */
+	private DifferenceListener newComparedListener(final String keyColumns, final String alias1, final String alias) {
+		final boolean csv = m_outputType.equals("csv");
+		final String alias2 = csv ? "compared" : alias;
+		final String columnPrefix = csv ? alias + "." : "";
+
+		return new DifferenceListener() {
+			public void difference(CompositeKey key, String columnName1, Object value1, String columnName2,
+			        Object value2, String percentageDiff, String absDiff) {
+				m_metrics.difference(columnName1);
+				logDifference(keyColumns, key, alias1, columnName1, value1, alias2, columnPrefix + columnName2,
+				        value2, percentageDiff, absDiff);
+			}
 
-			LOGGER.info("Thread " + thread.getName() + " finished");
+			public void missing(CompositeKey key, boolean inFirst, String columnName, Object value) {
+				if (inFirst)
+					logDifference(keyColumns, key, alias1, columnName, value, alias2, columnPrefix + "Missing",
+					        "Missing", "", "");
+				else
+					logDifference(keyColumns, key, alias1, "Missing", "Missing", alias2, columnPrefix + columnName,
+					        value, "", "");
+			}
+		};
+	}
+
+	/**
+	 * wait for every source to be loaded. The first load to fail fails the run straight away, and the others are
+	 * cancelled.
+	 * 
+	 * @throws Exception
+	 *             the failure of the first load to fail
+	 */
+	private void waitForLoads() throws Exception {
+		try {
+			for (int i = 0; i < m_loadsStarted; i++) {
+				try {
+					m_loads.take().get();
+				} catch (ExecutionException e) {
+					throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+				}
+			}
+		} finally {
+			m_workerExecutor.shutdownNow();
 		}
 	}
 
 	/**
-	 * start up all the worker threads to start loading the data
+	 * start loading every source, each as a task on the worker executor
 	 */
-	private void startThreads() {
-		// loop through the sources and start them loading...
+	private void startLoads() {
+		m_workerExecutor = m_scheduler.newExecutor("Worker", m_propertiesMap.size());
+		m_loads = new ExecutorCompletionService<Dataset>(m_workerExecutor);
 
+		// loop through the sources and start them loading, once for each different input...
+		Map<String, Properties> inputs = new HashMap<String, Properties>();
 		for (Object o : m_propertiesMap.keySet()) {
-			String key = (String) o;
-			Properties sourceProperties = (Properties) m_propertiesMap.get((key));
+			Properties sourceProperties = (Properties) m_propertiesMap.get(o);
+
+			String input = describeInput(sourceProperties);
+			Properties loadedBy = inputs.get(input);
+			if (loadedBy != null) {
+				LOGGER.info(sourceProperties.getProperty("alias") + " has the same input as "
+				        + loadedBy.getProperty("alias") + ", so will share its data rather than load it again");
+				m_sharedLoads.put(sourceProperties.getProperty("order"), loadedBy);
+				continue;
+			}
+			inputs.put(input, sourceProperties);
 
-			String type = (String) sourceProperties.get("type");
-			RecxxWorker worker = null;
+			RecxxWorker worker = createWorker(sourceProperties);
+			if (worker != null) {
+				m_loads.submit(meteredLoad(worker, sourceProperties));
+				m_loadsStarted++;
+			}
+		}
+	}
 
-			if (type.equals(DB_INPUT)) {
-				worker = new DatabaseFacadeWorker(prefix, propertiesFile);
-			} else if (type.equals(FILE_INPUT)) {
-				worker = new FileFacadeWorker(prefix, propertiesFile);
+	/**
+	 * @param sourceProperties
+	 *            the properties of the source
+	 * @return every property of the source which says what is loaded, which is all but its alias and order, with the
+	 *         path of a file source made canonical
+	 */
+	static String describeInput(Properties sourceProperties) {
+		List<String> names = new ArrayList<String>(sourceProperties.stringPropertyNames());
+		names.remove("alias");
+		names.remove("order");
+		Collections.sort(names);
+
+		StringBuilder input = new StringBuilder();
+		for (String name : names) {
+			String value = sourceProperties.getProperty(name);
+			if (name.equals("filePath")) {
+				try {
+					value = new File(value).getCanonicalPath();
+				} catch (IOException e) {
+					// compared as it was given
+				}
 			}
-			if (worker != null) {
-				worker.setRunTimeProperties(sourceProperties);
-				worker.setDataStore(this);
+			input.append(name).append('=').append(value).append('\n');
+		}
+		return input.toString();
+	}
+
+	/**
+	 * hand each source sharing the load of another the data of that other, under its own properties. The data is only
+	 * ever read once loaded, so both sides of a reconciliation can hold the same data set.
+	 */
+	private void shareLoads() {
+		for (Map.Entry<String, Properties> shared : m_sharedLoads.entrySet()) {
+			HashMap loaded = (HashMap) m_dataToCompare.get(shared.getValue().getProperty("order"));
+			Properties sourceProperties = getSourceProperties(shared.getKey());
+
+			HashMap sharedData = new HashMap();
+			sharedData.put(COLUMNS, loaded.get(COLUMNS));
+			sharedData.put(DATA, loaded.get(DATA));
+			sharedData.put(PROPERTIES, sourceProperties);
+			setDataToCompare(sharedData, shared.getKey());
+		}
+	}
 
-				Thread t = new Thread(m_workerGroup, worker, key);
-				t.start();
+	/**
+	 * @param worker
+	 *            the worker loading a source
+	 * @param sourceProperties
+	 *            the properties of the source
+	 * @return the worker's load, timed as the phase load.<i>alias</i> and recorded as the loading of the source
+	 */
+	private Callable<Dataset> meteredLoad(final RecxxWorker worker, final Properties sourceProperties) {
+		return new Callable<Dataset>() {
+			public Dataset call() throws Exception {
+				String alias = sourceProperties.getProperty("alias");
+				RunMetrics.Phase phase = m_metrics.startPhase("load." + alias);
+				Dataset loaded = worker.load();
+				long nanos = phase.end();
+
+				LOGGER.info("Loaded " + alias);
+				if (worker instanceof AbstractRecFeed) {
+					m_metrics.sourceLoaded(alias, ((AbstractRecFeed) worker).getRowsRead(),
+					        loaded == null ? 0 : loaded.size(), sourceBytes(sourceProperties), nanos);
+				}
+				return loaded;
 			}
+		};
+	}
+
+	/**
+	 * create the worker for a source, according to its type
+	 * 
+	 * @param sourceProperties
+	 *            the properties of the source
+	 * @return the worker, or null if the type isn't known
+	 */
+	private RecxxWorker createWorker(Properties sourceProperties) {
+		String type = (String) sourceProperties.get("type");
+		RecxxWorker worker = null;
+
+		if (type.equals(DB_INPUT)) {
+			worker = new DatabaseFacadeWorker(prefix, propertiesFile);
+		} else if (type.equals(FILE_INPUT)) {
+			worker = new FileFacadeWorker(prefix, propertiesFile);
 		}
+		if (worker != null) {
+			worker.setRunTimeProperties(sourceProperties);
+			worker.setDataStore(this);
+			if (worker instanceof AbstractRecFeed)
+				((AbstractRecFeed) worker).setScheduler(m_scheduler);
+		}
+		return worker;
 	}
 
 	/**
@@ -764,7 +1087,11 @@ public class Recxx extends AbstractRecFeed implements Runnable {
 
 		String propertiesStub = format("%s.%s.", prefix, m_appName);
 
-		int numberOfInputs = 2;
+		// every inputSource from 1 up to the first without an alias
+		m_numberOfInputs = 2;
+		while (superProps.getProperty(propertiesStub + "inputSource" + (m_numberOfInputs + 1) + ".name.alias") != null)
+			m_numberOfInputs++;
+		int numberOfInputs = m_numberOfInputs;
 		String tolerance = superProps.getProperty(propertiesStub + "toleranceLevel", "0.0");
 		String handleNullsAsZero = superProps.getProperty(propertiesStub + "handleNullsAsDefault", "true");
 		String smallestAbsoluteValue = superProps.getProperty(propertiesStub + "smallestAbsoluteValue", "0.0001");
@@ -776,6 +1103,19 @@ public class Recxx extends AbstractRecFeed implements Runnable {
 
 		m_outputType = superProps.getProperty(propertiesStub + "outputType", "csv");
 
+		m_compareParallelism = Integer.parseInt(superProps.getProperty(propertiesStub + "compareParallelism", "1"));
+
+		m_memoryBudget = parseBytes(superProps.getProperty(propertiesStub + "memoryBudget", "0"));
+		m_spillPartitions =
+		        Integer.parseInt(superProps.getProperty(propertiesStub + "spillPartitions",
+		                valueOf(GraceHashReconciler.DEFAULT_PARTITIONS)));
+		m_spillDirectory = superProps.getProperty(propertiesStub + "spillDirectory");
+		m_pipelined = Boolean.valueOf(superProps.getProperty(propertiesStub + "pipelined", "false"));
+		m_stateFile = superProps.getProperty(propertiesStub + "incremental.stateFile");
+		m_scheduler =
+		        new WorkerScheduler(superProps.getProperty(propertiesStub + "workerThreads",
+		                WorkerScheduler.PLATFORM_THREADS));
+
 		// get the recMode property determining whether the reconciliation is one-way or two-way
 		reconciliationMode = superProps.getProperty(propertiesStub + "reconciliationMode", TW.toString());
 		switch (ReconciliationMode.valueOf(reconciliationMode)) {
@@ -785,15 +1125,49 @@ public class Recxx extends AbstractRecFeed implements Runnable {
 			break;
 		case TW:
 			LOGGER.info("Performing two-way reconciliation...");
-			reconciliationMode = OW.toString();
+			reconciliationMode = TW.toString();
+			break;
+		case SORTED_MERGE:
+			LOGGER.info("Performing two-way reconciliation by merging sources sorted by key...");
+			reconciliationMode = SORTED_MERGE.toString();
 			break;
 		}
 
+		if (numberOfInputs > 2
+		        && (reconciliationMode.equals(SORTED_MERGE.toString()) || m_memoryBudget > 0 || m_pipelined))
+			throw new PropertiesFileException("Only 2 input sources can be read through cursors, not "
+			        + numberOfInputs + " - SORTED_MERGE, memoryBudget and pipelined can't be used with more");
+		if (m_stateFile != null
+		        && (numberOfInputs > 2 || reconciliationMode.equals(SORTED_MERGE.toString()) || m_memoryBudget > 0
+		                || m_pipelined))
+			throw new PropertiesFileException("An incremental reconciliation needs 2 input sources loaded in TW or"
+			        + " OW mode - SORTED_MERGE, memoryBudget, pipelined and more inputs can't be used with it");
+
 		if (m_outputType.equals("csv")) {
 			FILE_LOCATION = superProps.getProperty(propertiesStub + "logger.csv.file");
 			FILE_DELIMITER = superProps.getProperty(propertiesStub + "logger.csv.file.delimiter", CONSTANTS.DELIMITER);
+			m_differenceQueueSize =
+			        Integer.parseInt(superProps.getProperty(propertiesStub + "logger.csv.queueSize",
+			                valueOf(AsyncDifferenceWriter.DEFAULT_CAPACITY)));
+			m_csvWriter = superProps.getProperty(propertiesStub + "logger.csv.writer", "buffered");
+			m_csvBufferSize =
+			        (int) parseBytes(superProps.getProperty(propertiesStub + "logger.csv.bufferSize",
+			                valueOf(ChannelBufferedWriter.DEFAULT_BUFFER_SIZE)));
+			m_csvFsync =
+			        ChannelBufferedWriter.Fsync.valueOf(superProps.getProperty(propertiesStub + "logger.csv.fsync",
+			                ChannelBufferedWriter.Fsync.NEVER.toString()));
+			m_csvCompression =
+			        Compression.valueOf(superProps.getProperty(propertiesStub + "logger.csv.compression",
+			                Compression.forFile(FILE_LOCATION).toString()).toUpperCase());
 		}
 
+		m_metricsFile =
+		        superProps.getProperty(propertiesStub + "metrics.file", FILE_LOCATION == null ? null
+		                : RunMetrics.reportFileFor(FILE_LOCATION));
+		m_metricsJmx = Boolean.valueOf(superProps.getProperty(propertiesStub + "metrics.jmx", "false"));
+		m_jfrFile = superProps.getProperty(propertiesStub + "jfr.file");
+		m_jfrSettings = superProps.getProperty(propertiesStub + "jfr.settings", m_jfrSettings);
+
 		// TODO remove the redundancies here!!
 
 		for (int i = 1; i <= numberOfInputs; i++) {
@@ -825,6 +1199,15 @@ public class Recxx extends AbstractRecFeed implements Runnable {
 				props.setProperty("driver", superProps.getProperty(inputStub + "db.jdbc.driver"));
 				props.setProperty("sql", superProps.getProperty(inputStub + "db.sql"));
 				props.setProperty("key", superProps.getProperty(inputStub + "db.key"));
+				props.setProperty("fetchSize", superProps.getProperty(inputStub + "db.fetchSize",
+				        valueOf(DatabaseFacadeWorker.DEFAULT_FETCH_SIZE)));
+				for (String partitionProperty : new String[] { "partitionColumn", "partitions",
+				        "partitionBoundaries", "parallelism" }) {
+					String value = superProps.getProperty(inputStub + "db." + partitionProperty);
+					if (value != null) {
+						props.setProperty(partitionProperty, value);
+					}
+				}
 				props.setProperty("aggregate", "false");
 
 				m_propertiesMap.put(inputAlias, props);
@@ -873,6 +1256,15 @@ public class Recxx extends AbstractRecFeed implements Runnable {
 				props.setProperty("aggregate", superProps.getProperty(inputStub + "file.aggregate", "false"));
 				props.setProperty("appendDelimiter",
 				        superProps.getProperty(inputStub + "file.appendDelimiter", "false"));
+				props.setProperty("reader",
+				        superProps.getProperty(inputStub + "file.reader", FileFacadeWorker.STREAM_READER));
+				props.setProperty("parallelism", superProps.getProperty(inputStub + "file.parallelism", "1"));
+				props.setProperty("chunkSize",
+				        superProps.getProperty(inputStub + "file.chunkSize", FileFacadeWorker.DEFAULT_CHUNK_SIZE));
+				String snapshotDirectory = superProps.getProperty(inputStub + "file.snapshotDirectory");
+				if (snapshotDirectory != null) {
+					props.setProperty("snapshotDirectory", snapshotDirectory);
+				}
 
 				m_propertiesMap.put(inputAlias, props);
 			} else {
@@ -971,8 +1363,9 @@ public class Recxx extends AbstractRecFeed implements Runnable {
 	 * @param absDiff
 	 *            absDiff
 	 */
-	private void logDifference(String keyColumns, String key, String alias1, String columnName1, Object columnValue1,
-	        String alias2, String columnName2, Object columnValue2, String percentageDiff, String absDiff) {
+	private void logDifference(String keyColumns, CompositeKey key, String alias1, String columnName1,
+	        Object columnValue1, String alias2, String columnName2, Object columnValue2, String percentageDiff,
+	        String absDiff) {
 		if (m_outputType.equals("csv")) {
 			try {
 				initCsvFile(alias1, alias2, keyColumns);
@@ -987,7 +1380,7 @@ public class Recxx extends AbstractRecFeed implements Runnable {
 	}
 
 	/**
-	 * log a difference to csv file
+	 * log a difference to csv file, by queueing it for the difference writer's thread
 	 * 
 	 * @param key
 	 *            key
@@ -1003,75 +1396,48 @@ public class Recxx extends AbstractRecFeed implements Runnable {
 	 *            percentageDiff
 	 * @param absDiff
 	 *            absDiff
-	 * @throws java.io.IOException
-	 *             if there is a problem writing to a file
 	 */
-	private void logDifferenceToFile(String key, String columnName1, Object columnValue1, String columnName2,
-	        Object columnValue2, String percentageDiff, String absDiff) throws IOException {
-		StringTokenizer st = new StringTokenizer(key, "+");
-
-		while (st.hasMoreTokens()) {
-			m_logger.write(st.nextToken());
-		}
-
-		m_logger.write(columnName1);
-
-		if (columnValue1 != null)
-			m_logger.write(columnValue1.toString());
-		else
-			m_logger.write("null");
-
-		m_logger.write(columnName2);
-
-		if (columnValue2 != null)
-			m_logger.write(columnValue2.toString());
-		else
-			m_logger.write("null");
-
-		m_logger.write(percentageDiff);
-		m_logger.writeLine(absDiff);
-
+	private void logDifferenceToFile(CompositeKey key, String columnName1, Object columnValue1, String columnName2,
+	        Object columnValue2, String percentageDiff, String absDiff) {
+		m_differenceWriter.write(key, columnName1, columnValue1, columnName2, columnValue2, percentageDiff, absDiff);
 	}
 
 	/**
 	 * log a summary report to file detailing rows matched etc etc
 	 * 
-	 * @param alias1
-	 *            alias1
-	 * @param rowCount1
-	 *            rowCount1
-	 * @param alias2
-	 *            alias2
-	 * @param rowCount2
-	 *            rowCount2
+	 * @param aliases
+	 *            alias of each source
+	 * @param rowCounts
+	 *            rows of each source
 	 * @param rowsMatched
-	 *            rowsMatched
+	 *            rows of the first source matched to each of the others, from the second on
 	 * @throws IOException
 	 *             if there is a problem writing to file
 	 */
-	private void logSummaryToFile(String alias1, int rowCount1, String alias2, int rowCount2, int rowsMatched)
-	        throws IOException {
+	private void logSummaryToFile(String[] aliases, int[] rowCounts, int[] rowsMatched) throws IOException {
 		// 2 blank lines to separate out the summary from the rest of the results
 		m_logger.writeLine("");
 		m_logger.writeLine("");
 		m_logger.writeLine("=======================");
 		m_logger.writeLine("Reconciliation Report");
 		m_logger.writeLine("=======================");
-		m_logger.write(alias1 + " rows");
-		m_logger.writeLine(rowCount1);
-		m_logger.write(alias2 + " rows");
-		m_logger.writeLine(rowCount2);
-		m_logger.write(alias1 + " matched to " + alias2);
-		m_logger.writeLine(rowsMatched);
-		m_logger.write(alias1 + " matched to " + alias2 + " %");
-
-		Integer i = rowsMatched;
-		Integer ii = rowCount1;
-		Integer ii2 = rowCount2;
-
-		m_logger.writeLine(m_dPercentageFormatter.format(i.floatValue() / ii.floatValue()));
-		m_logger.write(alias2 + " matched to " + alias1 + " %");
-		m_logger.writeLine(m_dPercentageFormatter.format(i.floatValue() / ii2.floatValue()));
+		for (int i = 0; i < aliases.length; i++) {
+			m_logger.write(aliases[i] + " rows");
+			m_logger.writeLine(rowCounts[i]);
+		}
+		for (int i = 1; i < aliases.length; i++) {
+			m_logger.write(aliases[0] + " matched to " + aliases[i]);
+			m_logger.writeLine(rowsMatched[i]);
+			m_logger.write(aliases[0] + " matched to " + aliases[i] + " %");
+
+			Integer matched = rowsMatched[i];
+			Integer count1 = rowCounts[0];
+			Integer count2 = rowCounts[i];
+
+			m_logger.writeLine(m_dPercentageFormatter.format(matched.floatValue() / count1.floatValue()));
+			m_logger.write(aliases[i] + " matched to " + aliases[0] + " %");
+			m_logger.writeLine(m_dPercentageFormatter.format(matched.floatValue() / count2.floatValue()));
+		}
 
 		// loop through the sources and start them loading...
 		Iterator sourceIterator = m_propertiesMap.keySet().iterator();
@@ -1118,21 +1484,153 @@ public class Recxx extends AbstractRecFeed implements Runnable {
 	 */
 	private void logSummary(String alias1, int rowCount1, String alias2, int rowCount2, int rowsMatched)
 	        throws IOException {
+		logSummary(new String[] { alias1, alias2 }, new int[] { rowCount1, rowCount2 }, new int[] { 0, rowsMatched });
+	}
+
+	/**
+	 * after the rec has finished, log summary information of the first source matched with each of the others
+	 * 
+	 * @param aliases
+	 *            alias of each source
+	 * @param rowCounts
+	 *            rows of each source
+	 * @param rowsMatched
+	 *            rows of the first source matched to each of the others, from the second on
+	 * @throws IOException
+	 *             if there is a problem
+	 */
+	private void logSummary(String[] aliases, int[] rowCounts, int[] rowsMatched) throws IOException {
 		if (m_outputType.equals("csv")) {
 			try {
-				initCsvFile(alias1, alias2, "");
-				logSummaryToFile(alias1, rowCount1, alias2, rowCount2, rowsMatched);
+				initCsvFile(aliases[0], aliases.length > 2 ? "compared" : aliases[1], "");
+				// the summary follows every difference
+				m_differenceWriter.drain();
+				logSummaryToFile(aliases, rowCounts, rowsMatched);
 			} catch (IOException ioe) {
 				ioe.printStackTrace();
 			}
 
 		}
 		// always log this anyway
-		LOGGER.info("Finished reconciliation: " + decimalFormatter.format(rowsMatched) + "/"
-		        + decimalFormatter.format(rowCount1) + " rows of " + alias1 + " matched with " + alias2 + " ("
-		        + decimalFormatter.format(rowCount2) + ")");
+		for (int i = 1; i < aliases.length; i++) {
+			LOGGER.info("Finished reconciliation: " + decimalFormatter.format(rowsMatched[i]) + "/"
+			        + decimalFormatter.format(rowCounts[0]) + " rows of " + aliases[0] + " matched with "
+			        + aliases[i] + " (" + decimalFormatter.format(rowCounts[i]) + ")");
+		}
 	}
 
+	/**
+	 * after the differences, log the status of each source on every key they don't all agree on: the first source
+	 * present or missing, and each other agree, break, missing, or present if the first is missing
+	 * 
+	 * @param keyColumns
+	 *            the key columns of the first source, for the header
+	 * @param aliases
+	 *            alias of each source
+	 * @param keys
+	 *            the keys the sources don't all agree on
+	 * @param statuses
+	 *            the status of each source on each of the keys
+	 */
+	private void logKeyStatuses(String keyColumns, String[] aliases, List<CompositeKey> keys,
+	        List<KeyStatusListener.Status[]> statuses) {
+		if (m_outputType.equals("csv")) {
+			try {
+				initCsvFile(aliases[0], "compared", keyColumns);
+				m_differenceWriter.drain();
+
+				m_logger.writeLine("");
+				m_logger.writeLine("");
+				m_logger.writeLine("=======================");
+				m_logger.writeLine("Key Status");
+				m_logger.writeLine("=======================");
+
+				StringTokenizer st = new StringTokenizer(keyColumns, m_delimiter);
+				while (st.hasMoreTokens()) {
+					m_logger.write("Key(" + st.nextToken() + ")");
+				}
+				m_logger.writeLine(aliases);
+
+				for (int k = 0; k < keys.size(); k++) {
+					for (String keyValue : keys.get(k).toStrings()) {
+						m_logger.write(keyValue);
+					}
+					KeyStatusListener.Status[] keyStatuses = statuses.get(k);
+					String[] line = new String[keyStatuses.length];
+					for (int i = 0; i < line.length; i++) {
+						line[i] = keyStatuses[i].toString().toLowerCase();
+					}
+					m_logger.writeLine(line);
+				}
+			} catch (IOException ioe) {
+				ioe.printStackTrace();
+			}
+
+		} else if (m_outputType.equals("err")) {
+			for (int k = 0; k < keys.size(); k++) {
+				StringBuilder sb = new StringBuilder();
+				sb.append("INFO: ").append("Key ").append(keys.get(k));
+				KeyStatusListener.Status[] keyStatuses = statuses.get(k);
+				for (int i = 0; i < keyStatuses.length; i++) {
+					sb.append(i == 0 ? " | " : ", ").append(aliases[i]).append(" ")
+					        .append(keyStatuses[i].toString().toLowerCase());
+				}
+				System.err.println(sb.toString());
+			}
+		}
+	}
+
+
+	/**
+	 * after the differences, log how each break has changed since the last run: new, open or resolved
+	 * 
+	 * @param keyColumns
+	 *            the key columns of the first source, for the header
+	 * @param alias1
+	 *            alias of the first source
+	 * @param alias2
+	 *            alias of the second source
+	 * @param keys
+	 *            the keys which are breaks now or were in the last run
+	 * @param deltas
+	 *            how each of the keys has changed
+	 */
+	private void logBreakDeltas(String keyColumns, String alias1, String alias2, List<CompositeKey> keys,
+	        List<BreakDeltaListener.Delta> deltas) {
+		if (m_outputType.equals("csv")) {
+			try {
+				initCsvFile(alias1, alias2, keyColumns);
+				m_differenceWriter.drain();
+
+				m_logger.writeLine("");
+				m_logger.writeLine("");
+				m_logger.writeLine("=======================");
+				m_logger.writeLine("Break Delta");
+				m_logger.writeLine("=======================");
+
+				StringTokenizer st = new StringTokenizer(keyColumns, m_delimiter);
+				while (st.hasMoreTokens()) {
+					m_logger.write("Key(" + st.nextToken() + ")");
+				}
+				m_logger.writeLine("Break");
+
+				for (int k = 0; k < keys.size(); k++) {
+					for (String keyValue : keys.get(k).toStrings()) {
+						m_logger.write(keyValue);
+					}
+					m_logger.writeLine(deltas.get(k).toString().toLowerCase());
+				}
+			} catch (IOException ioe) {
+				ioe.printStackTrace();
+			}
+
+		} else if (m_outputType.equals("err")) {
+			for (int k = 0; k < keys.size(); k++) {
+				System.err.println("INFO: Key " + keys.get(k) + " | " + deltas.get(k).toString().toLowerCase()
+				        + " break");
+			}
+		}
+	}
 	/**
 	 * log a difference to System.Err. WARNING: Slows performance down lots and lots...!
 	 * 
@@ -1151,7 +1649,7 @@ public class Recxx extends AbstractRecFeed implements Runnable {
 	 * @param columnValue2
 	 *            columnValue2
 	 */
-	private void logDifferenceToSystemErr(String key, String alias1, String columnName1, Object columnValue1,
+	private void logDifferenceToSystemErr(CompositeKey key, String alias1, String columnName1, Object columnValue1,
 	        String alias2, String columnName2, Object columnValue2) {
 		StringBuilder sb = new StringBuilder();
 		sb.append("INFO: ").append("Key ").append(key).append(" | ");
@@ -1175,7 +1673,13 @@ public class Recxx extends AbstractRecFeed implements Runnable {
 	private void initCsvFile(String alias1, String alias2, String keyColumns) throws IOException {
 		if (!m_loggerInit) {
 			m_logger = new CSVLogger();
-			m_logger.setBufferedWriterManager(new BufferedWriterManager(new CloseableUtils()));
+			if (m_csvCompression != Compression.NONE)
+				m_logger.setBufferedWriterManager(new CompressedWriterManager(new CloseableUtils(), m_csvCompression));
+			else if (m_csvWriter.equalsIgnoreCase("channel"))
+				m_logger.setBufferedWriterManager(new ChannelWriterManager(new CloseableUtils(), m_csvBufferSize,
+				        m_csvFsync));
+			else
+				m_logger.setBufferedWriterManager(new BufferedWriterManager(new CloseableUtils()));
 			m_logger.setFilename(FILE_LOCATION);
 			m_logger.setDelimiter(FILE_DELIMITER);
 			m_logger.open();
@@ -1197,6 +1701,7 @@ public class Recxx extends AbstractRecFeed implements Runnable {
 			m_logger.write("% Diff");
 			m_logger.writeLine("Abs Diff");
 
+			m_differenceWriter = new AsyncDifferenceWriter(m_logger, m_differenceQueueSize);
 			m_loggerInit = true;
 		}
 	}
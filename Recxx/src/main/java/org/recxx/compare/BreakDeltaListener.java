@@ -0,0 +1,30 @@
+package org.recxx.compare;
+
+import org.recxx.data.CompositeKey;
+
+/**
+ * Told, for each key of an {@link IncrementalReconciler} which is a break now or was one in the last run, how it has
+ * changed
+ */
+public interface BreakDeltaListener {
+
+	/**
+	 * how a break has changed since the last run
+	 */
+	enum Delta {
+		/** the key is a break now, but wasn't in the last run */
+		NEW,
+		/** the key was a break in the last run, and still is */
+		OPEN,
+		/** the key was a break in the last run, but isn't now */
+		RESOLVED
+	}
+
+	/**
+	 * @param key
+	 *            the key
+	 * @param delta
+	 *            how the break has changed
+	 */
+	void delta(CompositeKey key, Delta delta);
+}
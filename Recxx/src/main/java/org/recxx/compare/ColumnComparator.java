@@ -0,0 +1,174 @@
+package org.recxx.compare;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.logging.Logger;
+
+import org.recxx.data.CompositeKey;
+
+/**
+ * <p>
+ * Compares one column of a row in the first source with the matching column of a row in the second. A comparator is
+ * chosen once for each pair of compare columns when a {@link ComparisonPlan} is built, and is bound to the two columns,
+ * so comparing a cell is a single call with no checking of the values' classes.
+ * </p>
+ *
+ * <p>
+ * The rules for each pair of types live here, so the specialised comparators and the generic one give the same
+ * answers. Numbers are only compared when both are bigger than the smallest absolute value, and differ when the
+ * percentage difference between them is over the tolerance; everything else must be equal.
+ * </p>
+ */
+public abstract class ColumnComparator {
+
+	public static final int MATCHED = 0;
+
+	public static final int DIFFERENT = 1;
+
+	public static final int UNHANDLED = 2;
+
+	private static final Logger LOGGER = Logger.getLogger(ColumnComparator.class.getName());
+
+	private static final BigDecimal ONE_HUNDRED = BigDecimal.valueOf(100);
+
+	protected final String columnName1;
+
+	protected final String columnName2;
+
+	protected final float tolerancePercentage;
+
+	protected final float smallestAbsoluteValue;
+
+	private final BigDecimal decimalTolerancePercentage;
+
+	private final BigDecimal decimalSmallestAbsoluteValue;
+
+	protected ColumnComparator(String columnName1, String columnName2, float tolerancePercentage,
+	        float smallestAbsoluteValue) {
+		this.columnName1 = columnName1;
+		this.columnName2 = columnName2;
+		this.tolerancePercentage = tolerancePercentage;
+		this.smallestAbsoluteValue = smallestAbsoluteValue;
+		this.decimalTolerancePercentage = BigDecimal.valueOf(tolerancePercentage);
+		this.decimalSmallestAbsoluteValue = BigDecimal.valueOf(smallestAbsoluteValue);
+	}
+
+	/**
+	 * compare the column of two matched rows, telling the listener about any difference
+	 *
+	 * @param row1
+	 *            row id in the first source
+	 * @param row2
+	 *            row id in the second source
+	 * @param key
+	 *            key of the rows
+	 * @param listener
+	 *            told about any difference
+	 * @return MATCHED, DIFFERENT or UNHANDLED if the values can't be compared
+	 */
+	public abstract int compare(int row1, int row2, CompositeKey key, DifferenceListener listener);
+
+	public String getColumnName1() {
+		return columnName1;
+	}
+
+	public String getColumnName2() {
+		return columnName2;
+	}
+
+	protected final int compareNulls(Object o1, Object o2, CompositeKey key, DifferenceListener listener) {
+		if (o1 == null && o2 == null) {
+			return MATCHED;
+		}
+		listener.difference(key, columnName1, o1, columnName2, o2, "", "");
+		return DIFFERENT;
+	}
+
+	protected final int compareDoubles(double d1, double d2, CompositeKey key, DifferenceListener listener) {
+		// only look at rows greater than the absolute smallest value specified
+		if (Math.abs(d1) > smallestAbsoluteValue && Math.abs(d2) > smallestAbsoluteValue) {
+			double percentageDiff = Math.abs(((d1 - d2) / d1) * 100);
+			if (percentageDiff > tolerancePercentage) {
+				listener.difference(key, columnName1, d1, columnName2, d2, String.valueOf(percentageDiff),
+				        String.valueOf(Math.abs(d1 - d2)));
+				return DIFFERENT;
+			}
+		}
+		return MATCHED;
+	}
+
+	protected final int compareDecimalWithDouble(BigDecimal b1, double d2, CompositeKey key,
+	        DifferenceListener listener) {
+		// NSB - 16/6/04 - Added as Oracle returns Big Decimals
+		double d1 = b1.doubleValue();
+		if (Math.abs(d1) > smallestAbsoluteValue && Math.abs(d2) > smallestAbsoluteValue) {
+			double percentageDiff = Math.abs(((d1 - d2) / d1) * 100);
+			if (percentageDiff > tolerancePercentage) {
+				listener.difference(key, columnName1, b1, columnName2, d2, String.valueOf(percentageDiff),
+				        String.valueOf(Math.abs(d1 - d2)));
+				return DIFFERENT;
+			}
+		}
+		return MATCHED;
+	}
+
+	protected final int compareDoubleWithDecimal(double d1, BigDecimal b2, CompositeKey key,
+	        DifferenceListener listener) {
+		double d2 = b2.doubleValue();
+		if (Math.abs(d1) > smallestAbsoluteValue && b2.abs().doubleValue() > smallestAbsoluteValue) {
+			double percentageDiff = Math.abs(((d1 - d2) / d1) * 100);
+			if (percentageDiff > tolerancePercentage) {
+				listener.difference(key, columnName1, d1, columnName2, b2, String.valueOf(percentageDiff),
+				        String.valueOf(Math.abs(d1 - d2)));
+				return DIFFERENT;
+			}
+		}
+		return MATCHED;
+	}
+
+	protected final int compareDecimals(BigDecimal b1, BigDecimal b2, CompositeKey key, DifferenceListener listener) {
+		if (b1.abs().compareTo(decimalSmallestAbsoluteValue) == 1
+		        && b2.abs().compareTo(decimalSmallestAbsoluteValue) == 1) {
+			BigDecimal percentageDiff = b1.subtract(b2).divide(b1, 6, RoundingMode.HALF_UP).multiply(ONE_HUNDRED);
+			if (percentageDiff.compareTo(decimalTolerancePercentage) == 1) {
+				listener.difference(key, columnName1, b1, columnName2, b2, String.valueOf(percentageDiff),
+				        String.valueOf(b1.subtract(b2).abs()));
+				return DIFFERENT;
+			}
+		}
+		return MATCHED;
+	}
+
+	protected final int compareInts(int i1, int i2, CompositeKey key, DifferenceListener listener) {
+		try {
+			if (Math.abs(i1) > smallestAbsoluteValue && Math.abs(i2) > smallestAbsoluteValue) {
+				int percentageDiff = Math.abs(((i1 - i2) / i1) * 100);
+				if (percentageDiff > tolerancePercentage) {
+					listener.difference(key, columnName1, i1, columnName2, i2, String.valueOf(percentageDiff),
+					        String.valueOf(Math.abs(i1 - i2)));
+					return DIFFERENT;
+				}
+			}
+		} catch (ArithmeticException ae) {
+			if (i1 != i2) {
+				listener.difference(key, columnName1, i1, columnName2, i2, "", "");
+				return DIFFERENT;
+			}
+		}
+		return MATCHED;
+	}
+
+	protected final int compareEquals(Object o1, Object o2, CompositeKey key, DifferenceListener listener) {
+		if (!o1.equals(o2)) {
+			listener.difference(key, columnName1, o1, columnName2, o2, "", "");
+			return DIFFERENT;
+		}
+		return MATCHED;
+	}
+
+	protected final int unhandled(Object o1, Object o2) {
+		LOGGER.severe("Either encountered 2 different data types, or un-handled data type!");
+		LOGGER.severe("O1= " + o1.getClass().getName() + ", O2= " + o2.getClass().getName());
+		return UNHANDLED;
+	}
+}
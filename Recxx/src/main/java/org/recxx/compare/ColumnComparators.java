@@ -0,0 +1,301 @@
+package org.recxx.compare;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+import org.recxx.data.Column;
+import org.recxx.data.ColumnType;
+import org.recxx.data.CompositeKey;
+import org.recxx.data.DoubleColumn;
+import org.recxx.data.IntColumn;
+import org.recxx.data.LongColumn;
+import org.recxx.data.StringColumn;
+
+/**
+ * Chooses the comparator for a pair of columns from their types, and holds the comparators themselves
+ */
+final class ColumnComparators {
+
+	private ColumnComparators() {
+	}
+
+	/**
+	 * @return a comparator specialised for the types of the two columns, or one which checks the class of each pair of
+	 *         values if there isn't one. Key columns, which are read back from the row's key, are always compared
+	 *         generically.
+	 */
+	static ColumnComparator create(Column column1, String columnName1, Column column2, String columnName2,
+	        float tolerancePercentage, float smallestAbsoluteValue) {
+		ColumnType type1 = column1.getType();
+		ColumnType type2 = column2.getType();
+
+		if (column1 instanceof DoubleColumn && column2 instanceof DoubleColumn) {
+			return new DoubleComparator((DoubleColumn) column1, columnName1, (DoubleColumn) column2, columnName2,
+			        tolerancePercentage, smallestAbsoluteValue);
+		} else if (type1 == ColumnType.DECIMAL && column2 instanceof DoubleColumn) {
+			return new DecimalDoubleComparator(column1, columnName1, (DoubleColumn) column2, columnName2,
+			        tolerancePercentage, smallestAbsoluteValue);
+		} else if (column1 instanceof DoubleColumn && type2 == ColumnType.DECIMAL) {
+			return new DoubleDecimalComparator((DoubleColumn) column1, columnName1, column2, columnName2,
+			        tolerancePercentage, smallestAbsoluteValue);
+		} else if (type1 == ColumnType.DECIMAL && type2 == ColumnType.DECIMAL) {
+			return new DecimalComparator(column1, columnName1, column2, columnName2, tolerancePercentage,
+			        smallestAbsoluteValue);
+		} else if (column1 instanceof IntColumn && column2 instanceof IntColumn) {
+			return new IntComparator((IntColumn) column1, columnName1, (IntColumn) column2, columnName2,
+			        tolerancePercentage, smallestAbsoluteValue);
+		} else if (column1 instanceof StringColumn && column2 instanceof StringColumn) {
+			return new StringComparator((StringColumn) column1, columnName1, (StringColumn) column2, columnName2,
+			        tolerancePercentage, smallestAbsoluteValue);
+		} else if (type1 == ColumnType.DATE && type2 == ColumnType.DATE && column1 instanceof LongColumn
+		        && column2 instanceof LongColumn) {
+			return new DateComparator((LongColumn) column1, columnName1, (LongColumn) column2, columnName2,
+			        tolerancePercentage, smallestAbsoluteValue);
+		} else if (type1 == ColumnType.BOOLEAN && type2 == ColumnType.BOOLEAN) {
+			return new EqualsComparator(column1, columnName1, column2, columnName2, tolerancePercentage,
+			        smallestAbsoluteValue);
+		}
+		return new GenericComparator(column1, columnName1, column2, columnName2, tolerancePercentage,
+		        smallestAbsoluteValue);
+	}
+
+	static final class DoubleComparator extends ColumnComparator {
+
+		private final DoubleColumn column1;
+
+		private final DoubleColumn column2;
+
+		DoubleComparator(DoubleColumn column1, String columnName1, DoubleColumn column2, String columnName2,
+		        float tolerancePercentage, float smallestAbsoluteValue) {
+			super(columnName1, columnName2, tolerancePercentage, smallestAbsoluteValue);
+			this.column1 = column1;
+			this.column2 = column2;
+		}
+
+		@Override
+		public int compare(int row1, int row2, CompositeKey key, DifferenceListener listener) {
+			if (column1.isNull(row1) || column2.isNull(row2)) {
+				return compareNulls(column1.get(row1), column2.get(row2), key, listener);
+			}
+			return compareDoubles(column1.getDouble(row1), column2.getDouble(row2), key, listener);
+		}
+	}
+
+	static final class DecimalDoubleComparator extends ColumnComparator {
+
+		private final Column column1;
+
+		private final DoubleColumn column2;
+
+		DecimalDoubleComparator(Column column1, String columnName1, DoubleColumn column2, String columnName2,
+		        float tolerancePercentage, float smallestAbsoluteValue) {
+			super(columnName1, columnName2, tolerancePercentage, smallestAbsoluteValue);
+			this.column1 = column1;
+			this.column2 = column2;
+		}
+
+		@Override
+		public int compare(int row1, int row2, CompositeKey key, DifferenceListener listener) {
+			Object o1 = column1.get(row1);
+			if (o1 == null || column2.isNull(row2)) {
+				return compareNulls(o1, column2.get(row2), key, listener);
+			}
+			return compareDecimalWithDouble((BigDecimal) o1, column2.getDouble(row2), key, listener);
+		}
+	}
+
+	static final class DoubleDecimalComparator extends ColumnComparator {
+
+		private final DoubleColumn column1;
+
+		private final Column column2;
+
+		DoubleDecimalComparator(DoubleColumn column1, String columnName1, Column column2, String columnName2,
+		        float tolerancePercentage, float smallestAbsoluteValue) {
+			super(columnName1, columnName2, tolerancePercentage, smallestAbsoluteValue);
+			this.column1 = column1;
+			this.column2 = column2;
+		}
+
+		@Override
+		public int compare(int row1, int row2, CompositeKey key, DifferenceListener listener) {
+			Object o2 = column2.get(row2);
+			if (column1.isNull(row1) || o2 == null) {
+				return compareNulls(column1.get(row1), o2, key, listener);
+			}
+			return compareDoubleWithDecimal(column1.getDouble(row1), (BigDecimal) o2, key, listener);
+		}
+	}
+
+	static final class DecimalComparator extends ColumnComparator {
+
+		private final Column column1;
+
+		private final Column column2;
+
+		DecimalComparator(Column column1, String columnName1, Column column2, String columnName2,
+		        float tolerancePercentage, float smallestAbsoluteValue) {
+			super(columnName1, columnName2, tolerancePercentage, smallestAbsoluteValue);
+			this.column1 = column1;
+			this.column2 = column2;
+		}
+
+		@Override
+		public int compare(int row1, int row2, CompositeKey key, DifferenceListener listener) {
+			Object o1 = column1.get(row1);
+			Object o2 = column2.get(row2);
+			if (o1 == null || o2 == null) {
+				return compareNulls(o1, o2, key, listener);
+			}
+			return compareDecimals((BigDecimal) o1, (BigDecimal) o2, key, listener);
+		}
+	}
+
+	static final class IntComparator extends ColumnComparator {
+
+		private final IntColumn column1;
+
+		private final IntColumn column2;
+
+		IntComparator(IntColumn column1, String columnName1, IntColumn column2, String columnName2,
+		        float tolerancePercentage, float smallestAbsoluteValue) {
+			super(columnName1, columnName2, tolerancePercentage, smallestAbsoluteValue);
+			this.column1 = column1;
+			this.column2 = column2;
+		}
+
+		@Override
+		public int compare(int row1, int row2, CompositeKey key, DifferenceListener listener) {
+			if (column1.isNull(row1) || column2.isNull(row2)) {
+				return compareNulls(column1.get(row1), column2.get(row2), key, listener);
+			}
+			return compareInts(column1.getInt(row1), column2.getInt(row2), key, listener);
+		}
+	}
+
+	static final class StringComparator extends ColumnComparator {
+
+		private final StringColumn column1;
+
+		private final StringColumn column2;
+
+		StringComparator(StringColumn column1, String columnName1, StringColumn column2, String columnName2,
+		        float tolerancePercentage, float smallestAbsoluteValue) {
+			super(columnName1, columnName2, tolerancePercentage, smallestAbsoluteValue);
+			this.column1 = column1;
+			this.column2 = column2;
+		}
+
+		@Override
+		public int compare(int row1, int row2, CompositeKey key, DifferenceListener listener) {
+			String s1 = column1.getString(row1);
+			String s2 = column2.getString(row2);
+			if (s1 == null || s2 == null) {
+				return compareNulls(s1, s2, key, listener);
+			}
+			return compareEquals(s1, s2, key, listener);
+		}
+	}
+
+	static final class DateComparator extends ColumnComparator {
+
+		private final LongColumn column1;
+
+		private final LongColumn column2;
+
+		DateComparator(LongColumn column1, String columnName1, LongColumn column2, String columnName2,
+		        float tolerancePercentage, float smallestAbsoluteValue) {
+			super(columnName1, columnName2, tolerancePercentage, smallestAbsoluteValue);
+			this.column1 = column1;
+			this.column2 = column2;
+		}
+
+		@Override
+		public int compare(int row1, int row2, CompositeKey key, DifferenceListener listener) {
+			if (column1.isNull(row1) || column2.isNull(row2)) {
+				return compareNulls(column1.get(row1), column2.get(row2), key, listener);
+			}
+			Object raw1 = column1.getRaw(row1);
+			Object raw2 = column2.getRaw(row2);
+			if (raw1 != null || raw2 != null) {
+				// a value that isn't a date, such as one that failed to parse, only matches the same value
+				return raw1 != null && raw2 != null ? compareEquals(raw1, raw2, key, listener) : unhandled(
+				        column1.get(row1), column2.get(row2));
+			}
+			long millis1 = column1.getLong(row1);
+			long millis2 = column2.getLong(row2);
+			if (millis1 != millis2) {
+				listener.difference(key, columnName1, new Date(millis1), columnName2, new Date(millis2), "", "");
+				return DIFFERENT;
+			}
+			return MATCHED;
+		}
+	}
+
+	static final class EqualsComparator extends ColumnComparator {
+
+		private final Column column1;
+
+		private final Column column2;
+
+		EqualsComparator(Column column1, String columnName1, Column column2, String columnName2,
+		        float tolerancePercentage, float smallestAbsoluteValue) {
+			super(columnName1, columnName2, tolerancePercentage, smallestAbsoluteValue);
+			this.column1 = column1;
+			this.column2 = column2;
+		}
+
+		@Override
+		public int compare(int row1, int row2, CompositeKey key, DifferenceListener listener) {
+			Object o1 = column1.get(row1);
+			Object o2 = column2.get(row2);
+			if (o1 == null || o2 == null) {
+				return compareNulls(o1, o2, key, listener);
+			}
+			return compareEquals(o1, o2, key, listener);
+		}
+	}
+
+	/**
+	 * compares columns whose types don't have a comparator of their own, such as OBJECT columns, by checking the
+	 * class of every pair of values
+	 */
+	static final class GenericComparator extends ColumnComparator {
+
+		private final Column column1;
+
+		private final Column column2;
+
+		GenericComparator(Column column1, String columnName1, Column column2, String columnName2,
+		        float tolerancePercentage, float smallestAbsoluteValue) {
+			super(columnName1, columnName2, tolerancePercentage, smallestAbsoluteValue);
+			this.column1 = column1;
+			this.column2 = column2;
+		}
+
+		@Override
+		public int compare(int row1, int row2, CompositeKey key, DifferenceListener listener) {
+			Object o1 = column1.get(row1);
+			Object o2 = column2.get(row2);
+
+			if (o1 instanceof Double && o2 instanceof Double) {
+				return compareDoubles((Double) o1, (Double) o2, key, listener);
+			} else if (o1 instanceof BigDecimal && o2 instanceof Double) {
+				return compareDecimalWithDouble((BigDecimal) o1, (Double) o2, key, listener);
+			} else if (o1 instanceof Double && o2 instanceof BigDecimal) {
+				return compareDoubleWithDecimal((Double) o1, (BigDecimal) o2, key, listener);
+			} else if (o1 instanceof BigDecimal && o2 instanceof BigDecimal) {
+				return compareDecimals((BigDecimal) o1, (BigDecimal) o2, key, listener);
+			} else if (o1 instanceof Integer && o2 instanceof Integer) {
+				return compareInts((Integer) o1, (Integer) o2, key, listener);
+			} else if ((o1 instanceof String && o2 instanceof String)
+			        || (o1 instanceof Boolean && o2 instanceof Boolean)
+			        || (o1 instanceof Date && o2 instanceof Date)) {
+				return compareEquals(o1, o2, key, listener);
+			} else if (o1 == null || o2 == null) {
+				return compareNulls(o1, o2, key, listener);
+			}
+			return unhandled(o1, o2);
+		}
+	}
+}
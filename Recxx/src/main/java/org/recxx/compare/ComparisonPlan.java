@@ -0,0 +1,121 @@
+package org.recxx.compare;
+
+import org.recxx.data.CompositeKey;
+import org.recxx.data.Dataset;
+
+/**
+ * <p>
+ * How to compare the rows of two data sets: one {@link ColumnComparator} for each pair of compare columns, chosen once
+ * from the two sets of column types before any rows are looked at. Comparing a matched pair of rows is then just a
+ * walk along the comparators.
+ * </p>
+ *
+ * <p>
+ * If both data sets have been fingerprinted on their compare columns, and each pair of compare columns is of the same
+ * type and has a comparator specialised for it, two rows with the same fingerprint are matched straight away, without
+ * comparing them column by column. Equal values of the same type always match with such a comparator, so only rows
+ * that differ, or whose fingerprints collide, which for a 64 bit fingerprint is vanishingly rare, take the slower
+ * path. Columns compared generically, such as OBJECT and LONG columns, may find equal values unhandled, so always take
+ * the slower path.
+ * </p>
+ *
+ * <p>
+ * A plan is bound to the columns of the data sets it was built for, and holds no other state, so it can be shared by
+ * threads comparing different rows.
+ * </p>
+ */
+public class ComparisonPlan {
+
+	private final ColumnComparator[] comparators;
+
+	private final long[] fingerprints1;
+
+	private final long[] fingerprints2;
+
+	/**
+	 * @param data1
+	 *            first data set
+	 * @param compareColumns1
+	 *            positions of the compare columns in the first data set
+	 * @param data2
+	 *            second data set
+	 * @param compareColumns2
+	 *            positions of the matching compare columns in the second data set
+	 * @param tolerancePercentage
+	 *            percentage difference allowed between two numbers
+	 * @param smallestAbsoluteValue
+	 *            numbers no bigger than this are not compared
+	 */
+	public ComparisonPlan(Dataset data1, int[] compareColumns1, Dataset data2, int[] compareColumns2,
+	        float tolerancePercentage, float smallestAbsoluteValue) {
+		if (compareColumns1.length != compareColumns2.length) {
+			throw new IllegalArgumentException("Unequal number of columns to compare - " + compareColumns1.length
+			        + " vs " + compareColumns2.length);
+		}
+		String[] columnNames1 = data1.getColumnNames();
+		String[] columnNames2 = data2.getColumnNames();
+
+		comparators = new ColumnComparator[compareColumns1.length];
+		for (int i = 0; i < comparators.length; i++) {
+			comparators[i] =
+			        ColumnComparators.create(data1.getColumn(compareColumns1[i]), columnNames1[compareColumns1[i]],
+			                data2.getColumn(compareColumns2[i]), columnNames2[compareColumns2[i]],
+			                tolerancePercentage, smallestAbsoluteValue);
+		}
+
+		long[] rows1 = data1.getFingerprints(compareColumns1);
+		long[] rows2 = data2.getFingerprints(compareColumns2);
+		for (int i = 0; i < compareColumns1.length && rows1 != null; i++) {
+			// a generic comparator, as used for OBJECT and LONG columns, may find equal values unhandled
+			if (data1.getType(compareColumns1[i]) != data2.getType(compareColumns2[i])
+			        || comparators[i] instanceof ColumnComparators.GenericComparator) {
+				rows1 = null;
+			}
+		}
+		this.fingerprints1 = rows2 == null ? null : rows1;
+		this.fingerprints2 = rows1 == null ? null : rows2;
+	}
+
+	/**
+	 * compare every compare column of two matched rows. A row is only deemed as matched if _all_ the columns match.
+	 *
+	 * @param row1
+	 *            row id in the first data set
+	 * @param row2
+	 *            row id in the second data set
+	 * @param key
+	 *            key of the rows
+	 * @param listener
+	 *            told about each difference
+	 * @return ColumnComparator.MATCHED, or the DIFFERENT and UNHANDLED flags of any column that didn't match
+	 */
+	public int compare(int row1, int row2, CompositeKey key, DifferenceListener listener) {
+		if (fingerprints1 != null && fingerprints1[row1] == fingerprints2[row2]) {
+			return ColumnComparator.MATCHED;
+		}
+
+		int result = ColumnComparator.MATCHED;
+		for (ColumnComparator comparator : comparators) {
+			result |= comparator.compare(row1, row2, key, listener);
+		}
+		return result;
+	}
+
+	/**
+	 * @return true if rows with the same fingerprint are matched without comparing their columns
+	 */
+	public boolean isFingerprinted() {
+		return fingerprints1 != null;
+	}
+
+	/**
+	 * @return the number of compare columns
+	 */
+	public int size() {
+		return comparators.length;
+	}
+
+	ColumnComparator getComparator(int index) {
+		return comparators[index];
+	}
+}
@@ -0,0 +1,181 @@
+package org.recxx.compare;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.recxx.data.CompositeKey;
+
+/**
+ * <p>
+ * Holds the differences found by one partition of a reconciliation until it is the partition's turn to hand them on to
+ * the real listener. The partitions take their turns in order, sharing a {@link Turns}: the partition whose turn it is
+ * tells the listener about each difference as it is found, and the others buffer theirs.
+ * </p>
+ *
+ * <p>
+ * A buffer holds no more than its capacity. Once full it waits for its partition's turn, hands on what it holds and
+ * then tells the listener directly, so a reconciliation with a great many differences never holds more than the
+ * capacity of each partition at once. Only one partition tells the listener at a time, and each turn is handed on
+ * under a lock, so the listener needn't be thread safe.
+ * </p>
+ */
+final class DifferenceBuffer implements DifferenceListener {
+
+	private final List<Entry> entries = new ArrayList<Entry>();
+
+	private final int partition;
+
+	private final int capacity;
+
+	private final Turns turns;
+
+	private final DifferenceListener listener;
+
+	// is it this partition's turn, so that differences go straight to the listener?
+	private boolean direct;
+
+	/**
+	 * @param partition
+	 *            number of the partition whose differences are buffered
+	 * @param capacity
+	 *            most differences to hold before waiting for the partition's turn
+	 * @param turns
+	 *            turns shared by all the partitions
+	 * @param listener
+	 *            listener to hand the differences on to
+	 */
+	DifferenceBuffer(int partition, int capacity, Turns turns, DifferenceListener listener) {
+		this.partition = partition;
+		this.capacity = capacity;
+		this.turns = turns;
+		this.listener = listener;
+	}
+
+	public void difference(CompositeKey key, String columnName1, Object value1, String columnName2, Object value2,
+	        String percentageDiff, String absDiff) {
+		if (isDirect()) {
+			listener.difference(key, columnName1, value1, columnName2, value2, percentageDiff, absDiff);
+		} else {
+			add(new Entry(key, columnName1, value1, columnName2, value2, percentageDiff, absDiff));
+		}
+	}
+
+	public void missing(CompositeKey key, boolean inFirst, String columnName, Object value) {
+		if (isDirect()) {
+			listener.missing(key, inFirst, columnName, value);
+		} else {
+			// a missing row is held with its value on its own side, and no other column name
+			add(inFirst ? new Entry(key, columnName, value, null, null, null, null) : new Entry(key, null, null,
+			        columnName, value, null, null));
+		}
+	}
+
+	int size() {
+		return entries.size();
+	}
+
+	/**
+	 * wait for the partition's turn, hand on every buffered difference, and pass the turn to the next partition
+	 *
+	 * @throws InterruptedException
+	 *             if interrupted waiting for the turn
+	 */
+	void finish() throws InterruptedException {
+		if (!direct) {
+			turns.await(partition);
+			replay();
+		}
+		turns.next(partition);
+	}
+
+	private boolean isDirect() {
+		if (!direct && turns.isTurn(partition)) {
+			replay();
+			direct = true;
+		}
+		return direct;
+	}
+
+	private void add(Entry entry) {
+		entries.add(entry);
+		if (entries.size() >= capacity) {
+			try {
+				turns.await(partition);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IllegalStateException("Interrupted waiting to report the differences of partition "
+				        + partition, e);
+			}
+			replay();
+			direct = true;
+		}
+	}
+
+	/**
+	 * hand every buffered difference on to the listener, in the order they were found, and empty the buffer
+	 */
+	private void replay() {
+		for (Entry entry : entries) {
+			if (entry.columnName2 == null) {
+				listener.missing(entry.key, true, entry.columnName1, entry.value1);
+			} else if (entry.columnName1 == null) {
+				listener.missing(entry.key, false, entry.columnName2, entry.value2);
+			} else {
+				listener.difference(entry.key, entry.columnName1, entry.value1, entry.columnName2, entry.value2,
+				        entry.percentageDiff, entry.absDiff);
+			}
+		}
+		entries.clear();
+	}
+
+	/**
+	 * whose turn it is to tell the listener, starting with partition 0
+	 */
+	static final class Turns {
+
+		private volatile int current;
+
+		boolean isTurn(int partition) {
+			return current == partition;
+		}
+
+		synchronized void await(int partition) throws InterruptedException {
+			while (current != partition) {
+				wait();
+			}
+		}
+
+		synchronized void next(int partition) {
+			current = partition + 1;
+			notifyAll();
+		}
+	}
+
+	private static final class Entry {
+
+		private final CompositeKey key;
+
+		private final String columnName1;
+
+		private final Object value1;
+
+		private final String columnName2;
+
+		private final Object value2;
+
+		private final String percentageDiff;
+
+		private final String absDiff;
+
+		Entry(CompositeKey key, String columnName1, Object value1, String columnName2, Object value2,
+		        String percentageDiff, String absDiff) {
+			this.key = key;
+			this.columnName1 = columnName1;
+			this.value1 = value1;
+			this.columnName2 = columnName2;
+			this.value2 = value2;
+			this.percentageDiff = percentageDiff;
+			this.absDiff = absDiff;
+		}
+	}
+}
@@ -0,0 +1,41 @@
+package org.recxx.compare;
+
+import org.recxx.data.CompositeKey;
+
+/**
+ * Told about each difference found while comparing the columns of two matched rows, and about the values of rows whose
+ * key is missing from the other source
+ */
+public interface DifferenceListener {
+
+	/**
+	 * @param key
+	 *            key of the matched rows
+	 * @param columnName1
+	 *            name of the column in the first source
+	 * @param value1
+	 *            value in the first source
+	 * @param columnName2
+	 *            name of the column in the second source
+	 * @param value2
+	 *            value in the second source
+	 * @param percentageDiff
+	 *            percentage difference, or "" for values which aren't numeric
+	 * @param absDiff
+	 *            absolute difference, or "" for values which aren't numeric
+	 */
+	void difference(CompositeKey key, String columnName1, Object value1, String columnName2, Object value2,
+	        String percentageDiff, String absDiff);
+
+	/**
+	 * @param key
+	 *            key of the row
+	 * @param inFirst
+	 *            is the row in the first source (and so missing from the second)?
+	 * @param columnName
+	 *            name of the column in the source holding the row
+	 * @param value
+	 *            value in the source holding the row
+	 */
+	void missing(CompositeKey key, boolean inFirst, String columnName, Object value);
+}
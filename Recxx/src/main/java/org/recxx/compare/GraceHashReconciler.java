@@ -0,0 +1,403 @@
+package org.recxx.compare;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Logger;
+
+import org.recxx.data.ColumnType;
+import org.recxx.data.CompositeKey;
+import org.recxx.data.Dataset;
+import org.recxx.data.RowBuffer;
+import org.recxx.data.RowCursor;
+import org.recxx.data.SpillFile;
+
+/**
+ * <p>
+ * Reconciles two input sources which may not fit in memory, by the grace hash join method. Each source is loaded
+ * from a cursor into a {@link Dataset} as usual until the data set grows past its half of the memory budget. From then
+ * on both sources are hash partitioned by key into {@link SpillFile}s, the loaded rows first, then the rest of the
+ * cursor. A key always falls into the same partition on both sides, so each pair of partitions can be loaded and
+ * reconciled by a {@link Reconciler} on its own, with the usual tolerances, one pair at a time. A pair of partitions
+ * which is still too big to load is split again, up to MAX_DEPTH times.
+ * </p>
+ *
+ * <p>
+ * If both sources fit within the budget nothing is written to disk, and the result is exactly that of loading them.
+ * Once spilled, the differences come out partition by partition rather than in the order of the first source.
+ * </p>
+ */
+public class GraceHashReconciler {
+
+	private static final Logger LOGGER = Logger.getLogger(GraceHashReconciler.class.getName());
+
+	public static final int DEFAULT_PARTITIONS = 64;
+
+	// loaded rows take very roughly this many times the bytes of their encoded form
+	private static final int LOADED_EXPANSION = 3;
+
+	private static final int MAX_DEPTH = 4;
+
+	// rows loaded before the size of the data set is first checked against the budget
+	private static final int FIRST_CHECK = 1024;
+
+	private final Source source1;
+
+	private final Source source2;
+
+	private final float tolerancePercentage;
+
+	private final float smallestAbsoluteValue;
+
+	private final boolean twoWay;
+
+	private long memoryBudget = Long.MAX_VALUE;
+
+	private int partitions = DEFAULT_PARTITIONS;
+
+	private File spillDirectory;
+
+	private int compareParallelism = 1;
+
+	/**
+	 * @param cursor1
+	 *            cursor over the first source
+	 * @param compareColumns1
+	 *            positions of the compare columns in the first source
+	 * @param aggregate1
+	 *            aggregate rows of the first source with the same key?
+	 * @param cursor2
+	 *            cursor over the second source
+	 * @param compareColumns2
+	 *            positions of the matching compare columns in the second source
+	 * @param aggregate2
+	 *            aggregate rows of the second source with the same key?
+	 * @param tolerancePercentage
+	 *            percentage difference tolerated between numeric values
+	 * @param smallestAbsoluteValue
+	 *            values smaller than this are treated as equal
+	 * @param twoWay
+	 *            report rows of the second source missing from the first?
+	 */
+	public GraceHashReconciler(RowCursor cursor1, int[] compareColumns1, boolean aggregate1, RowCursor cursor2,
+	        int[] compareColumns2, boolean aggregate2, float tolerancePercentage, float smallestAbsoluteValue,
+	        boolean twoWay) {
+		this.source1 = new Source(1, cursor1, compareColumns1, aggregate1);
+		this.source2 = new Source(2, cursor2, compareColumns2, aggregate2);
+		this.tolerancePercentage = tolerancePercentage;
+		this.smallestAbsoluteValue = smallestAbsoluteValue;
+		this.twoWay = twoWay;
+	}
+
+	/**
+	 * @param memoryBudget
+	 *            bytes the loaded rows of both sources may take before they are spilled to disk
+	 */
+	public void setMemoryBudget(long memoryBudget) {
+		this.memoryBudget = memoryBudget;
+	}
+
+	/**
+	 * @param partitions
+	 *            number of partitions each source is split into once spilled
+	 */
+	public void setPartitions(int partitions) {
+		this.partitions = partitions;
+	}
+
+	/**
+	 * @param spillDirectory
+	 *            directory to write the partitions to, or null for the default temporary directory
+	 */
+	public void setSpillDirectory(File spillDirectory) {
+		this.spillDirectory = spillDirectory;
+	}
+
+	/**
+	 * @param compareParallelism
+	 *            number of threads used to reconcile each pair of partitions
+	 */
+	public void setCompareParallelism(int compareParallelism) {
+		this.compareParallelism = compareParallelism;
+	}
+
+	/**
+	 * load or spill both sources, then reconcile them
+	 *
+	 * @param listener
+	 *            told about each difference
+	 * @return the counts of matched and unmatched rows
+	 * @throws Exception
+	 *             if a source can't be read, or a partition can't be written or read back
+	 */
+	public ReconciliationCounts reconcile(DifferenceListener listener) throws Exception {
+		ReconciliationCounts counts = new ReconciliationCounts();
+
+		try {
+			source1.load(memoryBudget / 2);
+			source2.load(memoryBudget / 2);
+
+			if (source1.spilled == null && source2.spilled == null) {
+				reconcile(source1.data, source2.data, counts, listener);
+			} else {
+				source1.spill();
+				source2.spill();
+				reconcile(source1.spilled, source2.spilled, 1, counts, listener);
+			}
+		} finally {
+			delete(source1.spilled);
+			delete(source2.spilled);
+		}
+		return counts;
+	}
+
+	/**
+	 * @return the number of distinct keys in the first source
+	 */
+	public int getRows1() {
+		return source1.rows;
+	}
+
+	/**
+	 * @return the number of distinct keys in the second source
+	 */
+	public int getRows2() {
+		return source2.rows;
+	}
+
+	/**
+	 * @return true if either source had to be spilled to disk
+	 */
+	public boolean isSpilled() {
+		return source1.spilled != null || source2.spilled != null;
+	}
+
+	/**
+	 * reconcile each pair of partitions in turn, splitting any pair too big to load
+	 */
+	private void reconcile(SpillFile[] partitions1, SpillFile[] partitions2, int depth, ReconciliationCounts counts,
+	        DifferenceListener listener) throws Exception {
+		for (int p = 0; p < partitions1.length; p++) {
+			long bytes = partitions1[p].length() + partitions2[p].length();
+
+			if (bytes * LOADED_EXPANSION > memoryBudget && depth < MAX_DEPTH) {
+				LOGGER.info("Partition " + p + " at level " + depth + " holds " + bytes
+				        + " bytes, too many to load - splitting it into " + partitions + " partitions");
+				SpillFile[] split1 = source1.split(partitions1[p], depth);
+				SpillFile[] split2 = source2.split(partitions2[p], depth);
+				try {
+					reconcile(split1, split2, depth + 1, counts, listener);
+				} finally {
+					delete(split1);
+					delete(split2);
+				}
+			} else {
+				Dataset data1 = source1.load(partitions1[p]);
+				Dataset data2 = source2.load(partitions2[p]);
+				reconcile(data1, data2, counts, listener);
+			}
+		}
+	}
+
+	private void reconcile(Dataset data1, Dataset data2, ReconciliationCounts counts, DifferenceListener listener)
+	        throws Exception {
+		source1.rows += data1.size();
+		source2.rows += data2.size();
+
+		ComparisonPlan plan =
+		        new ComparisonPlan(data1, source1.compareColumns, data2, source2.compareColumns, tolerancePercentage,
+		                smallestAbsoluteValue);
+		counts.add(new Reconciler(data1, source1.compareColumns, data2, source2.compareColumns, plan, twoWay)
+		        .reconcile(compareParallelism, listener));
+	}
+
+	/**
+	 * @return the partition of a key, out of the given number, at the given level of splitting. The hash is mixed
+	 *         again with the level, so that the keys of one partition spread over all the partitions of the next level,
+	 *         and over the partitions of the Reconciler.
+	 */
+	static int partitionOf(CompositeKey key, int partitions, int level) {
+		int h = key.hashCode() ^ (level * 0x9E3779B9);
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return (int) (((h & 0xFFFFFFFFL) * partitions) >>> 32);
+	}
+
+	private static void delete(SpillFile[] files) {
+		if (files != null) {
+			for (SpillFile file : files) {
+				file.delete();
+			}
+		}
+	}
+
+	/**
+	 * one of the sources, either loaded or spilled to partitions
+	 */
+	private final class Source {
+
+		private final int number;
+
+		private final RowCursor cursor;
+
+		private final int[] compareColumns;
+
+		private final boolean aggregate;
+
+		private final String[] columnNames;
+
+		private final ColumnType[] types;
+
+		private final int[] keyPositions;
+
+		private Dataset data;
+
+		private SpillFile[] spilled;
+
+		private int rows;
+
+		Source(int number, RowCursor cursor, int[] compareColumns, boolean aggregate) {
+			this.number = number;
+			this.cursor = cursor;
+			this.compareColumns = compareColumns;
+			this.aggregate = aggregate;
+			this.columnNames = cursor.getColumnNames();
+			this.types = cursor.getColumnTypes();
+			this.keyPositions = cursor.getKeyPositions();
+		}
+
+		/**
+		 * load the cursor, spilling it to partitions if the loaded rows grow past the budget. The size of the data set
+		 * is checked each time it grows by an eighth, which keeps the cost of checking linear in the number of rows.
+		 */
+		void load(long budget) throws Exception {
+			data = new Dataset(columnNames, types, keyPositions);
+			int[] aggregateColumns = data.getNonKeyPositions();
+			int nextCheck = FIRST_CHECK;
+
+			while (cursor.next()) {
+				add(data, cursor.getKey(), cursor.getRow(), aggregateColumns);
+
+				if (data.size() >= nextCheck) {
+					long bytes = data.estimatedBytes();
+					if (bytes > budget) {
+						LOGGER.info("Input source " + number + " has passed its memory budget of " + budget
+						        + " bytes at " + data.size() + " rows - spilling it to disk in "
+						        + partitions + " partitions");
+						spill();
+						return;
+					}
+					nextCheck = data.size() + data.size() / 8;
+				}
+			}
+		}
+
+		/**
+		 * write the loaded rows, and any rows left in the cursor, to partitions
+		 */
+		void spill() throws Exception {
+			if (spilled != null) {
+				return;
+			}
+			spilled = newPartitions();
+			RowBuffer row = data.newRowBuffer();
+			for (int i = 0; i < data.size(); i++) {
+				data.copyTo(i, row);
+				write(spilled, data.getKey(i), row, 0);
+			}
+			data = null;
+
+			while (cursor.next()) {
+				write(spilled, cursor.getKey(), cursor.getRow(), 0);
+			}
+			finish(spilled);
+		}
+
+		/**
+		 * split one partition into a level of partitions below it
+		 */
+		SpillFile[] split(SpillFile partition, int level) throws Exception {
+			SpillFile[] split = newPartitions();
+			RowCursor spilled = partition.openCursor();
+			try {
+				while (spilled.next()) {
+					write(split, spilled.getKey(), spilled.getRow(), level);
+				}
+			} finally {
+				spilled.close();
+				partition.delete();
+			}
+			finish(split);
+			return split;
+		}
+
+		/**
+		 * load a partition, deleting it once loaded
+		 */
+		Dataset load(SpillFile partition) throws Exception {
+			Dataset loaded = new Dataset(columnNames, types, keyPositions);
+			int[] aggregateColumns = loaded.getNonKeyPositions();
+			RowCursor spilled = partition.openCursor();
+			try {
+				while (spilled.next()) {
+					add(loaded, spilled.getKey(), spilled.getRow(), aggregateColumns);
+				}
+			} finally {
+				spilled.close();
+				partition.delete();
+			}
+			return loaded;
+		}
+
+		/**
+		 * add a row, aggregating or discarding it if the key has already been seen, as the workers do
+		 */
+		private void add(Dataset loaded, CompositeKey key, RowBuffer row, int[] aggregateColumns) throws Exception {
+			if (key.isEmpty()) {
+				LOGGER.warning("Null key returned - discarding row");
+				return;
+			}
+
+			int existingRow = loaded.find(key);
+			if (existingRow < 0) {
+				loaded.add(key, row);
+			} else if (aggregate) {
+				if (!loaded.aggregate(existingRow, aggregateColumns, row)) {
+					throw new Exception(
+					        "Unable to aggregate data as of 1 of the columns specified for comparision is not a numeric!");
+				}
+			} else {
+				LOGGER.warning("Key of input source " + number + " is not unique (duplicate values found for " + key
+				        + ") - unless aggregation is specified, the rec wont work!");
+			}
+		}
+
+		private SpillFile[] newPartitions() throws IOException {
+			SpillFile[] files = new SpillFile[partitions];
+			try {
+				for (int p = 0; p < partitions; p++) {
+					files[p] = new SpillFile(spillDirectory, columnNames, types, keyPositions);
+				}
+			} catch (IOException e) {
+				for (SpillFile file : files) {
+					if (file != null) {
+						file.delete();
+					}
+				}
+				throw e;
+			}
+			return files;
+		}
+
+		private void write(SpillFile[] files, CompositeKey key, RowBuffer row, int level) throws IOException {
+			files[partitionOf(key, files.length, level)].write(key, row);
+		}
+
+		private void finish(SpillFile[] files) throws IOException {
+			for (SpillFile file : files) {
+				file.finish();
+			}
+		}
+	}
+}
@@ -0,0 +1,236 @@
+package org.recxx.compare;
+
+import java.util.Map;
+
+import org.recxx.compare.BreakDeltaListener.Delta;
+import org.recxx.data.CompositeKey;
+import org.recxx.data.Dataset;
+import org.recxx.data.RowFingerprint;
+
+/**
+ * <p>
+ * Reconciles two loaded data sets as a {@link Reconciler} would, but only compares the keys which have changed since
+ * the last run. The fingerprint of each row's compare columns is checked against the {@link ReconciliationState} of
+ * the last run, and a key held by the same sources with the same fingerprints is counted as it was then, without
+ * being compared or reported again. Every other key is compared, and its differences reported, as usual.
+ * </p>
+ *
+ * <p>
+ * Along with the differences of the changed keys, each key which is a break now or was one in the last run is given
+ * to a {@link BreakDeltaListener}: NEW, OPEN or RESOLVED. The counts are of every key, compared or not, so they are
+ * the same as those of a full reconciliation. The keys are walked on the calling thread, so none of the listeners need
+ * to be thread safe.
+ * </p>
+ */
+public class IncrementalReconciler {
+
+	private final Dataset data1;
+
+	private final int[] compareColumns1;
+
+	private final Dataset data2;
+
+	private final int[] compareColumns2;
+
+	private final ComparisonPlan plan;
+
+	private final boolean twoWay;
+
+	private final String[] columnNames1;
+
+	private final String[] columnNames2;
+
+	private int comparedKeys;
+
+	private int unchangedKeys;
+
+	/**
+	 * @param data1
+	 *            first data set
+	 * @param compareColumns1
+	 *            positions of the compare columns in the first data set
+	 * @param data2
+	 *            second data set, which must be indexed
+	 * @param compareColumns2
+	 *            positions of the matching compare columns in the second data set
+	 * @param plan
+	 *            plan for comparing the two data sets
+	 * @param twoWay
+	 *            report rows of the second data set missing from the first?
+	 */
+	public IncrementalReconciler(Dataset data1, int[] compareColumns1, Dataset data2, int[] compareColumns2,
+	        ComparisonPlan plan, boolean twoWay) {
+		this.data1 = data1;
+		this.compareColumns1 = compareColumns1;
+		this.data2 = data2;
+		this.compareColumns2 = compareColumns2;
+		this.plan = plan;
+		this.twoWay = twoWay;
+		this.columnNames1 = data1.getColumnNames();
+		this.columnNames2 = data2.getColumnNames();
+	}
+
+	/**
+	 * reconcile the data sets
+	 *
+	 * @param previous
+	 *            the state of the last run, which may be empty
+	 * @param state
+	 *            an empty state, filled with how each key turned out in this run
+	 * @param listener
+	 *            told about each difference of the keys which have changed
+	 * @param deltaListener
+	 *            told about each key which is a break now or was one in the last run
+	 * @return the counts of matched and unmatched rows
+	 */
+	public ReconciliationCounts reconcile(ReconciliationState previous, ReconciliationState state,
+	        DifferenceListener listener, BreakDeltaListener deltaListener) {
+		ReconciliationCounts counts = new ReconciliationCounts();
+		long[] fingerprints1 = fingerprints(data1, compareColumns1);
+		long[] fingerprints2 = fingerprints(data2, compareColumns2);
+		boolean[] reconciled2 = new boolean[data2.size()];
+
+		for (int row1 = 0; row1 < data1.size(); row1++) {
+			CompositeKey key = data1.getKey(row1);
+			int row2 = data2.find(key);
+			int sides = ReconciliationState.IN_FIRST;
+			long print1 = fingerprints1[row1];
+			long print2 = 0;
+			if (row2 >= 0) {
+				sides |= ReconciliationState.IN_SECOND;
+				print2 = fingerprints2[row2];
+				reconciled2[row2] = true;
+			}
+
+			ReconciliationState.Entry last = previous.get(key);
+			int outcome;
+			if (last != null && last.isUnchanged(sides, print1, print2)) {
+				outcome = last.outcome;
+				unchangedKeys++;
+			} else {
+				outcome = row2 >= 0 ? compare(row1, row2, key, listener) : missingFromSecond(row1, listener);
+				comparedKeys++;
+			}
+			finish(key, sides, print1, print2, outcome, last, state, counts, deltaListener);
+		}
+
+		if (twoWay) {
+			for (int row2 = 0; row2 < data2.size(); row2++) {
+				if (reconciled2[row2])
+					continue;
+
+				CompositeKey key = data2.getKey(row2);
+				long print2 = fingerprints2[row2];
+
+				ReconciliationState.Entry last = previous.get(key);
+				int outcome;
+				if (last != null && last.isUnchanged(ReconciliationState.IN_SECOND, 0, print2)) {
+					outcome = last.outcome;
+					unchangedKeys++;
+				} else {
+					Reconciler.reportMissing(data2, row2, compareColumns2, columnNames2, false, listener);
+					outcome = ReconciliationState.MISSING_FROM_FIRST;
+					comparedKeys++;
+				}
+				finish(key, ReconciliationState.IN_SECOND, 0, print2, outcome, last, state, counts,
+				        deltaListener);
+			}
+		}
+
+		// a break whose key has gone from both sources is resolved
+		for (Map.Entry<CompositeKey, ReconciliationState.Entry> last : previous.entries().entrySet()) {
+			if (last.getValue().isBreak() && state.get(last.getKey()) == null)
+				deltaListener.delta(last.getKey(), Delta.RESOLVED);
+		}
+		return counts;
+	}
+
+	/**
+	 * @return the number of keys compared in the last reconciliation, having changed since the run before
+	 */
+	public int getComparedKeys() {
+		return comparedKeys;
+	}
+
+	/**
+	 * @return the number of keys counted as they were in the run before the last reconciliation, without comparing
+	 *         them
+	 */
+	public int getUnchangedKeys() {
+		return unchangedKeys;
+	}
+
+	/**
+	 * @return the fingerprints of the compare columns of each row, as worked out when the data set was loaded if they
+	 *         were
+	 */
+	private static long[] fingerprints(Dataset data, int[] compareColumns) {
+		long[] fingerprints = data.getFingerprints(compareColumns);
+		if (fingerprints == null) {
+			RowFingerprint fingerprint = new RowFingerprint(data, compareColumns);
+			fingerprints = new long[data.size()];
+			for (int row = 0; row < fingerprints.length; row++) {
+				fingerprints[row] = fingerprint.of(row);
+			}
+		}
+		return fingerprints;
+	}
+
+	/**
+	 * compare a row held by both sources, reporting it as missing from both in two-way mode if a column couldn't be
+	 * compared
+	 */
+	private int compare(int row1, int row2, CompositeKey key, DifferenceListener listener) {
+		int result = plan.compare(row1, row2, key, listener);
+
+		// a row is only deemed as matched if _all_ the columns match
+		int outcome =
+		        (result & ColumnComparator.DIFFERENT) == 0 ? ReconciliationState.MATCHED
+		                : ReconciliationState.DIFFERENT;
+		if ((result & ColumnComparator.UNHANDLED) != 0) {
+			outcome |= ReconciliationState.UNHANDLED;
+			if (twoWay) {
+				outcome |= ReconciliationState.MISSING_FROM_SECOND | ReconciliationState.MISSING_FROM_FIRST;
+				Reconciler.reportMissing(data1, row1, compareColumns1, columnNames1, true, listener);
+				Reconciler.reportMissing(data2, row2, compareColumns2, columnNames2, false, listener);
+			}
+		}
+		return outcome;
+	}
+
+	/**
+	 * report a row of the first source with no match in the second. In one-way mode it is still counted as matched if
+	 * it has no values worth reporting.
+	 */
+	private int missingFromSecond(int row1, DifferenceListener listener) {
+		if (!Reconciler.reportMissing(data1, row1, compareColumns1, columnNames1, true, listener) && !twoWay)
+			return ReconciliationState.MISSING_FROM_SECOND | ReconciliationState.MATCHED;
+		return ReconciliationState.MISSING_FROM_SECOND;
+	}
+
+	/**
+	 * count and keep how the key turned out, and tell the delta listener if it is or was a break
+	 */
+	private static void finish(CompositeKey key, int sides, long print1, long print2, int outcome,
+	        ReconciliationState.Entry last, ReconciliationState state, ReconciliationCounts counts,
+	        BreakDeltaListener deltaListener) {
+		if ((outcome & ReconciliationState.MATCHED) != 0)
+			counts.matched();
+		if ((outcome & ReconciliationState.DIFFERENT) != 0)
+			counts.different();
+		if ((outcome & ReconciliationState.UNHANDLED) != 0)
+			counts.unhandled();
+		if ((outcome & ReconciliationState.MISSING_FROM_SECOND) != 0)
+			counts.missingFromSecond();
+		if ((outcome & ReconciliationState.MISSING_FROM_FIRST) != 0)
+			counts.missingFromFirst();
+
+		state.put(key, sides, print1, print2, outcome);
+
+		boolean wasBreak = last != null && last.isBreak();
+		if (state.isBreak(key))
+			deltaListener.delta(key, wasBreak ? Delta.OPEN : Delta.NEW);
+		else if (wasBreak)
+			deltaListener.delta(key, Delta.RESOLVED);
+	}
+}
@@ -0,0 +1,31 @@
+package org.recxx.compare;
+
+import org.recxx.data.CompositeKey;
+
+/**
+ * Told, for each key of a {@link MultiwayReconciler} on which the sources don't all agree, how each source stands
+ */
+public interface KeyStatusListener {
+
+	/**
+	 * where a source stands on a key
+	 */
+	enum Status {
+		/** the source holds the key, and is the one the others are compared with, or that one doesn't hold it */
+		PRESENT,
+		/** the source's row matches the first source's */
+		AGREE,
+		/** the source's row differs from the first source's, or couldn't be compared with it */
+		BREAK,
+		/** the source doesn't hold the key */
+		MISSING
+	}
+
+	/**
+	 * @param key
+	 *            the key
+	 * @param statuses
+	 *            the status of each source, in order. The array is reused for the next key.
+	 */
+	void status(CompositeKey key, Status[] statuses);
+}
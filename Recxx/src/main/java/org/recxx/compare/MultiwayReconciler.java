@@ -0,0 +1,176 @@
+package org.recxx.compare;
+
+import java.util.Arrays;
+
+import org.recxx.compare.KeyStatusListener.Status;
+import org.recxx.data.CompositeKey;
+import org.recxx.data.Dataset;
+
+/**
+ * <p>
+ * Reconciles one loaded data set, the first, with any number of others in a single pass. Each row of the first is
+ * looked up by key in every other data set and compared with its match there, so a golden source checked against
+ * several downstream sources is loaded and walked once, rather than once for each of them. Each pair of the first data
+ * set and another is counted and reported to a listener of its own, exactly as a two source {@link Reconciler} would
+ * count and report it.
+ * </p>
+ *
+ * <p>
+ * As well as the differences, each key on which the sources don't all agree is given to a {@link KeyStatusListener}
+ * with the status of every source: the first source PRESENT or MISSING, and each other AGREE, BREAK or MISSING. In
+ * two-way mode the keys missing from the first source are given too, after all of its own, with each other source
+ * PRESENT or MISSING. The keys are walked on the calling thread, so none of the listeners need to be thread safe.
+ * </p>
+ */
+public class MultiwayReconciler {
+
+	private final Dataset[] data;
+
+	private final int[][] compareColumns;
+
+	private final String[][] columnNames;
+
+	private final ComparisonPlan[] plans;
+
+	private final boolean twoWay;
+
+	/**
+	 * @param data
+	 *            the data sets, the first of which every other is compared with. All but the first must be indexed.
+	 * @param compareColumns
+	 *            positions of the compare columns in each data set, in the same order in each
+	 * @param tolerancePercentage
+	 *            percentage difference tolerated between numeric values
+	 * @param smallestAbsoluteValue
+	 *            values smaller than this are treated as equal
+	 * @param twoWay
+	 *            report rows of the other data sets missing from the first?
+	 */
+	public MultiwayReconciler(Dataset[] data, int[][] compareColumns, float tolerancePercentage,
+	        float smallestAbsoluteValue, boolean twoWay) {
+		this.data = data;
+		this.compareColumns = compareColumns;
+		this.twoWay = twoWay;
+		this.columnNames = new String[data.length][];
+		this.plans = new ComparisonPlan[data.length];
+		for (int i = 0; i < data.length; i++) {
+			columnNames[i] = data[i].getColumnNames();
+			if (i > 0) {
+				plans[i] = new ComparisonPlan(data[0], compareColumns[0], data[i], compareColumns[i],
+				        tolerancePercentage, smallestAbsoluteValue);
+			}
+		}
+	}
+
+	/**
+	 * reconcile the first data set with each of the others
+	 *
+	 * @param listeners
+	 *            told about each difference between the first data set and the one at the same position. The first
+	 *            listener isn't used.
+	 * @param statusListener
+	 *            told about each key on which the data sets don't all agree
+	 * @return the counts of matched and unmatched rows between the first data set and the one at the same position.
+	 *         The first counts are always empty.
+	 */
+	public ReconciliationCounts[] reconcile(DifferenceListener[] listeners, KeyStatusListener statusListener) {
+		ReconciliationCounts[] counts = new ReconciliationCounts[data.length];
+		boolean[][] reconciled = new boolean[data.length][];
+		for (int i = 0; i < data.length; i++) {
+			counts[i] = new ReconciliationCounts();
+			reconciled[i] = new boolean[data[i].size()];
+		}
+		Status[] statuses = new Status[data.length];
+
+		for (int row = 0; row < data[0].size(); row++) {
+			CompositeKey key = data[0].getKey(row);
+			boolean agreed = true;
+			statuses[0] = Status.PRESENT;
+
+			for (int i = 1; i < data.length; i++) {
+				int match = data[i].find(key);
+
+				if (match < 0) {
+					statuses[i] = Status.MISSING;
+					agreed = false;
+					counts[i].missingFromSecond();
+					if (!Reconciler.reportMissing(data[0], row, compareColumns[0], columnNames[0], true, listeners[i])
+					        && !twoWay)
+						counts[i].matched();
+					continue;
+				}
+
+				reconciled[i][match] = true;
+				int result = plans[i].compare(row, match, key, listeners[i]);
+
+				// a row is only deemed as matched if _all_ the columns match
+				if ((result & ColumnComparator.DIFFERENT) == 0) {
+					counts[i].matched();
+					statuses[i] = Status.AGREE;
+				} else {
+					counts[i].different();
+					statuses[i] = Status.BREAK;
+				}
+				if ((result & ColumnComparator.UNHANDLED) != 0) {
+					counts[i].unhandled();
+					statuses[i] = Status.BREAK;
+					if (twoWay) {
+						// as in the two source reconciliation, a row which couldn't be compared is missing from both
+						counts[i].missingFromSecond();
+						Reconciler.reportMissing(data[0], row, compareColumns[0], columnNames[0], true, listeners[i]);
+						counts[i].missingFromFirst();
+						Reconciler.reportMissing(data[i], match, compareColumns[i], columnNames[i], false,
+						        listeners[i]);
+					}
+				}
+				agreed &= statuses[i] == Status.AGREE;
+			}
+
+			if (!agreed)
+				statusListener.status(key, statuses);
+		}
+
+		if (twoWay)
+			reportMissingFromFirst(reconciled, statuses, counts, listeners, statusListener);
+
+		return counts;
+	}
+
+	/**
+	 * report the keys of the other data sets which the first doesn't hold, each once, along with which of the other data
+	 * sets hold it. A key held by an earlier data set has already been reported with it, so is never held by a later
+	 * one.
+	 */
+	private void reportMissingFromFirst(boolean[][] reconciled, Status[] statuses, ReconciliationCounts[] counts,
+	        DifferenceListener[] listeners, KeyStatusListener statusListener) {
+		long sweepStart = System.nanoTime();
+
+		for (int i = 1; i < data.length; i++) {
+			for (int row = 0; row < data[i].size(); row++) {
+				if (reconciled[i][row])
+					continue;
+
+				CompositeKey key = data[i].getKey(row);
+				Arrays.fill(statuses, Status.MISSING);
+
+				for (int j = i; j < data.length; j++) {
+					int match = j == i ? row : data[j].find(key);
+					if (match >= 0) {
+						reconciled[j][match] = true;
+						statuses[j] = Status.PRESENT;
+						counts[j].missingFromFirst();
+						Reconciler.reportMissing(data[j], match, compareColumns[j], columnNames[j], false,
+						        listeners[j]);
+					}
+				}
+				statusListener.status(key, statuses);
+			}
+		}
+
+		// shared out between the pairs, so that the counts add up to the time taken
+		long nanos = (System.nanoTime() - sweepStart) / (data.length - 1);
+		for (int i = 1; i < data.length; i++) {
+			counts[i].missingTime(nanos);
+		}
+	}
+}
@@ -0,0 +1,341 @@
+package org.recxx.compare;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Logger;
+
+import org.recxx.data.CompositeKey;
+import org.recxx.data.Dataset;
+import org.recxx.data.RowBuffer;
+import org.recxx.data.RowCursor;
+
+/**
+ * <p>
+ * Reconciles two input sources while they are still being read, rather than waiting for both to be loaded. Each
+ * source is loaded from its cursor on a thread of its own. As soon as one of them has been read to the end it becomes
+ * the indexed side, and the other stops loading: the rows it has loaded so far are compared, then the rest of its
+ * cursor is read on the calling thread and each row is looked up in the indexed side and compared as it arrives, without
+ * being kept. The time taken is roughly that of the slower source rather than the sum of both.
+ * </p>
+ *
+ * <p>
+ * The memory held is the whole of the indexed side, which is kept until the end as only a flag is set for each of its
+ * rows as it is matched, together with the part of the other side loaded before the switch. The saving over loading
+ * both therefore depends on how much faster one source is than the other: the streamed side loads for as long as the
+ * indexed side does, so two sources read at much the same speed are both held almost in full.
+ * </p>
+ *
+ * <p>
+ * A row which arrives with no match is reported as missing straight away, and the rows of the indexed side which were
+ * never matched are reported once the other source has been read. The keys of the streamed rows with no match are
+ * kept, so that a repeat of one is warned about and discarded as a loaded source would, rather than reported again.
+ * The differences are therefore not in the order of either source, but the listener is only ever called on the calling
+ * thread. A source which aggregates rows with the same key can't be compared row by row, so it is loaded in full even
+ * if it finishes second. A failure reading either source fails the reconciliation as soon as it happens, and stops the
+ * other.
+ * </p>
+ */
+public class PipelinedReconciler {
+
+	private static final Logger LOGGER = Logger.getLogger(PipelinedReconciler.class.getName());
+
+	private final Source source1;
+
+	private final Source source2;
+
+	private final float tolerancePercentage;
+
+	private final float smallestAbsoluteValue;
+
+	private final boolean twoWay;
+
+	/**
+	 * @param cursor1
+	 *            cursor over the first source
+	 * @param compareColumns1
+	 *            positions of the compare columns in the first source
+	 * @param aggregate1
+	 *            aggregate rows of the first source with the same key?
+	 * @param cursor2
+	 *            cursor over the second source
+	 * @param compareColumns2
+	 *            positions of the matching compare columns in the second source
+	 * @param aggregate2
+	 *            aggregate rows of the second source with the same key?
+	 * @param tolerancePercentage
+	 *            percentage difference tolerated between numeric values
+	 * @param smallestAbsoluteValue
+	 *            values smaller than this are treated as equal
+	 * @param twoWay
+	 *            report rows of the second source missing from the first?
+	 */
+	public PipelinedReconciler(RowCursor cursor1, int[] compareColumns1, boolean aggregate1, RowCursor cursor2,
+	        int[] compareColumns2, boolean aggregate2, float tolerancePercentage, float smallestAbsoluteValue,
+	        boolean twoWay) {
+		this.source1 = new Source(1, cursor1, compareColumns1, aggregate1);
+		this.source2 = new Source(2, cursor2, compareColumns2, aggregate2);
+		this.tolerancePercentage = tolerancePercentage;
+		this.smallestAbsoluteValue = smallestAbsoluteValue;
+		this.twoWay = twoWay;
+	}
+
+	/**
+	 * read both sources, reconciling them as the slower one streams in
+	 *
+	 * @param listener
+	 *            told about each difference, always on the calling thread
+	 * @return the counts of matched and unmatched rows
+	 * @throws Exception
+	 *             if a source can't be read
+	 */
+	public ReconciliationCounts reconcile(DifferenceListener listener) throws Exception {
+		Source indexed;
+		Source streamed;
+
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			CompletionService<Source> loads = new ExecutorCompletionService<Source>(executor);
+			loads.submit(source1);
+			loads.submit(source2);
+
+			indexed = loads.take().get();
+			streamed = indexed == source1 ? source2 : source1;
+			if (!streamed.aggregate)
+				streamed.stop = true;
+			loads.take().get();
+		} finally {
+			source1.stop = true;
+			source2.stop = true;
+			executor.shutdownNow();
+		}
+
+		LOGGER.info("Input source " + indexed.number + " was read first, with " + indexed.data.size()
+		        + " rows - comparing input source " + streamed.number + " with it as it is read, from row "
+		        + streamed.data.size());
+
+		return new Pipeline(indexed, streamed).reconcile(listener);
+	}
+
+	/**
+	 * @return the number of distinct keys read from the first source
+	 */
+	public int getRows1() {
+		return source1.rows;
+	}
+
+	/**
+	 * @return the number of distinct keys read from the second source
+	 */
+	public int getRows2() {
+		return source2.rows;
+	}
+
+	/**
+	 * one of the sources, loaded on its own thread until it is read to the end or told to stop
+	 */
+	private static final class Source implements Callable<Source> {
+
+		private final int number;
+
+		private final RowCursor cursor;
+
+		private final int[] compareColumns;
+
+		private final boolean aggregate;
+
+		private final String[] columnNames;
+
+		private final Dataset data;
+
+		private volatile boolean stop;
+
+		private boolean exhausted;
+
+		private int rows;
+
+		Source(int number, RowCursor cursor, int[] compareColumns, boolean aggregate) {
+			this.number = number;
+			this.cursor = cursor;
+			this.compareColumns = compareColumns;
+			this.aggregate = aggregate;
+			this.columnNames = cursor.getColumnNames();
+			this.data = new Dataset(columnNames, cursor.getColumnTypes(), cursor.getKeyPositions());
+		}
+
+		/**
+		 * load the cursor until it ends or the source is told to stop, leaving the cursor on the last row loaded
+		 */
+		public Source call() throws Exception {
+			int[] aggregateColumns = data.getNonKeyPositions();
+
+			while (!stop) {
+				if (!cursor.next()) {
+					exhausted = true;
+					break;
+				}
+				CompositeKey key = cursor.getKey();
+				if (key.isEmpty()) {
+					LOGGER.warning("Null key returned - discarding row");
+					continue;
+				}
+
+				int existingRow = data.find(key);
+				if (existingRow < 0) {
+					data.add(key, cursor.getRow());
+				} else if (aggregate) {
+					if (!data.aggregate(existingRow, aggregateColumns, cursor.getRow())) {
+						throw new Exception(
+						        "Unable to aggregate data as of 1 of the columns specified for comparision is not a numeric!");
+					}
+				} else {
+					warnNotUnique(key);
+				}
+			}
+			rows = data.size();
+			return this;
+		}
+
+		void warnNotUnique(CompositeKey key) {
+			LOGGER.warning("Key of input source " + number + " is not unique (duplicate values found for " + key
+			        + ") - unless aggregation is specified, the rec wont work!");
+		}
+	}
+
+	/**
+	 * the comparison of the streamed source with the indexed one, which orients each pair of rows as first and second
+	 * source whichever side was indexed
+	 */
+	private final class Pipeline {
+
+		private final Source indexed;
+
+		private final Source streamed;
+
+		private final boolean streamedIsFirst;
+
+		// rows of the indexed side a streamed row has been matched with, and those which were reconciled
+		private final boolean[] arrived;
+
+		private final boolean[] reconciled;
+
+		// keys of the rows streamed after the switch with no match in the indexed side
+		private final Set<CompositeKey> unmatched = new HashSet<CompositeKey>();
+
+		private final ReconciliationCounts counts = new ReconciliationCounts();
+
+		Pipeline(Source indexed, Source streamed) {
+			this.indexed = indexed;
+			this.streamed = streamed;
+			this.streamedIsFirst = streamed == source1;
+			this.arrived = new boolean[indexed.data.size()];
+			this.reconciled = new boolean[indexed.data.size()];
+		}
+
+		ReconciliationCounts reconcile(DifferenceListener listener) throws Exception {
+			// the rows loaded before the switch, whose keys are already unique
+			ComparisonPlan loadedPlan = newPlan(streamed.data);
+			for (int row = 0; row < streamed.data.size(); row++) {
+				CompositeKey key = streamed.data.getKey(row);
+				arrive(loadedPlan, streamed.data, row, key, indexed.data.find(key), listener);
+			}
+
+			// then the rest of the cursor, a row at a time through a window
+			if (!streamed.exhausted) {
+				Dataset window =
+				        new Dataset(streamed.columnNames, streamed.cursor.getColumnTypes(),
+				                streamed.cursor.getKeyPositions(), false);
+				ComparisonPlan windowPlan = newPlan(window);
+
+				while (streamed.cursor.next()) {
+					CompositeKey key = streamed.cursor.getKey();
+					if (key.isEmpty()) {
+						LOGGER.warning("Null key returned - discarding row");
+						continue;
+					}
+					int match = indexed.data.find(key);
+					if (match < 0 && (streamed.data.find(key) >= 0 || !unmatched.add(key))) {
+						// a key with no match has already been reported as missing
+						streamed.warnNotUnique(key);
+						continue;
+					}
+					RowBuffer row = streamed.cursor.getRow();
+					window.clear();
+					window.add(key, row);
+					streamed.rows++;
+					arrive(windowPlan, window, 0, key, match, listener);
+				}
+			}
+
+			long sweepStart = System.nanoTime();
+			for (int row = 0; row < arrived.length; row++) {
+				if (!(twoWay ? reconciled[row] : arrived[row]))
+					missing(indexed, indexed.data, row, listener);
+			}
+			counts.missingTime(System.nanoTime() - sweepStart);
+			return counts;
+		}
+
+		/**
+		 * compare a streamed row with its match in the indexed side, or report it as missing if it has none
+		 */
+		private void arrive(ComparisonPlan plan, Dataset data, int row, CompositeKey key, int match,
+		        DifferenceListener listener) {
+			if (match >= 0 && arrived[match]) {
+				// the indexed side's keys are unique, so the streamed side's can't be
+				streamed.rows--;
+				streamed.warnNotUnique(key);
+				return;
+			}
+
+			if (match < 0) {
+				missing(streamed, data, row, listener);
+				return;
+			}
+
+			arrived[match] = true;
+			int result = streamedIsFirst ? plan.compare(row, match, key, listener) : plan.compare(match, row, key,
+			        listener);
+
+			// a row is only deemed as matched if _all_ the columns match
+			if ((result & ColumnComparator.DIFFERENT) == 0)
+				counts.matched();
+			else
+				counts.different();
+			if ((result & ColumnComparator.UNHANDLED) != 0) {
+				counts.unhandled();
+				if (twoWay)
+					missing(streamed, data, row, listener);
+			} else {
+				reconciled[match] = true;
+			}
+		}
+
+		/**
+		 * report a row of one side missing from the other, as the loaded reconciliation would
+		 */
+		private void missing(Source source, Dataset data, int row, DifferenceListener listener) {
+			if (source == source1) {
+				counts.missingFromSecond();
+				if (!Reconciler.reportMissing(data, row, source.compareColumns, source.columnNames, true, listener)
+				        && !twoWay)
+					counts.matched();
+			} else if (twoWay) {
+				counts.missingFromFirst();
+				Reconciler.reportMissing(data, row, source.compareColumns, source.columnNames, false, listener);
+			}
+		}
+
+		private ComparisonPlan newPlan(Dataset streamedData) {
+			if (streamedIsFirst)
+				return new ComparisonPlan(streamedData, streamed.compareColumns, indexed.data, indexed.compareColumns,
+				        tolerancePercentage, smallestAbsoluteValue);
+			return new ComparisonPlan(indexed.data, indexed.compareColumns, streamedData, streamed.compareColumns,
+			        tolerancePercentage, smallestAbsoluteValue);
+		}
+	}
+}
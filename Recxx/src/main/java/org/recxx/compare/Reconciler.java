@@ -0,0 +1,329 @@
+package org.recxx.compare;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import org.recxx.data.CompositeKey;
+import org.recxx.data.Dataset;
+import org.recxx.metrics.EventBatch;
+
+/**
+ * <p>
+ * Reconciles two loaded data sets: each row of the first is looked up by key in the second, matched rows are compared
+ * with a {@link ComparisonPlan}, and the values of rows missing from the other side are reported. In two-way mode the
+ * rows of the second source with no match in the first are reported too.
+ * </p>
+ *
+ * <p>
+ * The keys can be hash partitioned into a number of buckets, each reconciled on its own thread with its own counts
+ * and its own bounded {@link DifferenceBuffer}. A key always falls in the same bucket on both sides, so the buckets are
+ * independent of each other. The differences are handed to the listener bucket by bucket, in order: the bucket whose
+ * turn it is reports its differences as they are found, while the others buffer theirs, waiting for their turn once
+ * their buffer is full. Only one bucket reports at a time, so the listener never needs to be thread safe. With a
+ * single partition nothing is buffered and differences are reported in the order of the first data set, as they are
+ * found.
+ * </p>
+ *
+ * <p>
+ * While a flight recording is open, a {@link org.recxx.metrics.CompareEvent} is raised for each batch of rows of the
+ * first data set compared by a partition.
+ * </p>
+ */
+public class Reconciler {
+
+	private static final Logger LOGGER = Logger.getLogger(Reconciler.class.getName());
+
+	private static final int COMPARE_BATCH = 10000;
+
+	// most differences a partition holds while waiting for its turn to report them
+	private static final int DIFFERENCE_BUFFER = 10000;
+
+	private final Dataset data1;
+
+	private final int[] compareColumns1;
+
+	private final Dataset data2;
+
+	private final int[] compareColumns2;
+
+	private final ComparisonPlan plan;
+
+	private final boolean twoWay;
+
+	private final String[] columnNames1;
+
+	private final String[] columnNames2;
+
+	// rows of the second data set which have been reconciled, each set only by the partition owning its key
+	private boolean[] reconciled2;
+
+	/**
+	 * @param data1
+	 *            first data set
+	 * @param compareColumns1
+	 *            positions of the compare columns in the first data set
+	 * @param data2
+	 *            second data set, which must be indexed
+	 * @param compareColumns2
+	 *            positions of the matching compare columns in the second data set
+	 * @param plan
+	 *            plan for comparing the two data sets
+	 * @param twoWay
+	 *            report rows of the second data set missing from the first?
+	 */
+	public Reconciler(Dataset data1, int[] compareColumns1, Dataset data2, int[] compareColumns2,
+	        ComparisonPlan plan, boolean twoWay) {
+		this.data1 = data1;
+		this.compareColumns1 = compareColumns1;
+		this.data2 = data2;
+		this.compareColumns2 = compareColumns2;
+		this.plan = plan;
+		this.twoWay = twoWay;
+		this.columnNames1 = data1.getColumnNames();
+		this.columnNames2 = data2.getColumnNames();
+	}
+
+	/**
+	 * reconcile the data sets
+	 *
+	 * @param partitions
+	 *            number of buckets to split the keys into, each reconciled on its own thread
+	 * @param listener
+	 *            told about each difference
+	 * @return the counts of matched and unmatched rows over all the buckets
+	 * @throws InterruptedException
+	 *             if interrupted waiting for the buckets
+	 * @throws ExecutionException
+	 *             if a bucket fails
+	 */
+	public ReconciliationCounts reconcile(int partitions, DifferenceListener listener) throws InterruptedException,
+	        ExecutionException {
+		reconciled2 = twoWay ? new boolean[data2.size()] : null;
+
+		if (partitions <= 1) {
+			return new Partition(0, allRows(data1), allRows(data2)).reconcile(listener);
+		}
+
+		int[][] rows1 = partitionRows(data1, partitions);
+		int[][] rows2 = twoWay ? partitionRows(data2, partitions) : new int[partitions][0];
+
+		LOGGER.info("Reconciling in " + partitions + " partitions");
+
+		ExecutorService executor = Executors.newFixedThreadPool(partitions);
+		try {
+			DifferenceBuffer.Turns turns = new DifferenceBuffer.Turns();
+			List<Future<ReconciliationCounts>> results = new ArrayList<Future<ReconciliationCounts>>();
+			for (int p = 0; p < partitions; p++) {
+				final Partition partition = new Partition(p, rows1[p], rows2[p]);
+				final DifferenceBuffer buffer = new DifferenceBuffer(p, DIFFERENCE_BUFFER, turns, listener);
+				results.add(executor.submit(new Callable<ReconciliationCounts>() {
+					public ReconciliationCounts call() throws InterruptedException {
+						partition.reconcile(buffer);
+						buffer.finish();
+						return partition.counts;
+					}
+				}));
+			}
+
+			ReconciliationCounts counts = new ReconciliationCounts();
+			for (int p = 0; p < partitions; p++) {
+				counts.add(results.get(p).get());
+			}
+			return counts;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return the partition of a key, out of the given number
+	 */
+	static int partitionOf(CompositeKey key, int partitions) {
+		return (key.hashCode() & Integer.MAX_VALUE) % partitions;
+	}
+
+	/**
+	 * split the row ids of a data set by the partition of their keys, keeping them in order within each partition
+	 */
+	private static int[][] partitionRows(Dataset data, int partitions) {
+		int size = data.size();
+		int[] partitionOfRow = new int[size];
+		int[] sizes = new int[partitions];
+		for (int row = 0; row < size; row++) {
+			partitionOfRow[row] = partitionOf(data.getKey(row), partitions);
+			sizes[partitionOfRow[row]]++;
+		}
+
+		int[][] rows = new int[partitions][];
+		for (int p = 0; p < partitions; p++) {
+			rows[p] = new int[sizes[p]];
+			sizes[p] = 0;
+		}
+		for (int row = 0; row < size; row++) {
+			int p = partitionOfRow[row];
+			rows[p][sizes[p]++] = row;
+		}
+		return rows;
+	}
+
+	/**
+	 * for a row whose key is missing from the other source, report all the values that are actually there. Only
+	 * Double, Integer and String values are reported.
+	 *
+	 * @return true if any value was reported
+	 */
+	static boolean reportMissing(Dataset data, int row, int[] compareColumns, String[] columnNames, boolean inFirst,
+	        DifferenceListener listener) {
+		boolean reported = false;
+
+		for (int compareColumn : compareColumns) {
+			Object value = data.get(row, compareColumn);
+
+			if (value instanceof Double || value instanceof Integer || value instanceof String) {
+				listener.missing(data.getKey(row), inFirst, columnNames[compareColumn], value);
+				reported = true;
+			}
+		}
+		return reported;
+	}
+
+	private static int[] allRows(Dataset data) {
+		int[] rows = new int[data.size()];
+		for (int row = 0; row < rows.length; row++) {
+			rows[row] = row;
+		}
+		return rows;
+	}
+
+	/**
+	 * one bucket of keys, with the ids of its rows on each side
+	 */
+	private final class Partition {
+
+		private final int number;
+
+		private final int[] rows1;
+
+		private final int[] rows2;
+
+		private final ReconciliationCounts counts = new ReconciliationCounts();
+
+		Partition(int number, int[] rows1, int[] rows2) {
+			this.number = number;
+			this.rows1 = rows1;
+			this.rows2 = rows2;
+		}
+
+		ReconciliationCounts reconcile(DifferenceListener listener) {
+			if (twoWay) {
+				reconcileTwoWay(listener);
+			} else {
+				reconcileOneWay(listener);
+			}
+			return counts;
+		}
+
+		/**
+		 * compare every row of the first source with its match in the second, then report the rows on each side which
+		 * weren't reconciled. A matched row with a column that couldn't be compared is reported as missing too.
+		 */
+		private void reconcileTwoWay(DifferenceListener listener) {
+			boolean[] reconciled1 = new boolean[rows1.length];
+			EventBatch batch = beginBatch();
+
+			for (int i = 0; i < rows1.length; i++) {
+				int row1 = rows1[i];
+				CompositeKey key = data1.getKey(row1);
+				int row2 = data2.find(key);
+
+				if (row2 >= 0) {
+					int result = compare(row1, row2, key, listener);
+
+					if ((result & ColumnComparator.UNHANDLED) == 0) {
+						reconciled1[i] = true;
+						reconciled2[row2] = true;
+					}
+					if ((result & ColumnComparator.DIFFERENT) != 0)
+						batch.differentRows++;
+				}
+				if (++batch.rows == COMPARE_BATCH) {
+					commitBatch(batch);
+					batch = beginBatch();
+				}
+			}
+			commitBatch(batch);
+
+			long sweepStart = System.nanoTime();
+			for (int i = 0; i < rows1.length; i++) {
+				if (!reconciled1[i]) {
+					counts.missingFromSecond();
+					reportMissing(data1, rows1[i], compareColumns1, columnNames1, true, listener);
+				}
+			}
+			for (int row2 : rows2) {
+				if (!reconciled2[row2]) {
+					counts.missingFromFirst();
+					reportMissing(data2, row2, compareColumns2, columnNames2, false, listener);
+				}
+			}
+			counts.missingTime(System.nanoTime() - sweepStart);
+		}
+
+		/**
+		 * compare every row of the first source with its match in the second, reporting the rows with no match as they
+		 * are found. A row with no match is still counted as matched if it has no values worth reporting.
+		 */
+		private void reconcileOneWay(DifferenceListener listener) {
+			EventBatch batch = beginBatch();
+
+			for (int row1 : rows1) {
+				CompositeKey key = data1.getKey(row1);
+				int row2 = data2.find(key);
+
+				if (row2 >= 0) {
+					if ((compare(row1, row2, key, listener) & ColumnComparator.DIFFERENT) != 0)
+						batch.differentRows++;
+				} else {
+					counts.missingFromSecond();
+					if (!reportMissing(data1, row1, compareColumns1, columnNames1, true, listener))
+						counts.matched();
+				}
+				if (++batch.rows == COMPARE_BATCH) {
+					commitBatch(batch);
+					batch = beginBatch();
+				}
+			}
+			commitBatch(batch);
+		}
+
+		private EventBatch beginBatch() {
+			return EventBatch.begin(EventBatch.Kind.COMPARE);
+		}
+
+		private void commitBatch(EventBatch batch) {
+			if (batch.rows > 0 && batch.isRecorded()) {
+				batch.partition = number;
+				batch.commit();
+			}
+		}
+
+		private int compare(int row1, int row2, CompositeKey key, DifferenceListener listener) {
+			int result = plan.compare(row1, row2, key, listener);
+
+			// a row is only deemed as matched if _all_ the columns match
+			if ((result & ColumnComparator.DIFFERENT) == 0)
+				counts.matched();
+			else
+				counts.different();
+			if ((result & ColumnComparator.UNHANDLED) != 0)
+				counts.unhandled();
+			return result;
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package org.recxx.compare;
+
+/**
+ * Counts of how the rows of a reconciliation, or of one partition of it, turned out
+ */
+public class ReconciliationCounts {
+
+	private int matchedRows;
+
+	private int differentRows;
+
+	private int unhandledRows;
+
+	private int missingFromSecond;
+
+	private int missingFromFirst;
+
+	private long missingNanos;
+
+	/**
+	 * @return rows of the first source deemed as matched, which is what the summary reports
+	 */
+	public int getMatchedRows() {
+		return matchedRows;
+	}
+
+	/**
+	 * @return matched keys with at least one column that differed
+	 */
+	public int getDifferentRows() {
+		return differentRows;
+	}
+
+	/**
+	 * @return matched keys with a column that couldn't be compared
+	 */
+	public int getUnhandledRows() {
+		return unhandledRows;
+	}
+
+	/**
+	 * @return rows of the first source with no match in the second
+	 */
+	public int getMissingFromSecond() {
+		return missingFromSecond;
+	}
+
+	/**
+	 * @return rows of the second source with no match in the first
+	 */
+	public int getMissingFromFirst() {
+		return missingFromFirst;
+	}
+
+	/**
+	 * @return nanoseconds spent reporting the unreconciled rows of a two-way reconciliation once the matched rows had
+	 *         been compared, summed over the partitions
+	 */
+	public long getMissingNanos() {
+		return missingNanos;
+	}
+
+	void matched() {
+		matchedRows++;
+	}
+
+	void different() {
+		differentRows++;
+	}
+
+	void unhandled() {
+		unhandledRows++;
+	}
+
+	void missingFromSecond() {
+		missingFromSecond++;
+	}
+
+	void missingFromFirst() {
+		missingFromFirst++;
+	}
+
+	void missingTime(long nanos) {
+		missingNanos += nanos;
+	}
+
+	/**
+	 * add the counts of another partition to these
+	 *
+	 * @param other
+	 *            counts to add
+	 */
+	public void add(ReconciliationCounts other) {
+		matchedRows += other.matchedRows;
+		differentRows += other.differentRows;
+		unhandledRows += other.unhandledRows;
+		missingFromSecond += other.missingFromSecond;
+		missingFromFirst += other.missingFromFirst;
+		missingNanos += other.missingNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "matched=" + matchedRows + ", different=" + differentRows + ", unhandled=" + unhandledRows
+		        + ", missingFromSecond=" + missingFromSecond + ", missingFromFirst=" + missingFromFirst;
+	}
+}
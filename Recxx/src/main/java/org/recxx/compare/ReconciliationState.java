@@ -0,0 +1,193 @@
+package org.recxx.compare;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.recxx.data.CompositeKey;
+import org.recxx.data.TaggedFile;
+
+/**
+ * <p>
+ * How each key of a reconciliation turned out, kept between runs by an {@link IncrementalReconciler}: which sources
+ * held the key, the fingerprint of its compare columns in each, and how it was counted. A key whose fingerprints are
+ * the same in the next run turns out the same way, so needn't be compared again.
+ * </p>
+ *
+ * <p>
+ * The state is a {@link TaggedFile}, tagged with a description of how the reconciliation was run, such as its key,
+ * compare columns and tolerance. A state with a different tag, or a file which isn't a state, is read back empty, so
+ * every key is compared again.
+ * </p>
+ */
+public final class ReconciliationState {
+
+	/** the key was in the first source */
+	static final int IN_FIRST = 1;
+
+	/** the key was in the second source */
+	static final int IN_SECOND = 2;
+
+	/** the key was counted as matched */
+	static final int MATCHED = 1;
+
+	/** the key was counted as different */
+	static final int DIFFERENT = 2;
+
+	/** the key was counted as unhandled */
+	static final int UNHANDLED = 4;
+
+	/** the key was counted as missing from the second source */
+	static final int MISSING_FROM_SECOND = 8;
+
+	/** the key was counted as missing from the first source */
+	static final int MISSING_FROM_FIRST = 16;
+
+	// "RCST"
+	private static final int MAGIC = 0x52435354;
+
+	// 2 holds the whole doubles of each key
+	private static final int VERSION = 2;
+
+	private final String tag;
+
+	private final Map<CompositeKey, Entry> entries = new LinkedHashMap<CompositeKey, Entry>();
+
+	/**
+	 * @param tag
+	 *            description of how the reconciliation is run
+	 */
+	public ReconciliationState(String tag) {
+		this.tag = tag;
+	}
+
+	/**
+	 * @return the tag
+	 */
+	public String getTag() {
+		return tag;
+	}
+
+	/**
+	 * @return the number of keys
+	 */
+	public int size() {
+		return entries.size();
+	}
+
+	Entry get(CompositeKey key) {
+		return entries.get(key);
+	}
+
+	void put(CompositeKey key, int sides, long fingerprint1, long fingerprint2, int outcome) {
+		entries.put(key, new Entry(sides, fingerprint1, fingerprint2, outcome));
+	}
+
+	Map<CompositeKey, Entry> entries() {
+		return entries;
+	}
+
+	/**
+	 * @param key
+	 *            key
+	 * @return true if the key was a break: not matched, or matched with a column that couldn't be compared
+	 */
+	public boolean isBreak(CompositeKey key) {
+		Entry entry = entries.get(key);
+		return entry != null && entry.isBreak();
+	}
+
+	/**
+	 * read the state of the last run
+	 *
+	 * @param file
+	 *            the state
+	 * @param tag
+	 *            description of how the reconciliation is run now
+	 * @return the state, which is empty if there isn't one or it has a different tag
+	 * @throws IOException
+	 *             if the state can't be read
+	 */
+	public static ReconciliationState read(File file, String tag) throws IOException {
+		ReconciliationState state = new ReconciliationState(tag);
+		TaggedFile tagged = new TaggedFile(file, MAGIC, VERSION, tag, "reconciliation state");
+		DataInputStream in = tagged.open();
+		if (in == null) {
+			return state;
+		}
+
+		try {
+			int keys = in.readInt();
+			for (int i = 0; i < keys; i++) {
+				CompositeKey key = CompositeKey.readFrom(in);
+				int sides = in.readUnsignedByte();
+				int outcome = in.readUnsignedByte();
+				state.put(key, sides, in.readLong(), in.readLong(), outcome);
+			}
+			return state;
+		} catch (EOFException e) {
+			throw tagged.truncated(e);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * write the state, replacing any state already there
+	 *
+	 * @param file
+	 *            the state
+	 * @throws IOException
+	 *             if the state can't be written
+	 */
+	public void write(File file) throws IOException {
+		new TaggedFile(file, MAGIC, VERSION, tag, "reconciliation state").write(new TaggedFile.Contents() {
+			public void writeTo(DataOutputStream out) throws IOException {
+				out.writeInt(entries.size());
+				for (Map.Entry<CompositeKey, Entry> entry : entries.entrySet()) {
+					entry.getKey().writeTo(out);
+					out.writeByte(entry.getValue().sides);
+					out.writeByte(entry.getValue().outcome);
+					out.writeLong(entry.getValue().fingerprint1);
+					out.writeLong(entry.getValue().fingerprint2);
+				}
+			}
+		});
+	}
+
+	/**
+	 * how one key turned out
+	 */
+	static final class Entry {
+
+		final int sides;
+
+		final long fingerprint1;
+
+		final long fingerprint2;
+
+		final int outcome;
+
+		Entry(int sides, long fingerprint1, long fingerprint2, int outcome) {
+			this.sides = sides;
+			this.fingerprint1 = fingerprint1;
+			this.fingerprint2 = fingerprint2;
+			this.outcome = outcome;
+		}
+
+		/**
+		 * @return true if the key is held by the same sources with the same fingerprints
+		 */
+		boolean isUnchanged(int sides, long fingerprint1, long fingerprint2) {
+			return this.sides == sides && this.fingerprint1 == fingerprint1 && this.fingerprint2 == fingerprint2;
+		}
+
+		boolean isBreak() {
+			return (outcome & MATCHED) == 0 || (outcome & UNHANDLED) != 0;
+		}
+	}
+}
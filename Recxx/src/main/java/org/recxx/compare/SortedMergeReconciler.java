@@ -0,0 +1,232 @@
+package org.recxx.compare;
+
+import java.util.logging.Logger;
+
+import org.recxx.data.CompositeKey;
+import org.recxx.data.Dataset;
+import org.recxx.data.RowCursor;
+
+/**
+ * <p>
+ * Reconciles two input sources which are both sorted by key, without loading either of them. A cursor is read over
+ * each source and the current rows of the two are merged, as in the merge step of a merge sort: if the keys are equal
+ * the rows are compared, otherwise the row with the lower key is missing from the other source and that side moves
+ * on. Differences are reported as they are found, so memory use doesn't grow with the size of the inputs.
+ * </p>
+ *
+ * <p>
+ * Consecutive rows with the same key are aggregated, if asked to, or else all but the first are discarded with a
+ * warning, as they are when a source is loaded. A key lower than the one before it means the source isn't sorted, and
+ * fails the reconciliation rather than reporting every row after it as missing. Keys are ordered as
+ * {@link CompositeKey#compareTo(CompositeKey)} orders them, which for a single String key is the order of
+ * String.compareTo(), and for a numeric key the order of its value.
+ * </p>
+ *
+ * <p>
+ * Reconciliation is always two way: rows of either source with no match in the other are reported.
+ * </p>
+ */
+public class SortedMergeReconciler {
+
+	private static final Logger LOGGER = Logger.getLogger(SortedMergeReconciler.class.getName());
+
+	private final SortedSource source1;
+
+	private final SortedSource source2;
+
+	private final ComparisonPlan plan;
+
+	/**
+	 * @param cursor1
+	 *            cursor over the first source
+	 * @param compareColumns1
+	 *            positions of the compare columns in the first source
+	 * @param aggregate1
+	 *            aggregate rows of the first source with the same key?
+	 * @param cursor2
+	 *            cursor over the second source
+	 * @param compareColumns2
+	 *            positions of the matching compare columns in the second source
+	 * @param aggregate2
+	 *            aggregate rows of the second source with the same key?
+	 * @param tolerancePercentage
+	 *            percentage difference tolerated between numeric values
+	 * @param smallestAbsoluteValue
+	 *            values smaller than this are treated as equal
+	 */
+	public SortedMergeReconciler(RowCursor cursor1, int[] compareColumns1, boolean aggregate1, RowCursor cursor2,
+	        int[] compareColumns2, boolean aggregate2, float tolerancePercentage, float smallestAbsoluteValue) {
+		this.source1 = new SortedSource(1, cursor1, compareColumns1, aggregate1);
+		this.source2 = new SortedSource(2, cursor2, compareColumns2, aggregate2);
+		this.plan = new ComparisonPlan(source1.window, compareColumns1, source2.window, compareColumns2,
+		        tolerancePercentage, smallestAbsoluteValue);
+	}
+
+	/**
+	 * merge the two sources to the end, reporting each difference to the listener as it is found
+	 *
+	 * @param listener
+	 *            told about each difference
+	 * @return the counts of matched and unmatched rows
+	 * @throws Exception
+	 *             if a source can't be read or isn't sorted by key
+	 */
+	public ReconciliationCounts reconcile(DifferenceListener listener) throws Exception {
+		ReconciliationCounts counts = new ReconciliationCounts();
+		boolean more1 = source1.advance();
+		boolean more2 = source2.advance();
+
+		while (more1 || more2) {
+			int order;
+			if (!more1) {
+				order = 1;
+			} else if (!more2) {
+				order = -1;
+			} else {
+				order = source1.key.compareTo(source2.key);
+			}
+
+			if (order == 0) {
+				int result = plan.compare(0, 0, source1.key, listener);
+
+				// a row is only deemed as matched if _all_ the columns match
+				if ((result & ColumnComparator.DIFFERENT) == 0)
+					counts.matched();
+				else
+					counts.different();
+
+				if ((result & ColumnComparator.UNHANDLED) != 0) {
+					// as in the loaded two way reconciliation, a row which couldn't be compared is missing from both
+					counts.unhandled();
+					counts.missingFromSecond();
+					source1.reportMissing(true, listener);
+					counts.missingFromFirst();
+					source2.reportMissing(false, listener);
+				}
+				more1 = source1.advance();
+				more2 = source2.advance();
+			} else if (order < 0) {
+				counts.missingFromSecond();
+				source1.reportMissing(true, listener);
+				more1 = source1.advance();
+			} else {
+				counts.missingFromFirst();
+				source2.reportMissing(false, listener);
+				more2 = source2.advance();
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * @return the number of distinct keys read from the first source
+	 */
+	public int getRows1() {
+		return source1.rows;
+	}
+
+	/**
+	 * @return the number of distinct keys read from the second source
+	 */
+	public int getRows2() {
+		return source2.rows;
+	}
+
+	/**
+	 * one of the sources, with a window holding the row for its current key. The window is a one row data set, so the
+	 * comparison plan can be bound to it once and used for every key.
+	 */
+	private static final class SortedSource {
+
+		private final int number;
+
+		private final RowCursor cursor;
+
+		private final int[] compareColumns;
+
+		private final boolean aggregate;
+
+		private final int[] aggregateColumns;
+
+		private final String[] columnNames;
+
+		private final Dataset window;
+
+		// the cursor has been moved on to a row which isn't in the window yet
+		private boolean pending;
+
+		private boolean started;
+
+		private CompositeKey key;
+
+		private int rows;
+
+		SortedSource(int number, RowCursor cursor, int[] compareColumns, boolean aggregate) {
+			this.number = number;
+			this.cursor = cursor;
+			this.compareColumns = compareColumns;
+			this.aggregate = aggregate;
+			this.columnNames = cursor.getColumnNames();
+			this.window = new Dataset(columnNames, cursor.getColumnTypes(), cursor.getKeyPositions(), false);
+			this.aggregateColumns = window.getNonKeyPositions();
+		}
+
+		/**
+		 * fill the window with the row for the next key, aggregating or discarding any more rows with the same key
+		 *
+		 * @return false once the source has no more rows
+		 */
+		boolean advance() throws Exception {
+			if (!started) {
+				pending = nextRow();
+				started = true;
+			}
+			window.clear();
+			if (!pending) {
+				key = null;
+				return false;
+			}
+
+			key = cursor.getKey();
+			window.add(key, cursor.getRow());
+			rows++;
+
+			while ((pending = nextRow())) {
+				CompositeKey next = cursor.getKey();
+				int order = next.compareTo(key);
+				if (order > 0) {
+					break;
+				} else if (order < 0) {
+					throw new Exception("Input source " + number + " is not sorted by key: " + next + " follows "
+					        + key);
+				} else if (aggregate) {
+					if (!window.aggregate(0, aggregateColumns, cursor.getRow())) {
+						throw new Exception(
+						        "Unable to aggregate data as of 1 of the columns specified for comparision is not a numeric!");
+					}
+				} else {
+					LOGGER.warning("Key of input source " + number + " is not unique (duplicate values found for "
+					        + key + ") - unless aggregation is specified, the rec wont work!");
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * move the cursor on to the next row with a key, discarding any without one
+		 */
+		private boolean nextRow() throws Exception {
+			while (cursor.next()) {
+				if (!cursor.getKey().isEmpty()) {
+					return true;
+				}
+				LOGGER.warning("Null key returned - discarding row");
+			}
+			return false;
+		}
+
+		void reportMissing(boolean inFirst, DifferenceListener listener) {
+			Reconciler.reportMissing(window, 0, compareColumns, columnNames, inFirst, listener);
+		}
+	}
+}
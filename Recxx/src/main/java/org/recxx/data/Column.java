@@ -0,0 +1,131 @@
+package org.recxx.data;
+
+import java.util.Arrays;
+
+/**
+ * A single column of a {@link Dataset}, holding one value for each row. Sub classes keep their values in a primitive
+ * array where they can; whether a row is null is kept separately in a bitmap, which is only allocated once the first
+ * null is set.
+ */
+public abstract class Column {
+
+	private long[] nulls;
+
+	/**
+	 * @return the type of values held by this column
+	 */
+	public abstract ColumnType getType();
+
+	/**
+	 * @param row
+	 *            row id
+	 * @return the value of the row as an object, or null
+	 */
+	public abstract Object get(int row);
+
+	/**
+	 * set the value of a row from an object of the column's type
+	 *
+	 * @param row
+	 *            row id
+	 * @param value
+	 *            value, which may be null
+	 */
+	public abstract void set(int row, Object value);
+
+	/**
+	 * set the value of a row from a slot of a row buffer
+	 *
+	 * @param row
+	 *            row id
+	 * @param buffer
+	 *            buffer holding the value
+	 * @param index
+	 *            slot of the buffer
+	 */
+	abstract void set(int row, RowBuffer buffer, int index);
+
+	/**
+	 * copy the value of a row into a slot of a row buffer
+	 *
+	 * @param row
+	 *            row id
+	 * @param buffer
+	 *            buffer to copy into
+	 * @param index
+	 *            slot of the buffer
+	 */
+	abstract void copyTo(int row, RowBuffer buffer, int index);
+
+	/**
+	 * copy the values of some of the rows of another column of the same type into consecutive rows of this one
+	 *
+	 * @param from
+	 *            column to copy from
+	 * @param rows
+	 *            row ids of the values to copy, in order
+	 * @param count
+	 *            number of row ids
+	 * @param to
+	 *            row id of the first value copied
+	 */
+	abstract void copyRows(Column from, int[] rows, int count, int to);
+
+	/**
+	 * make room for at least the given number of rows
+	 *
+	 * @param capacity
+	 *            number of rows
+	 */
+	abstract void ensureCapacity(int capacity);
+
+	/**
+	 * @return approximate number of bytes used by the column's values
+	 */
+	abstract long estimatedBytes();
+
+	/**
+	 * forget every row, keeping the arrays already allocated for reuse
+	 */
+	void clear() {
+		nulls = null;
+	}
+
+	public boolean isNull(int row) {
+		int word = row >>> 6;
+		return nulls != null && word < nulls.length && (nulls[word] & (1L << row)) != 0;
+	}
+
+	protected void setNull(int row, boolean isNull) {
+		int word = row >>> 6;
+		if (isNull) {
+			if (nulls == null) {
+				nulls = new long[word + 1];
+			} else if (word >= nulls.length) {
+				nulls = Arrays.copyOf(nulls, Math.max(word + 1, nulls.length * 2));
+			}
+			nulls[word] |= 1L << row;
+		} else if (nulls != null && word < nulls.length) {
+			nulls[word] &= ~(1L << row);
+		}
+	}
+
+	/**
+	 * copy whether each of some of the rows of another column is null into consecutive rows of this one
+	 */
+	protected void copyNulls(Column from, int[] rows, int count, int to) {
+		if (from.nulls != null || nulls != null) {
+			for (int i = 0; i < count; i++) {
+				setNull(to + i, from.isNull(rows[i]));
+			}
+		}
+	}
+
+	protected long nullBytes() {
+		return nulls == null ? 0 : nulls.length * 8L;
+	}
+
+	static int grow(int current, int capacity) {
+		return Math.max(capacity, current + (current >> 1) + 16);
+	}
+}
@@ -0,0 +1,36 @@
+package org.recxx.data;
+
+/**
+ * The storage used for a column of a {@link Dataset}, chosen from the java class name given for the column in the
+ * properties file (columnDataTypes) or by the ResultSetMetaData.
+ */
+public enum ColumnType {
+
+	DOUBLE, INTEGER, LONG, STRING, DATE, DECIMAL, BOOLEAN, OBJECT;
+
+	/**
+	 * @param className
+	 *            java class name of the column's values, such as java.lang.Double
+	 * @return the column type to store values of that class in. BigDecimals and Booleans are kept as objects, but with
+	 *         their own types so that they can be compared without checking each value's class. Anything else is an
+	 *         OBJECT.
+	 */
+	public static ColumnType forClassName(String className) {
+		if ("java.lang.Double".equals(className)) {
+			return DOUBLE;
+		} else if ("java.lang.Integer".equals(className)) {
+			return INTEGER;
+		} else if ("java.lang.Long".equals(className)) {
+			return LONG;
+		} else if ("java.lang.String".equals(className)) {
+			return STRING;
+		} else if ("java.util.Date".equals(className)) {
+			return DATE;
+		} else if ("java.math.BigDecimal".equals(className)) {
+			return DECIMAL;
+		} else if ("java.lang.Boolean".equals(className)) {
+			return BOOLEAN;
+		}
+		return OBJECT;
+	}
+}
@@ -0,0 +1,606 @@
+package org.recxx.data;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * <p>
+ * The key of a row, made up of the values of its key columns packed into a single byte array with a precomputed hash.
+ * It replaces keys built by concatenating the toString() of each key column, which cost a dozen or so objects a row,
+ * needed splitting up again to write a difference and matched "1" against "1.0" only by accident of formatting.
+ * </p>
+ *
+ * <p>
+ * Each part is written as a one byte tag followed by its value:
+ * <ul>
+ * <li>whole numbers of any type (Integer, Long, BigDecimal, Double etc) as a zig-zag variable length long, so that 1,
+ * 1L, 1.0 and BigDecimal("1.00") are all the same key</li>
+ * <li>BigDecimals which are exactly a double as the bits of the double, so that BigDecimal("1.25") and 1.25 are the
+ * same key, and any other BigDecimal exactly, as its scale and unscaled value</li>
+ * <li>other numbers as the bits of their double value</li>
+ * <li>dates as variable length epoch millis</li>
+ * <li>Strings as their length followed by one byte a char if they are pure ASCII, otherwise two</li>
+ * <li>booleans and nulls as just the tag</li>
+ * </ul>
+ * Equality is therefore type-aware - numbers equal numbers of the same value, Strings equal Strings - and a String key
+ * column will not match a numeric one. Which parts were whole Doubles or Floats is kept alongside the bytes, though
+ * not compared, so that those parts are still handed back as Doubles and render as "1.0" rather than "1".
+ * </p>
+ *
+ * <p>
+ * Keys are ordered part by part, for merging inputs sorted by key: nulls first, then numbers by value, Strings as
+ * String.compareTo() would order them, dates, and booleans last.
+ * </p>
+ *
+ * <p>
+ * Keys are made with a {@link Builder}, which can be reused from row to row.
+ * </p>
+ */
+public final class CompositeKey implements Comparable<CompositeKey> {
+
+	static final byte NULL = 0;
+
+	static final byte LONG = 1;
+
+	static final byte DOUBLE = 2;
+
+	static final byte ASCII = 3;
+
+	static final byte CHARS = 4;
+
+	static final byte DATE = 5;
+
+	static final byte FALSE = 6;
+
+	static final byte TRUE = 7;
+
+	static final byte DECIMAL = 8;
+
+	private static final double MAX_EXACT_LONG = 1L << 53;
+
+	private final byte[] bytes;
+
+	private final int parts;
+
+	private final int hash;
+
+	// a bit for each of the first 64 parts which was a whole double, so is encoded as a long but handed back as a double
+	private final long wholeDoubles;
+
+	CompositeKey(byte[] bytes, int parts, long wholeDoubles) {
+		this.bytes = bytes;
+		this.parts = parts;
+		this.hash = hash(bytes, bytes.length);
+		this.wholeDoubles = wholeDoubles;
+	}
+
+	/**
+	 * @return the number of key columns making up the key
+	 */
+	public int size() {
+		return parts;
+	}
+
+	/**
+	 * @return true if every part of the key is null, in which case the row it came from can't be reconciled
+	 */
+	public boolean isEmpty() {
+		for (byte b : bytes) {
+			if (b != NULL) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param part
+	 *            index of the key column
+	 * @return the value of the key column as an object - a Long, Double, BigDecimal, String, Date, Boolean or null
+	 */
+	public Object get(int part) {
+		Decoder decoder = new Decoder(bytes);
+		decoder.skip(part);
+		return asAdded(part, decoder.next());
+	}
+
+	/**
+	 * @param part
+	 *            index of the key column
+	 * @return the value of the key column rendered as a String, or null if it is null
+	 */
+	public String getString(int part) {
+		Object value = get(part);
+		return value == null ? null : value.toString();
+	}
+
+	/**
+	 * @return every key column rendered as a String, ready to be written out as separate columns
+	 */
+	public String[] toStrings() {
+		String[] strings = new String[parts];
+		Decoder decoder = new Decoder(bytes);
+		for (int i = 0; i < parts; i++) {
+			Object value = asAdded(i, decoder.next());
+			strings[i] = value == null ? null : value.toString();
+		}
+		return strings;
+	}
+
+	/**
+	 * @return a rough count of the bytes held by the key, including its byte array
+	 */
+	public long estimatedBytes() {
+		return 32 + ((16 + bytes.length + 7) & ~7);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof CompositeKey)) {
+			return false;
+		}
+		CompositeKey other = (CompositeKey) obj;
+		return hash == other.hash && Arrays.equals(bytes, other.bytes);
+	}
+
+	/**
+	 * compare the keys part by part, without decoding any part into an object
+	 */
+	public int compareTo(CompositeKey other) {
+		if (this == other) {
+			return 0;
+		}
+		Decoder left = new Decoder(bytes);
+		Decoder right = new Decoder(other.bytes);
+		int common = Math.min(parts, other.parts);
+		for (int i = 0; i < common; i++) {
+			int order = left.comparePart(right);
+			if (order != 0) {
+				return order;
+			}
+		}
+		return parts - other.parts;
+	}
+
+	/**
+	 * write the key in its packed form, to be read back by {@link #readFrom(DataInput)}
+	 */
+	public void writeTo(DataOutput out) throws IOException {
+		RowCodec.writeVarInt(out, parts);
+		RowCodec.writeVarLong(out, wholeDoubles);
+		RowCodec.writeVarInt(out, bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * read a key written by {@link #writeTo(DataOutput)}
+	 */
+	public static CompositeKey readFrom(DataInput in) throws IOException {
+		int parts = RowCodec.readVarInt(in);
+		long wholeDoubles = RowCodec.readVarLong(in);
+		byte[] bytes = new byte[RowCodec.readVarInt(in)];
+		in.readFully(bytes);
+		return new CompositeKey(bytes, parts, wholeDoubles);
+	}
+
+	/**
+	 * @return a decoded part as the type it was added as, which for a whole double is a Double rather than a Long
+	 */
+	private Object asAdded(int part, Object value) {
+		if (value instanceof Long && part < 64 && (wholeDoubles & (1L << part)) != 0) {
+			return Double.valueOf((Long) value);
+		}
+		return value;
+	}
+
+	/**
+	 * @return the key columns separated by '+'
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		String[] strings = toStrings();
+		for (int i = 0; i < strings.length; i++) {
+			if (i > 0) {
+				sb.append('+');
+			}
+			sb.append(strings[i]);
+		}
+		return sb.toString();
+	}
+
+	private static int hash(byte[] bytes, int length) {
+		// FNV-1a, finished with the murmur3 mix so the low bits used by hash tables are well spread
+		int h = 0x811c9dc5;
+		for (int i = 0; i < length; i++) {
+			h = (h ^ bytes[i]) * 0x01000193;
+		}
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		h *= 0xc2b2ae35;
+		h ^= h >>> 16;
+		return h;
+	}
+
+	/**
+	 * Builds CompositeKeys a part at a time into a reusable buffer. A builder isn't thread safe, so every thread
+	 * generating keys needs its own.
+	 */
+	public static final class Builder {
+
+		private byte[] buffer = new byte[64];
+
+		private int length;
+
+		private int parts;
+
+		private long wholeDoubles;
+
+		/**
+		 * start a new key
+		 *
+		 * @return this builder
+		 */
+		public Builder reset() {
+			length = 0;
+			parts = 0;
+			wholeDoubles = 0;
+			return this;
+		}
+
+		/**
+		 * add a key column value of any type
+		 *
+		 * @param value
+		 *            the value, which may be null
+		 * @return this builder
+		 */
+		public Builder add(Object value) {
+			if (value == null) {
+				return addNull();
+			} else if (value instanceof String) {
+				return addString((String) value);
+			} else if (value instanceof Integer || value instanceof Long || value instanceof Short
+			        || value instanceof Byte) {
+				return addLong(((Number) value).longValue());
+			} else if (value instanceof Double) {
+				return addDouble((Double) value);
+			} else if (value instanceof Float) {
+				// use the value as it reads, rather than its widened binary value
+				return addDouble(Double.parseDouble(value.toString()));
+			} else if (value instanceof BigDecimal) {
+				return addBigDecimal((BigDecimal) value);
+			} else if (value instanceof BigInteger) {
+				BigInteger bigInteger = (BigInteger) value;
+				return bigInteger.bitLength() < 64 ? addLong(bigInteger.longValue()) : addString(value.toString());
+			} else if (value instanceof Date) {
+				return addDate(((Date) value).getTime());
+			} else if (value instanceof Boolean) {
+				return addBoolean((Boolean) value);
+			}
+			return addString(value.toString());
+		}
+
+		public Builder addNull() {
+			ensureCapacity(1);
+			buffer[length++] = NULL;
+			parts++;
+			return this;
+		}
+
+		public Builder addLong(long value) {
+			ensureCapacity(11);
+			buffer[length++] = LONG;
+			writeVarLong((value << 1) ^ (value >> 63));
+			parts++;
+			return this;
+		}
+
+		public Builder addDouble(double value) {
+			if (value == Math.rint(value) && Math.abs(value) < MAX_EXACT_LONG) {
+				if (parts < 64) {
+					wholeDoubles |= 1L << parts;
+				}
+				return addLong((long) value);
+			}
+			ensureCapacity(9);
+			buffer[length++] = DOUBLE;
+			long bits = Double.doubleToLongBits(value);
+			for (int shift = 56; shift >= 0; shift -= 8) {
+				buffer[length++] = (byte) (bits >>> shift);
+			}
+			parts++;
+			return this;
+		}
+
+		public Builder addBigDecimal(BigDecimal value) {
+			if (value.signum() == 0 || value.scale() <= 0 || value.stripTrailingZeros().scale() <= 0) {
+				try {
+					return addLong(value.longValueExact());
+				} catch (ArithmeticException ae) {
+					return addString(value.toPlainString());
+				}
+			}
+			double asDouble = value.doubleValue();
+			if (!Double.isInfinite(asDouble) && new BigDecimal(asDouble).compareTo(value) == 0) {
+				return addDouble(asDouble);
+			}
+
+			// not exactly a double, so kept exactly rather than rounded into one that another decimal might share
+			BigDecimal stripped = value.stripTrailingZeros();
+			byte[] unscaled = stripped.unscaledValue().toByteArray();
+			ensureCapacity(11 + 5 + unscaled.length);
+			buffer[length++] = DECIMAL;
+			int scale = stripped.scale();
+			writeVarLong((scale << 1) ^ (scale >> 31));
+			writeVarLong(unscaled.length);
+			System.arraycopy(unscaled, 0, buffer, length, unscaled.length);
+			length += unscaled.length;
+			parts++;
+			return this;
+		}
+
+		public Builder addDate(long millis) {
+			ensureCapacity(11);
+			buffer[length++] = DATE;
+			writeVarLong((millis << 1) ^ (millis >> 63));
+			parts++;
+			return this;
+		}
+
+		public Builder addBoolean(boolean value) {
+			ensureCapacity(1);
+			buffer[length++] = value ? TRUE : FALSE;
+			parts++;
+			return this;
+		}
+
+		public Builder addString(String value) {
+			int chars = value.length();
+			boolean ascii = true;
+			for (int i = 0; i < chars && ascii; i++) {
+				ascii = value.charAt(i) < 0x80;
+			}
+			ensureCapacity(6 + (ascii ? chars : chars * 2));
+			buffer[length++] = ascii ? ASCII : CHARS;
+			writeVarLong(chars);
+			for (int i = 0; i < chars; i++) {
+				char c = value.charAt(i);
+				if (!ascii) {
+					buffer[length++] = (byte) (c >>> 8);
+				}
+				buffer[length++] = (byte) c;
+			}
+			parts++;
+			return this;
+		}
+
+		/**
+		 * @return a key made of the parts added since the last reset
+		 */
+		public CompositeKey build() {
+			return new CompositeKey(Arrays.copyOf(buffer, length), parts, wholeDoubles);
+		}
+
+		private void writeVarLong(long value) {
+			while ((value & ~0x7FL) != 0) {
+				buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+				value >>>= 7;
+			}
+			buffer[length++] = (byte) value;
+		}
+
+		private void ensureCapacity(int extra) {
+			if (length + extra > buffer.length) {
+				buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+			}
+		}
+	}
+
+	/**
+	 * reads the parts of a key back out, one at a time
+	 */
+	private static final class Decoder {
+
+		private final byte[] bytes;
+
+		private int position;
+
+		Decoder(byte[] bytes) {
+			this.bytes = bytes;
+		}
+
+		void skip(int parts) {
+			for (int i = 0; i < parts; i++) {
+				next();
+			}
+		}
+
+		/**
+		 * compare the next part of this key with the next part of another, moving both on to the part after
+		 */
+		int comparePart(Decoder other) {
+			byte tag = bytes[position++];
+			byte otherTag = other.bytes[other.position++];
+			int rank = rank(tag);
+			int otherRank = rank(otherTag);
+			if (rank != otherRank) {
+				// skip the rest of both parts, though the keys are already ordered
+				position--;
+				other.position--;
+				next();
+				other.next();
+				return rank - otherRank;
+			}
+
+			switch (tag) {
+			case NULL:
+			case FALSE:
+			case TRUE:
+				return tag - otherTag;
+			case DATE:
+				return compareLongs(zigZag(readVarLong()), zigZag(other.readVarLong()));
+			case LONG:
+			case DOUBLE:
+			case DECIMAL:
+				if (tag == LONG && otherTag == LONG) {
+					return compareLongs(zigZag(readVarLong()), zigZag(other.readVarLong()));
+				}
+				if (tag != DECIMAL && otherTag != DECIMAL) {
+					return Double.compare(readNumber(tag), other.readNumber(otherTag));
+				}
+				return compareExactly(readAnyNumber(tag), other.readAnyNumber(otherTag));
+			default:
+				return compareChars(tag, other, otherTag);
+			}
+		}
+
+		private int compareChars(byte tag, Decoder other, byte otherTag) {
+			int chars = (int) readVarLong();
+			int otherChars = (int) other.readVarLong();
+			int common = Math.min(chars, otherChars);
+			int order = 0;
+			int i = 0;
+			for (; i < common && order == 0; i++) {
+				order = readChar(tag) - other.readChar(otherTag);
+			}
+			// move both past the rest of their chars
+			position += (chars - i) * (tag == ASCII ? 1 : 2);
+			other.position += (otherChars - i) * (otherTag == ASCII ? 1 : 2);
+			return order != 0 ? order : chars - otherChars;
+		}
+
+		private char readChar(byte tag) {
+			if (tag == ASCII) {
+				return (char) bytes[position++];
+			}
+			return (char) (((bytes[position++] & 0xFF) << 8) | (bytes[position++] & 0xFF));
+		}
+
+		/**
+		 * @return the next part, of the given number tag, as a Long, Double or BigDecimal
+		 */
+		private Number readAnyNumber(byte tag) {
+			return tag == DECIMAL ? readDecimal() : tag == LONG ? (Number) zigZag(readVarLong()) : readNumber(tag);
+		}
+
+		private static int compareExactly(Number a, Number b) {
+			if (isNotFinite(a) || isNotFinite(b)) {
+				return Double.compare(a.doubleValue(), b.doubleValue());
+			}
+			return toBigDecimal(a).compareTo(toBigDecimal(b));
+		}
+
+		private static boolean isNotFinite(Number value) {
+			return value instanceof Double && (((Double) value).isInfinite() || ((Double) value).isNaN());
+		}
+
+		private static BigDecimal toBigDecimal(Number value) {
+			if (value instanceof BigDecimal) {
+				return (BigDecimal) value;
+			}
+			return value instanceof Long ? BigDecimal.valueOf((Long) value) : new BigDecimal(value.doubleValue());
+		}
+
+		private BigDecimal readDecimal() {
+			int scale = (int) zigZag(readVarLong());
+			int size = (int) readVarLong();
+			byte[] unscaled = Arrays.copyOfRange(bytes, position, position + size);
+			position += size;
+			return new BigDecimal(new BigInteger(unscaled), scale);
+		}
+
+		private double readNumber(byte tag) {
+			if (tag == LONG) {
+				return zigZag(readVarLong());
+			}
+			long bits = 0;
+			for (int i = 0; i < 8; i++) {
+				bits = (bits << 8) | (bytes[position++] & 0xFF);
+			}
+			return Double.longBitsToDouble(bits);
+		}
+
+		private static int rank(byte tag) {
+			switch (tag) {
+			case NULL:
+				return 0;
+			case LONG:
+			case DOUBLE:
+			case DECIMAL:
+				return 1;
+			case ASCII:
+			case CHARS:
+				return 2;
+			case DATE:
+				return 3;
+			default:
+				return 4;
+			}
+		}
+
+		private static int compareLongs(long a, long b) {
+			return a < b ? -1 : (a == b ? 0 : 1);
+		}
+
+		Object next() {
+			byte tag = bytes[position++];
+			switch (tag) {
+			case NULL:
+				return null;
+			case LONG:
+				return zigZag(readVarLong());
+			case DOUBLE:
+				return readNumber(tag);
+			case DECIMAL:
+				return readDecimal();
+			case DATE:
+				return new Date(zigZag(readVarLong()));
+			case FALSE:
+				return Boolean.FALSE;
+			case TRUE:
+				return Boolean.TRUE;
+			case ASCII:
+			case CHARS:
+				int chars = (int) readVarLong();
+				char[] value = new char[chars];
+				for (int i = 0; i < chars; i++) {
+					value[i] = readChar(tag);
+				}
+				return new String(value);
+			default:
+				throw new IllegalStateException("Unknown key part tag " + tag);
+			}
+		}
+
+		private long readVarLong() {
+			long value = 0;
+			int shift = 0;
+			byte b;
+			do {
+				b = bytes[position++];
+				value |= (long) (b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			return value;
+		}
+
+		private static long zigZag(long value) {
+			return (value >>> 1) ^ -(value & 1);
+		}
+	}
+}
@@ -0,0 +1,454 @@
+package org.recxx.data;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * The rows loaded from one input source, held column by column. Numbers and dates are kept in primitive arrays with a
+ * null bitmap, Strings are dictionary encoded, and a row is just an int id: its position in each column. This is what
+ * the workers hand back as {@link org.recxx.Recxx#DATA}, in place of a HashMap of keys to ArrayLists of boxed values.
+ * </p>
+ *
+ * <p>
+ * The values of the key columns are not stored again in columns of their own; they are read back from each row's
+ * {@link CompositeKey}. Keys are indexed by default so that a row can be found by its key, and must then be unique. An
+ * unindexed dataset simply keeps its rows in the order they were added, duplicates included.
+ * </p>
+ *
+ * <p>
+ * A dataset is built by a single thread. Once loaded it is only read, and can be shared between threads.
+ * </p>
+ */
+public class Dataset {
+
+	private final String[] columnNames;
+
+	private final ColumnType[] types;
+
+	private final int[] keyPositions;
+
+	private final Column[] columns;
+
+	private final KeyIndex index;
+
+	private CompositeKey[] keys = new CompositeKey[0];
+
+	private int size;
+
+	private long[] fingerprints;
+
+	private int[] fingerprintColumns;
+
+	/**
+	 * create an indexed dataset
+	 *
+	 * @param columnNames
+	 *            names of the columns
+	 * @param types
+	 *            type of each column
+	 * @param keyPositions
+	 *            positions of the key columns, in key order
+	 */
+	public Dataset(String[] columnNames, ColumnType[] types, int[] keyPositions) {
+		this(columnNames, types, keyPositions, true);
+	}
+
+	/**
+	 * @param columnNames
+	 *            names of the columns
+	 * @param types
+	 *            type of each column
+	 * @param keyPositions
+	 *            positions of the key columns, in key order
+	 * @param indexed
+	 *            index the rows by key?
+	 */
+	public Dataset(String[] columnNames, ColumnType[] types, int[] keyPositions, boolean indexed) {
+		this.columnNames = columnNames.clone();
+		this.types = types.clone();
+		this.keyPositions = keyPositions.clone();
+		this.columns = new Column[columnNames.length];
+		this.index = indexed ? new KeyIndex() : null;
+
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = newColumn(types[i]);
+		}
+		for (int part = 0; part < keyPositions.length; part++) {
+			columns[keyPositions[part]] = new KeyColumn(types[keyPositions[part]], part);
+		}
+	}
+
+	/**
+	 * @param type
+	 *            column type
+	 * @return an empty column to hold values of the given type
+	 */
+	public static Column newColumn(ColumnType type) {
+		switch (type) {
+		case DOUBLE:
+			return new DoubleColumn();
+		case INTEGER:
+			return new IntColumn();
+		case LONG:
+		case DATE:
+			return new LongColumn(type);
+		case STRING:
+			return new StringColumn();
+		default:
+			return new ObjectColumn(type);
+		}
+	}
+
+	/**
+	 * @param classNames
+	 *            java class name of each column
+	 * @return the column type for each class name
+	 */
+	public static ColumnType[] typesForClassNames(String[] classNames) {
+		ColumnType[] types = new ColumnType[classNames.length];
+		for (int i = 0; i < classNames.length; i++) {
+			types[i] = ColumnType.forClassName(classNames[i]);
+		}
+		return types;
+	}
+
+	public String[] getColumnNames() {
+		return columnNames.clone();
+	}
+
+	public int getColumnCount() {
+		return columns.length;
+	}
+
+	public ColumnType getType(int column) {
+		return types[column];
+	}
+
+	public int[] getKeyPositions() {
+		return keyPositions.clone();
+	}
+
+	/**
+	 * @return positions of the columns which aren't key columns, the columns aggregated when rows share a key
+	 */
+	public int[] getNonKeyPositions() {
+		boolean[] isKey = new boolean[columns.length];
+		for (int keyPosition : keyPositions) {
+			isKey[keyPosition] = true;
+		}
+		int[] positions = new int[columns.length - keyPositions.length];
+		int count = 0;
+		for (int i = 0; i < columns.length; i++) {
+			if (!isKey[i]) {
+				positions[count++] = i;
+			}
+		}
+		return positions;
+	}
+
+	public boolean isIndexed() {
+		return index != null;
+	}
+
+	/**
+	 * work out the {@link RowFingerprint} of the given columns of every row, once the dataset is loaded. Adding to or
+	 * changing the rows afterwards throws the fingerprints away.
+	 *
+	 * @param columns
+	 *            positions of the columns to fingerprint, in order
+	 */
+	public void fingerprint(int[] columns) {
+		RowFingerprint fingerprint = new RowFingerprint(this, columns);
+		long[] rows = new long[size];
+		for (int row = 0; row < size; row++) {
+			rows[row] = fingerprint.of(row);
+		}
+		this.fingerprints = rows;
+		this.fingerprintColumns = columns.clone();
+	}
+
+	/**
+	 * @param columns
+	 *            positions of the columns fingerprinted, in order
+	 * @return the fingerprint of each row by row id, or null if the rows haven't been fingerprinted on those columns
+	 */
+	public long[] getFingerprints(int[] columns) {
+		return fingerprints != null && Arrays.equals(fingerprintColumns, columns) ? fingerprints : null;
+	}
+
+	/**
+	 * @return the number of rows
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return a row buffer with a slot for each column of this dataset
+	 */
+	public RowBuffer newRowBuffer() {
+		return new RowBuffer(types);
+	}
+
+	/**
+	 * @param row
+	 *            row id
+	 * @return the key of the row
+	 */
+	public CompositeKey getKey(int row) {
+		return keys[row];
+	}
+
+	/**
+	 * @param key
+	 *            key to look for
+	 * @return the row id of the key, or -1 if it isn't present
+	 */
+	public int find(CompositeKey key) {
+		if (index == null) {
+			throw new IllegalStateException("Dataset is not indexed by key");
+		}
+		return index.find(key, keys);
+	}
+
+	/**
+	 * add a row. If the dataset is indexed the key must not already be present.
+	 *
+	 * @param key
+	 *            key of the row
+	 * @param row
+	 *            values of the row, one slot per column
+	 * @return the row id of the new row
+	 */
+	public int add(CompositeKey key, RowBuffer row) {
+		if (index != null && index.find(key, keys) >= 0) {
+			throw new IllegalArgumentException("Duplicate key " + key);
+		}
+		ensureCapacity(size + 1);
+		fingerprints = null;
+		int id = size++;
+		keys[id] = key;
+		for (int i = 0; i < columns.length; i++) {
+			columns[i].set(id, row, i);
+		}
+		if (index != null) {
+			index.put(key, id, keys);
+		}
+		return id;
+	}
+
+	/**
+	 * add some of the rows of another data set with the same columns, copying their values a column at a time rather
+	 * than a row at a time. None of their keys may already be present, nor be repeated among the rows, as they aren't
+	 * checked.
+	 *
+	 * @param from
+	 *            data set with the same columns
+	 * @param rows
+	 *            row ids of the rows to add, in order
+	 * @param count
+	 *            number of row ids
+	 */
+	public void addAll(Dataset from, int[] rows, int count) {
+		if (!Arrays.equals(from.types, types) || !Arrays.equals(from.keyPositions, keyPositions)) {
+			throw new IllegalArgumentException("Can't add rows of columns " + Arrays.toString(from.types)
+			        + " keyed by " + Arrays.toString(from.keyPositions) + " to " + Arrays.toString(types)
+			        + " keyed by " + Arrays.toString(keyPositions));
+		}
+		ensureCapacity(size + count);
+		fingerprints = null;
+		for (int i = 0; i < count; i++) {
+			keys[size + i] = from.keys[rows[i]];
+		}
+		for (int c = 0; c < columns.length; c++) {
+			columns[c].copyRows(from.columns[c], rows, count, size);
+		}
+		if (index != null) {
+			for (int i = 0; i < count; i++) {
+				index.put(keys[size + i], size + i, keys);
+			}
+		}
+		size += count;
+	}
+
+	/**
+	 * remove every row, keeping the space allocated for them, so that a dataset can be refilled without growing again
+	 */
+	public void clear() {
+		fingerprints = null;
+		Arrays.fill(keys, 0, size, null);
+		size = 0;
+		for (Column column : columns) {
+			column.clear();
+		}
+		if (index != null) {
+			index.clear();
+		}
+	}
+
+	/**
+	 * add the values of the given columns of a row buffer to those of an existing row, as happens when rows with the
+	 * same key are aggregated. Only DOUBLE columns can be aggregated.
+	 *
+	 * @param row
+	 *            row id
+	 * @param aggregateColumns
+	 *            positions of the columns to aggregate
+	 * @param values
+	 *            row buffer holding the values to add
+	 * @return false, leaving the row untouched, if one of the columns isn't a DOUBLE
+	 */
+	public boolean aggregate(int row, int[] aggregateColumns, RowBuffer values) {
+		for (int column : aggregateColumns) {
+			if (!(columns[column] instanceof DoubleColumn)) {
+				return false;
+			}
+		}
+		fingerprints = null;
+		for (int column : aggregateColumns) {
+			if (!values.isNull(column)) {
+				((DoubleColumn) columns[column]).add(row, values.getDouble(column));
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param row
+	 *            row id
+	 * @param column
+	 *            column position
+	 * @return the value as an object, or null
+	 */
+	public Object get(int row, int column) {
+		return columns[column].get(row);
+	}
+
+	public boolean isNull(int row, int column) {
+		return columns[column].isNull(row);
+	}
+
+	/**
+	 * @param column
+	 *            column position
+	 * @return the column, to read its values without boxing them
+	 */
+	public Column getColumn(int column) {
+		return columns[column];
+	}
+
+	/**
+	 * copy a row into a row buffer
+	 *
+	 * @param row
+	 *            row id
+	 * @param buffer
+	 *            buffer with a slot for each column
+	 */
+	public void copyTo(int row, RowBuffer buffer) {
+		for (int i = 0; i < columns.length; i++) {
+			columns[i].copyTo(row, buffer, i);
+		}
+	}
+
+	/**
+	 * @return a rough count of the bytes held by the dataset, not counting String values
+	 */
+	public long estimatedBytes() {
+		long bytes = keys.length * 8L;
+		for (int i = 0; i < size; i++) {
+			bytes += keys[i].estimatedBytes();
+		}
+		for (Column column : columns) {
+			bytes += column.estimatedBytes();
+		}
+		if (fingerprints != null) {
+			bytes += fingerprints.length * 8L;
+		}
+		return index == null ? bytes : bytes + index.estimatedBytes();
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > keys.length) {
+			int newCapacity = Column.grow(keys.length, capacity);
+			keys = Arrays.copyOf(keys, newCapacity);
+			for (Column column : columns) {
+				column.ensureCapacity(newCapacity);
+			}
+		}
+	}
+
+	/**
+	 * a key column, whose values are read back from the row's key rather than stored
+	 */
+	private final class KeyColumn extends Column {
+
+		private final ColumnType type;
+
+		private final int part;
+
+		KeyColumn(ColumnType type, int part) {
+			this.type = type;
+			this.part = part;
+		}
+
+		@Override
+		public ColumnType getType() {
+			return type;
+		}
+
+		/**
+		 * @return the key part converted back to the column's own type, as keys hold every whole number as a Long
+		 */
+		@Override
+		public Object get(int row) {
+			Object value = keys[row].get(part);
+			if (value instanceof Number) {
+				if (type == ColumnType.INTEGER) {
+					return ((Number) value).intValue();
+				} else if (type == ColumnType.DOUBLE) {
+					return ((Number) value).doubleValue();
+				} else if (type == ColumnType.DECIMAL) {
+					return new BigDecimal(value.toString());
+				}
+			}
+			return value;
+		}
+
+		@Override
+		public boolean isNull(int row) {
+			return get(row) == null;
+		}
+
+		@Override
+		public void set(int row, Object value) {
+			throw new UnsupportedOperationException("Key columns are set by the row's key");
+		}
+
+		@Override
+		void set(int row, RowBuffer buffer, int index) {
+			// held by the key
+		}
+
+		@Override
+		void copyTo(int row, RowBuffer buffer, int index) {
+			buffer.set(index, get(row));
+		}
+
+		@Override
+		void copyRows(Column from, int[] rows, int count, int to) {
+			// held by the keys
+		}
+
+		@Override
+		void ensureCapacity(int capacity) {
+			// nothing stored
+		}
+
+		@Override
+		long estimatedBytes() {
+			return 0;
+		}
+	}
+}
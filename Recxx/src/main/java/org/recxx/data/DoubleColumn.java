@@ -0,0 +1,88 @@
+package org.recxx.data;
+
+import java.util.Arrays;
+
+/**
+ * A column of doubles, kept in a double[]
+ */
+public class DoubleColumn extends Column {
+
+	private double[] values = new double[0];
+
+	@Override
+	public ColumnType getType() {
+		return ColumnType.DOUBLE;
+	}
+
+	public double getDouble(int row) {
+		return values[row];
+	}
+
+	public void setDouble(int row, double value) {
+		values[row] = value;
+		setNull(row, false);
+	}
+
+	/**
+	 * add a value to a row, as rows with the same key are aggregated. A null on either side is ignored.
+	 *
+	 * @param row
+	 *            row id
+	 * @param value
+	 *            value to add
+	 */
+	public void add(int row, double value) {
+		if (isNull(row)) {
+			setDouble(row, value);
+		} else {
+			values[row] += value;
+		}
+	}
+
+	@Override
+	public Object get(int row) {
+		return isNull(row) ? null : values[row];
+	}
+
+	@Override
+	public void set(int row, Object value) {
+		values[row] = value == null ? 0d : ((Number) value).doubleValue();
+		setNull(row, value == null);
+	}
+
+	@Override
+	void set(int row, RowBuffer buffer, int index) {
+		values[row] = buffer.getDouble(index);
+		setNull(row, buffer.isNull(index));
+	}
+
+	@Override
+	void copyTo(int row, RowBuffer buffer, int index) {
+		if (isNull(row)) {
+			buffer.setNull(index);
+		} else {
+			buffer.setDouble(index, values[row]);
+		}
+	}
+
+	@Override
+	void copyRows(Column from, int[] rows, int count, int to) {
+		double[] source = ((DoubleColumn) from).values;
+		for (int i = 0; i < count; i++) {
+			values[to + i] = source[rows[i]];
+		}
+		copyNulls(from, rows, count, to);
+	}
+
+	@Override
+	void ensureCapacity(int capacity) {
+		if (capacity > values.length) {
+			values = Arrays.copyOf(values, grow(values.length, capacity));
+		}
+	}
+
+	@Override
+	long estimatedBytes() {
+		return values.length * 8L + nullBytes();
+	}
+}
@@ -0,0 +1,72 @@
+package org.recxx.data;
+
+import java.util.Arrays;
+
+/**
+ * A column of ints, kept in an int[]
+ */
+public class IntColumn extends Column {
+
+	private int[] values = new int[0];
+
+	@Override
+	public ColumnType getType() {
+		return ColumnType.INTEGER;
+	}
+
+	public int getInt(int row) {
+		return values[row];
+	}
+
+	public void setInt(int row, int value) {
+		values[row] = value;
+		setNull(row, false);
+	}
+
+	@Override
+	public Object get(int row) {
+		return isNull(row) ? null : values[row];
+	}
+
+	@Override
+	public void set(int row, Object value) {
+		values[row] = value == null ? 0 : ((Number) value).intValue();
+		setNull(row, value == null);
+	}
+
+	@Override
+	void set(int row, RowBuffer buffer, int index) {
+		values[row] = (int) buffer.getLong(index);
+		setNull(row, buffer.isNull(index));
+	}
+
+	@Override
+	void copyTo(int row, RowBuffer buffer, int index) {
+		if (isNull(row)) {
+			buffer.setNull(index);
+		} else {
+			buffer.setLong(index, values[row]);
+		}
+	}
+
+	@Override
+	void copyRows(Column from, int[] rows, int count, int to) {
+		int[] source = ((IntColumn) from).values;
+		for (int i = 0; i < count; i++) {
+			values[to + i] = source[rows[i]];
+		}
+		copyNulls(from, rows, count, to);
+	}
+
+	@Override
+	void ensureCapacity(int capacity) {
+		if (capacity > values.length) {
+			values = Arrays.copyOf(values, grow(values.length, capacity));
+		}
+	}
+
+	@Override
+	long estimatedBytes() {
+		return values.length * 4L + nullBytes();
+	}
+}
@@ -0,0 +1,84 @@
+package org.recxx.data;
+
+/**
+ * An open addressing hash table from a {@link CompositeKey} to the id of its row in a {@link Dataset}. The table only
+ * holds row ids, the keys themselves are looked up in the dataset, so an entry costs 4 bytes rather than a HashMap
+ * entry and a boxed Integer.
+ */
+final class KeyIndex {
+
+	private static final float LOAD_FACTOR = 0.6f;
+
+	// row id + 1, so that 0 marks an empty slot
+	private int[] table = new int[16];
+
+	private int mask = table.length - 1;
+
+	private int count;
+
+	/**
+	 * @param key
+	 *            key to look for
+	 * @param keys
+	 *            the dataset's keys, by row id
+	 * @return the row id of the key, or -1 if it isn't present
+	 */
+	int find(CompositeKey key, CompositeKey[] keys) {
+		int slot = key.hashCode() & mask;
+		int entry;
+		while ((entry = table[slot]) != 0) {
+			if (keys[entry - 1].equals(key)) {
+				return entry - 1;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * add a key which isn't already present
+	 *
+	 * @param key
+	 *            key of the row
+	 * @param row
+	 *            row id
+	 * @param keys
+	 *            the dataset's keys, by row id
+	 */
+	void put(CompositeKey key, int row, CompositeKey[] keys) {
+		if (count + 1 > table.length * LOAD_FACTOR) {
+			resize(keys);
+		}
+		insert(key.hashCode(), row);
+		count++;
+	}
+
+	void clear() {
+		table = new int[16];
+		mask = table.length - 1;
+		count = 0;
+	}
+
+	long estimatedBytes() {
+		return table.length * 4L;
+	}
+
+	private void resize(CompositeKey[] keys) {
+		int[] old = table;
+		table = new int[old.length * 2];
+		mask = table.length - 1;
+		for (int entry : old) {
+			if (entry != 0) {
+				insert(keys[entry - 1].hashCode(), entry - 1);
+			}
+		}
+	}
+
+	private void insert(int hash, int row) {
+		int slot = hash & mask;
+		while (table[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		table[slot] = row + 1;
+	}
+}
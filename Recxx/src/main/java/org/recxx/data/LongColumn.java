@@ -0,0 +1,142 @@
+package org.recxx.data;
+
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * A column of longs, kept in a long[]. Dates are kept the same way, as epoch millis, and handed back as java.util.Date.
+ * A value of a DATE column which isn't a date, such as one that failed to parse, is kept as it is alongside, so that it
+ * is still reported rather than taken as null.
+ */
+public class LongColumn extends Column {
+
+	private final ColumnType type;
+
+	private long[] values = new long[0];
+
+	// values of a DATE column which aren't dates, only allocated once the first is set
+	private Object[] raw;
+
+	/**
+	 * @param type
+	 *            LONG or DATE
+	 */
+	public LongColumn(ColumnType type) {
+		this.type = type;
+	}
+
+	@Override
+	public ColumnType getType() {
+		return type;
+	}
+
+	public long getLong(int row) {
+		return values[row];
+	}
+
+	public void setLong(int row, long value) {
+		values[row] = value;
+		setRaw(row, null);
+		setNull(row, false);
+	}
+
+	/**
+	 * @param row
+	 *            row id
+	 * @return the value of a row of a DATE column which isn't a date, or null if it is one
+	 */
+	public Object getRaw(int row) {
+		return raw == null ? null : raw[row];
+	}
+
+	@Override
+	public Object get(int row) {
+		if (isNull(row)) {
+			return null;
+		}
+		if (raw != null && raw[row] != null) {
+			return raw[row];
+		}
+		return type == ColumnType.DATE ? new Date(values[row]) : (Object) values[row];
+	}
+
+	@Override
+	public void set(int row, Object value) {
+		Object kept = null;
+		if (value instanceof Date) {
+			values[row] = ((Date) value).getTime();
+		} else if (value instanceof Number) {
+			values[row] = ((Number) value).longValue();
+		} else if (type == ColumnType.DATE) {
+			kept = value;
+		} else {
+			value = null;
+		}
+		setRaw(row, kept);
+		setNull(row, value == null);
+	}
+
+	@Override
+	void set(int row, RowBuffer buffer, int index) {
+		values[row] = buffer.getLong(index);
+		// a DATE slot holding something other than a date keeps it in its object slot
+		setRaw(row, buffer.getObject(index));
+		setNull(row, buffer.isNull(index));
+	}
+
+	@Override
+	void copyTo(int row, RowBuffer buffer, int index) {
+		if (isNull(row)) {
+			buffer.setNull(index);
+		} else if (raw != null && raw[row] != null) {
+			buffer.setObject(index, raw[row]);
+		} else {
+			buffer.setLong(index, values[row]);
+		}
+	}
+
+	@Override
+	void copyRows(Column from, int[] rows, int count, int to) {
+		LongColumn column = (LongColumn) from;
+		long[] source = column.values;
+		for (int i = 0; i < count; i++) {
+			values[to + i] = source[rows[i]];
+		}
+		if (column.raw != null || raw != null) {
+			for (int i = 0; i < count; i++) {
+				setRaw(to + i, column.getRaw(rows[i]));
+			}
+		}
+		copyNulls(from, rows, count, to);
+	}
+
+	@Override
+	void ensureCapacity(int capacity) {
+		if (capacity > values.length) {
+			values = Arrays.copyOf(values, grow(values.length, capacity));
+			if (raw != null) {
+				raw = Arrays.copyOf(raw, values.length);
+			}
+		}
+	}
+
+	@Override
+	void clear() {
+		super.clear();
+		raw = null;
+	}
+
+	@Override
+	long estimatedBytes() {
+		return values.length * 8L + (raw == null ? 0 : raw.length * 8L) + nullBytes();
+	}
+
+	private void setRaw(int row, Object value) {
+		if (value != null && raw == null) {
+			raw = new Object[values.length];
+		}
+		if (raw != null) {
+			raw[row] = value;
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package org.recxx.data;
+
+import java.util.Arrays;
+
+/**
+ * A column of values with no primitive representation, such as BigDecimal, Boolean or java.sql.Timestamp
+ */
+public class ObjectColumn extends Column {
+
+	private final ColumnType type;
+
+	private Object[] values = new Object[0];
+
+	/**
+	 * @param type
+	 *            DECIMAL, BOOLEAN or OBJECT
+	 */
+	public ObjectColumn(ColumnType type) {
+		this.type = type;
+	}
+
+	@Override
+	public ColumnType getType() {
+		return type;
+	}
+
+	@Override
+	public Object get(int row) {
+		return values[row];
+	}
+
+	@Override
+	public void set(int row, Object value) {
+		values[row] = value;
+	}
+
+	@Override
+	public boolean isNull(int row) {
+		return values[row] == null;
+	}
+
+	@Override
+	void set(int row, RowBuffer buffer, int index) {
+		values[row] = buffer.getObject(index);
+	}
+
+	@Override
+	void copyTo(int row, RowBuffer buffer, int index) {
+		buffer.setObject(index, values[row]);
+	}
+
+	@Override
+	void copyRows(Column from, int[] rows, int count, int to) {
+		Object[] source = ((ObjectColumn) from).values;
+		for (int i = 0; i < count; i++) {
+			values[to + i] = source[rows[i]];
+		}
+	}
+
+	@Override
+	void ensureCapacity(int capacity) {
+		if (capacity > values.length) {
+			values = Arrays.copyOf(values, grow(values.length, capacity));
+		}
+	}
+
+	@Override
+	long estimatedBytes() {
+		// the reference plus a guess at a small boxed value
+		return values.length * 24L;
+	}
+}
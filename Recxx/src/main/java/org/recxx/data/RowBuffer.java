@@ -0,0 +1,227 @@
+package org.recxx.data;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * A single reusable row, used to stage the values of a row as they are read before it is added to a {@link Dataset}.
+ * Numbers and dates are held in primitive slots so that they never need boxing on the way from the reader to the
+ * dataset's columns.
+ */
+public final class RowBuffer {
+
+	private final ColumnType[] types;
+
+	private final double[] doubles;
+
+	private final long[] longs;
+
+	private final Object[] objects;
+
+	private final boolean[] nulls;
+
+	/**
+	 * @param types
+	 *            type of each slot
+	 */
+	public RowBuffer(ColumnType[] types) {
+		this.types = types.clone();
+		this.doubles = new double[types.length];
+		this.longs = new long[types.length];
+		this.objects = new Object[types.length];
+		this.nulls = new boolean[types.length];
+		clear();
+	}
+
+	public int size() {
+		return types.length;
+	}
+
+	public ColumnType getType(int index) {
+		return types[index];
+	}
+
+	/**
+	 * set every slot to null, ready for the next row
+	 */
+	public void clear() {
+		Arrays.fill(nulls, true);
+		Arrays.fill(objects, null);
+	}
+
+	public boolean isNull(int index) {
+		return nulls[index];
+	}
+
+	public void setNull(int index) {
+		nulls[index] = true;
+		objects[index] = null;
+	}
+
+	public double getDouble(int index) {
+		return doubles[index];
+	}
+
+	public void setDouble(int index, double value) {
+		doubles[index] = value;
+		nulls[index] = false;
+	}
+
+	/**
+	 * @return the value of an INTEGER, LONG or DATE (as epoch millis) slot
+	 */
+	public long getLong(int index) {
+		return longs[index];
+	}
+
+	public void setLong(int index, long value) {
+		longs[index] = value;
+		objects[index] = null;
+		nulls[index] = false;
+	}
+
+	/**
+	 * @return the value of a STRING or OBJECT slot, or of a DATE slot which isn't a date
+	 */
+	public Object getObject(int index) {
+		return objects[index];
+	}
+
+	public void setObject(int index, Object value) {
+		objects[index] = value;
+		nulls[index] = value == null;
+	}
+
+	/**
+	 * set a slot from an object, converting it to the slot's type. A value of a DATE slot which isn't a date, such as a
+	 * date that failed to parse, is kept as it is, so that it is still reported. Any other value which can't be held
+	 * by the slot's type is set as null.
+	 *
+	 * @param index
+	 *            slot
+	 * @param value
+	 *            value, which may be null
+	 */
+	public void set(int index, Object value) {
+		switch (types[index]) {
+		case DOUBLE:
+			if (value instanceof Number) {
+				setDouble(index, ((Number) value).doubleValue());
+			} else {
+				setNull(index);
+			}
+			break;
+		case INTEGER:
+		case LONG:
+			if (value instanceof Number) {
+				setLong(index, ((Number) value).longValue());
+			} else {
+				setNull(index);
+			}
+			break;
+		case DATE:
+			if (value instanceof Date) {
+				setLong(index, ((Date) value).getTime());
+			} else {
+				setObject(index, value);
+			}
+			break;
+		case STRING:
+			setObject(index, value == null ? null : value.toString());
+			break;
+		case DECIMAL:
+			if (value instanceof BigDecimal) {
+				setObject(index, value);
+			} else if (value instanceof Number) {
+				setObject(index, new BigDecimal(value.toString()));
+			} else {
+				setNull(index);
+			}
+			break;
+		case BOOLEAN:
+			setObject(index, value instanceof Boolean ? value : null);
+			break;
+		default:
+			setObject(index, value);
+		}
+	}
+
+	/**
+	 * @return the value of a slot as an object, as a column of the same type would return it
+	 */
+	public Object get(int index) {
+		if (nulls[index]) {
+			return null;
+		}
+		switch (types[index]) {
+		case DOUBLE:
+			return doubles[index];
+		case INTEGER:
+			return (int) longs[index];
+		case LONG:
+			return longs[index];
+		case DATE:
+			return objects[index] != null ? objects[index] : new Date(longs[index]);
+		default:
+			return objects[index];
+		}
+	}
+
+	/**
+	 * @return a rough size of the values held, in bytes: 8 for each number or date, 2 for each character of a String
+	 *         and 16 for any other value
+	 */
+	public long estimatedBytes() {
+		long bytes = 0;
+		for (int i = 0; i < types.length; i++) {
+			if (nulls[i]) {
+				continue;
+			}
+			switch (types[i]) {
+			case DOUBLE:
+			case INTEGER:
+			case LONG:
+			case DATE:
+				bytes += 8;
+				break;
+			default:
+				bytes += objects[i] instanceof String ? 2L * ((String) objects[i]).length() : 16;
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * add the value of a slot to a key, without boxing it
+	 *
+	 * @param index
+	 *            slot
+	 * @param builder
+	 *            key being built
+	 */
+	public void addToKey(int index, CompositeKey.Builder builder) {
+		if (nulls[index]) {
+			builder.addNull();
+			return;
+		}
+		switch (types[index]) {
+		case DOUBLE:
+			builder.addDouble(doubles[index]);
+			break;
+		case INTEGER:
+		case LONG:
+			builder.addLong(longs[index]);
+			break;
+		case DATE:
+			if (objects[index] != null) {
+				builder.add(objects[index]);
+			} else {
+				builder.addDate(longs[index]);
+			}
+			break;
+		default:
+			builder.add(objects[index]);
+		}
+	}
+}
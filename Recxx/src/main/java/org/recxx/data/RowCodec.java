@@ -0,0 +1,301 @@
+package org.recxx.data;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.Charset;
+import java.util.Date;
+
+/**
+ * <p>
+ * A compact binary encoding of a keyed row, used to spill rows to disk. A row is written as its {@link CompositeKey}
+ * in packed form, a bitmap of its null slots, and then each non-null slot according to its type:
+ * <ul>
+ * <li>DOUBLE as the 8 bytes of its value</li>
+ * <li>INTEGER and LONG as a zig-zag variable length long</li>
+ * <li>DATE as an OBJECT, so that a value which isn't a date, such as one that failed to parse, is read back as it
+ * was</li>
+ * <li>STRING as its UTF-8 length and bytes</li>
+ * <li>DECIMAL as its unscaled value and scale</li>
+ * <li>BOOLEAN as a byte</li>
+ * <li>OBJECT as a one byte tag for its class followed by its value, so that it is read back as the same class - any
+ * class other than a String, number, date or boolean is read back as its toString()</li>
+ * </ul>
+ * Key columns are held by the key, so their slots aren't written again.
+ * </p>
+ *
+ * <p>
+ * A codec reuses a buffer between rows, so every thread needs its own.
+ * </p>
+ */
+public final class RowCodec {
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final byte STRING_OBJECT = 0;
+
+	private static final byte DOUBLE_OBJECT = 1;
+
+	private static final byte FLOAT_OBJECT = 2;
+
+	private static final byte INTEGER_OBJECT = 3;
+
+	private static final byte LONG_OBJECT = 4;
+
+	private static final byte DECIMAL_OBJECT = 5;
+
+	private static final byte DATE_OBJECT = 6;
+
+	private static final byte BOOLEAN_OBJECT = 7;
+
+	private final ColumnType[] types;
+
+	private final int[] keyPositions;
+
+	private final boolean[] isKey;
+
+	private final boolean[] nulls;
+
+	/**
+	 * @param types
+	 *            type of each slot
+	 * @param keyPositions
+	 *            positions of the key columns, which are held by the key
+	 */
+	public RowCodec(ColumnType[] types, int[] keyPositions) {
+		this.types = types.clone();
+		this.keyPositions = keyPositions.clone();
+		this.isKey = new boolean[types.length];
+		this.nulls = new boolean[types.length];
+		for (int keyPosition : keyPositions) {
+			isKey[keyPosition] = true;
+		}
+	}
+
+	/**
+	 * @param key
+	 *            key of the row
+	 * @param row
+	 *            values of the row
+	 * @param out
+	 *            output to write to
+	 * @throws IOException
+	 *             if the output can't be written
+	 */
+	public void write(CompositeKey key, RowBuffer row, DataOutput out) throws IOException {
+		key.writeTo(out);
+
+		int bits = 0;
+		for (int i = 0; i < types.length; i++) {
+			if (row.isNull(i) && !isKey[i]) {
+				bits |= 1 << (i & 7);
+			}
+			if ((i & 7) == 7 || i == types.length - 1) {
+				out.writeByte(bits);
+				bits = 0;
+			}
+		}
+
+		for (int i = 0; i < types.length; i++) {
+			if (isKey[i] || row.isNull(i)) {
+				continue;
+			}
+			switch (types[i]) {
+			case DOUBLE:
+				out.writeDouble(row.getDouble(i));
+				break;
+			case INTEGER:
+			case LONG:
+				writeVarLong(out, row.getLong(i));
+				break;
+			case DATE:
+				if (row.getObject(i) != null) {
+					writeObject(out, row.getObject(i));
+				} else {
+					out.writeByte(DATE_OBJECT);
+					writeVarLong(out, row.getLong(i));
+				}
+				break;
+			case STRING:
+				writeString(out, (String) row.getObject(i));
+				break;
+			case DECIMAL:
+				writeDecimal(out, (BigDecimal) row.getObject(i));
+				break;
+			case BOOLEAN:
+				out.writeBoolean((Boolean) row.getObject(i));
+				break;
+			default:
+				writeObject(out, row.getObject(i));
+			}
+		}
+	}
+
+	/**
+	 * read a row written by {@link #write(CompositeKey, RowBuffer, DataOutput)}
+	 *
+	 * @param in
+	 *            input to read from
+	 * @param row
+	 *            buffer to read the values into, including those of the key columns
+	 * @return the key of the row
+	 * @throws IOException
+	 *             if the input can't be read
+	 */
+	public CompositeKey read(DataInput in, RowBuffer row) throws IOException {
+		CompositeKey key = CompositeKey.readFrom(in);
+
+		row.clear();
+		int bits = 0;
+		for (int i = 0; i < types.length; i++) {
+			if ((i & 7) == 0) {
+				bits = in.readUnsignedByte();
+			}
+			nulls[i] = (bits & (1 << (i & 7))) != 0;
+		}
+
+		for (int i = 0; i < types.length; i++) {
+			if (isKey[i] || nulls[i]) {
+				continue;
+			}
+			switch (types[i]) {
+			case DOUBLE:
+				row.setDouble(i, in.readDouble());
+				break;
+			case INTEGER:
+			case LONG:
+				row.setLong(i, readVarLong(in));
+				break;
+			case DATE:
+				row.set(i, readObject(in));
+				break;
+			case STRING:
+				row.setObject(i, readString(in));
+				break;
+			case DECIMAL:
+				row.setObject(i, readDecimal(in));
+				break;
+			case BOOLEAN:
+				row.setObject(i, in.readBoolean());
+				break;
+			default:
+				row.setObject(i, readObject(in));
+			}
+		}
+
+		// the key columns come back from the key
+		for (int part = 0; part < keyPositions.length; part++) {
+			row.set(keyPositions[part], key.get(part));
+		}
+		return key;
+	}
+
+	private static void writeString(DataOutput out, String value) throws IOException {
+		byte[] bytes = value.getBytes(UTF_8);
+		writeVarInt(out, bytes.length);
+		out.write(bytes);
+	}
+
+	private static String readString(DataInput in) throws IOException {
+		byte[] bytes = new byte[readVarInt(in)];
+		in.readFully(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	private static void writeDecimal(DataOutput out, BigDecimal value) throws IOException {
+		byte[] unscaled = value.unscaledValue().toByteArray();
+		writeVarInt(out, unscaled.length);
+		out.write(unscaled);
+		writeVarLong(out, value.scale());
+	}
+
+	private static BigDecimal readDecimal(DataInput in) throws IOException {
+		byte[] unscaled = new byte[readVarInt(in)];
+		in.readFully(unscaled);
+		return new BigDecimal(new BigInteger(unscaled), (int) readVarLong(in));
+	}
+
+	private static void writeObject(DataOutput out, Object value) throws IOException {
+		if (value instanceof Double) {
+			out.writeByte(DOUBLE_OBJECT);
+			out.writeDouble((Double) value);
+		} else if (value instanceof Float) {
+			out.writeByte(FLOAT_OBJECT);
+			out.writeFloat((Float) value);
+		} else if (value instanceof Integer) {
+			out.writeByte(INTEGER_OBJECT);
+			writeVarLong(out, (Integer) value);
+		} else if (value instanceof Long) {
+			out.writeByte(LONG_OBJECT);
+			writeVarLong(out, (Long) value);
+		} else if (value instanceof BigDecimal) {
+			out.writeByte(DECIMAL_OBJECT);
+			writeDecimal(out, (BigDecimal) value);
+		} else if (value instanceof Date) {
+			out.writeByte(DATE_OBJECT);
+			writeVarLong(out, ((Date) value).getTime());
+		} else if (value instanceof Boolean) {
+			out.writeByte(BOOLEAN_OBJECT);
+			out.writeBoolean((Boolean) value);
+		} else {
+			out.writeByte(STRING_OBJECT);
+			writeString(out, value.toString());
+		}
+	}
+
+	private static Object readObject(DataInput in) throws IOException {
+		byte tag = in.readByte();
+		switch (tag) {
+		case DOUBLE_OBJECT:
+			return in.readDouble();
+		case FLOAT_OBJECT:
+			return in.readFloat();
+		case INTEGER_OBJECT:
+			return (int) readVarLong(in);
+		case LONG_OBJECT:
+			return readVarLong(in);
+		case DECIMAL_OBJECT:
+			return readDecimal(in);
+		case DATE_OBJECT:
+			return new Date(readVarLong(in));
+		case BOOLEAN_OBJECT:
+			return in.readBoolean();
+		default:
+			return readString(in);
+		}
+	}
+
+	/**
+	 * write a zig-zag variable length long, of one byte for small values of either sign
+	 */
+	static void writeVarLong(DataOutput out, long value) throws IOException {
+		long zigZag = (value << 1) ^ (value >> 63);
+		while ((zigZag & ~0x7FL) != 0) {
+			out.writeByte((int) ((zigZag & 0x7F) | 0x80));
+			zigZag >>>= 7;
+		}
+		out.writeByte((int) zigZag);
+	}
+
+	static long readVarLong(DataInput in) throws IOException {
+		long zigZag = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = in.readByte();
+			zigZag |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while ((b & 0x80) != 0);
+		return (zigZag >>> 1) ^ -(zigZag & 1);
+	}
+
+	static void writeVarInt(DataOutput out, int value) throws IOException {
+		writeVarLong(out, value);
+	}
+
+	static int readVarInt(DataInput in) throws IOException {
+		return (int) readVarLong(in);
+	}
+}
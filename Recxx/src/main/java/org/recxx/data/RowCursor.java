@@ -0,0 +1,52 @@
+package org.recxx.data;
+
+import java.io.Closeable;
+
+/**
+ * <p>
+ * Reads the rows of an input source one at a time, in the order the source holds them, rather than loading them all
+ * into a {@link Dataset}. The key and row buffer returned for the current row are only valid until the next call to
+ * {@link #next()}; the buffer is reused from row to row.
+ * </p>
+ *
+ * <p>
+ * The workers load their datasets through a cursor, and a cursor over each of two sources sorted by key is all a
+ * sorted merge reconciliation needs.
+ * </p>
+ */
+public interface RowCursor extends Closeable {
+
+	/**
+	 * @return names of the columns in each row
+	 */
+	String[] getColumnNames();
+
+	/**
+	 * @return type of each column
+	 */
+	ColumnType[] getColumnTypes();
+
+	/**
+	 * @return positions of the key columns, in key order
+	 */
+	int[] getKeyPositions();
+
+	/**
+	 * move on to the next row
+	 *
+	 * @return false once there are no more rows
+	 * @throws Exception
+	 *             if the row can't be read
+	 */
+	boolean next() throws Exception;
+
+	/**
+	 * @return key of the current row
+	 */
+	CompositeKey getKey();
+
+	/**
+	 * @return values of the current row, one slot per column
+	 */
+	RowBuffer getRow();
+}
@@ -0,0 +1,139 @@
+package org.recxx.data;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+/**
+ * <p>
+ * A 64 bit hash of the values of some of the columns of a row, such as its compare columns, so that two rows can be
+ * told apart without comparing them value by value. Values are hashed by what they are rather than how they are held:
+ * a number is hashed as the double it equals wherever it can be, whether held as an int, a long, a double or a
+ * BigDecimal, so the same number gives the same fingerprint from differently typed sources. A number a double can't
+ * hold exactly, a String, a date and a null are each hashed so as never to equal one another.
+ * </p>
+ *
+ * <p>
+ * Equal values always give equal fingerprints, and different values almost always give different ones.
+ * </p>
+ */
+public final class RowFingerprint {
+
+	private static final long SEED = 0x6A09E667F3BCC909L;
+
+	private static final long NULL = 0xBB67AE8584CAA73BL;
+
+	private static final long STRING = 0x3C6EF372FE94F82BL;
+
+	private static final long DATE = 0xA54FF53A5F1D36F1L;
+
+	private static final long EXACT = 0x510E527FADE682D1L;
+
+	private static final long OTHER = 0x9B05688C2B3E6C1FL;
+
+	private final Column[] columns;
+
+	/**
+	 * @param data
+	 *            the data set holding the rows
+	 * @param columns
+	 *            positions of the columns to hash, in order
+	 */
+	public RowFingerprint(Dataset data, int[] columns) {
+		this.columns = new Column[columns.length];
+		for (int i = 0; i < columns.length; i++) {
+			this.columns[i] = data.getColumn(columns[i]);
+		}
+	}
+
+	/**
+	 * @param row
+	 *            row id
+	 * @return the fingerprint of the row's values
+	 */
+	public long of(int row) {
+		long hash = SEED;
+		for (Column column : columns) {
+			hash = Long.rotateLeft(hash ^ valueHash(column, row), 31) * 0x9E3779B97F4A7C15L;
+		}
+		return mix(hash);
+	}
+
+	private static long valueHash(Column column, int row) {
+		if (column.isNull(row)) {
+			return NULL;
+		}
+		if (column instanceof DoubleColumn) {
+			return numberHash(((DoubleColumn) column).getDouble(row));
+		}
+		if (column instanceof IntColumn) {
+			return numberHash(((IntColumn) column).getInt(row));
+		}
+		if (column instanceof LongColumn) {
+			Object raw = ((LongColumn) column).getRaw(row);
+			if (raw != null) {
+				return objectHash(raw);
+			}
+			long value = ((LongColumn) column).getLong(row);
+			return column.getType() == ColumnType.DATE ? mix(value ^ DATE) : numberHash(value);
+		}
+		if (column instanceof StringColumn) {
+			return stringHash(((StringColumn) column).getString(row));
+		}
+		return objectHash(column.get(row));
+	}
+
+	private static long objectHash(Object value) {
+		if (value == null) {
+			return NULL;
+		} else if (value instanceof String) {
+			return stringHash((String) value);
+		} else if (value instanceof BigDecimal) {
+			BigDecimal decimal = (BigDecimal) value;
+			double asDouble = decimal.doubleValue();
+			if (!Double.isInfinite(asDouble) && new BigDecimal(asDouble).compareTo(decimal) == 0) {
+				return numberHash(asDouble);
+			}
+			return stringHash(decimal.stripTrailingZeros().toPlainString()) ^ EXACT;
+		} else if (value instanceof Double || value instanceof Float) {
+			return numberHash(((Number) value).doubleValue());
+		} else if (value instanceof Number) {
+			return numberHash(((Number) value).longValue());
+		} else if (value instanceof Date) {
+			return mix(((Date) value).getTime() ^ DATE);
+		}
+		return stringHash(value.toString()) ^ OTHER;
+	}
+
+	private static long numberHash(long value) {
+		double asDouble = value;
+		if ((long) asDouble == value && asDouble != 0x1p63) {
+			return numberHash(asDouble);
+		}
+		return mix(value ^ EXACT);
+	}
+
+	private static long numberHash(double value) {
+		// 0.0 and -0.0 are the same number
+		return mix(Double.doubleToLongBits(value == 0 ? 0.0 : value));
+	}
+
+	private static long stringHash(String value) {
+		long hash = STRING;
+		for (int i = 0; i < value.length(); i++) {
+			hash = (hash ^ value.charAt(i)) * 0x100000001B3L;
+		}
+		return mix(hash ^ value.length());
+	}
+
+	/**
+	 * the finishing step of MurmurHash3, which spreads every bit of its input over the whole of its output
+	 */
+	private static long mix(long hash) {
+		hash ^= hash >>> 33;
+		hash *= 0xFF51AFD7ED558CCDL;
+		hash ^= hash >>> 33;
+		hash *= 0xC4CEB9FE1A85EC53L;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+}
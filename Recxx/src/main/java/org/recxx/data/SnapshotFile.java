@@ -0,0 +1,146 @@
+package org.recxx.data;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * <p>
+ * A loaded data set kept on disk between runs, so that a source which hasn't changed since it was last loaded can be
+ * read back from its snapshot rather than parsed again. The snapshot holds the rows as they were once keyed and
+ * aggregated, written with a {@link RowCodec}, after a header of the column names, types and key positions.
+ * </p>
+ *
+ * <p>
+ * Each snapshot is tagged with a description of what it was loaded from, such as the size and modification time of the
+ * file and the properties it was parsed with. A snapshot is only read back if its tag is the one asked for, so a
+ * changed file or a change of key or compare columns means the source is parsed again. A snapshot is a
+ * {@link TaggedFile}, so a run that dies part way through writing one never leaves half a snapshot behind.
+ * </p>
+ */
+public final class SnapshotFile {
+
+	// "RCXS"
+	private static final int MAGIC = 0x52435853;
+
+	// 2 holds each date with the tag of its class, and 3 the whole doubles of each key
+	private static final int VERSION = 3;
+
+	private final TaggedFile file;
+
+	private int rowsRead;
+
+	/**
+	 * @param file
+	 *            the snapshot
+	 * @param tag
+	 *            description of what the data set is loaded from
+	 */
+	public SnapshotFile(File file, String tag) {
+		this.file = new TaggedFile(file, MAGIC, VERSION, tag, "snapshot");
+	}
+
+	/**
+	 * @return the snapshot
+	 */
+	public File getFile() {
+		return file.getFile();
+	}
+
+	/**
+	 * @return the number of rows read from the source when the data set was loaded, before any aggregation, once it
+	 *         has been read or written
+	 */
+	public int getRowsRead() {
+		return rowsRead;
+	}
+
+	/**
+	 * read the data set back, indexed on its key
+	 *
+	 * @return the data set, or null if there isn't a snapshot or it has a different tag
+	 * @throws IOException
+	 *             if the snapshot can't be read
+	 */
+	public Dataset read() throws IOException {
+		DataInputStream in = file.open();
+		if (in == null) {
+			return null;
+		}
+
+		try {
+			String[] columnNames = new String[in.readInt()];
+			ColumnType[] types = new ColumnType[columnNames.length];
+			for (int i = 0; i < columnNames.length; i++) {
+				columnNames[i] = TaggedFile.readString(in);
+				types[i] = ColumnType.valueOf(TaggedFile.readString(in));
+			}
+			int[] keyPositions = new int[in.readInt()];
+			for (int part = 0; part < keyPositions.length; part++) {
+				keyPositions[part] = in.readInt();
+			}
+			int rows = in.readInt();
+			int read = in.readInt();
+
+			Dataset data = new Dataset(columnNames, types, keyPositions);
+			RowCodec codec = new RowCodec(types, keyPositions);
+			RowBuffer row = data.newRowBuffer();
+			for (int i = 0; i < rows; i++) {
+				data.add(codec.read(in, row), row);
+			}
+			if (in.read() != -1) {
+				throw new IOException("Snapshot " + file.getFile() + " holds more than its " + rows + " row(s)");
+			}
+
+			rowsRead = read;
+			return data;
+		} catch (EOFException e) {
+			throw file.truncated(e);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * write the data set, replacing any snapshot already there
+	 *
+	 * @param data
+	 *            the data set
+	 * @param rowsRead
+	 *            the number of rows read from the source, before any aggregation
+	 * @throws IOException
+	 *             if the snapshot can't be written
+	 */
+	public void write(final Dataset data, int rowsRead) throws IOException {
+		final int read = rowsRead;
+		file.write(new TaggedFile.Contents() {
+			public void writeTo(DataOutputStream out) throws IOException {
+				String[] columnNames = data.getColumnNames();
+				ColumnType[] types = new ColumnType[columnNames.length];
+				out.writeInt(columnNames.length);
+				for (int i = 0; i < columnNames.length; i++) {
+					types[i] = data.getType(i);
+					TaggedFile.writeString(out, columnNames[i]);
+					TaggedFile.writeString(out, types[i].name());
+				}
+				int[] keyPositions = data.getKeyPositions();
+				out.writeInt(keyPositions.length);
+				for (int keyPosition : keyPositions) {
+					out.writeInt(keyPosition);
+				}
+				out.writeInt(data.size());
+				out.writeInt(read);
+
+				RowCodec codec = new RowCodec(types, keyPositions);
+				RowBuffer row = data.newRowBuffer();
+				for (int i = 0; i < data.size(); i++) {
+					data.copyTo(i, row);
+					codec.write(data.getKey(i), row, out);
+				}
+			}
+		});
+		this.rowsRead = rowsRead;
+	}
+}
@@ -0,0 +1,179 @@
+package org.recxx.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * <p>
+ * A temporary file of keyed rows, written with a {@link RowCodec} and read back in the same order through a
+ * {@link RowCursor}. Rows are appended until the file is finished, after which it can be read any number of times
+ * until it is deleted.
+ * </p>
+ */
+public final class SpillFile {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final File file;
+
+	private final String[] columnNames;
+
+	private final ColumnType[] types;
+
+	private final int[] keyPositions;
+
+	private final RowCodec codec;
+
+	private DataOutputStream out;
+
+	private int rows;
+
+	/**
+	 * create an empty spill file
+	 *
+	 * @param directory
+	 *            directory to create the file in, or null for the default temporary directory
+	 * @param columnNames
+	 *            names of the columns
+	 * @param types
+	 *            type of each column
+	 * @param keyPositions
+	 *            positions of the key columns, in key order
+	 * @throws IOException
+	 *             if the file can't be created
+	 */
+	public SpillFile(File directory, String[] columnNames, ColumnType[] types, int[] keyPositions)
+	        throws IOException {
+		this.file = File.createTempFile("recxx", ".spill", directory);
+		this.file.deleteOnExit();
+		this.columnNames = columnNames.clone();
+		this.types = types.clone();
+		this.keyPositions = keyPositions.clone();
+		this.codec = new RowCodec(types, keyPositions);
+		this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+	}
+
+	/**
+	 * append a row
+	 *
+	 * @param key
+	 *            key of the row
+	 * @param row
+	 *            values of the row
+	 * @throws IOException
+	 *             if the row can't be written
+	 */
+	public void write(CompositeKey key, RowBuffer row) throws IOException {
+		if (out == null) {
+			throw new IllegalStateException("Spill file " + file + " is already finished");
+		}
+		codec.write(key, row, out);
+		rows++;
+	}
+
+	/**
+	 * flush and close the file, ready for reading
+	 *
+	 * @throws IOException
+	 *             if the file can't be written
+	 */
+	public void finish() throws IOException {
+		if (out != null) {
+			out.close();
+			out = null;
+		}
+	}
+
+	/**
+	 * @return the number of rows written
+	 */
+	public int size() {
+		return rows;
+	}
+
+	/**
+	 * @return the number of bytes written, once finished
+	 */
+	public long length() {
+		return file.length();
+	}
+
+	/**
+	 * @return a cursor over the rows of the finished file, in the order they were written
+	 * @throws IOException
+	 *             if the file can't be opened
+	 */
+	public RowCursor openCursor() throws IOException {
+		finish();
+		return new SpillCursor();
+	}
+
+	/**
+	 * delete the file, closing it first if it hasn't been finished
+	 */
+	public void delete() {
+		try {
+			finish();
+		} catch (IOException e) {
+			// deleting it anyway
+		}
+		file.delete();
+	}
+
+	private final class SpillCursor implements RowCursor {
+
+		private final DataInputStream in;
+
+		private final RowCodec reader = new RowCodec(types, keyPositions);
+
+		private final RowBuffer row = new RowBuffer(types);
+
+		private CompositeKey key;
+
+		private int read;
+
+		SpillCursor() throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+		}
+
+		public String[] getColumnNames() {
+			return columnNames.clone();
+		}
+
+		public ColumnType[] getColumnTypes() {
+			return types.clone();
+		}
+
+		public int[] getKeyPositions() {
+			return keyPositions.clone();
+		}
+
+		public boolean next() throws IOException {
+			if (read == rows) {
+				key = null;
+				return false;
+			}
+			key = reader.read(in, row);
+			read++;
+			return true;
+		}
+
+		public CompositeKey getKey() {
+			return key;
+		}
+
+		public RowBuffer getRow() {
+			return row;
+		}
+
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+}
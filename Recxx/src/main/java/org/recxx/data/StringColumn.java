@@ -0,0 +1,180 @@
+package org.recxx.data;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>
+ * A column of Strings. Most String columns in a reconciliation (books, currencies, curve names) have few distinct
+ * values, so the column is dictionary encoded: each row holds an int code into a list of the distinct values, and every
+ * row with the same value shares one String.
+ * </p>
+ *
+ * <p>
+ * If the column turns out to have more than MAX_DICTIONARY_SIZE distinct values the dictionary costs more than it
+ * saves, so the column falls back to holding a reference to each row's String.
+ * </p>
+ */
+public class StringColumn extends Column {
+
+	public static final int MAX_DICTIONARY_SIZE = 1 << 16;
+
+	private int[] codes = new int[0];
+
+	private List<String> dictionary = new ArrayList<String>();
+
+	private Map<String, Integer> lookup = new HashMap<String, Integer>();
+
+	private String[] values;
+
+	@Override
+	public ColumnType getType() {
+		return ColumnType.STRING;
+	}
+
+	public String getString(int row) {
+		if (values != null) {
+			return values[row];
+		}
+		int code = codes[row];
+		return code < 0 ? null : dictionary.get(code);
+	}
+
+	public void setString(int row, String value) {
+		if (values != null) {
+			values[row] = value;
+			return;
+		}
+		if (value == null) {
+			codes[row] = -1;
+			return;
+		}
+		Integer code = lookup.get(value);
+		if (code == null) {
+			if (dictionary.size() == MAX_DICTIONARY_SIZE) {
+				decode();
+				values[row] = value;
+				return;
+			}
+			code = dictionary.size();
+			dictionary.add(value);
+			lookup.put(value, code);
+		}
+		codes[row] = code;
+	}
+
+	/**
+	 * @return true while the column is dictionary encoded
+	 */
+	public boolean isDictionaryEncoded() {
+		return values == null;
+	}
+
+	@Override
+	public boolean isNull(int row) {
+		return getString(row) == null;
+	}
+
+	@Override
+	public Object get(int row) {
+		return getString(row);
+	}
+
+	@Override
+	public void set(int row, Object value) {
+		setString(row, value == null ? null : value.toString());
+	}
+
+	@Override
+	void set(int row, RowBuffer buffer, int index) {
+		setString(row, (String) buffer.getObject(index));
+	}
+
+	@Override
+	void copyTo(int row, RowBuffer buffer, int index) {
+		buffer.setObject(index, getString(row));
+	}
+
+	/**
+	 * while both columns are dictionary encoded, each code of the other column is looked up in this one's dictionary
+	 * only once
+	 */
+	@Override
+	void copyRows(Column from, int[] rows, int count, int to) {
+		StringColumn source = (StringColumn) from;
+		int[] translated = null;
+		for (int i = 0; i < count; i++) {
+			int row = rows[i];
+			if (values != null || source.values != null) {
+				setString(to + i, source.getString(row));
+				continue;
+			}
+			int code = source.codes[row];
+			if (code < 0) {
+				codes[to + i] = -1;
+				continue;
+			}
+			if (translated == null) {
+				translated = new int[source.dictionary.size()];
+				Arrays.fill(translated, -1);
+			}
+			if (translated[code] >= 0) {
+				codes[to + i] = translated[code];
+			} else {
+				setString(to + i, source.dictionary.get(code));
+				if (values == null) {
+					translated[code] = codes[to + i];
+				}
+			}
+		}
+	}
+
+	@Override
+	void ensureCapacity(int capacity) {
+		if (values != null) {
+			if (capacity > values.length) {
+				values = Arrays.copyOf(values, grow(values.length, capacity));
+			}
+		} else if (capacity > codes.length) {
+			codes = Arrays.copyOf(codes, grow(codes.length, capacity));
+		}
+	}
+
+	/**
+	 * also drop the dictionary, so that a column cleared and refilled over and over holds only the current values
+	 */
+	@Override
+	void clear() {
+		super.clear();
+		if (values != null) {
+			codes = new int[values.length];
+			values = null;
+		}
+		dictionary = new ArrayList<String>();
+		lookup = new HashMap<String, Integer>();
+	}
+
+	@Override
+	long estimatedBytes() {
+		if (values != null) {
+			return values.length * 48L;
+		}
+		return codes.length * 4L + dictionary.size() * 96L;
+	}
+
+	/**
+	 * swap the dictionary for a reference to each row's String
+	 */
+	private void decode() {
+		values = new String[codes.length];
+		for (int i = 0; i < codes.length; i++) {
+			values[i] = codes[i] < 0 ? null : dictionary.get(codes[i]);
+		}
+		codes = null;
+		dictionary = null;
+		lookup = null;
+	}
+}
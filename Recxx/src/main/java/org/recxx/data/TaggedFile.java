@@ -0,0 +1,168 @@
+package org.recxx.data;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * <p>
+ * A binary file kept between runs, such as a {@link SnapshotFile}, which starts with a header of its format's magic
+ * number and version and a tag describing what it was made from. A file is only read back if its header is the one
+ * asked for, so a file of another format, an older version of the format or made from something else is ignored.
+ * </p>
+ *
+ * <p>
+ * A file is written to a temporary file which is then renamed, so a run that dies part way through never leaves half
+ * a file behind.
+ * </p>
+ */
+public final class TaggedFile {
+
+	private static final int BUFFER_SIZE = 256 * 1024;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private final File file;
+
+	private final int magic;
+
+	private final int version;
+
+	private final String tag;
+
+	private final String description;
+
+	/**
+	 * @param file
+	 *            the file
+	 * @param magic
+	 *            magic number of the file's format
+	 * @param version
+	 *            version of the file's format
+	 * @param tag
+	 *            description of what the file is made from
+	 * @param description
+	 *            what the file holds, for messages, such as 'snapshot'
+	 */
+	public TaggedFile(File file, int magic, int version, String tag, String description) {
+		this.file = file;
+		this.magic = magic;
+		this.version = version;
+		this.tag = tag;
+		this.description = description;
+	}
+
+	/**
+	 * @return the file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * open the file for reading, positioned after its header
+	 *
+	 * @return the contents, or null if there isn't a file or it has a different header
+	 * @throws IOException
+	 *             if the file can't be read
+	 */
+	public DataInputStream open() throws IOException {
+		if (!file.isFile()) {
+			return null;
+		}
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+		boolean matched = false;
+		try {
+			matched = in.readInt() == magic && in.readInt() == version && tag.equals(readString(in));
+		} catch (EOFException e) {
+			throw truncated(e);
+		} finally {
+			if (!matched) {
+				in.close();
+			}
+		}
+		return matched ? in : null;
+	}
+
+	/**
+	 * @return the exception to throw when the file ends part way through
+	 */
+	public IOException truncated(EOFException e) {
+		return new IOException("The " + description + " " + file + " is truncated", e);
+	}
+
+	/**
+	 * write the file, replacing any file already there
+	 *
+	 * @param contents
+	 *            writes what follows the header
+	 * @throws IOException
+	 *             if the file can't be written
+	 */
+	public void write(Contents contents) throws IOException {
+		File directory = file.getAbsoluteFile().getParentFile();
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Unable to create " + description + " directory " + directory);
+		}
+
+		File temp = File.createTempFile(file.getName(), ".tmp", directory);
+		try {
+			DataOutputStream out =
+			        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), BUFFER_SIZE));
+			try {
+				out.writeInt(magic);
+				out.writeInt(version);
+				writeString(out, tag);
+				contents.writeTo(out);
+			} finally {
+				out.close();
+			}
+
+			if (file.exists() && !file.delete() || !temp.renameTo(file)) {
+				throw new IOException("Unable to replace " + description + " " + file);
+			}
+		} finally {
+			temp.delete();
+		}
+	}
+
+	/**
+	 * write a string as its length then its UTF-8 bytes
+	 */
+	public static void writeString(DataOutputStream out, String value) throws IOException {
+		byte[] bytes = value.getBytes(UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * @return a string written by {@link #writeString(DataOutputStream, String)}
+	 */
+	public static String readString(DataInputStream in) throws IOException {
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	/**
+	 * what follows the header of a file
+	 */
+	public interface Contents {
+
+		/**
+		 * @param out
+		 *            the file, after its header
+		 * @throws IOException
+		 *             if it can't be written
+		 */
+		void writeTo(DataOutputStream out) throws IOException;
+	}
+}
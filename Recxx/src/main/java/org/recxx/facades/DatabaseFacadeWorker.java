@@ -2,19 +2,47 @@ package org.recxx.facades;
 
 import org.recxx.AbstractRecFeed;
 import org.recxx.Recxx;
+import org.recxx.data.ColumnType;
+import org.recxx.data.Dataset;
+import org.recxx.data.RowBuffer;
+import org.recxx.data.RowCursor;
+import org.recxx.utils.ArrayUtils;
 
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
 import java.sql.*;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * This class represents a facade on to a Database for use as a data source when
  * rec'ing 2 sources of data
+ * <p/>
+ * If a partitionColumn is given, the query is split into ranges of that column,
+ * each run at the same time on its own connection. The ranges are either given
+ * by partitionBoundaries, or found by splitting the column's minimum to maximum
+ * into the given number of partitions. Each range is loaded on its own, and
+ * the ranges are merged into the one dataset in order, with no more than
+ * twice the parallelism of them loaded ahead of the merge. The ranges are run on
+ * the executor of the worker's {@link WorkerScheduler}, so with virtual
+ * threads a query may be split into many more ranges than there are OS
+ * threads.
  */
 public class DatabaseFacadeWorker extends AbstractRecFeed implements RecxxWorker {
 
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
     protected Properties properties = new Properties();
     private Connection connection;
     private Statement statment;
@@ -37,21 +65,33 @@ public class DatabaseFacadeWorker extends AbstractRecFeed implements RecxxWorker
      */
     public void run() {
         try {
-            getData();
-
-            // update the data back..
-            HashMap finishedData = new HashMap();
-            finishedData.put(Recxx.COLUMNS, columns);
-            finishedData.put(Recxx.DATA, data);
-            finishedData.put(Recxx.PROPERTIES, properties);
-
-            rec.setDataToCompare(finishedData,
-                    properties.getProperty("order"));
+            load();
         } catch (Exception e) {
             e.printStackTrace();
         }
     }
 
+    /**
+     * run the query, and hand the data back to the data store
+     *
+     * @return the data loaded
+     * @throws Exception if the query can't be run or its rows loaded
+     */
+    public Dataset load() throws Exception {
+        getData();
+        fingerprintData();
+
+        // update the data back..
+        HashMap finishedData = new HashMap();
+        finishedData.put(Recxx.COLUMNS, columns);
+        finishedData.put(Recxx.DATA, data);
+        finishedData.put(Recxx.PROPERTIES, properties);
+
+        rec.setDataToCompare(finishedData,
+                properties.getProperty("order"));
+        return data;
+    }
+
     /**
      * set the properties object
      */
@@ -63,6 +103,71 @@ public class DatabaseFacadeWorker extends AbstractRecFeed implements RecxxWorker
      * validate the properties, run the query and process the data
      */
     private void getData() throws Exception {
+        if (properties.getProperty("partitionColumn") != null) {
+            data = processPartitions();
+            return;
+        }
+
+        ResultSet rs = performDBQuery();
+
+        data = processResultSet(properties.getProperty("key"), rs, properties);
+
+        rs.close();
+
+        closeDB();
+    }
+
+    /**
+     * validate the properties and run the query, returning a cursor over its
+     * rows in the order the database returns them rather than loading them.
+     * The query is never partitioned, as the rows of a cursor are read by one
+     * thread in order. Closing the cursor closes the database connection.
+     *
+     * @return cursor positioned before the first row
+     * @throws Exception if the query can't be run or the key isn't in its results
+     */
+    public RowCursor openCursor() throws Exception {
+        ResultSet rs = performDBQuery();
+
+        try {
+            return new ResultSetCursor(properties.getProperty("key"), rs, properties) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        try {
+                            closeDB();
+                        } catch (SQLException e) {
+                            throw new IOException(e);
+                        }
+                    }
+                }
+            };
+        } catch (Exception e) {
+            rs.close();
+            closeDB();
+            throw e;
+        }
+    }
+
+    /**
+     * validate the properties and run the query
+     *
+     * @return ResultSet
+     */
+    private ResultSet performDBQuery() throws Exception {
+        checkProperties();
+
+        return performDBQuery(properties.getProperty("driver"), properties.getProperty("sql"),
+                properties.getProperty("uid"), properties.getProperty("url"),
+                properties.getProperty("pwd"), getFetchSize());
+    }
+
+    /**
+     * check the properties needed to run the query have been set
+     */
+    private void checkProperties() throws Exception {
         String uid = properties.getProperty("uid");
         String pwd = properties.getProperty("pwd");
         String sql = properties.getProperty("sql");
@@ -75,16 +180,212 @@ public class DatabaseFacadeWorker extends AbstractRecFeed implements RecxxWorker
             properties.list(System.err);
             throw new Exception(
                     "One or properties could not be found to initialise class..properties set are: ");
-        } else {
-            ResultSet rs = performDBQuery(driver, sql, uid, url, pwd);
+        }
+    }
+
+    /**
+     * @return the fetch size property, or the default if it isn't set
+     */
+    private int getFetchSize() throws Exception {
+        return getIntProperty("fetchSize", DEFAULT_FETCH_SIZE);
+    }
 
-            data = processResultSet(key, rs, properties);
+    private int getIntProperty(String name, int defaultValue) throws Exception {
+        String value = properties.getProperty(name);
+        if (value == null)
+            return defaultValue;
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new Exception(name + " of " + value + " is not a number");
+        }
+    }
+
+    /**
+     * run the query as ranges of the partition column, each on its own
+     * connection and thread, merging the rows of each range into the data in
+     * the order of the ranges as soon as it and the ranges before it have been
+     * loaded. No more than twice the parallelism of ranges are loaded ahead of
+     * the merge, and each range is let go as soon as it has been merged.
+     *
+     * @return the loaded data
+     * @throws Exception if a range can't be queried or the rows can't be aggregated
+     */
+    private Dataset processPartitions() throws Exception {
+        checkProperties();
 
+        String driver = properties.getProperty("driver");
+        String url = properties.getProperty("url");
+        String uid = properties.getProperty("uid");
+        String pwd = properties.getProperty("pwd");
+        String sql = properties.getProperty("sql");
+        String key = properties.getProperty("key");
+        String column = properties.getProperty("partitionColumn");
+        int fetchSize = getFetchSize();
+        boolean aggregate = Boolean.valueOf(properties.getProperty("aggregate"));
+
+        String[] boundaries = getPartitionBoundaries(driver, url, uid, pwd, sql, column);
+        int partitions = boundaries.length + 1;
+        int parallelism = Math.min(partitions,
+                getIntProperty("parallelism", Runtime.getRuntime().availableProcessors()));
+
+        LOGGER.log(Level.INFO, "Running sql in " + partitions + " partition(s) of " + column + " with "
+                + parallelism + " worker(s) :" + sql);
+
+        ExecutorService executor = scheduler.newExecutor(properties.getProperty("alias") + "-partition", parallelism);
+        LinkedList<Future<Dataset>> inFlight = new LinkedList<Future<Dataset>>();
+        Dataset data = null;
+        int[] compareColumnPosition = null;
+        RowBuffer row = null;
+        int count = 0;
+
+        try {
+            int nextPartition = 0;
+            while (nextPartition < partitions || !inFlight.isEmpty()) {
+                while (nextPartition < partitions && inFlight.size() < parallelism * 2) {
+                    inFlight.add(executor.submit(new PartitionLoader(driver, url, uid, pwd, fetchSize,
+                            partitionSql(sql, column, boundaries, nextPartition))));
+                    nextPartition++;
+                }
+
+                Dataset loaded = inFlight.removeFirst().get();
+                if (data == null) {
+                    data = new Dataset(loaded.getColumnNames(), getTypes(loaded), loaded.getKeyPositions());
+                    row = data.newRowBuffer();
+                    if (aggregate)
+                        compareColumnPosition = ArrayUtils.getCompareColumnsPosition(columns,
+                                ArrayUtils.convertStringKeyToArray(key, null));
+                }
+
+                for (int i = 0; i < loaded.size(); i++) {
+                    loaded.copyTo(i, row);
+                    addRow(data, loaded.getKey(i), row, key, aggregate, compareColumnPosition);
+                }
+                count += loaded.size();
+
+                LOGGER.log(Level.WARNING, "Loaded " + decimalFormatter.format(count)
+                        + " (aggregated " + decimalFormatter.format(data.size()) + ") row(s)");
+            }
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof Exception)
+                throw (Exception) ee.getCause();
+            throw ee;
+        } finally {
+            executor.shutdownNow();
+        }
+
+        LOGGER.log(Level.WARNING, "Loaded " + decimalFormatter.format(count) + " (aggregated "
+                + decimalFormatter.format(data.size()) + ") row(s) in total");
+        rowsRead = count;
+
+        return data;
+    }
+
+    /**
+     * @return the boundaries between the ranges of the partition column, either
+     *         as given, or by splitting the range of its values into the given
+     *         number of partitions
+     */
+    private String[] getPartitionBoundaries(String driver, String url, String uid, String pwd,
+                                            String sql, String column) throws Exception {
+        String boundaries = properties.getProperty("partitionBoundaries");
+        if (boundaries != null)
+            return ArrayUtils.convertStringKeyToArray(boundaries.trim(), null);
+
+        int partitions = getIntProperty("partitions", 0);
+        if (partitions < 1)
+            throw new Exception("partitionColumn " + column
+                    + " needs either partitionBoundaries or a number of partitions");
+
+        Connection rangeConnection = connect(driver, url, uid, pwd, 0);
+        Statement rangeStatement = null;
+        try {
+            rangeStatement = rangeConnection.createStatement();
+            ResultSet rs = rangeStatement.executeQuery("SELECT MIN(" + column + "), MAX(" + column
+                    + ") FROM (" + stripTerminator(sql) + ") recxx_partitioned");
+            rs.next();
+            BigDecimal min = rs.getBigDecimal(1);
+            BigDecimal max = rs.getBigDecimal(2);
             rs.close();
 
-            closeDB();
+            return min == null ? new String[0] : partitionBoundaries(min, max, partitions);
+        } finally {
+            close(rangeStatement, rangeConnection);
         }
+    }
+
+    /**
+     * split the range from min to max into partitions of equal width. The
+     * boundaries of a whole number range are whole numbers, and a range too
+     * narrow for the partitions has fewer of them.
+     *
+     * @param min        smallest value of the partition column
+     * @param max        largest value of the partition column
+     * @param partitions number of partitions wanted
+     * @return the boundaries between the partitions, in increasing order
+     */
+    static String[] partitionBoundaries(BigDecimal min, BigDecimal max, int partitions) {
+        boolean wholeNumbers = min.signum() == 0 || min.stripTrailingZeros().scale() <= 0;
+        wholeNumbers &= max.signum() == 0 || max.stripTrailingZeros().scale() <= 0;
+        BigDecimal width = max.subtract(min);
 
+        List<String> boundaries = new ArrayList<String>();
+        BigDecimal previous = min;
+        for (int i = 1; i < partitions; i++) {
+            BigDecimal boundary;
+            if (wholeNumbers) {
+                BigInteger step = width.toBigInteger().multiply(BigInteger.valueOf(i))
+                        .divide(BigInteger.valueOf(partitions));
+                boundary = min.add(new BigDecimal(step));
+            } else {
+                boundary = min.add(width.multiply(BigDecimal.valueOf(i))
+                        .divide(BigDecimal.valueOf(partitions), 10, RoundingMode.HALF_UP));
+            }
+            if (boundary.compareTo(previous) > 0) {
+                boundaries.add(boundary.stripTrailingZeros().toPlainString());
+                previous = boundary;
+            }
+        }
+        return boundaries.toArray(new String[boundaries.size()]);
+    }
+
+    /**
+     * wrap the sql so that it only returns one range of the partition column.
+     * The first range also returns the rows where the column is null, so that
+     * between them the ranges return every row exactly once.
+     *
+     * @param sql        sql to run on the database
+     * @param column     partition column
+     * @param boundaries boundaries between the ranges
+     * @param partition  the range to return, from 0 to the number of boundaries
+     * @return the sql for the range
+     */
+    static String partitionSql(String sql, String column, String[] boundaries, int partition) {
+        String partitionSql = "SELECT * FROM (" + stripTerminator(sql) + ") recxx_partition";
+
+        if (boundaries.length == 0)
+            return partitionSql;
+        if (partition == 0)
+            return partitionSql + " WHERE " + column + " < " + boundaries[0] + " OR " + column + " IS NULL";
+        if (partition == boundaries.length)
+            return partitionSql + " WHERE " + column + " >= " + boundaries[partition - 1];
+        return partitionSql + " WHERE " + column + " >= " + boundaries[partition - 1]
+                + " AND " + column + " < " + boundaries[partition];
+    }
+
+    private static String stripTerminator(String sql) {
+        String stripped = sql.trim();
+        while (stripped.endsWith(";"))
+            stripped = stripped.substring(0, stripped.length() - 1).trim();
+        return stripped;
+    }
+
+    private static ColumnType[] getTypes(Dataset data) {
+        ColumnType[] types = new ColumnType[data.getColumnCount()];
+        for (int i = 0; i < types.length; i++) {
+            types[i] = data.getType(i);
+        }
+        return types;
     }
 
     /**
@@ -95,51 +396,130 @@ public class DatabaseFacadeWorker extends AbstractRecFeed implements RecxxWorker
      * @param uid
      * @param url
      * @param pwd
+     * @param fetchSize rows fetched from the database at a time
      * @return ResultSet
      */
     private ResultSet performDBQuery(String driver, String sql, String uid,
-                                     String url, String pwd) throws Exception {
+                                     String url, String pwd, int fetchSize) throws Exception {
         ResultSet rs = null;
-        openDB(driver, url, uid, pwd);
+        openDB(driver, url, uid, pwd, fetchSize);
         LOGGER.log(Level.INFO, "Running sql :" + sql);
         rs = statment.executeQuery(sql);
         return rs;
     }
 
     /**
-     * open the database connection
+     * open the database connection, with a forward only, read only statement
+     * which fetches the given number of rows at a time. The rows are read once
+     * in order, so this lets the driver stream them rather than hold the whole
+     * result client side. Some drivers, such as PostgreSQL's, only use the
+     * fetch size outside of auto-commit, so auto-commit is turned off while a
+     * fetch size is set - the query is only ever read.
      *
      * @param driver
      * @param url
      * @param uid
      * @param pwd
+     * @param fetchSize rows fetched at a time, or 0 to leave it to the driver
      * @throws ClassNotFoundException if the JDBC driver can't be found
      * @throws java.sql.SQLException
      */
-    private void openDB(String driver, String url, String uid, String pwd)
+    private void openDB(String driver, String url, String uid, String pwd, int fetchSize)
+            throws ClassNotFoundException, SQLException {
+        connection = connect(driver, url, uid, pwd, fetchSize);
+        statment = createStatement(connection, fetchSize);
+
+        LOGGER.log(Level.INFO, "Connected to DB using " + url + " (fetch size " + fetchSize + ")");
+        LOGGER.log(Level.INFO, "Successfully initialised the DB connections...");
+    }
+
+    private static Connection connect(String driver, String url, String uid, String pwd, int fetchSize)
             throws ClassNotFoundException, SQLException {
         Class.forName(driver);
 
         // get the connection
-        connection = DriverManager.getConnection(url, uid, pwd);
-        statment = connection.createStatement();
+        Connection connection = DriverManager.getConnection(url, uid, pwd);
+        if (fetchSize != 0) {
+            connection.setAutoCommit(false);
+        }
+        return connection;
+    }
 
-        LOGGER.log(Level.INFO, "Connected to DB using " + url);
-        LOGGER.log(Level.INFO, "Successfully initialised the DB connections...");
+    private static Statement createStatement(Connection connection, int fetchSize) throws SQLException {
+        Statement statement = connection.createStatement(ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY);
+        if (fetchSize != 0) {
+            statement.setFetchSize(fetchSize);
+        }
+        return statement;
     }
 
     /**
-     * close the database connection
+     * close the database connection, ending the read only transaction if
+     * auto-commit was turned off
      *
      * @throws java.sql.SQLException
      */
     private void closeDB() throws SQLException {
-        if (statment != null)
-            statment.close();
+        close(statment, connection);
+    }
 
-        if (connection != null)
-            connection.close();
+    private static void close(Statement statement, Connection connection) throws SQLException {
+        if (statement != null)
+            statement.close();
+
+        if (connection != null) {
+            try {
+                if (!connection.getAutoCommit())
+                    connection.rollback();
+            } finally {
+                connection.close();
+            }
+        }
+    }
 
+    /**
+     * loads one range of a partitioned query on its own connection
+     */
+    private class PartitionLoader implements Callable<Dataset> {
+        private final String driver;
+        private final String url;
+        private final String uid;
+        private final String pwd;
+        private final int fetchSize;
+        private final String sql;
+
+        PartitionLoader(String driver, String url, String uid, String pwd, int fetchSize, String sql) {
+            this.driver = driver;
+            this.url = url;
+            this.uid = uid;
+            this.pwd = pwd;
+            this.fetchSize = fetchSize;
+            this.sql = sql;
+        }
+
+        public Dataset call() throws Exception {
+            Connection partitionConnection = connect(driver, url, uid, pwd, fetchSize);
+            Statement statement = null;
+            try {
+                statement = createStatement(partitionConnection, fetchSize);
+                LOGGER.log(Level.INFO, "Running sql :" + sql);
+                RowCursor cursor = new ResultSetCursor(properties.getProperty("key"),
+                        statement.executeQuery(sql), properties);
+                try {
+                    Dataset partition = new Dataset(cursor.getColumnNames(), cursor.getColumnTypes(),
+                            cursor.getKeyPositions(), false);
+                    while (cursor.next()) {
+                        partition.add(cursor.getKey(), cursor.getRow());
+                    }
+                    return partition;
+                } finally {
+                    cursor.close();
+                }
+            } finally {
+                close(statement, partitionConnection);
+            }
+        }
     }
 
     /**
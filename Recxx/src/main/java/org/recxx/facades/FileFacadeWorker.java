@@ -2,32 +2,73 @@ package org.recxx.facades;
 
 import org.recxx.AbstractRecFeed;
 import org.recxx.Recxx;
+import org.recxx.data.ColumnType;
+import org.recxx.data.CompositeKey;
+import org.recxx.data.Dataset;
+import org.recxx.data.RowBuffer;
+import org.recxx.data.RowCursor;
+import org.recxx.data.SnapshotFile;
+import org.recxx.metrics.EventBatch;
+import org.recxx.reader.Decompression;
+import org.recxx.reader.MappedFileReader;
 import org.recxx.utils.ArrayUtils;
 
 import java.io.BufferedReader;
+import java.io.EOFException;
+import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.CRC32;
 
 /**
  * This class represents a facade on to a file for use as a data source when
  * reconciling two sources of data
  */
 public class FileFacadeWorker extends AbstractRecFeed implements RecxxWorker {
+    public static final String STREAM_READER = "stream";
+    public static final String MMAP_READER = "mmap";
+    public static final String DEFAULT_CHUNK_SIZE = String.valueOf(64 * 1024 * 1024);
+
+    // rows in each batch parsed and loaded by a single thread, as raised in a ParseEvent
+    private static final int PARSE_BATCH = 10000;
+
+    // bytes at each end of the file checked to tell whether a snapshot of it is up to date
+    private static final long SNAPSHOT_SAMPLE = 1024 * 1024;
+
+    // properties which change what is loaded from the file, and so which snapshot of it can be used. The
+    // two readers aren't bound to split every line the same way, so a snapshot is only used with the reader
+    // which loaded it
+    private static final String[] SNAPSHOT_PROPERTIES = {"key", "columnsToCompare", "columnDataTypes",
+            "aggregate", "delimiter", "columnsSupplied", "dataTypesSupplied", "columns", "dateFormat",
+            "handleNullsAsZero", "appendDelimiter", "reader"};
+
     private Recxx m_Rec = null;
     private String m_ColumnNames = "";
-    private static SimpleDateFormat m_Dtf = new SimpleDateFormat();
+    private final SimpleDateFormat m_Dtf = new SimpleDateFormat();
 
     private List<Integer> m_KeyPositions;
     private List<Integer> m_ComparePositions;
     private String[] m_KeyColumns;
     private String[] m_CompareColumns;
     private String[] m_ReducedColumns;
+    private String[] m_ColumnsClassNames;
+    private ColumnType[] m_ReducedTypes;
+    private boolean[] m_KeptColumns;
+    private boolean m_HandleNullsAsZero;
+    private int m_MaxFractionDigits;
 
     protected Properties m_Properties = new Properties();
 
@@ -51,22 +92,34 @@ public class FileFacadeWorker extends AbstractRecFeed implements RecxxWorker {
      */
     public void run() {
         try {
-            getData();
-
-            // update the data back..
-            HashMap finishedData = new HashMap();
-            finishedData.put(Recxx.COLUMNS, m_ReducedColumns);
-            finishedData.put(Recxx.DATA, data);
-            finishedData.put(Recxx.PROPERTIES, m_Properties);
-
-            m_Rec.setDataToCompare(finishedData,
-                    m_Properties.getProperty("order"));
+            load();
         } catch (Exception e) {
             e.printStackTrace();
         }
 
     }
 
+    /**
+     * load the data from the file and hand it back to the data store
+     *
+     * @return the data loaded
+     * @throws Exception if the file can't be read
+     */
+    public Dataset load() throws Exception {
+        getData();
+        fingerprintData();
+
+        // update the data back..
+        HashMap finishedData = new HashMap();
+        finishedData.put(Recxx.COLUMNS, m_ReducedColumns);
+        finishedData.put(Recxx.DATA, data);
+        finishedData.put(Recxx.PROPERTIES, m_Properties);
+
+        m_Rec.setDataToCompare(finishedData,
+                m_Properties.getProperty("order"));
+        return data;
+    }
+
     /**
      * Set the properties to be used for worker
      */
@@ -89,6 +142,178 @@ public class FileFacadeWorker extends AbstractRecFeed implements RecxxWorker {
      * @throws Exception if a problem
      */
     private void getData() throws Exception {
+        checkProperties();
+
+        String filePath = m_Properties.getProperty("filePath");
+        String key = m_Properties.getProperty("key");
+
+        SnapshotFile snapshot = getSnapshot(new File(filePath));
+        if (snapshot != null && readSnapshot(snapshot))
+            return;
+
+        if (useMappedReader()) {
+            LOGGER.info("Mapping file " + filePath);
+            data = processMappedFile(key, new File(filePath), m_Properties);
+        } else {
+            BufferedReader br = openFile(filePath);
+            data = processFile(key, br, m_Properties);
+
+            closeFile(br);
+        }
+
+        if (snapshot != null)
+            writeSnapshot(snapshot);
+    }
+
+    /**
+     * the snapshot of the file as loaded with these properties, if a snapshot
+     * directory is set. The snapshot is named after the file and the
+     * properties, and tagged with them and with the size, modification time
+     * and a checksum of the start and end of the file, so it is only read
+     * back while the file is unchanged.
+     *
+     * @param file file to load
+     * @return the snapshot, which may not exist yet, or null if there is no
+     * snapshot directory or no file
+     * @throws IOException if the file can't be read
+     */
+    SnapshotFile getSnapshot(File file) throws IOException {
+        String directory = m_Properties.getProperty("snapshotDirectory");
+        if (directory == null || !file.isFile())
+            return null;
+
+        StringBuilder loadedWith = new StringBuilder();
+        loadedWith.append("filePath=").append(file.getCanonicalPath()).append('\n');
+        for (String property : SNAPSHOT_PROPERTIES) {
+            String value = m_Properties.getProperty(property);
+            if (value != null)
+                loadedWith.append(property).append('=').append(value).append('\n');
+        }
+        loadedWith.append("decimalPlacesPattern=").append(Recxx.m_dpFormatter.toPattern()).append('\n');
+
+        String tag = loadedWith + "length=" + file.length() + "\nlastModified=" + file.lastModified()
+                + "\nchecksum=" + Long.toHexString(sampleChecksum(file)) + "\n";
+        String name = file.getName() + "-" + Integer.toHexString(loadedWith.toString().hashCode()) + ".snapshot";
+        return new SnapshotFile(new File(directory, name), tag);
+    }
+
+    /**
+     * @return a checksum of the first and last SNAPSHOT_SAMPLE bytes of the
+     * file, which is all of it for a small file
+     */
+    private static long sampleChecksum(File file) throws IOException {
+        CRC32 checksum = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            long length = in.length();
+            long head = Math.min(length, SNAPSHOT_SAMPLE);
+            sample(in, 0, head, buffer, checksum);
+            sample(in, Math.max(head, length - SNAPSHOT_SAMPLE), length, buffer, checksum);
+        } finally {
+            in.close();
+        }
+        return checksum.getValue();
+    }
+
+    private static void sample(RandomAccessFile in, long from, long to, byte[] buffer, CRC32 checksum)
+            throws IOException {
+        in.seek(from);
+        for (long position = from; position < to; ) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, to - position));
+            if (read < 0)
+                throw new EOFException();
+            checksum.update(buffer, 0, read);
+            position += read;
+        }
+    }
+
+    /**
+     * load the data from the snapshot if it is up to date
+     *
+     * @return true if it was loaded, false if the file needs to be parsed
+     */
+    private boolean readSnapshot(SnapshotFile snapshot) {
+        Dataset loaded;
+        try {
+            loaded = snapshot.read();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to read snapshot " + snapshot.getFile()
+                    + ", parsing the file instead", e);
+            return false;
+        }
+        if (loaded == null) {
+            LOGGER.info("No up to date snapshot " + snapshot.getFile() + ", parsing the file");
+            return false;
+        }
+
+        data = loaded;
+        rowsRead = snapshot.getRowsRead();
+        m_ReducedColumns = data.getColumnNames();
+        LOGGER.info("Loaded " + decimalFormatter.format(rowsRead) + " (aggregated "
+                + decimalFormatter.format(data.size()) + ") row(s) from snapshot " + snapshot.getFile());
+        return true;
+    }
+
+    /**
+     * write the loaded data to the snapshot for the next run. A snapshot that
+     * can't be written only loses the next run its head start, so doesn't
+     * fail this one.
+     */
+    private void writeSnapshot(SnapshotFile snapshot) {
+        try {
+            snapshot.write(data, rowsRead);
+            LOGGER.info("Wrote snapshot " + snapshot.getFile());
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Unable to write snapshot " + snapshot.getFile(), e);
+        }
+    }
+
+    /**
+     * open a cursor over the key and compare columns of the file, reading the
+     * rows one at a time in file order rather than loading them. Rows with the
+     * same key are returned as they are, not aggregated.
+     *
+     * @return cursor positioned before the first row
+     * @throws Exception if the file can't be opened or the key isn't in it
+     */
+    public RowCursor openCursor() throws Exception {
+        checkProperties();
+
+        String filePath = m_Properties.getProperty("filePath");
+        String key = m_Properties.getProperty("key");
+
+        if (useMappedReader()) {
+            File file = new File(filePath);
+            MappedFileReader reader = openMappedFile(file, 0, file.length(),
+                    MappedFileReader.DEFAULT_WINDOW_SIZE);
+            try {
+                readColumnNames(reader);
+                prepareColumns(key, m_Properties);
+            } catch (Exception e) {
+                reader.close();
+                throw e;
+            }
+            return new MappedCursor(reader);
+        }
+
+        BufferedReader br = openFile(filePath);
+        try {
+            getColumnCount(br);
+            prepareColumns(key, m_Properties);
+        } catch (Exception e) {
+            closeFile(br);
+            throw e;
+        }
+        return new StreamCursor(br);
+    }
+
+    /**
+     * check the properties needed to read the file are set
+     *
+     * @throws Exception if one is missing
+     */
+    private void checkProperties() throws Exception {
         String filePath = m_Properties.getProperty("filePath");
         String delimiter = m_Properties.getProperty("delimiter");
         String aggregate = m_Properties.getProperty("aggregate");
@@ -99,13 +324,34 @@ public class FileFacadeWorker extends AbstractRecFeed implements RecxxWorker {
             m_Properties.list(System.err);
             throw new Exception(
                     "One or properties could not be found to initialise class..properties set are: ");
-        } else {
-            BufferedReader br = openFile(filePath);
-            data = processFile(key, br, m_Properties);
+        }
+    }
 
-            closeFile(br);
+    /**
+     * should the file be read through a MappedFileReader, rather than line by
+     * line?
+     *
+     * @return true if the mmap reader is asked for, and the delimiter and an
+     * uncompressed file allow it
+     * @throws IOException if the file can't be read
+     */
+    private boolean useMappedReader() throws IOException {
+        if (!MMAP_READER.equalsIgnoreCase(m_Properties.getProperty("reader")))
+            return false;
+
+        String filePath = m_Properties.getProperty("filePath");
+        if (Decompression.detect(new File(filePath)) != Decompression.NONE) {
+            LOGGER.warning(filePath + " is compressed, reading it line by line instead of mapping it");
+            return false;
         }
 
+        String delimiter = m_Properties.getProperty("delimiter");
+        if (canMapFile(delimiter))
+            return true;
+
+        LOGGER.warning("Delimiter '" + delimiter + "' is not a single byte, reading "
+                + m_Properties.getProperty("filePath") + " line by line instead");
+        return false;
     }
 
     /**
@@ -122,7 +368,8 @@ public class FileFacadeWorker extends AbstractRecFeed implements RecxxWorker {
     }
 
     /**
-     * return a buffered reader reference to the file to be loaded
+     * return a buffered reader reference to the file to be loaded. A gzip
+     * file is decompressed as it is read, on threads of its own
      *
      * @param filePath path to file
      * @return a buffered reader reference
@@ -132,9 +379,15 @@ public class FileFacadeWorker extends AbstractRecFeed implements RecxxWorker {
         BufferedReader br;
 
         try {
-            FileReader fr = new FileReader(filePath);
-            br = new BufferedReader(fr);
-            LOGGER.info("Found file " + filePath);
+            File file = new File(filePath);
+            Decompression decompression = Decompression.detect(file);
+            int threads = Integer.parseInt(m_Properties.getProperty("parallelism", "1"));
+            InputStream in = decompression.open(file, threads);
+            br = new BufferedReader(new InputStreamReader(in, Charset.defaultCharset()));
+            if (decompression == Decompression.NONE)
+                LOGGER.info("Found file " + filePath);
+            else
+                LOGGER.info("Found " + decompression + " compressed file " + filePath);
         } catch (FileNotFoundException fnfe) {
             LOGGER.log(Level.SEVERE, "FileNotFoundException. Message is "
                     + fnfe);
@@ -144,138 +397,410 @@ public class FileFacadeWorker extends AbstractRecFeed implements RecxxWorker {
     }
 
     /**
-     * Given a key and java.sql.ResultSet, process the data and set the array of
-     * columns, and also return a HashMap of data, keyed on the unique key
-     * against an ArrayList representing a row.
+     * Given a key and a reader on the file, process the data and set the array
+     * of columns, and also return a Dataset of the key and compare columns,
+     * indexed on the unique key.
      *
      * @param key  key
      * @param br   buffered reader
      * @param prop prop
-     * @return HashMap                      map
+     * @return Dataset                      data
      * @throws Exception any other error
      */
-    public HashMap processFile(String key, BufferedReader br, Properties prop)
+    public Dataset processFile(String key, BufferedReader br, Properties prop)
             throws Exception {
-        HashMap data = new HashMap();
-        boolean fileEmpty = false;
-        int count = 0;
         int[] compareColumnPosition = null;
 
-        boolean handleNullsAsZero = Boolean.valueOf(prop
-                .getProperty("handleNullsAsZero"));
         boolean aggregate = Boolean.valueOf(prop.getProperty("aggregate"));
 
         getColumnCount(br);
+        prepareColumns(key, prop);
 
-        String[] columns = getColumnsData(m_ColumnNames);
-        String[] columnsClassNames = getColumnsClassNameData();
+        Dataset data = newDataset();
 
-        m_KeyColumns = ArrayUtils.convertStringKeyToArray(key);
-        m_CompareColumns = ArrayUtils.convertStringKeyToArray(
-                m_Properties.getProperty("columnsToCompare"));
-        // m_ReducedColumns = addArrays(m_KeyColumns,m_CompareColumns);
-        m_ReducedColumns = addArraysProperly(columns, m_KeyColumns,
-                m_CompareColumns);
+        // if we're aggregating, get the names of the compare columns to
+        // bucket
+        if (aggregate)
+            compareColumnPosition = ArrayUtils.getCompareColumnsPosition(m_ReducedColumns, m_KeyColumns);
 
+        // the reader belongs to the caller, so the cursor isn't closed
+        loadRows(data, new StreamCursor(br), key, aggregate, compareColumnPosition);
 
-        if (ArrayUtils.keysPresentInColumns(m_KeyColumns, columns)) {
-            // set the positions of the key and the columns to compare....anything
-            // else
-            // will not be looked at...
-            m_KeyPositions = ArrayUtils.getColumnsPosition(m_ReducedColumns, m_KeyColumns);
-            m_ComparePositions = ArrayUtils.getColumnsPosition(m_ReducedColumns, m_CompareColumns);
+        return data;
+    }
 
-            // the key columns match with the meta data in the ResultSet so
-            // proceed...
+    /**
+     * Same as processFile, but reads the file through a MappedFileReader rather
+     * than line by line, so that only the key and compare columns kept in
+     * m_ReducedColumns are ever turned into objects.
+     * <p/>
+     * If the parallelism property is more than 1, the file is split into
+     * chunkSize byte ranges which line up with the start of a line, and each
+     * range is parsed on its own worker in a fork-join pool. The parsed chunks
+     * are merged back in file order, so aggregation and the handling of
+     * duplicate keys give exactly the same result as reading the file in one go.
+     * Unless aggregating, each worker also indexes its chunk, discarding the
+     * duplicate keys within it, and the chunk's rows are merged a column at a
+     * time. The merge itself, a key lookup and index insert for each row, is
+     * still done on a single thread, so it bounds how far the load scales with
+     * the number of workers.
+     *
+     * @param key  key
+     * @param file file to map
+     * @param prop prop
+     * @return Dataset                      data
+     * @throws Exception any other error
+     */
+    public Dataset processMappedFile(String key, File file, Properties prop)
+            throws Exception {
+        Dataset data;
+        int[] compareColumnPosition = null;
+
+        boolean aggregate = Boolean.valueOf(prop.getProperty("aggregate"));
+        int parallelism = Integer.parseInt(prop.getProperty("parallelism", "1"));
+        long chunkSize = Long.parseLong(prop.getProperty("chunkSize", DEFAULT_CHUNK_SIZE));
+
+        MappedFileReader reader = openMappedFile(file, 0, file.length(),
+                MappedFileReader.DEFAULT_WINDOW_SIZE);
+        long dataStart;
+
+        try {
+            readColumnNames(reader);
+            dataStart = reader.position();
+
+            // sets the key positions up front, so generateKey can be shared by
+            // the chunk workers
+            prepareColumns(key, prop);
 
-            // if we're aggregating, get the names of the compare columns to
-            // bucket
             if (aggregate)
                 compareColumnPosition = ArrayUtils.getCompareColumnsPosition(m_ReducedColumns, m_KeyColumns);
 
-            // check if the stream is empty yet
-            while (!fileEmpty) {
-                String line = br.readLine();
-
-                if (line != null) {
-                    ArrayList row = new ArrayList();
-                    int columnCounter = 0;
-                    StringTokenizer st = new StringTokenizer(correctLine(line),
-                            m_Properties.getProperty("delimiter", " "));
-
-
-                    while (st.hasMoreTokens()) {
-                        // System.err.println(st.countTokens());
-
-                        if (isAColumnToCompare(columnCounter, columns)) {
-                            // cast the object to the correct data type
-                            Object o = castObject(st.nextToken(),
-                                    columnsClassNames[columnCounter]);
-
-                            // for doubles which are null, and handleNullsAsZero
-                            // is true
-                            // default the value to 0.0
-                            if (o == null && columnsClassNames[columnCounter].equals("java.lang.Double")
-                                    && handleNullsAsZero) {
-                                row.add(new Double(0.0));
-                            } else {
-                                row.add(o);
-                            }
-                        } else
-                            st.nextToken();
-
-                        columnCounter++;
-                    }
+            data = newDataset();
 
-                    // try and save memory by trimming the array list to size
-                    row.trimToSize();
-
-                    String mapKey = generateKey(m_ReducedColumns, m_KeyColumns,
-                            row);
-
-
-                    if (!"".equals(mapKey)) {
-                        if (!data.containsKey(mapKey)) {
-                            data.put(mapKey, row);
-                        } else {
-                            if (aggregate)
-                                aggregateData(data, compareColumnPosition, row,
-                                        mapKey);
-
-                            else
-                                LOGGER.warning("Key of "
-                                        + key
-                                        + " is not unique (duplicate values found for "
-                                        + mapKey
-                                        + ") - unless aggregation is specified, the rec wont work!");
-                        }
-                    } else {
-                        LOGGER.warning("empty key (" + mapKey + ") returned - discarding row");
-                    }
+            if (parallelism <= 1) {
+                loadRows(data, new MappedCursor(reader), key, aggregate, compareColumnPosition);
+                return data;
+            }
+        } finally {
+            reader.close();
+        }
+
+        return processChunks(data, key, file, dataStart, parallelism, chunkSize,
+                aggregate, compareColumnPosition);
+    }
+
+    /**
+     * add every row of the cursor to the data, raising a ParseEvent for each
+     * batch of rows
+     */
+    private void loadRows(Dataset data, FileCursor cursor, String key, boolean aggregate,
+                          int[] compareColumnPosition) throws Exception {
+        int count = 0;
+        EventBatch batch = EventBatch.begin(EventBatch.Kind.PARSE);
+        long batchStart = cursor.bytesRead();
+
+        while (cursor.next()) {
+            addRow(data, cursor.getKey(), cursor.getRow(), key, aggregate,
+                    compareColumnPosition);
+
+            count++;
+
+            if (count % 1000 == 0)
+                LOGGER.info("Loaded " + decimalFormatter.format(count)
+                        + " (aggregated "
+                        + decimalFormatter.format(data.size()) + ") row(s)");
+
+            if (++batch.rows == PARSE_BATCH) {
+                commitParse(batch, cursor.bytesRead() - batchStart);
+                batch = EventBatch.begin(EventBatch.Kind.PARSE);
+                batchStart = cursor.bytesRead();
+            }
+        }
+        commitParse(batch, cursor.bytesRead() - batchStart);
+
+        LOGGER.info("Loaded " + decimalFormatter.format(count) + " (aggregated "
+                + decimalFormatter.format(data.size()) + ") row(s) in total");
+        rowsRead = count;
+    }
+
+    private void commitParse(EventBatch batch, long bytes) {
+        if (batch.rows > 0 && batch.isRecorded()) {
+            batch.source = m_Properties.getProperty("alias");
+            batch.bytes = bytes;
+            batch.commit();
+        }
+    }
+
+    /**
+     * parse the data part of a mapped file in line aligned chunks on a fork-join
+     * pool, merging each chunk into the data in file order as soon as it and
+     * all the chunks before it have been parsed. No more than twice the
+     * parallelism of chunks are parsed ahead of the merge. An aggregated chunk
+     * is merged a row at a time, so that its totals are added up in file order.
+     */
+    private Dataset processChunks(Dataset data, String key, File file, long dataStart,
+                                  int parallelism, long chunkSize, boolean aggregate,
+                                  int[] compareColumnPosition) throws Exception {
+        long[] splits = MappedFileReader.lineAlignedSplits(file, dataStart, file.length(), chunkSize);
+        int chunks = splits.length - 1;
+        int count = 0;
 
-                    count++;
+        LOGGER.info("Parsing " + chunks + " chunk(s) of " + file.getPath() + " with "
+                + parallelism + " worker(s)");
 
-                    if (count % 1000 == 0)
-                        LOGGER.info("Loaded " + decimalFormatter.format(count)
-                                + " (aggregated "
-                                + decimalFormatter.format(data.size()) + ") row(s)");
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        LinkedList<ForkJoinTask<ChunkParser>> inFlight = new LinkedList<ForkJoinTask<ChunkParser>>();
+        RowBuffer row = data.newRowBuffer();
+
+        try {
+            int nextChunk = 0;
+            while (nextChunk < chunks || !inFlight.isEmpty()) {
+                while (nextChunk < chunks && inFlight.size() < parallelism * 2) {
+                    inFlight.add(pool.submit(new ChunkParser(file, splits[nextChunk], splits[nextChunk + 1],
+                            key, aggregate)));
+                    nextChunk++;
+                }
+
+                ChunkParser parsed = inFlight.removeFirst().get();
+                Dataset chunk = parsed.chunk;
+                if (chunk.isIndexed()) {
+                    mergeChunk(data, chunk, key);
                 } else {
-                    fileEmpty = true;
+                    for (int i = 0; i < chunk.size(); i++) {
+                        chunk.copyTo(i, row);
+                        addRow(data, chunk.getKey(i), row, key,
+                                aggregate, compareColumnPosition);
+                    }
                 }
+                count += parsed.rows;
 
+                LOGGER.info("Loaded " + decimalFormatter.format(count)
+                        + " (aggregated "
+                        + decimalFormatter.format(data.size()) + ") row(s)");
             }
-
-        } else {
-            throw new Exception("Specified key " + key
-                    + " not present in File columns data");
+        } catch (ExecutionException ee) {
+            if (ee.getCause() instanceof Exception)
+                throw (Exception) ee.getCause();
+            throw ee;
+        } finally {
+            pool.shutdownNow();
         }
 
         LOGGER.info("Loaded " + decimalFormatter.format(count) + " (aggregated "
                 + decimalFormatter.format(data.size()) + ") row(s) in total");
+        rowsRead = count;
 
         return data;
     }
 
+    /**
+     * add the rows of an indexed chunk whose keys aren't already in the data,
+     * copying them a column at a time, and discard the rest as duplicates
+     */
+    private void mergeChunk(Dataset data, Dataset chunk, String key) {
+        int[] added = new int[chunk.size()];
+        int count = 0;
+        for (int i = 0; i < chunk.size(); i++) {
+            if (data.find(chunk.getKey(i)) < 0)
+                added[count++] = i;
+            else
+                warnNotUnique(key, chunk.getKey(i));
+        }
+        data.addAll(chunk, added, count);
+    }
+
+    /**
+     * read the kept columns of the reader's current line into a row buffer
+     *
+     * @param reader     reader positioned on the current line
+     * @param dateFormat date format for this reader's thread
+     * @param row        row buffer to read into
+     */
+    private void readMappedRow(MappedFileReader reader, SimpleDateFormat dateFormat, RowBuffer row) {
+        int fieldCount = Math.min(reader.fieldCount(), m_KeptColumns.length);
+        int slot = 0;
+
+        row.clear();
+        for (int i = 0; i < fieldCount; i++) {
+            if (m_KeptColumns[i]) {
+                readField(reader, i, m_ColumnsClassNames[i], dateFormat, row, slot);
+                slot++;
+            }
+        }
+    }
+
+    /**
+     * read a field from the mapped file as the given data type into a slot of
+     * the row buffer. Plain decimals and integers are parsed straight from the
+     * mapped bytes without being boxed, anything else goes through castObject
+     * as it would for the line based reader.
+     *
+     * @param reader         reader positioned on the current line
+     * @param field          field index
+     * @param columnDataType columnDataType
+     * @param dateFormat     date format for this reader's thread
+     * @param row            row buffer to read into
+     * @param slot           slot of the row buffer
+     */
+    private void readField(MappedFileReader reader, int field, String columnDataType,
+                           SimpleDateFormat dateFormat, RowBuffer row, int slot) {
+        if (columnDataType.equals("java.lang.String")) {
+            row.setObject(slot, reader.getTrimmedString(field));
+            return;
+        } else if (columnDataType.equals("java.lang.Double")) {
+            double value = reader.getDecimal(field, m_MaxFractionDigits);
+            if (!Double.isNaN(value)) {
+                row.setDouble(slot, value);
+                return;
+            }
+        } else if (columnDataType.equals("java.lang.Integer")) {
+            long value = reader.getLong(field);
+            if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                row.setLong(slot, value);
+                return;
+            }
+        }
+
+        Object o = castObject(reader.getString(field), columnDataType, dateFormat);
+        if (o == null && columnDataType.equals("java.lang.Double") && m_HandleNullsAsZero)
+            row.setDouble(slot, 0.0);
+        else
+            row.set(slot, o);
+    }
+
+    /**
+     * once the column names have been read, work out the key and compare
+     * columns kept from the file, their positions and types, and which of the
+     * file's columns they are
+     *
+     * @param key  key
+     * @param prop prop
+     * @throws Exception if the key isn't one of the file's columns
+     */
+    private void prepareColumns(String key, Properties prop) throws Exception {
+        String[] columns = getColumnsData(m_ColumnNames);
+        m_ColumnsClassNames = getColumnsClassNameData();
+
+        m_KeyColumns = ArrayUtils.convertStringKeyToArray(key);
+        m_CompareColumns = ArrayUtils.convertStringKeyToArray(
+                m_Properties.getProperty("columnsToCompare"));
+        m_ReducedColumns = addArraysProperly(columns, m_KeyColumns,
+                m_CompareColumns);
+
+        if (!ArrayUtils.keysPresentInColumns(m_KeyColumns, columns)) {
+            throw new Exception("Specified key " + key
+                    + " not present in File columns data");
+        }
+
+        // set the positions of the key and the columns to compare....anything
+        // else will not be looked at...
+        m_KeyPositions = ArrayUtils.getColumnsPosition(m_ReducedColumns, m_KeyColumns);
+        m_ComparePositions = ArrayUtils.getColumnsPosition(m_ReducedColumns, m_CompareColumns);
+        keyColumnPositions = m_KeyPositions;
+        keyColumnPositionsSet = true;
+
+        m_HandleNullsAsZero = Boolean.valueOf(prop.getProperty("handleNullsAsZero"));
+        m_MaxFractionDigits = Recxx.m_dpFormatter.getMaximumFractionDigits();
+
+        // work out once which of the file's columns are kept, rather than
+        // checking the column names on every line
+        m_KeptColumns = new boolean[columns.length];
+        m_ReducedTypes = new ColumnType[m_ReducedColumns.length];
+        Arrays.fill(m_ReducedTypes, ColumnType.OBJECT);
+
+        int slot = 0;
+        for (int i = 0; i < columns.length; i++) {
+            m_KeptColumns[i] = isAColumnToCompare(i, columns);
+            if (m_KeptColumns[i] && slot < m_ReducedTypes.length) {
+                m_ReducedTypes[slot++] = ColumnType.forClassName(m_ColumnsClassNames[i]);
+            }
+        }
+    }
+
+    /**
+     * @return an empty data set for the kept columns, indexed on the key
+     */
+    private Dataset newDataset() {
+        return new Dataset(m_ReducedColumns, m_ReducedTypes, toIntArray(m_KeyPositions));
+    }
+
+    /**
+     * read the kept columns of a line read by the line based reader into a row
+     * buffer
+     *
+     * @param line line
+     * @param row  row buffer to read into
+     */
+    private void readLine(String line, RowBuffer row) {
+        int columnCounter = 0;
+        int slot = 0;
+        StringTokenizer st = new StringTokenizer(correctLine(line),
+                m_Properties.getProperty("delimiter", " "));
+
+        row.clear();
+        while (st.hasMoreTokens()) {
+            if (m_KeptColumns[columnCounter]) {
+                // cast the object to the correct data type
+                Object o = castObject(st.nextToken(),
+                        m_ColumnsClassNames[columnCounter], m_Dtf);
+
+                // for doubles which are null, and handleNullsAsZero
+                // is true
+                // default the value to 0.0
+                if (o == null && m_ColumnsClassNames[columnCounter].equals("java.lang.Double")
+                        && m_HandleNullsAsZero) {
+                    row.setDouble(slot, 0.0);
+                } else {
+                    row.set(slot, o);
+                }
+                slot++;
+            } else
+                st.nextToken();
+
+            columnCounter++;
+        }
+    }
+
+    /**
+     * open a MappedFileReader over part of the file, using the delimiter
+     * properties
+     */
+    private MappedFileReader openMappedFile(File file, long start, long end, int windowSize)
+            throws IOException {
+        return new MappedFileReader(file, start, end,
+                (byte) m_Properties.getProperty("delimiter").charAt(0),
+                Boolean.valueOf(m_Properties.getProperty("appendDelimiter")),
+                Charset.defaultCharset(), windowSize);
+    }
+
+    /**
+     * read the column names (and skip the data types) from the start of a
+     * mapped file, if the properties say they are there
+     *
+     * @param reader reader at the start of the file
+     * @throws IOException if the file can't be read
+     */
+    private void readColumnNames(MappedFileReader reader) throws IOException {
+        if (Boolean.valueOf(m_Properties.getProperty("columnsSupplied"))) {
+            if (reader.nextLine())
+                m_ColumnNames = reader.getLine();
+
+            if (Boolean.valueOf(m_Properties.getProperty("dataTypesSupplied")))
+                reader.nextLine();
+        }
+    }
+
+    /**
+     * can the file be read through a MappedFileReader? Only single byte
+     * delimiters are supported.
+     *
+     * @param delimiter column delimiter
+     * @return true if the delimiter is a single ASCII character
+     */
+    private boolean canMapFile(String delimiter) {
+        return delimiter.length() == 1 && delimiter.charAt(0) < 0x80;
+    }
+
     /**
      * As we only take the key and compare columns in the file facade, we need
      * to make sure they are in the right order..ie the order in which they are
@@ -430,9 +955,10 @@ public class FileFacadeWorker extends AbstractRecFeed implements RecxxWorker {
      *
      * @param o              object
      * @param columnDataType columnDataType
+     * @param dateFormat     date format to parse any dates with
      * @return the newly cast object
      */
-    private Object castObject(Object o, String columnDataType) {
+    private Object castObject(Object o, String columnDataType, SimpleDateFormat dateFormat) {
         if (columnDataType.equals("java.lang.Double"))
             return new Double(Recxx.m_dpFormatter.format(Double
                     .parseDouble((String) o)));
@@ -452,9 +978,9 @@ public class FileFacadeWorker extends AbstractRecFeed implements RecxxWorker {
             if (o.equals("0"))
                 return null;
 
-            m_Dtf.applyPattern(m_Properties.getProperty("dateFormat"));
+            dateFormat.applyPattern(m_Properties.getProperty("dateFormat"));
             try {
-                return m_Dtf.parse((String) o);
+                return dateFormat.parse((String) o);
             } catch (ParseException pe) {
                 LOGGER.log(Level.SEVERE, "Problem formatting date " + o
                         + " using pattern "
@@ -512,4 +1038,169 @@ public class FileFacadeWorker extends AbstractRecFeed implements RecxxWorker {
         return validColumn;
     }
 
+
+    /**
+     * parses one line aligned byte range of a mapped file into keyed rows, held
+     * in file order. Unless aggregating, the rows are indexed by key as they
+     * are parsed, and rows with no key or a key already in the chunk are
+     * discarded as they would be loading the file in one go. Rows to be
+     * aggregated are all kept, unindexed, for the merge to add up in order.
+     */
+    private class ChunkParser implements Callable<ChunkParser> {
+        private final File file;
+        private final long start;
+        private final long end;
+        private final String key;
+        private final boolean aggregate;
+        private Dataset chunk;
+        private int rows;
+
+        ChunkParser(File file, long start, long end, String key, boolean aggregate) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+            this.key = key;
+            this.aggregate = aggregate;
+        }
+
+        public ChunkParser call() throws Exception {
+            EventBatch event = EventBatch.begin(EventBatch.Kind.PARSE);
+
+            chunk = new Dataset(m_ReducedColumns, m_ReducedTypes,
+                    toIntArray(m_KeyPositions), !aggregate);
+            int windowSize = (int) Math.min(end - start, MappedFileReader.DEFAULT_WINDOW_SIZE);
+            RowCursor cursor = new MappedCursor(openMappedFile(file, start, end, Math.max(windowSize, 1)));
+
+            try {
+                while (cursor.next()) {
+                    if (aggregate)
+                        chunk.add(cursor.getKey(), cursor.getRow());
+                    else
+                        addRow(chunk, cursor.getKey(), cursor.getRow(), key, false, null);
+                    rows++;
+                }
+            } finally {
+                cursor.close();
+            }
+
+            if (event.isRecorded()) {
+                event.source = m_Properties.getProperty("alias");
+                event.rows = rows;
+                event.bytes = end - start;
+                event.commit();
+            }
+            return this;
+        }
+    }
+
+    /**
+     * a cursor over the kept columns of the file, keying each row as it is
+     * read. The column set up must have been done before one is created.
+     */
+    private abstract class FileCursor implements RowCursor {
+        private final RowBuffer row = new RowBuffer(m_ReducedTypes);
+        private final CompositeKey.Builder keyBuilder = new CompositeKey.Builder();
+        private CompositeKey key;
+
+        public String[] getColumnNames() {
+            return m_ReducedColumns.clone();
+        }
+
+        public ColumnType[] getColumnTypes() {
+            return m_ReducedTypes.clone();
+        }
+
+        public int[] getKeyPositions() {
+            return toIntArray(m_KeyPositions);
+        }
+
+        public boolean next() throws Exception {
+            if (!readRow(row)) {
+                key = null;
+                return false;
+            }
+            key = generateKey(row, keyBuilder);
+            return true;
+        }
+
+        public CompositeKey getKey() {
+            return key;
+        }
+
+        public RowBuffer getRow() {
+            return row;
+        }
+
+        /**
+         * read the next line into the row buffer
+         *
+         * @param row row buffer
+         * @return false at the end of the file
+         */
+        protected abstract boolean readRow(RowBuffer row) throws Exception;
+
+        /**
+         * @return the bytes read so far, counting a character of a line read
+         * by the line based reader as a byte
+         */
+        protected abstract long bytesRead();
+    }
+
+    /**
+     * reads the file line by line
+     */
+    private class StreamCursor extends FileCursor {
+        private final BufferedReader br;
+        private long bytesRead;
+
+        StreamCursor(BufferedReader br) {
+            this.br = br;
+        }
+
+        protected boolean readRow(RowBuffer row) throws IOException {
+            String line = br.readLine();
+            if (line == null)
+                return false;
+            bytesRead += line.length() + 1;
+            readLine(line, row);
+            return true;
+        }
+
+        protected long bytesRead() {
+            return bytesRead;
+        }
+
+        public void close() throws IOException {
+            br.close();
+        }
+    }
+
+    /**
+     * reads the file through a MappedFileReader, without boxing plain numbers
+     */
+    private class MappedCursor extends FileCursor {
+        private final MappedFileReader reader;
+        private final SimpleDateFormat dateFormat = new SimpleDateFormat();
+        private final long start;
+
+        MappedCursor(MappedFileReader reader) {
+            this.reader = reader;
+            this.start = reader.position();
+        }
+
+        protected boolean readRow(RowBuffer row) throws IOException {
+            if (!reader.nextLine())
+                return false;
+            readMappedRow(reader, dateFormat, row);
+            return true;
+        }
+
+        protected long bytesRead() {
+            return reader.position() - start;
+        }
+
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
 }
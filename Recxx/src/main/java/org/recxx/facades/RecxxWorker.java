@@ -1,6 +1,8 @@
 package org.recxx.facades;
 
 import org.recxx.Recxx;
+import org.recxx.data.Dataset;
+import org.recxx.data.RowCursor;
 
 import java.util.Properties;
 
@@ -11,10 +13,18 @@ import java.util.Properties;
 public interface RecxxWorker extends Runnable {
 
     /**
-     * run the job
+     * run the job, as load() does, logging any failure rather than throwing it
      */
     public void run();
 
+    /**
+     * load the input source and hand it to the data store
+     *
+     * @return the data loaded
+     * @throws Exception if the source can't be loaded
+     */
+    public Dataset load() throws Exception;
+
     /**
      * set the properties object to be used tp configure this worker
      *
@@ -29,4 +39,13 @@ public interface RecxxWorker extends Runnable {
      */
     public void setDataStore(Recxx db);
 
+    /**
+     * open a cursor over the rows of the input source, in the order the source
+     * holds them, rather than loading them with run()
+     *
+     * @return cursor positioned before the first row
+     * @throws Exception if the source can't be opened
+     */
+    public RowCursor openCursor() throws Exception;
+
 }
@@ -0,0 +1,93 @@
+package org.recxx.facades;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * Creates the executors the workers load their sources on, and the executors
+ * for the tasks a worker splits its own load into, such as the ranges of a
+ * partitioned query.
+ * <p/>
+ * With platform threads each executor is a fixed pool of daemon threads. With
+ * virtual threads, which need Java 21 or later, each task gets a virtual
+ * thread of its own, so a source may be split into thousands of tasks which
+ * spend most of their time waiting on a database without an OS thread each.
+ * On an older JVM virtual threads fall back to platform threads, with a
+ * warning.
+ */
+public final class WorkerScheduler {
+
+    public static final String PLATFORM_THREADS = "platform";
+    public static final String VIRTUAL_THREADS = "virtual";
+
+    private static final Logger LOGGER = Logger.getLogger(WorkerScheduler.class.getName());
+
+    private final boolean virtual;
+
+    /**
+     * @param threads {@link #PLATFORM_THREADS} or {@link #VIRTUAL_THREADS}
+     * @throws IllegalArgumentException if the threads aren't one of the two
+     */
+    public WorkerScheduler(String threads) {
+        if (VIRTUAL_THREADS.equalsIgnoreCase(threads)) {
+            ExecutorService probe = newVirtualThreadExecutor();
+            virtual = probe != null;
+            if (virtual)
+                probe.shutdown();
+            else
+                LOGGER.warning("Virtual threads need Java 21 or later - using platform threads instead");
+        } else if (threads == null || PLATFORM_THREADS.equalsIgnoreCase(threads)) {
+            virtual = false;
+        } else {
+            throw new IllegalArgumentException("Worker threads of " + threads + " should be "
+                    + PLATFORM_THREADS + " or " + VIRTUAL_THREADS);
+        }
+    }
+
+    /**
+     * @return true if tasks are run on virtual threads
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    /**
+     * @param name    name for the threads of a platform pool
+     * @param threads number of tasks run at the same time by a platform pool.
+     *                Virtual threads run every task as soon as it is submitted.
+     * @return a new executor, which the caller must shut down
+     */
+    public ExecutorService newExecutor(final String name, int threads) {
+        if (virtual)
+            return newVirtualThreadExecutor();
+
+        return Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * @return Executors.newVirtualThreadPerTaskExecutor(), or null if this JVM
+     * doesn't have virtual threads
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (Exception e) {
+            throw new IllegalStateException("Unable to create a virtual thread executor", e);
+        }
+    }
+}
@@ -0,0 +1,484 @@
+package org.recxx.generator;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Properties;
+import java.util.Random;
+import java.util.logging.Logger;
+
+import org.recxx.exception.PropertiesFileException;
+
+/**
+ * <p>
+ * Writes a pair of delimited files for Recxx to reconcile, and a properties file to reconcile them with, in the format
+ * FileFacadeWorker reads: a first row of column names, then one row per line. Every row is generated from the seed, so
+ * the same settings always write the same files, and the rows are written as they are generated, so the files can be
+ * as large as the disk allows.
+ * </p>
+ *
+ * <p>
+ * Each key is given one fate, in these proportions, and the rest of the keys match:
+ * <ul>
+ * <li>generator.missingRate = fraction of keys in only one of the files, half of them in each. Defaults to 0.01</li>
+ * <li>generator.breakRate = fraction of keys with one compare column differing beyond the tolerance. Defaults to 0.01</li>
+ * <li>generator.withinToleranceRate = fraction of keys with a numeric compare column differing, but within the
+ * tolerance, so still matching. Defaults to 0.01</li>
+ * </ul>
+ * and, whatever its fate, a key is written twice to each file it is in at generator.duplicateRate, which defaults to 0.
+ * The duplicates are the same in both files, so they match whether they are aggregated or discarded.
+ * </p>
+ *
+ * <p>
+ * The other settings are:
+ * <ul>
+ * <li>generator.rows = number of keys. Defaults to 1000</li>
+ * <li>generator.seed = seed of the values and fates. Defaults to 1</li>
+ * <li>generator.keyColumns = number of key columns. Defaults to 2</li>
+ * <li>generator.compareColumns = number of compare columns. Defaults to 4</li>
+ * <li>generator.otherColumns = number of columns which are neither key nor compared. Defaults to 1</li>
+ * <li>generator.types = 'numeric' for Double compare columns, 'text' for String ones, or 'mixed' (the default) to cycle
+ * through Double, Integer, String and Date (yyyyMMdd)</li>
+ * <li>generator.delimiter = column delimiter. Defaults to ','</li>
+ * <li>generator.toleranceLevel = the toleranceLevel of the generated properties. Defaults to 0.01</li>
+ * <li>generator.outputDirectory = where the files are written. Defaults to the current directory</li>
+ * <li>generator.name = stem of the file names: name.one.csv, name.two.csv and name.properties, which reconciles them
+ * into name.breaks.csv. Defaults to 'generated'</li>
+ * </ul>
+ * The counts Recxx should report are written as comments at the top of the generated properties.
+ * </p>
+ */
+public class DataGenerator {
+
+	private static final Logger LOGGER = Logger.getLogger(DataGenerator.class.getName());
+
+	private static final String STUB = "generator.";
+
+	private static final String[] MIXED_TYPES = { "java.lang.Double", "java.lang.Integer", "java.lang.String",
+	        "java.util.Date" };
+
+	private static final int BUFFER_SIZE = 1024 * 1024;
+
+	private final long rows;
+	private final long seed;
+	private final int keyColumns;
+	private final int compareColumns;
+	private final int otherColumns;
+	private final String types;
+	private final String delimiter;
+	private final double toleranceLevel;
+	private final double missingRate;
+	private final double breakRate;
+	private final double withinToleranceRate;
+	private final double duplicateRate;
+	private final File outputDirectory;
+	private final String name;
+
+	private final String[] columnNames;
+	private final String[] classNames;
+	private final StringBuilder line1 = new StringBuilder();
+	private final StringBuilder line2 = new StringBuilder();
+
+	/**
+	 * @param settings
+	 *            generator.* settings, any of which may be left out
+	 */
+	public DataGenerator(Properties settings) {
+		rows = Long.parseLong(settings.getProperty(STUB + "rows", "1000"));
+		seed = Long.parseLong(settings.getProperty(STUB + "seed", "1"));
+		keyColumns = Integer.parseInt(settings.getProperty(STUB + "keyColumns", "2"));
+		compareColumns = Integer.parseInt(settings.getProperty(STUB + "compareColumns", "4"));
+		otherColumns = Integer.parseInt(settings.getProperty(STUB + "otherColumns", "1"));
+		types = settings.getProperty(STUB + "types", "mixed");
+		delimiter = settings.getProperty(STUB + "delimiter", ",");
+		toleranceLevel = Double.parseDouble(settings.getProperty(STUB + "toleranceLevel", "0.01"));
+		missingRate = Double.parseDouble(settings.getProperty(STUB + "missingRate", "0.01"));
+		breakRate = Double.parseDouble(settings.getProperty(STUB + "breakRate", "0.01"));
+		withinToleranceRate = Double.parseDouble(settings.getProperty(STUB + "withinToleranceRate", "0.01"));
+		duplicateRate = Double.parseDouble(settings.getProperty(STUB + "duplicateRate", "0"));
+		outputDirectory = new File(settings.getProperty(STUB + "outputDirectory", "."));
+		name = settings.getProperty(STUB + "name", "generated");
+
+		if (rows < 0 || keyColumns < 1 || compareColumns < 1 || otherColumns < 0) {
+			throw new PropertiesFileException("Need a key column and a compare column, and no negative counts: "
+			        + rows + " rows, " + keyColumns + " key, " + compareColumns + " compare and " + otherColumns
+			        + " other columns");
+		}
+		if (missingRate < 0 || breakRate < 0 || withinToleranceRate < 0 || duplicateRate < 0 || duplicateRate > 1
+		        || missingRate + breakRate + withinToleranceRate > 1) {
+			throw new PropertiesFileException("Rates must be fractions, and missingRate, breakRate and "
+			        + "withinToleranceRate can't add up to more than 1");
+		}
+		if (delimiter.length() == 0) {
+			throw new PropertiesFileException("The delimiter can't be empty");
+		}
+
+		int columns = keyColumns + compareColumns + otherColumns;
+		columnNames = new String[columns];
+		classNames = new String[columns];
+		for (int column = 0; column < columns; column++) {
+			if (column < keyColumns) {
+				columnNames[column] = "Key" + (column + 1);
+				classNames[column] = "java.lang.String";
+			} else if (column < keyColumns + compareColumns) {
+				columnNames[column] = "Value" + (column - keyColumns + 1);
+				classNames[column] = compareType(column - keyColumns);
+			} else {
+				columnNames[column] = "Other" + (column - keyColumns - compareColumns + 1);
+				classNames[column] = "java.lang.String";
+			}
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length == 0) {
+			throw new Exception(String.format("Usage: %s [<properties file>] [generator.<setting>=<value> ...]",
+			        DataGenerator.class.getName()));
+		}
+
+		Properties settings = new Properties();
+		for (String arg : args) {
+			int equals = arg.indexOf('=');
+			if (equals > 0) {
+				settings.setProperty(arg.substring(0, equals), arg.substring(equals + 1));
+			} else {
+				InputStream in = new FileInputStream(arg);
+				try {
+					Properties file = new Properties();
+					file.load(in);
+					// settings on the command line win over those in the file
+					file.putAll(settings);
+					settings = file;
+				} finally {
+					in.close();
+				}
+			}
+		}
+
+		Counts counts = new DataGenerator(settings).generate();
+		LOGGER.info("Generated " + counts);
+	}
+
+	private String compareType(int index) {
+		if ("numeric".equals(types)) {
+			return "java.lang.Double";
+		} else if ("text".equals(types)) {
+			return "java.lang.String";
+		} else if ("mixed".equals(types)) {
+			return MIXED_TYPES[index % MIXED_TYPES.length];
+		}
+		throw new PropertiesFileException("Unknown " + STUB + "types '" + types + "' - can only be numeric, text or mixed");
+	}
+
+	public File getFile1() {
+		return new File(outputDirectory, name + ".one.csv");
+	}
+
+	public File getFile2() {
+		return new File(outputDirectory, name + ".two.csv");
+	}
+
+	public File getPropertiesFile() {
+		return new File(outputDirectory, name + ".properties");
+	}
+
+	public File getBreaksFile() {
+		return new File(outputDirectory, name + ".breaks.csv");
+	}
+
+	/**
+	 * write both files, then the properties to reconcile them with
+	 *
+	 * @return what was written, and what Recxx should find
+	 * @throws IOException
+	 *             if a file can't be written
+	 */
+	public Counts generate() throws IOException {
+		if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+			throw new IOException("Cannot create " + outputDirectory);
+		}
+
+		Counts counts = new Counts();
+		Random random = new Random(seed);
+		Writer writer1 = open(getFile1());
+		try {
+			Writer writer2 = open(getFile2());
+			try {
+				writeHeader(writer1);
+				writeHeader(writer2);
+				for (long row = 0; row < rows; row++) {
+					writeRow(row, random, writer1, writer2, counts);
+				}
+			} finally {
+				writer2.close();
+			}
+		} finally {
+			writer1.close();
+		}
+
+		writeProperties(counts);
+		return counts;
+	}
+
+	private static Writer open(File file) throws IOException {
+		return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), Charset.defaultCharset()),
+		        BUFFER_SIZE);
+	}
+
+	private void writeHeader(Writer writer) throws IOException {
+		for (int column = 0; column < columnNames.length; column++) {
+			if (column > 0) {
+				writer.write(delimiter);
+			}
+			writer.write(columnNames[column]);
+		}
+		writer.write('\n');
+	}
+
+	/**
+	 * choose the fate of a key, then write its row to the files it is in. The random numbers drawn don't depend on the
+	 * fate, so that changing one rate doesn't change every value after it.
+	 */
+	private void writeRow(long row, Random random, Writer writer1, Writer writer2, Counts counts) throws IOException {
+		double fate = random.nextDouble();
+		boolean duplicate = random.nextDouble() < duplicateRate;
+		boolean missingHalf = random.nextBoolean();
+		int changedColumn = keyColumns + random.nextInt(compareColumns);
+		long changeSeed = random.nextLong();
+
+		line1.setLength(0);
+		line2.setLength(0);
+		for (int column = 0; column < columnNames.length; column++) {
+			if (column > 0) {
+				line1.append(delimiter);
+				line2.append(delimiter);
+			}
+			if (column < keyColumns) {
+				appendKey(line1, row, column);
+				appendKey(line2, row, column);
+			} else {
+				String value = randomValue(classNames[column], random);
+				line1.append(value);
+				if (column == changedColumn && fate >= missingRate) {
+					line2.append(change(classNames[column], value, fate, changeSeed));
+				} else {
+					line2.append(value);
+				}
+			}
+		}
+		line1.append('\n');
+		line2.append('\n');
+
+		boolean inFile1 = true;
+		boolean inFile2 = true;
+		if (fate < missingRate) {
+			if (missingHalf) {
+				inFile2 = false;
+				counts.missingFrom2++;
+			} else {
+				inFile1 = false;
+				counts.missingFrom1++;
+			}
+		} else if (fate < missingRate + breakRate) {
+			counts.breaks++;
+		} else {
+			counts.matched++;
+		}
+
+		int copies = duplicate ? 2 : 1;
+		if (duplicate) {
+			counts.duplicated++;
+		}
+		for (int copy = 0; copy < copies; copy++) {
+			if (inFile1) {
+				writer1.append(line1);
+				counts.rows1++;
+			}
+			if (inFile2) {
+				writer2.append(line2);
+				counts.rows2++;
+			}
+		}
+	}
+
+	/**
+	 * a key column of a row, unique by row however many key columns there are: the last column holds the row number
+	 */
+	private void appendKey(StringBuilder line, long row, int column) {
+		line.append('K').append(column + 1).append('_');
+		if (column == keyColumns - 1) {
+			line.append(row);
+		} else {
+			line.append(row % (7 + column));
+		}
+	}
+
+	private static String randomValue(String className, Random random) {
+		if ("java.lang.Double".equals(className)) {
+			// at least 1, so that the smallest absolute value never hides a difference
+			return String.valueOf(1 + Math.round(random.nextDouble() * 1000000) / 100.0);
+		} else if ("java.lang.Integer".equals(className)) {
+			return String.valueOf(1 + random.nextInt(100000));
+		} else if ("java.util.Date".equals(className)) {
+			int date = (2000 + random.nextInt(30)) * 10000 + (1 + random.nextInt(12)) * 100 + 1 + random.nextInt(28);
+			return String.valueOf(date);
+		}
+		return "S" + Long.toString(random.nextLong() >>> 24, 36);
+	}
+
+	/**
+	 * @return the value as the second file holds it: beyond the tolerance for a break, or a little way off for a
+	 *         difference within the tolerance, which only numbers can have
+	 */
+	private String change(String className, String value, double fate, long changeSeed) {
+		boolean isBreak = fate < missingRate + breakRate;
+		boolean withinTolerance = !isBreak && fate < missingRate + breakRate + withinToleranceRate;
+		if ("java.lang.Double".equals(className)) {
+			double d = Double.parseDouble(value);
+			if (isBreak) {
+				return String.valueOf(d * (1 + toleranceLevel / 10) + 1);
+			} else if (withinTolerance) {
+				return String.valueOf(d * (1 + toleranceLevel / 200));
+			}
+		} else if (isBreak) {
+			if ("java.lang.Integer".equals(className)) {
+				return String.valueOf(Integer.parseInt(value) * 2);
+			} else if ("java.util.Date".equals(className)) {
+				// thirty years on
+				return String.valueOf(Integer.parseInt(value) + 300000);
+			}
+			return value + "x" + Long.toString(changeSeed >>> 40, 36);
+		}
+		return value;
+	}
+
+	private void writeProperties(Counts counts) throws IOException {
+		String stub = "props.rec.";
+		StringBuilder properties = new StringBuilder();
+		properties.append("# written by ").append(DataGenerator.class.getName()).append(" with seed ").append(seed)
+		        .append('\n');
+		properties.append("# expected: ").append(counts).append('\n');
+		properties.append(stub).append("toleranceLevel=").append(toleranceLevel).append('\n');
+		properties.append(stub).append("logger.csv.file=").append(escape(getBreaksFile().getPath())).append('\n');
+
+		String[] aliases = { "one", "two" };
+		File[] files = { getFile1(), getFile2() };
+		for (int source = 0; source < 2; source++) {
+			String inputStub = stub + "inputSource" + (source + 1) + ".";
+			properties.append(inputStub).append("name.alias=").append(aliases[source]).append('\n');
+			properties.append(inputStub).append("name.type=File").append('\n');
+			properties.append(inputStub).append("file.filePath=").append(escape(files[source].getPath())).append('\n');
+			properties.append(inputStub).append("file.delimiter=").append(escape(delimiter)).append('\n');
+			properties.append(inputStub).append("file.columnDataTypes=").append(join(classNames, 0, classNames.length))
+			        .append('\n');
+			properties.append(inputStub).append("file.key=").append(join(columnNames, 0, keyColumns)).append('\n');
+			properties.append(inputStub).append("file.columnsToCompare=")
+			        .append(join(columnNames, keyColumns, keyColumns + compareColumns)).append('\n');
+			properties.append(inputStub).append("file.aggregate=false").append('\n');
+		}
+
+		Writer writer = open(getPropertiesFile());
+		try {
+			writer.append(properties);
+		} finally {
+			writer.close();
+		}
+	}
+
+	/**
+	 * escape a value as Properties.load reads it back
+	 */
+	private static String escape(String value) {
+		StringBuilder escaped = new StringBuilder();
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			switch (c) {
+			case '\\':
+				escaped.append("\\\\");
+				break;
+			case '\t':
+				escaped.append("\\t");
+				break;
+			case ' ':
+				escaped.append(i == 0 ? "\\ " : " ");
+				break;
+			default:
+				escaped.append(c);
+			}
+		}
+		return escaped.toString();
+	}
+
+	private static String join(String[] values, int from, int to) {
+		StringBuilder joined = new StringBuilder();
+		for (int i = from; i < to; i++) {
+			if (i > from) {
+				joined.append(' ');
+			}
+			joined.append(values[i]);
+		}
+		return joined.toString();
+	}
+
+	/**
+	 * the rows written, and the keys Recxx should find matched, broken or missing
+	 */
+	public static class Counts {
+
+		long rows1;
+		long rows2;
+		long matched;
+		long breaks;
+		long missingFrom1;
+		long missingFrom2;
+		long duplicated;
+
+		/** @return rows written to the first file, duplicates included */
+		public long getRows1() {
+			return rows1;
+		}
+
+		/** @return rows written to the second file, duplicates included */
+		public long getRows2() {
+			return rows2;
+		}
+
+		/** @return keys in both files whose compare columns all match, within the tolerance */
+		public long getMatched() {
+			return matched;
+		}
+
+		/** @return keys in both files with a compare column which doesn't */
+		public long getBreaks() {
+			return breaks;
+		}
+
+		/** @return keys in the second file but not the first */
+		public long getMissingFrom1() {
+			return missingFrom1;
+		}
+
+		/** @return keys in the first file but not the second */
+		public long getMissingFrom2() {
+			return missingFrom2;
+		}
+
+		/** @return keys written twice to each file they are in */
+		public long getDuplicated() {
+			return duplicated;
+		}
+
+		@Override
+		public String toString() {
+			return "one rows " + rows1 + ", two rows " + rows2 + ", matched " + matched + ", breaks " + breaks
+			        + ", missing from one " + missingFrom1 + ", missing from two " + missingFrom2 + ", duplicated "
+			        + duplicated;
+		}
+	}
+}
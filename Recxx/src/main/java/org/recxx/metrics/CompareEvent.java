@@ -0,0 +1,29 @@
+package org.recxx.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event for a batch of rows of the first source looked up in the second and compared, within one
+ * partition of the keys
+ */
+@Name("org.recxx.Compare")
+@Label("Compare Batch")
+@Category("Recxx")
+@Description("A batch of rows looked up by key and compared")
+@StackTrace(false)
+public class CompareEvent extends Event {
+
+	@Label("Partition")
+	public int partition;
+
+	@Label("Rows")
+	public long rows;
+
+	@Label("Different Rows")
+	public long differentRows;
+}
@@ -0,0 +1,65 @@
+package org.recxx.metrics;
+
+import java.io.IOException;
+
+import org.recxx.data.ColumnType;
+import org.recxx.data.CompositeKey;
+import org.recxx.data.RowBuffer;
+import org.recxx.data.RowCursor;
+
+/**
+ * A cursor which counts the rows read through it, for a source which is read rather than loaded
+ */
+public final class CountingCursor implements RowCursor {
+
+	private final RowCursor cursor;
+
+	private long rows;
+
+	/**
+	 * @param cursor
+	 *            cursor to count the rows of
+	 */
+	public CountingCursor(RowCursor cursor) {
+		this.cursor = cursor;
+	}
+
+	/**
+	 * @return the number of rows read so far
+	 */
+	public long getRows() {
+		return rows;
+	}
+
+	public String[] getColumnNames() {
+		return cursor.getColumnNames();
+	}
+
+	public ColumnType[] getColumnTypes() {
+		return cursor.getColumnTypes();
+	}
+
+	public int[] getKeyPositions() {
+		return cursor.getKeyPositions();
+	}
+
+	public boolean next() throws Exception {
+		if (cursor.next()) {
+			rows++;
+			return true;
+		}
+		return false;
+	}
+
+	public CompositeKey getKey() {
+		return cursor.getKey();
+	}
+
+	public RowBuffer getRow() {
+		return cursor.getRow();
+	}
+
+	public void close() throws IOException {
+		cursor.close();
+	}
+}
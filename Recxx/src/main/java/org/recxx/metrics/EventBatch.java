@@ -0,0 +1,87 @@
+package org.recxx.metrics;
+
+/**
+ * <p>
+ * A batch of rows on one of the hot paths of a run - parsed, fetched, compared or flushed to the csv file - counted as
+ * it goes. Only while a {@link FlightRecording} is open is a batch also raised as its flight recorder event, such as a
+ * {@link ParseEvent}: the event is begun along with the batch, and given the batch's counts when it is committed.
+ * </p>
+ *
+ * <p>
+ * The events are only ever reached through {@link RecordedEvents}, which isn't loaded until a recording has been
+ * started, so a run without one never links jdk.jfr. Without a recording a batch costs no more than its counts.
+ * </p>
+ */
+public final class EventBatch {
+
+	/**
+	 * the flight recorder event a batch is raised as
+	 */
+	public enum Kind {
+		/** a {@link ParseEvent} */
+		PARSE,
+		/** a {@link FetchEvent} */
+		FETCH,
+		/** a {@link CompareEvent} */
+		COMPARE,
+		/** a {@link FlushEvent} */
+		FLUSH
+	}
+
+	private static volatile int recordings;
+
+	// the flight recorder event, or null if nothing is recording
+	private final Object event;
+
+	/** name of the source, or of the csv file for a flush */
+	public String source;
+
+	/** partition of the keys compared */
+	public int partition;
+
+	/** rows in the batch, or lines for a flush */
+	public long rows;
+
+	/** bytes read or written */
+	public long bytes;
+
+	/** rows compared and found different */
+	public long differentRows;
+
+	private EventBatch(Kind kind) {
+		this.event = recordings > 0 ? RecordedEvents.begin(kind) : null;
+	}
+
+	/**
+	 * @param kind
+	 *            the event the batch is raised as
+	 * @return a new batch, whose event is begun if a flight recording is open
+	 */
+	public static EventBatch begin(Kind kind) {
+		return new EventBatch(kind);
+	}
+
+	/**
+	 * @return true if the batch is being recorded, so is worth counting anything costly for
+	 */
+	public boolean isRecorded() {
+		return event != null;
+	}
+
+	/**
+	 * end the batch, committing its event with the batch's counts if it is being recorded
+	 */
+	public void commit() {
+		if (event != null) {
+			RecordedEvents.commit(event, this);
+		}
+	}
+
+	static synchronized void recordingStarted() {
+		recordings++;
+	}
+
+	static synchronized void recordingStopped() {
+		recordings--;
+	}
+}
@@ -0,0 +1,32 @@
+package org.recxx.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event for a fetch size's worth of rows read from a database, which takes in the round trip the
+ * driver makes to fetch them. The bytes are a rough size of the values read, as given by
+ * {@link org.recxx.data.RowBuffer#estimatedBytes()}.
+ */
+@Name("org.recxx.Fetch")
+@Label("Fetch Batch")
+@Category("Recxx")
+@Description("A fetch size's worth of rows read from a database source")
+@StackTrace(false)
+public class FetchEvent extends Event {
+
+	@Label("Source")
+	public String source;
+
+	@Label("Rows")
+	public long rows;
+
+	@Label("Bytes")
+	@DataAmount
+	public long bytes;
+}
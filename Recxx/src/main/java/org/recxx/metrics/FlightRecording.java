@@ -0,0 +1,87 @@
+package org.recxx.metrics;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.logging.Logger;
+
+import jdk.jfr.Configuration;
+import jdk.jfr.Event;
+import jdk.jfr.Recording;
+
+/**
+ * <p>
+ * A flight recording of a run, holding the events Recxx raises on its hot paths - {@link ParseEvent},
+ * {@link FetchEvent}, {@link CompareEvent} and {@link FlushEvent} - along with those of a JDK configuration such as
+ * 'default', which gives the garbage collections, thread states and samples of the stack around them. The recording
+ * is written to its file when it is closed.
+ * </p>
+ *
+ * <p>
+ * The events are raised a batch of rows at a time rather than a row at a time, through {@link EventBatch}, and only
+ * while a recording is open. Without one the hot paths never touch jdk.jfr, so a run without a recording costs no
+ * more than counting its batches. The events are compiled against jdk.jfr, so Recxx needs Java 11 at least. A
+ * recording started outside of Recxx, such as with -XX:StartFlightRecording, only sees the Recxx events while one of
+ * these is open too.
+ * </p>
+ */
+public final class FlightRecording implements Closeable {
+
+	private static final Logger LOGGER = Logger.getLogger(FlightRecording.class.getName());
+
+	public static final String NO_CONFIGURATION = "none";
+
+	private static final Class<?>[] EVENTS = { ParseEvent.class, FetchEvent.class, CompareEvent.class,
+	        FlushEvent.class };
+
+	private final Recording recording;
+
+	private final File file;
+
+	/**
+	 * start recording
+	 *
+	 * @param file
+	 *            file to write the recording to once it is closed
+	 * @param configuration
+	 *            name of the JDK configuration to record as well as the Recxx events, such as 'default' or 'profile',
+	 *            or 'none' for only the Recxx events
+	 * @throws IOException
+	 *             if the configuration can't be read
+	 * @throws ParseException
+	 *             if the configuration isn't valid
+	 */
+	@SuppressWarnings("unchecked")
+	public FlightRecording(File file, String configuration) throws IOException, ParseException {
+		this.file = file;
+		this.recording = configuration == null || NO_CONFIGURATION.equalsIgnoreCase(configuration)
+		        ? new Recording() : new Recording(Configuration.getConfiguration(configuration));
+		recording.setName("Recxx");
+		for (Class<?> event : EVENTS) {
+			recording.enable((Class<? extends Event>) event);
+		}
+		recording.setToDisk(true);
+		recording.setDestination(file.toPath());
+		recording.start();
+		EventBatch.recordingStarted();
+		LOGGER.info("Started flight recording to " + file.getPath() + " with the " + configuration
+		        + " configuration");
+	}
+
+	/**
+	 * stop recording, and write the recording to its file
+	 *
+	 * @throws IOException
+	 *             if it can't be written
+	 */
+	public void close() throws IOException {
+		EventBatch.recordingStopped();
+		try {
+			recording.stop();
+		} finally {
+			recording.close();
+		}
+		LOGGER.info("Wrote flight recording to " + file.getPath());
+	}
+}
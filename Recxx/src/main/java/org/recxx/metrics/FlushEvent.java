@@ -0,0 +1,32 @@
+package org.recxx.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event for a block of lines handed to the csv file's writer, or for the closing of the file. The
+ * bytes are the characters written, which are the bytes of the file before any compression as long as they are
+ * ASCII.
+ */
+@Name("org.recxx.Flush")
+@Label("Csv Flush")
+@Category("Recxx")
+@Description("A block of lines written to the csv file")
+@StackTrace(false)
+public class FlushEvent extends Event {
+
+	@Label("File")
+	public String file;
+
+	@Label("Lines")
+	public long lines;
+
+	@Label("Bytes")
+	@DataAmount
+	public long bytes;
+}
@@ -0,0 +1,31 @@
+package org.recxx.metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A flight recorder event for a batch of rows parsed from a file source and added to its data set, or for a chunk of
+ * a mapped file parsed on a worker of its own
+ */
+@Name("org.recxx.Parse")
+@Label("Parse Batch")
+@Category("Recxx")
+@Description("A batch of rows parsed from a file source")
+@StackTrace(false)
+public class ParseEvent extends Event {
+
+	@Label("Source")
+	public String source;
+
+	@Label("Rows")
+	public long rows;
+
+	@Label("Bytes")
+	@DataAmount
+	public long bytes;
+}
@@ -0,0 +1,69 @@
+package org.recxx.metrics;
+
+import jdk.jfr.Event;
+
+/**
+ * Begins and commits the flight recorder event of an {@link EventBatch}. It is the only way to the events from the hot
+ * paths, and is only loaded once a {@link FlightRecording} has been started.
+ */
+final class RecordedEvents {
+
+	private RecordedEvents() {
+	}
+
+	/**
+	 * @return a begun event of the given kind
+	 */
+	static Object begin(EventBatch.Kind kind) {
+		Event event;
+		switch (kind) {
+		case PARSE:
+			event = new ParseEvent();
+			break;
+		case FETCH:
+			event = new FetchEvent();
+			break;
+		case COMPARE:
+			event = new CompareEvent();
+			break;
+		default:
+			event = new FlushEvent();
+			break;
+		}
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * commit an event begun by {@link #begin(EventBatch.Kind)}, with the counts of its batch, if it is to be recorded
+	 */
+	static void commit(Object begun, EventBatch batch) {
+		Event event = (Event) begun;
+		if (!event.shouldCommit()) {
+			return;
+		}
+
+		if (event instanceof ParseEvent) {
+			ParseEvent parse = (ParseEvent) event;
+			parse.source = batch.source;
+			parse.rows = batch.rows;
+			parse.bytes = batch.bytes;
+		} else if (event instanceof FetchEvent) {
+			FetchEvent fetch = (FetchEvent) event;
+			fetch.source = batch.source;
+			fetch.rows = batch.rows;
+			fetch.bytes = batch.bytes;
+		} else if (event instanceof CompareEvent) {
+			CompareEvent compare = (CompareEvent) event;
+			compare.partition = batch.partition;
+			compare.rows = batch.rows;
+			compare.differentRows = batch.differentRows;
+		} else {
+			FlushEvent flush = (FlushEvent) event;
+			flush.file = batch.source;
+			flush.lines = batch.rows;
+			flush.bytes = batch.bytes;
+		}
+		event.commit();
+	}
+}
@@ -0,0 +1,605 @@
+package org.recxx.metrics;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.Charset;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.recxx.compare.ReconciliationCounts;
+
+/**
+ * <p>
+ * Records how a run went: how long each phase took, how many rows and bytes each source gave up and how quickly, how
+ * many differences were found in each compare column, how much the threads running the phases allocated, how high the
+ * heap got, and how busy the processors were kept. Once the run is over it is written out as a json report, so that
+ * runs can be compared with each other, and while the run is going on it can be watched over JMX.
+ * </p>
+ *
+ * <p>
+ * A phase is timed by the thread running it, from {@link #startPhase(String)} to {@link Phase#end()}, and its cpu
+ * time and allocation are those of that thread alone - threads a phase starts for itself, such as those parsing the
+ * chunks of a file, aren't counted. Phases with the same name add up. The heap high water mark is the sum of the peak
+ * use of each heap pool, whose peaks may not have come at the same time, so it is an upper bound.
+ * </p>
+ *
+ * <p>
+ * Every method can be called from any thread.
+ * </p>
+ */
+public class RunMetrics implements RunMetricsMBean {
+
+	private static final Logger LOGGER = Logger.getLogger(RunMetrics.class.getName());
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	private static final String REPORT_EXTENSION = ".metrics.json";
+
+	private final String name;
+
+	private final long startMillis = System.currentTimeMillis();
+
+	private final long startNanos = System.nanoTime();
+
+	private final long startCpuNanos;
+
+	private final Map<String, PhaseTotals> phases = new LinkedHashMap<String, PhaseTotals>();
+
+	private final Map<String, SourceTotals> sources = new LinkedHashMap<String, SourceTotals>();
+
+	private final Map<String, Long> breaksByColumn = new LinkedHashMap<String, Long>();
+
+	private ReconciliationCounts counts;
+
+	private long endNanos = -1;
+
+	private long endCpuNanos;
+
+	private ObjectName objectName;
+
+	/**
+	 * start the clock on a run, and reset the peak heap use and thread count
+	 *
+	 * @param name
+	 *            name of the run, as given in the report and the JMX object name
+	 */
+	public RunMetrics(String name) {
+		this.name = name;
+		this.startCpuNanos = processCpuNanos();
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.isValid()) {
+				pool.resetPeakUsage();
+			}
+		}
+		ManagementFactory.getThreadMXBean().resetPeakThreadCount();
+	}
+
+	/**
+	 * @param csvFile
+	 *            the csv file the differences are written to
+	 * @return the report file to write next to it: the csv file's name, less any .gz and extension, with .metrics.json
+	 *         on the end
+	 */
+	public static String reportFileFor(String csvFile) {
+		String stem = csvFile;
+		if (stem.toLowerCase().endsWith(".gz")) {
+			stem = stem.substring(0, stem.length() - 3);
+		}
+		int dot = stem.lastIndexOf('.');
+		if (dot > Math.max(stem.lastIndexOf('/'), stem.lastIndexOf('\\'))) {
+			stem = stem.substring(0, dot);
+		}
+		return stem + REPORT_EXTENSION;
+	}
+
+	/**
+	 * start timing a phase on the current thread
+	 *
+	 * @param phase
+	 *            name of the phase
+	 * @return the running phase, which must be ended on the same thread
+	 */
+	public Phase startPhase(String phase) {
+		return new Phase(phase);
+	}
+
+	/**
+	 * add time spent on a phase which was timed elsewhere, such as a sum over several threads
+	 *
+	 * @param phase
+	 *            name of the phase
+	 * @param nanos
+	 *            nanoseconds spent on it
+	 */
+	public synchronized void addPhase(String phase, long nanos) {
+		totals(phase).add(nanos, 0, 0);
+	}
+
+	/**
+	 * record the loading of a source
+	 *
+	 * @param alias
+	 *            alias of the source
+	 * @param rowsRead
+	 *            rows read from the source
+	 * @param rowsLoaded
+	 *            rows left once they were keyed and aggregated
+	 * @param bytesRead
+	 *            bytes read from the source, or -1 if it isn't known
+	 * @param nanos
+	 *            nanoseconds taken to read the rows
+	 */
+	public synchronized void sourceLoaded(String alias, long rowsRead, long rowsLoaded, long bytesRead, long nanos) {
+		sources.put(alias, new SourceTotals(rowsRead, rowsLoaded, bytesRead, nanos));
+	}
+
+	/**
+	 * count a difference found in a compare column
+	 *
+	 * @param columnName
+	 *            name of the column in the first source
+	 */
+	public synchronized void difference(String columnName) {
+		Long breaks = breaksByColumn.get(columnName);
+		breaksByColumn.put(columnName, breaks == null ? 1L : breaks + 1);
+	}
+
+	/**
+	 * @param counts
+	 *            the counts of matched and unmatched rows the reconciliation came to
+	 */
+	public synchronized void setCounts(ReconciliationCounts counts) {
+		this.counts = counts;
+	}
+
+	/**
+	 * stop the clock on the run
+	 */
+	public synchronized void finish() {
+		if (endNanos < 0) {
+			endNanos = System.nanoTime();
+			endCpuNanos = processCpuNanos();
+		}
+	}
+
+	public synchronized long getElapsedMillis() {
+		return elapsedNanos() / 1000000;
+	}
+
+	public synchronized Map<String, Long> getPhaseMillis() {
+		Map<String, Long> millis = new LinkedHashMap<String, Long>();
+		for (Map.Entry<String, PhaseTotals> phase : phases.entrySet()) {
+			millis.put(phase.getKey(), phase.getValue().nanos / 1000000);
+		}
+		return millis;
+	}
+
+	public synchronized Map<String, Long> getRowsRead() {
+		Map<String, Long> rows = new LinkedHashMap<String, Long>();
+		for (Map.Entry<String, SourceTotals> source : sources.entrySet()) {
+			rows.put(source.getKey(), source.getValue().rowsRead);
+		}
+		return rows;
+	}
+
+	public synchronized Map<String, Double> getRowsPerSecond() {
+		Map<String, Double> rates = new LinkedHashMap<String, Double>();
+		for (Map.Entry<String, SourceTotals> source : sources.entrySet()) {
+			rates.put(source.getKey(), source.getValue().rowsPerSecond());
+		}
+		return rates;
+	}
+
+	public synchronized Map<String, Long> getBreaksByColumn() {
+		return new LinkedHashMap<String, Long>(breaksByColumn);
+	}
+
+	public synchronized long getAllocatedBytes() {
+		long allocated = 0;
+		for (PhaseTotals phase : phases.values()) {
+			allocated += phase.allocatedBytes;
+		}
+		return allocated;
+	}
+
+	public long getHeapHighWaterBytes() {
+		long peak = 0;
+		for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+			if (pool.getType() == MemoryType.HEAP && pool.isValid() && pool.getPeakUsage() != null) {
+				peak += pool.getPeakUsage().getUsed();
+			}
+		}
+		return peak;
+	}
+
+	public synchronized double getCpuUtilisation() {
+		long elapsed = elapsedNanos();
+		long cpu = (endNanos < 0 ? processCpuNanos() : endCpuNanos) - startCpuNanos;
+		if (elapsed <= 0 || startCpuNanos < 0) {
+			return 0;
+		}
+		return (double) cpu / elapsed / Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * @return the report as json
+	 */
+	public synchronized String getReport() {
+		SimpleDateFormat utc = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+		utc.setTimeZone(TimeZone.getTimeZone("UTC"));
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+		Json json = new Json();
+		json.beginObject();
+		json.field("name", name);
+		json.field("start", utc.format(new Date(startMillis)));
+		json.field("elapsedMillis", getElapsedMillis());
+
+		json.beginArray("phases");
+		for (Map.Entry<String, PhaseTotals> phase : phases.entrySet()) {
+			PhaseTotals totals = phase.getValue();
+			json.beginObject();
+			json.field("name", phase.getKey());
+			json.field("millis", totals.nanos / 1000000);
+			json.field("cpuMillis", totals.cpuNanos / 1000000);
+			json.field("allocatedBytes", totals.allocatedBytes);
+			json.endObject();
+		}
+		json.endArray();
+
+		json.beginArray("sources");
+		for (Map.Entry<String, SourceTotals> source : sources.entrySet()) {
+			SourceTotals totals = source.getValue();
+			json.beginObject();
+			json.field("alias", source.getKey());
+			json.field("rowsRead", totals.rowsRead);
+			json.field("rowsLoaded", totals.rowsLoaded);
+			if (totals.bytesRead >= 0) {
+				json.field("bytesRead", totals.bytesRead);
+			}
+			json.field("loadMillis", totals.nanos / 1000000);
+			json.field("rowsPerSecond", totals.rowsPerSecond());
+			json.endObject();
+		}
+		json.endArray();
+
+		if (counts != null) {
+			json.beginObject("rows");
+			json.field("matched", counts.getMatchedRows());
+			json.field("different", counts.getDifferentRows());
+			json.field("unhandled", counts.getUnhandledRows());
+			json.field("missingFromSecond", counts.getMissingFromSecond());
+			json.field("missingFromFirst", counts.getMissingFromFirst());
+			json.endObject();
+		}
+
+		json.beginObject("breaksByColumn");
+		for (Map.Entry<String, Long> breaks : breaksByColumn.entrySet()) {
+			json.field(breaks.getKey(), breaks.getValue());
+		}
+		json.endObject();
+
+		json.beginObject("memory");
+		json.field("allocatedBytes", getAllocatedBytes());
+		json.field("heapHighWaterBytes", getHeapHighWaterBytes());
+		json.field("heapMaxBytes", Runtime.getRuntime().maxMemory());
+		json.endObject();
+
+		json.beginObject("threads");
+		json.field("availableProcessors", Runtime.getRuntime().availableProcessors());
+		json.field("peakThreads", threads.getPeakThreadCount());
+		json.field("cpuUtilisation", getCpuUtilisation());
+		json.endObject();
+
+		json.endObject();
+		return json.toString();
+	}
+
+	/**
+	 * write the report to a file
+	 *
+	 * @param file
+	 *            file to write
+	 * @throws IOException
+	 *             if it can't be written
+	 */
+	public void writeReport(File file) throws IOException {
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), UTF_8);
+		try {
+			writer.write(getReport());
+		} finally {
+			writer.close();
+		}
+		LOGGER.info("Wrote run metrics to " + file.getPath());
+	}
+
+	/**
+	 * publish the metrics as an MBean on the platform MBean server, under org.recxx:type=RunMetrics,name=name
+	 *
+	 * @throws JMException
+	 *             if it can't be registered
+	 */
+	public void register() throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName objectName = new ObjectName("org.recxx:type=RunMetrics,name=" + ObjectName.quote(name));
+		server.registerMBean(this, objectName);
+		this.objectName = objectName;
+	}
+
+	/**
+	 * remove the MBean, if it was registered
+	 */
+	public void unregister() {
+		if (objectName != null) {
+			try {
+				ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+			} catch (JMException e) {
+				LOGGER.warning("Couldn't unregister " + objectName + ": " + e);
+			}
+			objectName = null;
+		}
+	}
+
+	private long elapsedNanos() {
+		return (endNanos < 0 ? System.nanoTime() : endNanos) - startNanos;
+	}
+
+	private PhaseTotals totals(String phase) {
+		PhaseTotals totals = phases.get(phase);
+		if (totals == null) {
+			totals = new PhaseTotals();
+			phases.put(phase, totals);
+		}
+		return totals;
+	}
+
+	/**
+	 * @return the cpu time of the whole process, or -1 if the JVM doesn't give it
+	 */
+	private static long processCpuNanos() {
+		OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+		if (os instanceof com.sun.management.OperatingSystemMXBean) {
+			return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the bytes allocated by the current thread, or 0 if the JVM doesn't count them
+	 */
+	private static long threadAllocatedBytes() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean counted = (com.sun.management.ThreadMXBean) threads;
+			if (counted.isThreadAllocatedMemorySupported() && counted.isThreadAllocatedMemoryEnabled()) {
+				return counted.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * @return the cpu time of the current thread, or 0 if the JVM doesn't give it
+	 */
+	private static long threadCpuNanos() {
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads.isCurrentThreadCpuTimeSupported() && threads.isThreadCpuTimeEnabled()) {
+			return threads.getCurrentThreadCpuTime();
+		}
+		return 0;
+	}
+
+	/**
+	 * a phase being timed on the thread which started it
+	 */
+	public final class Phase {
+
+		private final String phase;
+
+		private final long startNanos = System.nanoTime();
+
+		private final long startCpuNanos = threadCpuNanos();
+
+		private final long startAllocatedBytes = threadAllocatedBytes();
+
+		private Phase(String phase) {
+			this.phase = phase;
+		}
+
+		/**
+		 * stop timing the phase, adding it to any earlier phase of the same name
+		 *
+		 * @return nanoseconds the phase took
+		 */
+		public long end() {
+			long nanos = System.nanoTime() - startNanos;
+			long cpuNanos = threadCpuNanos() - startCpuNanos;
+			long allocatedBytes = threadAllocatedBytes() - startAllocatedBytes;
+			synchronized (RunMetrics.this) {
+				totals(phase).add(nanos, cpuNanos, allocatedBytes);
+			}
+			return nanos;
+		}
+	}
+
+	private static final class PhaseTotals {
+
+		private long nanos;
+
+		private long cpuNanos;
+
+		private long allocatedBytes;
+
+		void add(long nanos, long cpuNanos, long allocatedBytes) {
+			this.nanos += nanos;
+			this.cpuNanos += cpuNanos;
+			this.allocatedBytes += allocatedBytes;
+		}
+	}
+
+	private static final class SourceTotals {
+
+		private final long rowsRead;
+
+		private final long rowsLoaded;
+
+		private final long bytesRead;
+
+		private final long nanos;
+
+		SourceTotals(long rowsRead, long rowsLoaded, long bytesRead, long nanos) {
+			this.rowsRead = rowsRead;
+			this.rowsLoaded = rowsLoaded;
+			this.bytesRead = bytesRead;
+			this.nanos = nanos;
+		}
+
+		double rowsPerSecond() {
+			return nanos <= 0 ? 0 : rowsRead * 1e9 / nanos;
+		}
+	}
+
+	/**
+	 * just enough of a json writer for the report, with no pretty printing beyond a line per field
+	 */
+	private static final class Json {
+
+		private final StringBuilder out = new StringBuilder();
+
+		private int depth;
+
+		private boolean first = true;
+
+		void beginObject() {
+			open(null, '{');
+		}
+
+		void beginObject(String name) {
+			open(name, '{');
+		}
+
+		void endObject() {
+			close('}');
+		}
+
+		void beginArray(String name) {
+			open(name, '[');
+		}
+
+		void endArray() {
+			close(']');
+		}
+
+		void field(String name, String value) {
+			name(name);
+			string(value);
+		}
+
+		void field(String name, long value) {
+			name(name);
+			out.append(value);
+		}
+
+		void field(String name, double value) {
+			name(name);
+			out.append(Double.isNaN(value) || Double.isInfinite(value) ? "null" : String.valueOf(value));
+		}
+
+		private void open(String name, char bracket) {
+			if (name != null) {
+				name(name);
+			} else if (depth > 0) {
+				separate();
+			}
+			out.append(bracket);
+			depth++;
+			first = true;
+		}
+
+		private void close(char bracket) {
+			depth--;
+			if (!first) {
+				newLine();
+			}
+			out.append(bracket);
+			first = false;
+		}
+
+		private void name(String name) {
+			separate();
+			string(name);
+			out.append(": ");
+		}
+
+		private void separate() {
+			if (!first) {
+				out.append(',');
+			}
+			newLine();
+			first = false;
+		}
+
+		private void newLine() {
+			out.append('\n');
+			for (int i = 0; i < depth; i++) {
+				out.append("  ");
+			}
+		}
+
+		private void string(String value) {
+			if (value == null) {
+				out.append("null");
+				return;
+			}
+			out.append('"');
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				switch (c) {
+				case '"':
+					out.append("\\\"");
+					break;
+				case '\\':
+					out.append("\\\\");
+					break;
+				case '\n':
+					out.append("\\n");
+					break;
+				case '\r':
+					out.append("\\r");
+					break;
+				case '\t':
+					out.append("\\t");
+					break;
+				default:
+					if (c < 0x20) {
+						out.append(String.format("\\u%04x", (int) c));
+					} else {
+						out.append(c);
+					}
+				}
+			}
+			out.append('"');
+		}
+
+		@Override
+		public String toString() {
+			return out.toString() + '\n';
+		}
+	}
+}
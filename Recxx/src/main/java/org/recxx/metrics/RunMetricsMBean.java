@@ -0,0 +1,54 @@
+package org.recxx.metrics;
+
+import java.util.Map;
+
+/**
+ * The view of a run's {@link RunMetrics} published over JMX, read while the run is going on
+ */
+public interface RunMetricsMBean {
+
+	/**
+	 * @return milliseconds since the run started, or the length of the run once it has finished
+	 */
+	long getElapsedMillis();
+
+	/**
+	 * @return milliseconds taken by each phase finished so far, by name
+	 */
+	Map<String, Long> getPhaseMillis();
+
+	/**
+	 * @return rows read from each source loaded so far, by alias
+	 */
+	Map<String, Long> getRowsRead();
+
+	/**
+	 * @return rows read per second by each source loaded so far, by alias
+	 */
+	Map<String, Double> getRowsPerSecond();
+
+	/**
+	 * @return differences found in each compare column so far, by the column's name in the first source
+	 */
+	Map<String, Long> getBreaksByColumn();
+
+	/**
+	 * @return bytes allocated by the threads running the phases finished so far
+	 */
+	long getAllocatedBytes();
+
+	/**
+	 * @return the highest heap use seen since the run started
+	 */
+	long getHeapHighWaterBytes();
+
+	/**
+	 * @return the fraction of the machine's processors kept busy by the process since the run started
+	 */
+	double getCpuUtilisation();
+
+	/**
+	 * @return the whole report, as written to the json file
+	 */
+	String getReport();
+}
@@ -0,0 +1,203 @@
+package org.recxx.reader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * <p>
+ * An InputStream which reads the underlying stream ahead, in blocks, on a thread of its own. With a decompressing stream
+ * underneath, such as a GZIPInputStream, the decompression runs alongside whatever parses the bytes, rather than in
+ * turn with it. The blocks are recycled, and no more than a fixed number are ever read ahead: once they all are, the
+ * background thread waits for the reader to catch up.
+ * </p>
+ *
+ * <p>
+ * A failure of the underlying stream is thrown by the read which reaches it. Closing stops the background thread and
+ * closes the underlying stream, whether or not it has been read to the end.
+ * </p>
+ */
+public class BackgroundInputStream extends InputStream {
+
+	public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+
+	public static final int DEFAULT_BLOCKS = 4;
+
+	private static final Block END = new Block(0);
+
+	private final InputStream in;
+
+	private final BlockingQueue<Block> read;
+
+	private final BlockingQueue<Block> free;
+
+	private final Thread thread;
+
+	private Block current;
+
+	private int position;
+
+	private volatile IOException failure;
+
+	private boolean closed;
+
+	public BackgroundInputStream(InputStream in, String name) {
+		this(in, name, DEFAULT_BLOCK_SIZE, DEFAULT_BLOCKS);
+	}
+
+	/**
+	 * start the background thread
+	 *
+	 * @param in
+	 *            stream to read on the background thread
+	 * @param name
+	 *            name of the background thread
+	 * @param blockSize
+	 *            bytes in each block
+	 * @param blocks
+	 *            number of blocks which may be read ahead
+	 */
+	public BackgroundInputStream(InputStream in, String name, int blockSize, int blocks) {
+		this.in = in;
+		this.read = new ArrayBlockingQueue<Block>(blocks + 1);
+		this.free = new ArrayBlockingQueue<Block>(blocks);
+		for (int i = 0; i < blocks; i++) {
+			free.add(new Block(blockSize));
+		}
+
+		thread = new Thread(new Runnable() {
+			public void run() {
+				readBlocks();
+			}
+		}, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!ensureAvailable()) {
+			return -1;
+		}
+		return current.bytes[position++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] bytes, int offset, int length) throws IOException {
+		if (length == 0) {
+			return 0;
+		}
+		if (!ensureAvailable()) {
+			return -1;
+		}
+		int count = Math.min(length, current.length - position);
+		System.arraycopy(current.bytes, position, bytes, offset, count);
+		position += count;
+		return count;
+	}
+
+	@Override
+	public int available() throws IOException {
+		if (closed || current == null || current == END) {
+			return 0;
+		}
+		return current.length - position;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		thread.interrupt();
+		try {
+			while (thread.isAlive()) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for " + thread.getName());
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * make sure the current block has bytes left to read, swapping it for the next one read if it hasn't
+	 *
+	 * @return false at the end of the stream
+	 */
+	private boolean ensureAvailable() throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+		while (current == null || (current != END && position == current.length)) {
+			if (current != null) {
+				free.add(current);
+			}
+			try {
+				current = read.take();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted waiting for " + thread.getName());
+			}
+			position = 0;
+		}
+		if (current == END) {
+			if (failure != null) {
+				throw failure;
+			}
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * the background thread: fill each free block from the stream, until it ends or fails
+	 */
+	private void readBlocks() {
+		try {
+			try {
+				while (true) {
+					Block block = free.take();
+					block.length = fill(block.bytes);
+					if (block.length == 0) {
+						break;
+					}
+					read.put(block);
+				}
+			} catch (IOException e) {
+				failure = e;
+			}
+			read.put(END);
+		} catch (InterruptedException e) {
+			// closed before the end
+		}
+	}
+
+	private int fill(byte[] bytes) throws IOException {
+		int length = 0;
+		while (length < bytes.length) {
+			int count = in.read(bytes, length, bytes.length - length);
+			if (count < 0) {
+				break;
+			}
+			length += count;
+		}
+		return length;
+	}
+
+	private static final class Block {
+
+		private final byte[] bytes;
+
+		private int length;
+
+		Block(int size) {
+			this.bytes = new byte[size];
+		}
+	}
+}
@@ -0,0 +1,265 @@
+package org.recxx.reader;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * <p>
+ * Reads a block compressed gzip file, as written by bgzip, decompressing its blocks in parallel. Such a file is a
+ * series of complete gzip members, each no more than 64KB, whose headers record how long the member is. The members
+ * can therefore be cut from the file without decompressing anything, and inflated by a pool of threads while earlier
+ * ones are read.
+ * </p>
+ *
+ * <p>
+ * The compressed blocks are read on the reading thread, which keeps twice as many blocks in flight as there are
+ * threads, and takes their contents in file order. Every block's CRC and length are checked against its trailer.
+ * </p>
+ */
+public class BlockGzipInputStream extends InputStream {
+
+	static final int HEADER_SIZE = 18;
+
+	private static final int TRAILER_SIZE = 8;
+
+	private static final int FEXTRA = 4;
+
+	private static final byte[] EMPTY = new byte[0];
+
+	private final DataInputStream in;
+
+	private final ExecutorService executor;
+
+	private final Queue<Future<byte[]>> inFlight = new ArrayDeque<Future<byte[]>>();
+
+	private final int maxInFlight;
+
+	private final byte[] header = new byte[HEADER_SIZE];
+
+	private byte[] current = EMPTY;
+
+	private int position;
+
+	private boolean endOfFile;
+
+	private boolean closed;
+
+	/**
+	 * @param in
+	 *            stream positioned at the start of the first block
+	 * @param name
+	 *            name for the decompressing threads
+	 * @param threads
+	 *            number of blocks decompressed at the same time
+	 */
+	public BlockGzipInputStream(InputStream in, final String name, int threads) {
+		this.in = new DataInputStream(in);
+		this.maxInFlight = threads * 2;
+		this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * @param header
+	 *            at least the first HEADER_SIZE bytes of a file
+	 * @return true if they are the header of a block compressed gzip member
+	 */
+	static boolean isBlockHeader(byte[] header) {
+		return (header[0] & 0xff) == 0x1f && (header[1] & 0xff) == 0x8b && header[2] == 8 && header[3] == FEXTRA
+		        && littleEndianShort(header, 10) == 6 && header[12] == 'B' && header[13] == 'C'
+		        && littleEndianShort(header, 14) == 2;
+	}
+
+	@Override
+	public int read() throws IOException {
+		if (!ensureAvailable()) {
+			return -1;
+		}
+		return current[position++] & 0xff;
+	}
+
+	@Override
+	public int read(byte[] bytes, int offset, int length) throws IOException {
+		if (length == 0) {
+			return 0;
+		}
+		if (!ensureAvailable()) {
+			return -1;
+		}
+		int count = Math.min(length, current.length - position);
+		System.arraycopy(current, position, bytes, offset, count);
+		position += count;
+		return count;
+	}
+
+	@Override
+	public int available() {
+		return current.length - position;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		executor.shutdownNow();
+		inFlight.clear();
+		in.close();
+	}
+
+	/**
+	 * make sure the current block has bytes left to read, moving on to the next block if it hasn't
+	 *
+	 * @return false at the end of the file
+	 */
+	private boolean ensureAvailable() throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+		while (position == current.length) {
+			submitBlocks();
+			Future<byte[]> next = inFlight.poll();
+			if (next == null) {
+				return false;
+			}
+			current = take(next);
+			position = 0;
+		}
+		return true;
+	}
+
+	/**
+	 * read blocks from the file and hand them to the pool, until enough are in flight or the file ends
+	 */
+	private void submitBlocks() throws IOException {
+		while (!endOfFile && inFlight.size() < maxInFlight) {
+			final byte[] block = readBlock();
+			if (block == null) {
+				endOfFile = true;
+				break;
+			}
+			inFlight.add(executor.submit(new Callable<byte[]>() {
+				public byte[] call() throws IOException {
+					return inflate(block);
+				}
+			}));
+		}
+	}
+
+	/**
+	 * @return the next whole block, header and trailer included, or null at the end of the file
+	 */
+	private byte[] readBlock() throws IOException {
+		int count = 0;
+		while (count < HEADER_SIZE) {
+			int read = in.read(header, count, HEADER_SIZE - count);
+			if (read < 0) {
+				break;
+			}
+			count += read;
+		}
+		if (count == 0) {
+			return null;
+		}
+		if (count < HEADER_SIZE) {
+			throw new EOFException("Block compressed gzip file ends in the middle of a block header");
+		}
+		if (!isBlockHeader(header)) {
+			throw new IOException("Not a block compressed gzip block");
+		}
+
+		int blockSize = littleEndianShort(header, 16) + 1;
+		if (blockSize < HEADER_SIZE + TRAILER_SIZE) {
+			throw new IOException("Block compressed gzip block of " + blockSize + " bytes is too short");
+		}
+		byte[] block = new byte[blockSize];
+		System.arraycopy(header, 0, block, 0, HEADER_SIZE);
+		in.readFully(block, HEADER_SIZE, blockSize - HEADER_SIZE);
+		return block;
+	}
+
+	private byte[] take(Future<byte[]> future) throws IOException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted decompressing a block");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Failed to decompress a block", e.getCause());
+		}
+	}
+
+	/**
+	 * @param block
+	 *            whole block, header and trailer included
+	 * @return the block's contents
+	 * @throws IOException
+	 *             if it doesn't inflate to what its trailer says it should
+	 */
+	static byte[] inflate(byte[] block) throws IOException {
+		int trailer = block.length - TRAILER_SIZE;
+		long expectedCrc = littleEndianInt(block, trailer) & 0xffffffffL;
+		byte[] contents = new byte[littleEndianInt(block, trailer + 4)];
+
+		Inflater inflater = new Inflater(true);
+		try {
+			inflater.setInput(block, HEADER_SIZE, trailer - HEADER_SIZE);
+			int length = 0;
+			while (length < contents.length && !inflater.finished()) {
+				int count = inflater.inflate(contents, length, contents.length - length);
+				if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				length += count;
+			}
+			if (length != contents.length) {
+				throw new IOException("Block compressed gzip block is shorter than its trailer says");
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupt block compressed gzip block", e);
+		} finally {
+			inflater.end();
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(contents, 0, contents.length);
+		if (crc.getValue() != expectedCrc) {
+			throw new IOException("Block compressed gzip block fails its CRC check");
+		}
+		return contents;
+	}
+
+	private static int littleEndianShort(byte[] bytes, int offset) {
+		return (bytes[offset] & 0xff) | (bytes[offset + 1] & 0xff) << 8;
+	}
+
+	private static int littleEndianInt(byte[] bytes, int offset) {
+		return littleEndianShort(bytes, offset) | littleEndianShort(bytes, offset + 2) << 16;
+	}
+}
@@ -0,0 +1,96 @@
+package org.recxx.reader;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * how a file must be decompressed to be read, as told by its first bytes rather than its name
+ */
+public enum Decompression {
+
+	/** not at all */
+	NONE {
+		@Override
+		public InputStream open(File file, int threads) throws IOException {
+			return new FileInputStream(file);
+		}
+	},
+
+	/**
+	 * gzip, of one or more members, inflated on a thread of its own ahead of the reader
+	 */
+	GZIP {
+		@Override
+		public InputStream open(File file, int threads) throws IOException {
+			InputStream in = new FileInputStream(file);
+			try {
+				return new BackgroundInputStream(new GZIPInputStream(in, 64 * 1024), "Decompressing " + file.getName());
+			} catch (IOException e) {
+				in.close();
+				throw e;
+			}
+		}
+	},
+
+	/**
+	 * block compressed gzip, as written by bgzip, whose blocks are inflated by a pool of threads. Read on a single
+	 * thread, it is treated as any other gzip file.
+	 */
+	BLOCK_GZIP {
+		@Override
+		public InputStream open(File file, int threads) throws IOException {
+			if (threads <= 1) {
+				return GZIP.open(file, threads);
+			}
+			return new BlockGzipInputStream(new BufferedInputStream(new FileInputStream(file), 64 * 1024),
+			        "Decompressing " + file.getName(), threads);
+		}
+	};
+
+	/**
+	 * @param file
+	 *            file to read
+	 * @param threads
+	 *            number of threads which may decompress the file
+	 * @return a stream of the file's decompressed contents
+	 * @throws IOException
+	 *             if the file can't be opened
+	 */
+	public abstract InputStream open(File file, int threads) throws IOException;
+
+	/**
+	 * @param file
+	 *            file to read
+	 * @return how the file is compressed, from its magic bytes
+	 * @throws IOException
+	 *             if the file can't be read
+	 */
+	public static Decompression detect(File file) throws IOException {
+		byte[] header = new byte[BlockGzipInputStream.HEADER_SIZE];
+		int length = 0;
+		InputStream in = new FileInputStream(file);
+		try {
+			while (length < header.length) {
+				int count = in.read(header, length, header.length - length);
+				if (count < 0) {
+					break;
+				}
+				length += count;
+			}
+		} finally {
+			in.close();
+		}
+
+		if (length < 2 || (header[0] & 0xff) != 0x1f || (header[1] & 0xff) != 0x8b) {
+			return NONE;
+		}
+		if (length == header.length && BlockGzipInputStream.isBlockHeader(header)) {
+			return BLOCK_GZIP;
+		}
+		return GZIP;
+	}
+}
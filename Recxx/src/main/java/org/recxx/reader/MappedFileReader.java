@@ -0,0 +1,453 @@
+package org.recxx.reader;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>
+ * Reads a delimited file through a memory mapping of its {@link FileChannel}, splitting every line into fields directly
+ * from the mapped bytes. Nothing is created for a field until it is asked for, so columns which take no part in the
+ * reconciliation only cost the scan for the next delimiter.
+ * </p>
+ *
+ * <p>
+ * A single mapping is limited to 2GB, so larger files are read through a series of windows, each of which is cut back
+ * to end on a line boundary. A line can therefore never be longer than the window size.
+ * </p>
+ *
+ * <p>
+ * Fields follow the conventions of the line based reader in FileFacadeWorker: an empty field reads as "0", trailing
+ * carriage returns are dropped, a delimiter at the very start of a line is skipped rather than ending an (empty) first
+ * field and, unless appendDelimiter is set, a delimiter at the very end of a line terminates the line rather than
+ * starting another (empty) field. Blank lines are skipped.
+ * </p>
+ */
+public class MappedFileReader implements Closeable {
+
+	public static final int DEFAULT_WINDOW_SIZE = 1 << 28;
+
+	private static final byte NEW_LINE = '\n';
+
+	private static final byte CARRIAGE_RETURN = '\r';
+
+	private static final int MAX_FAST_DIGITS = 15;
+
+	private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12,
+	        1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+	private final RandomAccessFile file;
+
+	private final FileChannel channel;
+
+	private final long end;
+
+	private final byte delimiter;
+
+	private final boolean trailingDelimiterStartsField;
+
+	private final int windowSize;
+
+	private final Charset charset;
+
+	private MappedByteBuffer window;
+
+	private long windowStart;
+
+	private int windowLimit;
+
+	private int position;
+
+	private int[] fieldStarts = new int[32];
+
+	private int[] fieldEnds = new int[32];
+
+	private int fieldCount;
+
+	private int lineStart;
+
+	private int lineEnd;
+
+	private byte[] scratch = new byte[256];
+
+	/**
+	 * map the whole of the given file
+	 *
+	 * @param file
+	 *            file to read
+	 * @param delimiter
+	 *            single byte column delimiter
+	 * @param trailingDelimiterStartsField
+	 *            true if a delimiter at the end of a line is followed by one more (empty) field
+	 * @param charset
+	 *            charset used to decode any fields read as Strings
+	 * @throws IOException
+	 *             if the file can't be opened or mapped
+	 */
+	public MappedFileReader(File file, byte delimiter, boolean trailingDelimiterStartsField, Charset charset)
+	        throws IOException {
+		this(file, 0, file.length(), delimiter, trailingDelimiterStartsField, charset, DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * map the byte range [start, end) of the given file, which must begin at the start of a line.
+	 *
+	 * @param file
+	 *            file to read
+	 * @param start
+	 *            offset of the first byte to read
+	 * @param end
+	 *            offset after the last byte to read
+	 * @param delimiter
+	 *            single byte column delimiter
+	 * @param trailingDelimiterStartsField
+	 *            true if a delimiter at the end of a line is followed by one more (empty) field
+	 * @param charset
+	 *            charset used to decode any fields read as Strings
+	 * @param windowSize
+	 *            largest number of bytes mapped at once
+	 * @throws IOException
+	 *             if the file can't be opened or mapped
+	 */
+	public MappedFileReader(File file, long start, long end, byte delimiter, boolean trailingDelimiterStartsField,
+	        Charset charset, int windowSize) throws IOException {
+		this.file = new RandomAccessFile(file, "r");
+		this.channel = this.file.getChannel();
+		this.end = Math.min(end, channel.size());
+		this.delimiter = delimiter;
+		this.trailingDelimiterStartsField = trailingDelimiterStartsField;
+		this.charset = charset;
+		this.windowSize = windowSize;
+		this.windowStart = start;
+		this.windowLimit = 0;
+		this.position = 0;
+	}
+
+	/**
+	 * move on to the next non blank line and split it into fields
+	 *
+	 * @return false once the end of the range has been reached
+	 * @throws IOException
+	 *             if the next window can't be mapped or a line doesn't fit into a window
+	 */
+	public boolean nextLine() throws IOException {
+		while (true) {
+			if (position >= windowLimit && !mapNextWindow()) {
+				return false;
+			}
+
+			lineStart = position;
+			int newLine = indexOf(NEW_LINE, lineStart, windowLimit);
+			lineEnd = newLine < 0 ? windowLimit : newLine;
+			position = lineEnd + 1;
+
+			if (lineEnd > lineStart && window.get(lineEnd - 1) == CARRIAGE_RETURN) {
+				lineEnd--;
+			}
+			if (lineEnd > lineStart) {
+				splitLine();
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * @return the offset in the file of the first byte after the current line
+	 */
+	public long position() {
+		return windowStart + Math.min(position, windowLimit);
+	}
+
+	/**
+	 * Split the byte range [start, end) of a file into ranges of roughly chunkSize bytes, each of which starts at the
+	 * beginning of a line, so that they can be read by separate MappedFileReaders.
+	 *
+	 * @param file
+	 *            file to split
+	 * @param start
+	 *            offset of the first byte, which must be the start of a line
+	 * @param end
+	 *            offset after the last byte
+	 * @param chunkSize
+	 *            target size of each range
+	 * @return the offsets at which each range starts, followed by end
+	 * @throws IOException
+	 *             if the file can't be read
+	 */
+	public static long[] lineAlignedSplits(File file, long start, long end, long chunkSize) throws IOException {
+		List<Long> splits = new ArrayList<Long>();
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			byte[] buffer = new byte[8192];
+			long split = start;
+			while (split < end) {
+				splits.add(split);
+				long next = split + Math.max(chunkSize, 1);
+				if (next >= end) {
+					break;
+				}
+				// the next range starts after the first new line at or after the target
+				split = end;
+				long scan = next - 1;
+				randomAccessFile.seek(scan);
+				int read;
+				scanning: while (scan < end && (read = randomAccessFile.read(buffer)) > 0) {
+					for (int i = 0; i < read && scan < end; i++, scan++) {
+						if (buffer[i] == NEW_LINE) {
+							split = scan + 1;
+							break scanning;
+						}
+					}
+				}
+			}
+		} finally {
+			randomAccessFile.close();
+		}
+
+		long[] offsets = new long[splits.size() + 1];
+		for (int i = 0; i < splits.size(); i++) {
+			offsets[i] = splits.get(i);
+		}
+		offsets[splits.size()] = end;
+		return offsets;
+	}
+
+	/**
+	 * @return the number of fields on the current line
+	 */
+	public int fieldCount() {
+		return fieldCount;
+	}
+
+	/**
+	 * @param field
+	 *            field index
+	 * @return true if the field has no content, and so reads as "0"
+	 */
+	public boolean isEmpty(int field) {
+		return fieldEnds[field] == fieldStarts[field];
+	}
+
+	/**
+	 * @return the whole of the current line as a String
+	 */
+	public String getLine() {
+		return decode(lineStart, lineEnd);
+	}
+
+	/**
+	 * @param field
+	 *            field index
+	 * @return the field exactly as it appears in the file, or "0" if it is empty
+	 */
+	public String getString(int field) {
+		if (isEmpty(field)) {
+			return "0";
+		}
+		return decode(fieldStarts[field], fieldEnds[field]);
+	}
+
+	/**
+	 * @param field
+	 *            field index
+	 * @return the field with leading and trailing white space removed, as String.trim() would
+	 */
+	public String getTrimmedString(int field) {
+		if (isEmpty(field)) {
+			return "0";
+		}
+		int start = fieldStarts[field];
+		int end = fieldEnds[field];
+		while (start < end && (window.get(start) & 0xff) <= ' ') {
+			start++;
+		}
+		while (end > start && (window.get(end - 1) & 0xff) <= ' ') {
+			end--;
+		}
+		return decode(start, end);
+	}
+
+	/**
+	 * Parse a plain decimal field (an optional sign, digits and an optional fractional part) straight from the mapped
+	 * bytes. The result is exact, and so identical to Double.parseDouble(), as long as there are no more than 15
+	 * significant digits. Anything else, including values with more than maxFractionDigits decimal places which would
+	 * need rounding, is left to the caller by returning NaN.
+	 *
+	 * @param field
+	 *            field index
+	 * @param maxFractionDigits
+	 *            the most decimal places the value may have
+	 * @return the value, or Double.NaN if the field isn't a plain decimal
+	 */
+	public double getDecimal(int field, int maxFractionDigits) {
+		int i = fieldStarts[field];
+		int end = fieldEnds[field];
+		if (i == end) {
+			return 0d;
+		}
+
+		boolean negative = false;
+		byte b = window.get(i);
+		if (b == '-' || b == '+') {
+			negative = b == '-';
+			i++;
+		}
+
+		long mantissa = 0;
+		int digits = 0;
+		int significantDigits = 0;
+		int fractionDigits = -1;
+		for (; i < end; i++) {
+			b = window.get(i);
+			if (b >= '0' && b <= '9') {
+				digits++;
+				if (mantissa != 0 || b != '0') {
+					significantDigits++;
+				}
+				mantissa = mantissa * 10 + (b - '0');
+				if (fractionDigits >= 0) {
+					fractionDigits++;
+				}
+				if (significantDigits > MAX_FAST_DIGITS) {
+					return Double.NaN;
+				}
+			} else if (b == '.' && fractionDigits < 0) {
+				fractionDigits = 0;
+			} else {
+				return Double.NaN;
+			}
+		}
+
+		if (digits == 0 || fractionDigits > maxFractionDigits || fractionDigits >= POWERS_OF_TEN.length) {
+			return Double.NaN;
+		}
+		double value = fractionDigits > 0 ? mantissa / POWERS_OF_TEN[fractionDigits] : mantissa;
+		return negative ? -value : value;
+	}
+
+	/**
+	 * Parse a plain integer field (an optional sign followed by digits) straight from the mapped bytes.
+	 *
+	 * @param field
+	 *            field index
+	 * @return the value, or Long.MIN_VALUE if the field isn't a plain integer that fits into a long
+	 */
+	public long getLong(int field) {
+		int i = fieldStarts[field];
+		int end = fieldEnds[field];
+		if (i == end) {
+			return 0L;
+		}
+
+		boolean negative = false;
+		byte b = window.get(i);
+		if (b == '-' || b == '+') {
+			negative = b == '-';
+			i++;
+		}
+		if (i == end || end - i > 18) {
+			return Long.MIN_VALUE;
+		}
+
+		long value = 0;
+		for (; i < end; i++) {
+			b = window.get(i);
+			if (b < '0' || b > '9') {
+				return Long.MIN_VALUE;
+			}
+			value = value * 10 + (b - '0');
+		}
+		return negative ? -value : value;
+	}
+
+	public void close() throws IOException {
+		window = null;
+		file.close();
+	}
+
+	private void splitLine() {
+		fieldCount = 0;
+		int start = lineStart;
+		if (start < lineEnd && window.get(start) == delimiter) {
+			// as the StringTokenizer of the line based reader does, a delimiter at the start of a line is skipped
+			start++;
+		}
+		int next;
+		while ((next = indexOf(delimiter, start, lineEnd)) >= 0) {
+			addField(start, next);
+			start = next + 1;
+		}
+		if (start < lineEnd || trailingDelimiterStartsField || fieldCount == 0) {
+			addField(start, lineEnd);
+		}
+	}
+
+	private void addField(int start, int end) {
+		if (fieldCount == fieldStarts.length) {
+			int[] starts = new int[fieldCount * 2];
+			int[] ends = new int[fieldCount * 2];
+			System.arraycopy(fieldStarts, 0, starts, 0, fieldCount);
+			System.arraycopy(fieldEnds, 0, ends, 0, fieldCount);
+			fieldStarts = starts;
+			fieldEnds = ends;
+		}
+		fieldStarts[fieldCount] = start;
+		fieldEnds[fieldCount] = end;
+		fieldCount++;
+	}
+
+	private int indexOf(byte value, int from, int to) {
+		for (int i = from; i < to; i++) {
+			if (window.get(i) == value) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private String decode(int start, int end) {
+		int length = end - start;
+		if (scratch.length < length) {
+			scratch = new byte[Math.max(length, scratch.length * 2)];
+		}
+		for (int i = 0; i < length; i++) {
+			scratch[i] = window.get(start + i);
+		}
+		return new String(scratch, 0, length, charset);
+	}
+
+	/**
+	 * map the next window of the file, trimmed back to the last complete line in it unless it reaches the end of the
+	 * range.
+	 */
+	private boolean mapNextWindow() throws IOException {
+		windowStart += windowLimit;
+		if (windowStart >= end) {
+			return false;
+		}
+
+		long length = Math.min(windowSize, end - windowStart);
+		window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, length);
+		windowLimit = (int) length;
+		position = 0;
+
+		if (windowStart + length < end) {
+			int lastNewLine = windowLimit - 1;
+			while (lastNewLine >= 0 && window.get(lastNewLine) != NEW_LINE) {
+				lastNewLine--;
+			}
+			if (lastNewLine < 0) {
+				throw new IOException("Line starting at byte " + windowStart + " is longer than the mapping window of "
+				        + windowSize + " bytes");
+			}
+			windowLimit = lastNewLine + 1;
+		}
+		return true;
+	}
+}
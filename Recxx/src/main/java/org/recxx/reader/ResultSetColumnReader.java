@@ -0,0 +1,238 @@
+package org.recxx.reader;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.text.DecimalFormat;
+
+import org.recxx.data.ColumnType;
+import org.recxx.data.RowBuffer;
+
+/**
+ * <p>
+ * Reads one column of the current row of a {@link ResultSet} into a slot of a {@link RowBuffer}, through the typed
+ * getter for the column's type. A reader is chosen once per column from the class names given by the
+ * ResultSetMetaData, so numbers go straight from the driver into the primitive slots of the buffer without being
+ * boxed, and nothing about the column is looked up again for each row.
+ * </p>
+ *
+ * <p>
+ * Doubles and floats are rounded through the decimal places pattern as they are read, and null doubles can be
+ * defaulted to 0.0, as the ResultSet has always been processed. A reader holds its own copy of the pattern, so the
+ * readers of a column can't be shared between threads.
+ * </p>
+ */
+public abstract class ResultSetColumnReader {
+
+	/**
+	 * index of the column in the ResultSet, from 1
+	 */
+	protected final int column;
+
+	/**
+	 * slot of the row buffer to read into
+	 */
+	protected final int slot;
+
+	protected ResultSetColumnReader(int column, int slot) {
+		this.column = column;
+		this.slot = slot;
+	}
+
+	/**
+	 * read the column of the current row into the row buffer
+	 *
+	 * @param rs
+	 *            result set, positioned on a row
+	 * @param row
+	 *            row buffer to read into
+	 * @throws SQLException
+	 *             if the column can't be read
+	 */
+	public abstract void read(ResultSet rs, RowBuffer row) throws SQLException;
+
+	/**
+	 * choose a reader for each column of a result set
+	 *
+	 * @param classNames
+	 *            class name of each column, from the ResultSetMetaData
+	 * @param handleNullsAsZero
+	 *            default null doubles to 0.0?
+	 * @param decimalPlaces
+	 *            pattern to round doubles and floats through, or null to leave them as read
+	 * @return a reader for each column, reading column i + 1 into slot i
+	 */
+	public static ResultSetColumnReader[] forColumns(String[] classNames, boolean handleNullsAsZero,
+	        DecimalFormat decimalPlaces) {
+		ResultSetColumnReader[] readers = new ResultSetColumnReader[classNames.length];
+		for (int i = 0; i < classNames.length; i++) {
+			readers[i] = create(classNames[i], i + 1, i, handleNullsAsZero, decimalPlaces);
+		}
+		return readers;
+	}
+
+	private static ResultSetColumnReader create(String className, int column, int slot, boolean handleNullsAsZero,
+	        DecimalFormat decimalPlaces) {
+		if ("java.lang.Float".equals(className)) {
+			return new FloatReader(column, slot, copy(decimalPlaces));
+		}
+		switch (ColumnType.forClassName(className)) {
+		case DOUBLE:
+			return new DoubleReader(column, slot, handleNullsAsZero, copy(decimalPlaces));
+		case INTEGER:
+		case LONG:
+			return new LongReader(column, slot);
+		case STRING:
+			return new StringReader(column, slot);
+		case DATE:
+			return new DateReader(column, slot);
+		case DECIMAL:
+			return new DecimalReader(column, slot);
+		case BOOLEAN:
+			return new BooleanReader(column, slot);
+		default:
+			return new ObjectReader(column, slot);
+		}
+	}
+
+	private static DecimalFormat copy(DecimalFormat decimalPlaces) {
+		return decimalPlaces == null ? null : (DecimalFormat) decimalPlaces.clone();
+	}
+
+	/**
+	 * @return the value rounded through the pattern, 0.0 if it can't be formatted as a number, or the value itself if
+	 *         there's no pattern
+	 */
+	static double round(DecimalFormat decimalPlaces, double value) {
+		if (decimalPlaces == null) {
+			return value;
+		}
+		try {
+			return Double.parseDouble(decimalPlaces.format(value));
+		} catch (NumberFormatException nfe) {
+			return 0d;
+		}
+	}
+
+	static final class DoubleReader extends ResultSetColumnReader {
+
+		private final boolean handleNullsAsZero;
+
+		private final DecimalFormat decimalPlaces;
+
+		DoubleReader(int column, int slot, boolean handleNullsAsZero, DecimalFormat decimalPlaces) {
+			super(column, slot);
+			this.handleNullsAsZero = handleNullsAsZero;
+			this.decimalPlaces = decimalPlaces;
+		}
+
+		@Override
+		public void read(ResultSet rs, RowBuffer row) throws SQLException {
+			double value = rs.getDouble(column);
+			if (!rs.wasNull()) {
+				row.setDouble(slot, round(decimalPlaces, value));
+			} else if (handleNullsAsZero) {
+				row.setDouble(slot, 0.0);
+			}
+		}
+	}
+
+	static final class FloatReader extends ResultSetColumnReader {
+
+		private final DecimalFormat decimalPlaces;
+
+		FloatReader(int column, int slot, DecimalFormat decimalPlaces) {
+			super(column, slot);
+			this.decimalPlaces = decimalPlaces;
+		}
+
+		@Override
+		public void read(ResultSet rs, RowBuffer row) throws SQLException {
+			float value = rs.getFloat(column);
+			if (!rs.wasNull()) {
+				row.setObject(slot, Float.valueOf((float) round(decimalPlaces, value)));
+			}
+		}
+	}
+
+	static final class LongReader extends ResultSetColumnReader {
+
+		LongReader(int column, int slot) {
+			super(column, slot);
+		}
+
+		@Override
+		public void read(ResultSet rs, RowBuffer row) throws SQLException {
+			long value = rs.getLong(column);
+			if (!rs.wasNull()) {
+				row.setLong(slot, value);
+			}
+		}
+	}
+
+	static final class StringReader extends ResultSetColumnReader {
+
+		StringReader(int column, int slot) {
+			super(column, slot);
+		}
+
+		@Override
+		public void read(ResultSet rs, RowBuffer row) throws SQLException {
+			row.setObject(slot, rs.getString(column));
+		}
+	}
+
+	static final class DateReader extends ResultSetColumnReader {
+
+		DateReader(int column, int slot) {
+			super(column, slot);
+		}
+
+		@Override
+		public void read(ResultSet rs, RowBuffer row) throws SQLException {
+			Timestamp value = rs.getTimestamp(column);
+			if (value != null) {
+				row.setLong(slot, value.getTime());
+			}
+		}
+	}
+
+	static final class DecimalReader extends ResultSetColumnReader {
+
+		DecimalReader(int column, int slot) {
+			super(column, slot);
+		}
+
+		@Override
+		public void read(ResultSet rs, RowBuffer row) throws SQLException {
+			row.setObject(slot, rs.getBigDecimal(column));
+		}
+	}
+
+	static final class BooleanReader extends ResultSetColumnReader {
+
+		BooleanReader(int column, int slot) {
+			super(column, slot);
+		}
+
+		@Override
+		public void read(ResultSet rs, RowBuffer row) throws SQLException {
+			boolean value = rs.getBoolean(column);
+			if (!rs.wasNull()) {
+				row.setObject(slot, Boolean.valueOf(value));
+			}
+		}
+	}
+
+	static final class ObjectReader extends ResultSetColumnReader {
+
+		ObjectReader(int column, int slot) {
+			super(column, slot);
+		}
+
+		@Override
+		public void read(ResultSet rs, RowBuffer row) throws SQLException {
+			row.set(slot, rs.getObject(column));
+		}
+	}
+}
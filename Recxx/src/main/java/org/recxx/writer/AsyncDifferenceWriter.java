@@ -0,0 +1,327 @@
+package org.recxx.writer;
+
+import static org.recxx.utils.StringUtils.isNullOrEmpty;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.recxx.data.CompositeKey;
+
+/**
+ * <p>
+ * Writes differences to a {@link CSVLogger} on a thread of its own, so that the threads comparing the data never wait
+ * on the file. A difference is put into the next slot of a bounded ring of reusable records, and the writer thread
+ * takes every filled slot at once, encodes the batch into a reusable buffer and hands it to the logger in blocks of at
+ * least FLUSH_SIZE characters. The lines are exactly those written by the logger's write and writeLine methods: the key
+ * columns, the two column names and values, the % difference and the absolute difference.
+ * </p>
+ *
+ * <p>
+ * When the ring is full the threads writing differences wait for the writer thread to catch up, so no more than the
+ * capacity of the ring is ever held. {@link #drain()} waits until every difference written so far has reached the
+ * logger, and must be called before anything else is written to the logger. If the logger fails, the rest of the
+ * differences are discarded, so that nothing waits on the ring, and the failure is thrown by the next drain or close.
+ * </p>
+ */
+public class AsyncDifferenceWriter implements Closeable {
+
+	public static final int DEFAULT_CAPACITY = 8192;
+
+	private static final int FLUSH_SIZE = 64 * 1024;
+
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+	private final CSVLogger logger;
+
+	private final String delimiter;
+
+	private final String nullString;
+
+	private final Record[] ring;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition notEmpty = lock.newCondition();
+
+	private final Condition notFull = lock.newCondition();
+
+	private final Condition flushed = lock.newCondition();
+
+	private final Thread thread;
+
+	// only used by the writer thread
+	private final StringBuilder block = new StringBuilder(FLUSH_SIZE * 2);
+
+	private char[] chars = new char[FLUSH_SIZE * 2];
+
+	// the count of records taken from the ring, put into it, and handed to the logger, all guarded by the lock
+	private long head;
+
+	private long tail;
+
+	private long written;
+
+	private boolean closed;
+
+	private IOException failure;
+
+	/**
+	 * start a writer thread for the logger, which must already be open
+	 *
+	 * @param logger
+	 *            logger to write the differences to
+	 * @param capacity
+	 *            number of differences the ring holds
+	 */
+	public AsyncDifferenceWriter(CSVLogger logger, int capacity) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("The capacity of the ring must be at least 1, not " + capacity);
+		}
+		this.logger = logger;
+		this.delimiter = logger.getDelimiter();
+		this.nullString = logger.getNullString();
+		this.ring = new Record[capacity];
+		for (int i = 0; i < capacity; i++) {
+			ring[i] = new Record();
+		}
+
+		thread = new Thread(new Runnable() {
+			public void run() {
+				writeBatches();
+			}
+		}, "Difference writer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * put a difference onto the ring, waiting for a free slot if it is full
+	 *
+	 * @param key
+	 *            key of the row
+	 * @param columnName1
+	 *            name of the first column
+	 * @param value1
+	 *            value of the first column, written as "null" if null
+	 * @param columnName2
+	 *            name of the second column
+	 * @param value2
+	 *            value of the second column, written as "null" if null
+	 * @param percentageDiff
+	 *            percentage difference
+	 * @param absDiff
+	 *            absolute difference
+	 */
+	public void write(CompositeKey key, String columnName1, Object value1, String columnName2, Object value2,
+	        String percentageDiff, String absDiff) {
+		lock.lock();
+		try {
+			while (tail - head == ring.length && !closed) {
+				notFull.awaitUninterruptibly();
+			}
+			if (closed) {
+				throw new IllegalStateException("The difference writer has been closed");
+			}
+			ring[(int) (tail % ring.length)].set(key, columnName1, value1, columnName2, value2, percentageDiff,
+			        absDiff);
+			tail++;
+			notEmpty.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * wait until every difference written so far has been handed to the logger
+	 *
+	 * @throws IOException
+	 *             if the logger failed
+	 */
+	public void drain() throws IOException {
+		lock.lock();
+		try {
+			long target = tail;
+			while (written < target && thread.isAlive()) {
+				flushed.awaitUninterruptibly();
+			}
+			if (failure != null) {
+				throw failure;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * drain the ring and stop the writer thread. The logger itself is left open.
+	 *
+	 * @throws IOException
+	 *             if the logger failed
+	 */
+	public void close() throws IOException {
+		lock.lock();
+		try {
+			closed = true;
+			notEmpty.signal();
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+
+		boolean interrupted = false;
+		while (thread.isAlive()) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+
+		lock.lock();
+		try {
+			if (failure != null) {
+				throw failure;
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * the writer thread: take every filled slot of the ring, encode them, and hand the block to the logger once it is
+	 * big enough or the ring has been emptied
+	 */
+	private void writeBatches() {
+		while (true) {
+			long from;
+			long to;
+			boolean discard;
+
+			lock.lock();
+			try {
+				while (head == tail && !closed) {
+					notEmpty.awaitUninterruptibly();
+				}
+				if (head == tail) {
+					return;
+				}
+				from = head;
+				to = tail;
+				discard = failure != null;
+			} finally {
+				lock.unlock();
+			}
+
+			// the slots from head to tail are only ever touched by this thread until head moves past them
+			for (long i = from; i < to; i++) {
+				Record record = ring[(int) (i % ring.length)];
+				if (!discard) {
+					encode(record);
+				}
+				record.clear();
+			}
+
+			boolean empty;
+			lock.lock();
+			try {
+				head = to;
+				empty = head == tail;
+				notFull.signalAll();
+			} finally {
+				lock.unlock();
+			}
+
+			if (empty || block.length() >= FLUSH_SIZE) {
+				IOException flushFailure = flush();
+
+				lock.lock();
+				try {
+					if (flushFailure != null && failure == null) {
+						failure = flushFailure;
+					}
+					written = to;
+					flushed.signalAll();
+				} finally {
+					lock.unlock();
+				}
+			}
+		}
+	}
+
+	private void encode(Record record) {
+		for (String keyColumn : record.key.toStrings()) {
+			appendField(keyColumn);
+		}
+		appendField(record.columnName1);
+		appendField(record.value1 == null ? "null" : record.value1.toString());
+		appendField(record.columnName2);
+		appendField(record.value2 == null ? "null" : record.value2.toString());
+		appendField(record.percentageDiff);
+		block.append(isNullOrEmpty(record.absDiff) ? nullString : record.absDiff).append(LINE_SEPARATOR);
+	}
+
+	private void appendField(String value) {
+		block.append(isNullOrEmpty(value) ? nullString : value).append(delimiter);
+	}
+
+	/**
+	 * @return the failure handing the block to the logger, if any
+	 */
+	private IOException flush() {
+		int length = block.length();
+		if (length == 0) {
+			return null;
+		}
+		if (chars.length < length) {
+			chars = new char[length];
+		}
+		block.getChars(0, length, chars, 0);
+		block.setLength(0);
+		try {
+			logger.write(chars, 0, length);
+			return null;
+		} catch (IOException e) {
+			return e;
+		}
+	}
+
+	/**
+	 * a reusable slot of the ring
+	 */
+	private static final class Record {
+
+		private CompositeKey key;
+
+		private String columnName1;
+
+		private Object value1;
+
+		private String columnName2;
+
+		private Object value2;
+
+		private String percentageDiff;
+
+		private String absDiff;
+
+		void set(CompositeKey key, String columnName1, Object value1, String columnName2, Object value2,
+		        String percentageDiff, String absDiff) {
+			this.key = key;
+			this.columnName1 = columnName1;
+			this.value1 = value1;
+			this.columnName2 = columnName2;
+			this.value2 = value2;
+			this.percentageDiff = percentageDiff;
+			this.absDiff = absDiff;
+		}
+
+		void clear() {
+			set(null, null, null, null, null, null, null);
+		}
+	}
+}
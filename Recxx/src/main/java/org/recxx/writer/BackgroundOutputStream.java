@@ -0,0 +1,207 @@
+package org.recxx.writer;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * <p>
+ * An OutputStream which hands what is written to it, in blocks, to a thread of its own which writes them to the
+ * underlying stream. With a compressing stream underneath, such as a GZIPOutputStream, the compression is taken off the
+ * writing thread altogether. The blocks are recycled, and no more than a fixed number are ever waiting for the
+ * background thread: once they all are, the writing thread waits for it to catch up.
+ * </p>
+ *
+ * <p>
+ * Flushing hands the current block over without waiting for it to be written. Closing waits for every block to be
+ * written and then closes the underlying stream on the background thread. If the underlying stream fails, the rest of
+ * the blocks are discarded, and the failure is thrown by the next write, flush or close.
+ * </p>
+ */
+public class BackgroundOutputStream extends OutputStream {
+
+	public static final int DEFAULT_BLOCK_SIZE = 256 * 1024;
+
+	public static final int DEFAULT_BLOCKS = 4;
+
+	private static final Block END = new Block(0);
+
+	private final OutputStream out;
+
+	private final BlockingQueue<Block> written;
+
+	private final BlockingQueue<Block> free;
+
+	private final Thread thread;
+
+	private Block current;
+
+	private volatile IOException failure;
+
+	private boolean closed;
+
+	public BackgroundOutputStream(OutputStream out, String name) {
+		this(out, name, DEFAULT_BLOCK_SIZE, DEFAULT_BLOCKS);
+	}
+
+	/**
+	 * start the background thread
+	 *
+	 * @param out
+	 *            stream to write to on the background thread
+	 * @param name
+	 *            name of the background thread
+	 * @param blockSize
+	 *            bytes in each block
+	 * @param blocks
+	 *            number of blocks which may be waiting for the background thread
+	 */
+	public BackgroundOutputStream(OutputStream out, String name, int blockSize, int blocks) {
+		this.out = out;
+		this.written = new ArrayBlockingQueue<Block>(blocks + 1);
+		this.free = new ArrayBlockingQueue<Block>(blocks + 1);
+		for (int i = 0; i < blocks; i++) {
+			free.add(new Block(blockSize));
+		}
+		this.current = new Block(blockSize);
+
+		thread = new Thread(new Runnable() {
+			public void run() {
+				writeBlocks();
+			}
+		}, name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		ensureOpen();
+		if (current.length == current.bytes.length) {
+			handOver();
+		}
+		current.bytes[current.length++] = (byte) b;
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) throws IOException {
+		ensureOpen();
+		while (length > 0) {
+			if (current.length == current.bytes.length) {
+				handOver();
+			}
+			int count = Math.min(length, current.bytes.length - current.length);
+			System.arraycopy(bytes, offset, current.bytes, current.length, count);
+			current.length += count;
+			offset += count;
+			length -= count;
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		ensureOpen();
+		if (current.length > 0) {
+			handOver();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			if (current.length > 0) {
+				put(current);
+			}
+			put(END);
+
+			while (thread.isAlive()) {
+				thread.join();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for " + thread.getName());
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * hand the current block to the background thread, and take a free one to carry on with
+	 */
+	private void handOver() throws IOException {
+		try {
+			put(current);
+			current = free.take();
+			current.length = 0;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting for " + thread.getName());
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private void put(Block block) throws InterruptedException {
+		written.put(block);
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	/**
+	 * the background thread: write each block handed over, until the end, then close the stream
+	 */
+	private void writeBlocks() {
+		try {
+			while (true) {
+				Block block = written.take();
+				if (block == END) {
+					break;
+				}
+				if (failure == null) {
+					try {
+						out.write(block.bytes, 0, block.length);
+					} catch (IOException e) {
+						failure = e;
+					}
+				}
+				free.add(block);
+			}
+		} catch (InterruptedException e) {
+			failure = new InterruptedIOException("Interrupted writing in the background");
+		}
+
+		try {
+			out.close();
+		} catch (IOException e) {
+			if (failure == null) {
+				failure = e;
+			}
+		}
+	}
+
+	private static final class Block {
+
+		private final byte[] bytes;
+
+		private int length;
+
+		Block(int size) {
+			this.bytes = new byte[size];
+		}
+	}
+}
@@ -10,6 +10,8 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.logging.Logger;
 
+import org.recxx.metrics.EventBatch;
+
 /**
  * <p>
  * Generic class to enable logging of values to a csv file.
@@ -74,6 +76,12 @@ import java.util.logging.Logger;
  * <pre>
  * foo.close();
  * </pre>
+ * 
+ * <p>
+ * While a flight recording is open, a {@link org.recxx.metrics.FlushEvent} is raised for each block of lines written
+ * with {@link #write(char[], int, int)}, and for the closing of the file, which flushes whatever the writer still
+ * holds.
+ * </p>
  */
 public class CSVLogger {
 
@@ -150,7 +158,12 @@ public class CSVLogger {
 	}
 
 	public void close() throws IOException {
+		EventBatch event = EventBatch.begin(EventBatch.Kind.FLUSH);
 		bufferedWriterManager.close();
+		if (event.isRecorded()) {
+			event.source = filename;
+			event.commit();
+		}
 	}
 
 	public void write(double value) throws IOException {
@@ -172,6 +185,33 @@ public class CSVLogger {
 		writer.write(string + delimiter);
 	}
 
+	/**
+	 * Writes a block of lines which have already been delimited, such as a batch of differences encoded by an
+	 * {@link AsyncDifferenceWriter}.
+	 * 
+	 * @param chars
+	 *            characters to write
+	 * @param offset
+	 *            offset of the first character
+	 * @param length
+	 *            number of characters to write
+	 * @throws java.io.IOException
+	 *             problem writing to the file
+	 */
+	public void write(char[] chars, int offset, int length) throws IOException {
+		EventBatch event = EventBatch.begin(EventBatch.Kind.FLUSH);
+		writer.write(chars, offset, length);
+		if (event.isRecorded()) {
+			event.source = filename;
+			event.bytes = length;
+			for (int i = offset; i < offset + length; i++) {
+				if (chars[i] == '\n')
+					event.rows++;
+			}
+			event.commit();
+		}
+	}
+
 	public void write(Date date) throws IOException {
 		String stringValue = "";
 		if (date != null) {
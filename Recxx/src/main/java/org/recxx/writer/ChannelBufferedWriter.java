@@ -0,0 +1,279 @@
+package org.recxx.writer;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * A BufferedWriter which encodes characters straight into a large direct {@link ByteBuffer} and writes it to a
+ * {@link FileChannel} whenever it fills, so a file is written in a few large writes with no intermediate buffers. In a
+ * charset which encodes ASCII as single bytes, as the platform charsets do, ASCII characters are put into the buffer
+ * as they are, and only runs of other characters go through the charset's encoder.
+ * </p>
+ *
+ * <p>
+ * It extends BufferedWriter only so that it can be handed out by a {@link BufferedWriterManager}. Every method which
+ * writes is overridden, and nothing is ever written to the writer BufferedWriter was created with. Like any
+ * BufferedWriter, it is safe to use from more than one thread.
+ * </p>
+ */
+public class ChannelBufferedWriter extends BufferedWriter {
+
+	public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+	/**
+	 * when the file's contents are forced to the storage device
+	 */
+	public enum Fsync {
+		/** never, leaving it to the operating system */
+		NEVER,
+		/** once, when the writer is closed */
+		ON_CLOSE,
+		/** every time the writer is flushed, and when it is closed */
+		ON_FLUSH
+	}
+
+	private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+	private static final String ASCII_SAMPLE = "\t\n\r !09:@AZ[`az{~";
+
+	private final FileOutputStream out;
+
+	private final FileChannel channel;
+
+	private final ByteBuffer buffer;
+
+	private final CharsetEncoder encoder;
+
+	private final boolean asciiCompatible;
+
+	private final Fsync fsync;
+
+	private char[] scratch = new char[256];
+
+	// a high surrogate left over from the end of the last write, waiting for its pair
+	private boolean hasPending;
+
+	private char pending;
+
+	private boolean closed;
+
+	/**
+	 * create the file, or truncate it if it exists, as a FileWriter would
+	 *
+	 * @param file
+	 *            file to write
+	 * @param bufferSize
+	 *            bytes held before they are written to the file
+	 * @param fsync
+	 *            when the file is forced to the storage device
+	 * @param charset
+	 *            charset to encode characters in
+	 * @throws IOException
+	 *             if the file can't be created
+	 */
+	public ChannelBufferedWriter(File file, int bufferSize, Fsync fsync, Charset charset) throws IOException {
+		super(new UnusedWriter(), 1);
+		if (bufferSize < 16) {
+			throw new IllegalArgumentException("The buffer must be at least 16 bytes, not " + bufferSize);
+		}
+		this.out = new FileOutputStream(file);
+		this.channel = out.getChannel();
+		this.buffer = ByteBuffer.allocateDirect(bufferSize);
+		this.fsync = fsync;
+		this.encoder =
+		        charset.newEncoder().onMalformedInput(CodingErrorAction.REPLACE)
+		                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+		this.asciiCompatible = Arrays.equals(ASCII_SAMPLE.getBytes(charset), ASCII_SAMPLE.getBytes("US-ASCII"));
+	}
+
+	@Override
+	public void write(int c) throws IOException {
+		synchronized (lock) {
+			ensureOpen();
+			if (c < 0x80 && asciiCompatible && !hasPending) {
+				if (!buffer.hasRemaining()) {
+					drain();
+				}
+				buffer.put((byte) c);
+			} else {
+				encode(CharBuffer.wrap(new char[] { (char) c }));
+			}
+		}
+	}
+
+	@Override
+	public void write(String string, int offset, int length) throws IOException {
+		synchronized (lock) {
+			if (scratch.length < length) {
+				scratch = new char[Math.max(length, scratch.length * 2)];
+			}
+			string.getChars(offset, offset + length, scratch, 0);
+			write(scratch, 0, length);
+		}
+	}
+
+	@Override
+	public void write(String string) throws IOException {
+		write(string, 0, string.length());
+	}
+
+	@Override
+	public void write(char[] chars, int offset, int length) throws IOException {
+		synchronized (lock) {
+			ensureOpen();
+			int end = offset + length;
+			int i = offset;
+
+			if (!asciiCompatible) {
+				encode(CharBuffer.wrap(chars, offset, length));
+				return;
+			}
+
+			while (i < end) {
+				if (!hasPending) {
+					// put as many ASCII characters as fit straight into the buffer
+					int limit = Math.min(end, i + buffer.remaining());
+					while (i < limit && chars[i] < 0x80) {
+						buffer.put((byte) chars[i++]);
+					}
+					if (i == end) {
+						return;
+					}
+					if (chars[i] < 0x80) {
+						// the buffer is full
+						drain();
+						continue;
+					}
+				}
+
+				// then encode the run of other characters
+				int runEnd = i + 1;
+				while (runEnd < end && chars[runEnd] >= 0x80) {
+					runEnd++;
+				}
+				encode(CharBuffer.wrap(chars, i, runEnd - i));
+				i = runEnd;
+			}
+		}
+	}
+
+	@Override
+	public void newLine() throws IOException {
+		write(LINE_SEPARATOR);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		synchronized (lock) {
+			ensureOpen();
+			drain();
+			if (fsync == Fsync.ON_FLUSH) {
+				channel.force(false);
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		synchronized (lock) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			try {
+				endEncoding();
+				drain();
+				if (fsync != Fsync.NEVER) {
+					channel.force(false);
+				}
+			} finally {
+				out.close();
+			}
+		}
+	}
+
+	/**
+	 * encode characters into the buffer, draining it whenever it fills. The encoder carries on from the last
+	 * characters encoded, as an OutputStreamWriter's does, so a byte order mark is only written once and a surrogate
+	 * pair split between two writes is still encoded as one character.
+	 */
+	private void encode(CharBuffer chars) throws IOException {
+		CharBuffer input = chars;
+		if (hasPending) {
+			input = CharBuffer.allocate(chars.remaining() + 1);
+			input.put(pending).put(chars);
+			((Buffer) input).flip();
+			hasPending = false;
+		}
+		while (encoder.encode(input, buffer, false).isOverflow()) {
+			drain();
+		}
+		if (input.hasRemaining()) {
+			pending = input.get();
+			hasPending = true;
+		}
+	}
+
+	/**
+	 * encode any character left over, and whatever the encoder still holds
+	 */
+	private void endEncoding() throws IOException {
+		CharBuffer input = CharBuffer.wrap(hasPending ? new char[] { pending } : new char[0]);
+		hasPending = false;
+		while (encoder.encode(input, buffer, true).isOverflow()) {
+			drain();
+		}
+		while (encoder.flush(buffer).isOverflow()) {
+			drain();
+		}
+	}
+
+	/**
+	 * write the buffer to the channel and empty it
+	 */
+	private void drain() throws IOException {
+		// flipped and cleared as a Buffer, whose methods link on any runtime whichever JDK compiled the class
+		((Buffer) buffer).flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		((Buffer) buffer).clear();
+	}
+
+	private void ensureOpen() throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+	}
+
+	/**
+	 * the writer BufferedWriter is created with, which is never written to
+	 */
+	private static final class UnusedWriter extends Writer {
+
+		@Override
+		public void write(char[] chars, int offset, int length) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+}
@@ -0,0 +1,47 @@
+package org.recxx.writer;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.recxx.utils.CloseableUtils;
+
+/**
+ * A BufferedWriterManager which opens a {@link ChannelBufferedWriter} on the file, encoding in the platform charset as
+ * a FileWriter does, rather than a BufferedWriter over a FileWriter.
+ */
+public class ChannelWriterManager extends BufferedWriterManager {
+
+	private final CloseableUtils closeableUtils;
+
+	private final int bufferSize;
+
+	private final ChannelBufferedWriter.Fsync fsync;
+
+	private ChannelBufferedWriter channelWriter;
+
+	public ChannelWriterManager(CloseableUtils closeableUtils, int bufferSize, ChannelBufferedWriter.Fsync fsync) {
+		super(closeableUtils);
+		this.closeableUtils = closeableUtils;
+		this.bufferSize = bufferSize;
+		this.fsync = fsync;
+	}
+
+	@Override
+	public BufferedWriter open(File file) throws IOException {
+		channelWriter = new ChannelBufferedWriter(file, bufferSize, fsync, Charset.defaultCharset());
+		return channelWriter;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (channelWriter == null) {
+			return;
+		}
+		IOException exception = closeableUtils.tryToClose(channelWriter);
+		if (exception != null) {
+			throw exception;
+		}
+	}
+}
@@ -0,0 +1,60 @@
+package org.recxx.writer;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+
+import org.recxx.utils.CloseableUtils;
+
+/**
+ * A BufferedWriterManager which compresses the file as it is written, encoding in the platform charset as a FileWriter
+ * does. The compression runs on a {@link BackgroundOutputStream}'s thread, so the writing thread only encodes
+ * characters and copies bytes.
+ */
+public class CompressedWriterManager extends BufferedWriterManager {
+
+	private static final int CHAR_BUFFER_SIZE = 64 * 1024;
+
+	private final CloseableUtils closeableUtils;
+
+	private final Compression compression;
+
+	private BufferedWriter bufferedWriter;
+
+	public CompressedWriterManager(CloseableUtils closeableUtils, Compression compression) {
+		super(closeableUtils);
+		this.closeableUtils = closeableUtils;
+		this.compression = compression;
+	}
+
+	@Override
+	public BufferedWriter open(File file) throws IOException {
+		FileOutputStream fileOut = new FileOutputStream(file);
+		OutputStream compressed;
+		try {
+			compressed = compression.wrap(fileOut);
+		} catch (IOException e) {
+			closeableUtils.tryToClose(fileOut);
+			throw e;
+		}
+		OutputStream background = new BackgroundOutputStream(compressed, "Compressing " + file.getName());
+		bufferedWriter =
+		        new BufferedWriter(new OutputStreamWriter(background, Charset.defaultCharset()), CHAR_BUFFER_SIZE);
+		return bufferedWriter;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (bufferedWriter == null) {
+			return;
+		}
+		IOException exception = closeableUtils.tryToClose(bufferedWriter);
+		if (exception != null) {
+			throw exception;
+		}
+	}
+}
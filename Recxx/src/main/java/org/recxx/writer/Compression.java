@@ -0,0 +1,48 @@
+package org.recxx.writer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * how a file is compressed as it is written
+ */
+public enum Compression {
+
+	/** not at all */
+	NONE {
+		@Override
+		public OutputStream wrap(OutputStream out) {
+			return out;
+		}
+	},
+
+	/** in the gzip format, as gzip would */
+	GZIP {
+		@Override
+		public OutputStream wrap(OutputStream out) throws IOException {
+			return new GZIPOutputStream(out, 64 * 1024);
+		}
+	};
+
+	/**
+	 * @param out
+	 *            stream the compressed bytes are written to
+	 * @return a stream which compresses what is written to it into out, and finishes the compression when closed
+	 * @throws IOException
+	 *             if a header can't be written
+	 */
+	public abstract OutputStream wrap(OutputStream out) throws IOException;
+
+	/**
+	 * @param filename
+	 *            name of the file
+	 * @return the compression the file's extension calls for, NONE unless it ends in .gz
+	 */
+	public static Compression forFile(String filename) {
+		if (filename != null && filename.toLowerCase().endsWith(".gz")) {
+			return GZIP;
+		}
+		return NONE;
+	}
+}
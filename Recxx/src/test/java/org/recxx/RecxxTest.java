@@ -0,0 +1,127 @@
+package org.recxx;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RecxxTest {
+
+	private static final String DATA = "Book,Id,Price\n" + "A,1,1.5\n" + "B,2,2.5\n";
+
+	private File directory;
+
+	private File dataFile;
+
+	@Before
+	public void setUp() throws Exception {
+		directory = File.createTempFile("recxxTest", "");
+		directory.delete();
+		directory.mkdirs();
+		dataFile = givenFileContaining("data.csv", DATA);
+	}
+
+	@After
+	public void tearDown() {
+		for (File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	private File givenFileContaining(String name, String contents) throws IOException {
+		File file = new File(directory, name);
+		FileWriter writer = new FileWriter(file);
+		try {
+			writer.write(contents);
+		} finally {
+			writer.close();
+		}
+		return file;
+	}
+
+	private File givenSourcesOf(String filePath1, String filePath2, String aggregate2) throws IOException {
+		StringBuilder properties = new StringBuilder();
+		properties.append("props.rec.logger.csv.file=").append(new File(directory, "breaks.csv").getPath()).append('\n');
+		properties.append("props.rec.metrics.file=").append(new File(directory, "metrics.json").getPath()).append('\n');
+		String[][] sources = { { "one", filePath1, "false" }, { "two", filePath2, aggregate2 } };
+		for (int i = 0; i < sources.length; i++) {
+			String stub = "props.rec.inputSource" + (i + 1) + ".";
+			properties.append(stub).append("name.alias=").append(sources[i][0]).append('\n');
+			properties.append(stub).append("name.type=File\n");
+			properties.append(stub).append("file.filePath=").append(sources[i][1]).append('\n');
+			properties.append(stub).append("file.columnDataTypes=java.lang.String java.lang.Integer java.lang.Double\n");
+			properties.append(stub).append("file.key=Book Id\n");
+			properties.append(stub).append("file.columnsToCompare=Price\n");
+			properties.append(stub).append("file.aggregate=").append(sources[i][2]).append('\n');
+		}
+		// backslashes in a Windows path would be read as escapes
+		return givenFileContaining("rec.properties", properties.toString().replace('\\', '/'));
+	}
+
+	private static Object loadedData(Recxx rec, String order) {
+		return ((HashMap) rec.m_dataToCompare.get(order)).get(Recxx.DATA);
+	}
+
+	private static Recxx run(File properties) {
+		Recxx rec = new Recxx(new String[] { "props", properties.getPath() });
+		rec.run();
+		return rec;
+	}
+
+	@Test
+	public void sourcesWithTheSameInputShouldShareOneLoad() throws Exception {
+		Recxx rec = run(givenSourcesOf(dataFile.getPath(), dataFile.getPath(), "false"));
+		assertThat(loadedData(rec, "2"), is(sameInstance(loadedData(rec, "1"))));
+	}
+
+	@Test
+	public void anotherPathToTheSameFileShouldShareTheLoad() throws Exception {
+		String path = directory.getPath() + File.separator + "." + File.separator + dataFile.getName();
+		Recxx rec = run(givenSourcesOf(dataFile.getPath(), path, "false"));
+		assertThat(loadedData(rec, "2"), is(sameInstance(loadedData(rec, "1"))));
+	}
+
+	@Test
+	public void sourcesWithDifferentPropertiesShouldBeLoadedSeparately() throws Exception {
+		Recxx rec = run(givenSourcesOf(dataFile.getPath(), dataFile.getPath(), "true"));
+		assertThat(loadedData(rec, "2"), is(not(sameInstance(loadedData(rec, "1")))));
+	}
+
+	@Test
+	public void differentFilesShouldBeLoadedSeparately() throws Exception {
+		File copy = givenFileContaining("copy.csv", DATA);
+		Recxx rec = run(givenSourcesOf(dataFile.getPath(), copy.getPath(), "false"));
+		assertThat(loadedData(rec, "2"), is(not(sameInstance(loadedData(rec, "1")))));
+	}
+
+	@Test
+	public void everyPropertyButTheAliasAndOrderShouldTellInputsApart() throws Exception {
+		Properties source = new Properties();
+		for (String name : new String[] { "type", "filePath", "delimiter", "columnDataTypes", "key",
+		        "columnsToCompare", "aggregate", "reader", "parallelism", "snapshotDirectory", "sql", "url" }) {
+			source.setProperty(name, name.equals("filePath") ? dataFile.getPath() : "value");
+		}
+		source.setProperty("alias", "one");
+		source.setProperty("order", "1");
+		String input = Recxx.describeInput(source);
+
+		for (String name : source.stringPropertyNames()) {
+			Properties changed = new Properties();
+			changed.putAll(source);
+			changed.setProperty(name, name.equals("filePath") ? new File(directory, "other.csv").getPath() : "other");
+			boolean sameInput = name.equals("alias") || name.equals("order");
+			assertThat(name, Recxx.describeInput(changed).equals(input), is(sameInput));
+		}
+	}
+}
@@ -0,0 +1,218 @@
+package org.recxx.compare;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.recxx.data.ColumnType;
+import org.recxx.data.CompositeKey;
+import org.recxx.data.Dataset;
+import org.recxx.data.RowBuffer;
+
+public class ComparisonPlanTest {
+
+	private static final String[] COLUMNS = { "Id", "Price", "Quantity", "Book", "Date", "Notional", "Flag", "Other" };
+
+	private static final ColumnType[] TYPES = { ColumnType.STRING, ColumnType.DOUBLE, ColumnType.INTEGER,
+	        ColumnType.STRING, ColumnType.DATE, ColumnType.DECIMAL, ColumnType.BOOLEAN, ColumnType.OBJECT };
+
+	private static final int[] COMPARE_COLUMNS = { 1, 2, 3, 4, 5, 6, 7 };
+
+	private final List<String> differences = new ArrayList<String>();
+
+	private final DifferenceListener listener = new DifferenceListener() {
+		public void difference(CompositeKey key, String columnName1, Object value1, String columnName2,
+		        Object value2, String percentageDiff, String absDiff) {
+			differences.add(columnName1 + ":" + value1 + ":" + value2 + ":" + percentageDiff + ":" + absDiff);
+		}
+
+		public void missing(CompositeKey key, boolean inFirst, String columnName, Object value) {
+			differences.add(columnName + ":missing");
+		}
+	};
+
+	private Dataset data1;
+
+	private Dataset data2;
+
+	private CompositeKey key;
+
+	@Before
+	public void setUp() {
+		data1 = new Dataset(COLUMNS, TYPES, new int[] { 0 });
+		data2 = new Dataset(COLUMNS, TYPES, new int[] { 0 });
+		key = new CompositeKey.Builder().addString("A").build();
+	}
+
+	private int givenRow(Dataset data, Object... values) {
+		RowBuffer row = data.newRowBuffer();
+		row.setObject(0, "A");
+		for (int i = 0; i < values.length; i++) {
+			row.set(i + 1, values[i]);
+		}
+		return data.add(key, row);
+	}
+
+	private ComparisonPlan givenPlan(float tolerance) {
+		return new ComparisonPlan(data1, COMPARE_COLUMNS, data2, COMPARE_COLUMNS, tolerance, 0.0001f);
+	}
+
+	@Test
+	public void shouldChooseAComparatorForEachPairOfColumnTypes() {
+		ComparisonPlan plan = givenPlan(0f);
+		assertThat(plan.size(), is(7));
+		assertThat(plan.getComparator(0), instanceOf(ColumnComparators.DoubleComparator.class));
+		assertThat(plan.getComparator(1), instanceOf(ColumnComparators.IntComparator.class));
+		assertThat(plan.getComparator(2), instanceOf(ColumnComparators.StringComparator.class));
+		assertThat(plan.getComparator(3), instanceOf(ColumnComparators.DateComparator.class));
+		assertThat(plan.getComparator(4), instanceOf(ColumnComparators.DecimalComparator.class));
+		assertThat(plan.getComparator(5), instanceOf(ColumnComparators.EqualsComparator.class));
+		assertThat(plan.getComparator(6), instanceOf(ColumnComparators.GenericComparator.class));
+	}
+
+	@Test
+	public void shouldMatchIdenticalRows() {
+		int row1 = givenRow(data1, 1.5, 10, "X", new Date(5), new BigDecimal("2.5"), true, "o");
+		int row2 = givenRow(data2, 1.5, 10, "X", new Date(5), new BigDecimal("2.5"), true, "o");
+		assertThat(givenPlan(0f).compare(row1, row2, key, listener), is(ColumnComparator.MATCHED));
+		assertThat(differences.isEmpty(), is(true));
+	}
+
+	@Test
+	public void shouldLogEveryColumnThatDiffers() {
+		int row1 = givenRow(data1, 100d, 10, "X", new Date(5), new BigDecimal("100"), true, "o");
+		int row2 = givenRow(data2, 110d, 20, "Y", new Date(6), new BigDecimal("90"), false, "p");
+		assertThat(givenPlan(0f).compare(row1, row2, key, listener), is(ColumnComparator.DIFFERENT));
+		assertThat(differences.size(), is(7));
+		assertThat(differences.get(0), is("Price:100.0:110.0:10.0:10.0"));
+		assertThat(differences.get(1), is("Quantity:10:20:100:10"));
+		assertThat(differences.get(4), is("Notional:100:90:10.000000:10"));
+	}
+
+	@Test
+	public void shouldIgnoreDifferencesWithinTolerance() {
+		int row1 = givenRow(data1, 100d, 10, "X", null, null, null, null);
+		int row2 = givenRow(data2, 100.5d, 10, "X", null, null, null, null);
+		assertThat(givenPlan(1f).compare(row1, row2, key, listener), is(ColumnComparator.MATCHED));
+	}
+
+	@Test
+	public void shouldTreatANullAgainstAValueAsADifference() {
+		int row1 = givenRow(data1, null, 10, null, null, null, null, null);
+		int row2 = givenRow(data2, 1d, 10, "X", null, null, null, null);
+		assertThat(givenPlan(0f).compare(row1, row2, key, listener), is(ColumnComparator.DIFFERENT));
+		assertThat(differences.get(0), is("Price:null:1.0::"));
+		assertThat(differences.get(1), is("Book:null:X::"));
+	}
+
+	@Test
+	public void shouldFlagValuesOfDifferentTypesAsUnhandled() {
+		int row1 = givenRow(data1, 1d, 10, "X", null, null, null, "o");
+		int row2 = givenRow(data2, 1d, 10, "X", null, null, null, 5L);
+		assertThat(givenPlan(0f).compare(row1, row2, key, listener), is(ColumnComparator.UNHANDLED));
+	}
+
+	@Test
+	public void aDateWhichFailedToParseShouldOnlyMatchTheSameValue() {
+		int row1 = givenRow(data1, 1d, 10, "X", "31/13/2011", null, null, null);
+		int row2 = givenRow(data2, 1d, 10, "X", new Date(5), null, null, null);
+		assertThat(givenPlan(0f).compare(row1, row2, key, listener), is(ColumnComparator.UNHANDLED));
+
+		data2 = new Dataset(COLUMNS, TYPES, new int[] { 0 });
+		row2 = givenRow(data2, 1d, 10, "X", "31/13/2011", null, null, null);
+		assertThat(givenPlan(0f).compare(row1, row2, key, listener), is(ColumnComparator.MATCHED));
+	}
+
+	@Test
+	public void shouldCompareDecimalsWithDoubles() {
+		Dataset decimals = new Dataset(new String[] { "Id", "Price" }, new ColumnType[] { ColumnType.STRING,
+		        ColumnType.DECIMAL }, new int[] { 0 });
+		RowBuffer row = decimals.newRowBuffer();
+		row.set(1, new BigDecimal("100"));
+		int row1 = decimals.add(key, row);
+		int row2 = givenRow(data2, 90d, null, null, null, null, null, null);
+
+		ComparisonPlan plan = new ComparisonPlan(decimals, new int[] { 1 }, data2, new int[] { 1 }, 0f, 0.0001f);
+		assertThat(plan.getComparator(0), instanceOf(ColumnComparators.DecimalDoubleComparator.class));
+		assertThat(plan.compare(row1, row2, key, listener), is(ColumnComparator.DIFFERENT));
+		assertThat(differences.get(0), is("Price:100:90.0:10.0:10.0"));
+	}
+
+	@Test
+	public void fingerprintedRowsShouldGiveTheSameResultAsComparingEveryColumn() {
+		int[] compareColumns = { 1, 2, 3, 4, 5, 6 };
+		// two rows with the same key on each side
+		data1 = new Dataset(COLUMNS, TYPES, new int[] { 0 }, false);
+		data2 = new Dataset(COLUMNS, TYPES, new int[] { 0 }, false);
+		Date date = new Date(1314057600000L);
+		int same1 = givenRow(data1, 1.5d, 10, "X", date, new BigDecimal("2.50"), true, null);
+		int same2 = givenRow(data2, 1.5d, 10, "X", date, new BigDecimal("2.5"), true, null);
+		int different1 = givenRow(data1, 1.5d, 10, "X", date, new BigDecimal("2.5"), true, null);
+		int different2 = givenRow(data2, 1.5d, 20, "X", date, new BigDecimal("2.5"), true, null);
+		data1.fingerprint(compareColumns);
+		data2.fingerprint(compareColumns);
+
+		ComparisonPlan plan = new ComparisonPlan(data1, compareColumns, data2, compareColumns, 0f, 0.0001f);
+		assertThat(plan.isFingerprinted(), is(true));
+		assertThat(plan.compare(same1, same2, key, listener), is(ColumnComparator.MATCHED));
+		assertThat(plan.compare(different1, different2, key, listener), is(ColumnComparator.DIFFERENT));
+		assertThat(differences.size(), is(1));
+		assertThat(differences.get(0), is("Quantity:10:20:100:10"));
+	}
+
+	@Test
+	public void rowsShouldOnlyBeMatchedByFingerprintWhenEveryPairOfColumnsHasTheSameType() {
+		givenRow(data1, 1.5d, 10, "X", null, null, null, "o");
+		givenRow(data2, 1.5d, 10, "X", null, null, null, "o");
+		data1.fingerprint(COMPARE_COLUMNS);
+		assertThat(givenPlan(0f).isFingerprinted(), is(false));
+
+		// an OBJECT column might hold a Long on one side and an Integer on the other
+		data2.fingerprint(COMPARE_COLUMNS);
+		assertThat(givenPlan(0f).isFingerprinted(), is(false));
+
+		Dataset doubles = new Dataset(new String[] { "Id", "Price" }, new ColumnType[] { ColumnType.STRING,
+		        ColumnType.DOUBLE }, new int[] { 0 });
+		Dataset integers = new Dataset(new String[] { "Id", "Price" }, new ColumnType[] { ColumnType.STRING,
+		        ColumnType.INTEGER }, new int[] { 0 });
+		doubles.fingerprint(new int[] { 1 });
+		integers.fingerprint(new int[] { 1 });
+		assertThat(new ComparisonPlan(doubles, new int[] { 1 }, integers, new int[] { 1 }, 0f, 0.0001f)
+		        .isFingerprinted(), is(false));
+		assertThat(new ComparisonPlan(doubles, new int[] { 1 }, doubles, new int[] { 1 }, 0f, 0.0001f)
+		        .isFingerprinted(), is(true));
+	}
+
+	@Test
+	public void longColumnsShouldGiveTheSameResultWhetherFingerprintedOrNot() {
+		String[] columns = { "Id", "Count" };
+		ColumnType[] types = { ColumnType.STRING, ColumnType.LONG };
+		int[] compareColumns = { 1 };
+		Dataset longs1 = new Dataset(columns, types, new int[] { 0 });
+		Dataset longs2 = new Dataset(columns, types, new int[] { 0 });
+		RowBuffer row = longs1.newRowBuffer();
+		row.set(1, 5L);
+		int row1 = longs1.add(key, row);
+		row = longs2.newRowBuffer();
+		row.set(1, 5L);
+		int row2 = longs2.add(key, row);
+
+		ComparisonPlan plan = new ComparisonPlan(longs1, compareColumns, longs2, compareColumns, 0f, 0.0001f);
+		int expected = plan.compare(row1, row2, key, listener);
+		assertThat(expected, is(ColumnComparator.UNHANDLED));
+
+		// there is no comparator specialised for LONG columns, so their rows are never matched by fingerprint
+		longs1.fingerprint(compareColumns);
+		longs2.fingerprint(compareColumns);
+		plan = new ComparisonPlan(longs1, compareColumns, longs2, compareColumns, 0f, 0.0001f);
+		assertThat(plan.isFingerprinted(), is(false));
+		assertThat(plan.compare(row1, row2, key, listener), is(expected));
+	}
+}
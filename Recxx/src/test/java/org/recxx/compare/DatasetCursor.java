@@ -0,0 +1,59 @@
+package org.recxx.compare;
+
+import org.recxx.data.ColumnType;
+import org.recxx.data.CompositeKey;
+import org.recxx.data.Dataset;
+import org.recxx.data.RowBuffer;
+import org.recxx.data.RowCursor;
+
+/**
+ * a cursor over the rows of a data set, in the order they were added
+ */
+class DatasetCursor implements RowCursor {
+
+	private final Dataset data;
+
+	private final RowBuffer row;
+
+	private int current = -1;
+
+	DatasetCursor(Dataset data) {
+		this.data = data;
+		this.row = data.newRowBuffer();
+	}
+
+	public String[] getColumnNames() {
+		return data.getColumnNames();
+	}
+
+	public ColumnType[] getColumnTypes() {
+		ColumnType[] types = new ColumnType[data.getColumnCount()];
+		for (int i = 0; i < types.length; i++) {
+			types[i] = data.getType(i);
+		}
+		return types;
+	}
+
+	public int[] getKeyPositions() {
+		return data.getKeyPositions();
+	}
+
+	public boolean next() {
+		if (++current >= data.size()) {
+			return false;
+		}
+		data.copyTo(current, row);
+		return true;
+	}
+
+	public CompositeKey getKey() {
+		return data.getKey(current);
+	}
+
+	public RowBuffer getRow() {
+		return row;
+	}
+
+	public void close() {
+	}
+}
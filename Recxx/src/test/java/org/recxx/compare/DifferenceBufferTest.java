@@ -0,0 +1,61 @@
+package org.recxx.compare;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.recxx.data.CompositeKey;
+
+public class DifferenceBufferTest {
+
+	private static final int PARTITIONS = 4;
+
+	private static final int DIFFERENCES = 1000;
+
+	private static final int CAPACITY = 10;
+
+	@Test
+	public void partitionsShouldReportInOrderWithoutHoldingMoreThanTheirCapacity() throws Exception {
+		final RecordingListener listener = new RecordingListener();
+		final DifferenceBuffer.Turns turns = new DifferenceBuffer.Turns();
+		ExecutorService executor = Executors.newFixedThreadPool(PARTITIONS);
+		try {
+			List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+			// start the last partition first, so the others must wait for their turn
+			for (int p = PARTITIONS - 1; p >= 0; p--) {
+				final int partition = p;
+				results.add(executor.submit(new Callable<Integer>() {
+					public Integer call() throws Exception {
+						DifferenceBuffer buffer = new DifferenceBuffer(partition, CAPACITY, turns, listener);
+						CompositeKey.Builder builder = new CompositeKey.Builder();
+						int largest = 0;
+						for (int i = 0; i < DIFFERENCES; i++) {
+							buffer.missing(builder.reset().addLong(partition * DIFFERENCES + i).build(), true, "Price",
+							        i);
+							largest = Math.max(largest, buffer.size());
+						}
+						buffer.finish();
+						return largest;
+					}
+				}));
+			}
+			for (Future<Integer> result : results) {
+				assertThat(result.get() < CAPACITY, is(true));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		assertThat(listener.differences.size(), is(PARTITIONS * DIFFERENCES));
+		for (int i = 0; i < listener.differences.size(); i++) {
+			assertThat(listener.differences.get(i), is(i + " Price " + i % DIFFERENCES + " missing from second"));
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package org.recxx.compare;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.recxx.compare.ReconcilerFixture.COMPARE_COLUMNS;
+import static org.recxx.compare.ReconcilerFixture.addOverlappingRows;
+import static org.recxx.compare.ReconcilerFixture.addRow;
+import static org.recxx.compare.ReconcilerFixture.newData;
+import static org.recxx.compare.ReconcilerFixture.reconcileLoaded;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.recxx.data.ColumnType;
+import org.recxx.data.Dataset;
+
+public class GraceHashReconcilerTest {
+
+	private Dataset data1;
+
+	private Dataset data2;
+
+	@Before
+	public void setUp() {
+		data1 = newData(false);
+		data2 = newData(false);
+	}
+
+	private void givenOverlappingSources() {
+		// ids 0-17999 in the first source, 2000-19999 in the second, with every 7th price different
+		addOverlappingRows(data1, data2, 18000, 2000);
+	}
+
+	private GraceHashReconciler newReconciler(int[] compareColumns, boolean aggregate, boolean twoWay,
+	        long memoryBudget) {
+		GraceHashReconciler reconciler =
+		        new GraceHashReconciler(new DatasetCursor(data1), compareColumns, aggregate, new DatasetCursor(data2),
+		                compareColumns, aggregate, 0f, 0.0001f, twoWay);
+		reconciler.setMemoryBudget(memoryBudget);
+		reconciler.setPartitions(4);
+		return reconciler;
+	}
+
+	@Test
+	public void spilledSourcesShouldGiveTheSameResultAsLoadedSources() throws Exception {
+		givenOverlappingSources();
+
+		for (boolean twoWay : new boolean[] { true, false }) {
+			RecordingListener spilled = new RecordingListener();
+			// small enough to spill at the first check, and to split the partitions again
+			GraceHashReconciler reconciler = newReconciler(COMPARE_COLUMNS, false, twoWay, 64 * 1024);
+			ReconciliationCounts spilledCounts = reconciler.reconcile(spilled);
+
+			RecordingListener loaded = new RecordingListener();
+			ReconciliationCounts loadedCounts = reconcileLoaded(data1, data2, twoWay, loaded);
+
+			assertThat(reconciler.isSpilled(), is(true));
+			assertThat(spilledCounts.toString(), is(loadedCounts.toString()));
+			assertThat(reconciler.getRows1(), is(18000));
+			assertThat(reconciler.getRows2(), is(18000));
+			Collections.sort(spilled.differences);
+			Collections.sort(loaded.differences);
+			assertThat(spilled.differences, is(loaded.differences));
+		}
+	}
+
+	@Test
+	public void sourcesWithinTheBudgetShouldNotBeSpilled() throws Exception {
+		givenOverlappingSources();
+
+		GraceHashReconciler reconciler = newReconciler(COMPARE_COLUMNS, false, true, Long.MAX_VALUE);
+		ReconciliationCounts counts = reconciler.reconcile(new RecordingListener());
+
+		assertThat(reconciler.isSpilled(), is(false));
+		assertThat(counts.getMissingFromFirst(), is(2000));
+		assertThat(counts.getMissingFromSecond(), is(2000));
+	}
+
+	@Test
+	public void rowsWithTheSameKeyShouldBeAggregatedAcrossTheSpill() throws Exception {
+		// only numeric columns can be aggregated
+		String[] columns = { "Id", "Price" };
+		ColumnType[] types = { ColumnType.INTEGER, ColumnType.DOUBLE };
+		data1 = new Dataset(columns, types, new int[] { 0 }, false);
+		data2 = new Dataset(columns, types, new int[] { 0 }, false);
+		// the second half of each total comes long after the first, once the source has been spilled
+		for (int half = 0; half < 2; half++) {
+			for (int id = 0; id < 10000; id++) {
+				addRow(data1, id, id / 2.0, null);
+			}
+		}
+		for (int id = 0; id < 10000; id++) {
+			addRow(data2, id, id, null);
+		}
+
+		RecordingListener listener = new RecordingListener();
+		GraceHashReconciler reconciler = newReconciler(new int[] { 1 }, true, true, 64 * 1024);
+		ReconciliationCounts counts = reconciler.reconcile(listener);
+
+		assertThat(reconciler.isSpilled(), is(true));
+		assertThat(counts.getMatchedRows(), is(10000));
+		assertThat(listener.differences.size(), is(0));
+	}
+}
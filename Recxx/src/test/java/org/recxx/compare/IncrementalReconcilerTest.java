@@ -0,0 +1,164 @@
+package org.recxx.compare;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.recxx.compare.ReconcilerFixture.COMPARE_COLUMNS;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.recxx.data.CompositeKey;
+import org.recxx.data.Dataset;
+import org.recxx.data.RowBuffer;
+import org.recxx.data.SnapshotFile;
+
+public class IncrementalReconcilerTest {
+
+	private File stateFile;
+
+	// the counts of the last reconcileAndKeep
+	private ReconciliationCounts lastCounts;
+
+	@Before
+	public void setUp() throws Exception {
+		stateFile = File.createTempFile("recxx", ".state");
+		stateFile.delete();
+	}
+
+	@After
+	public void tearDown() {
+		stateFile.delete();
+	}
+
+	/**
+	 * ids 0-999 in the first source, 100-1099 in the second, with every 7th price different in the second unless it is
+	 * the fixed id, and the changed id's price different in the first
+	 */
+	private static Dataset newData(boolean second, int fixed, int changed, int removed) {
+		Dataset data = ReconcilerFixture.newData(true);
+		CompositeKey.Builder builder = new CompositeKey.Builder();
+		RowBuffer row = data.newRowBuffer();
+		for (int id = second ? 100 : 0; id < (second ? 1100 : 1000); id++) {
+			if (id == removed)
+				continue;
+			row.setLong(0, id);
+			row.setObject(2, "B" + id % 10);
+			if (second)
+				row.setDouble(1, id % 7 == 0 && id != fixed ? id + 1 : id);
+			else
+				row.setDouble(1, id == changed ? id + 0.5 : id);
+			data.add(builder.reset().addLong(id).build(), row);
+		}
+		return data;
+	}
+
+	@Test
+	public void aFirstRunShouldCompareEveryKeyAsAFullReconciliationWould() throws Exception {
+		for (boolean twoWay : new boolean[] { true, false }) {
+			Dataset data1 = newData(false, -1, -1, -1);
+			Dataset data2 = newData(true, -1, -1, -1);
+			ComparisonPlan plan = new ComparisonPlan(data1, COMPARE_COLUMNS, data2, COMPARE_COLUMNS, 0f, 0.0001f);
+
+			RecordingListener full = new RecordingListener();
+			ReconciliationCounts fullCounts =
+			        new Reconciler(data1, COMPARE_COLUMNS, data2, COMPARE_COLUMNS, plan, twoWay).reconcile(1, full);
+
+			RecordingListener incremental = new RecordingListener();
+			DeltaRecorder deltas = new DeltaRecorder();
+			IncrementalReconciler reconciler =
+			        new IncrementalReconciler(data1, COMPARE_COLUMNS, data2, COMPARE_COLUMNS, plan, twoWay);
+			ReconciliationCounts incrementalCounts =
+			        reconciler.reconcile(new ReconciliationState("tag"), new ReconciliationState("tag"), incremental,
+			                deltas);
+
+			assertThat(incrementalCounts.toString(), is(fullCounts.toString()));
+			Collections.sort(full.differences);
+			Collections.sort(incremental.differences);
+			assertThat(incremental.differences, is(full.differences));
+			assertThat(reconciler.getComparedKeys(), is(twoWay ? 1100 : 1000));
+			// the 128 different rows and the 100 rows missing from each side are all new breaks
+			assertThat(deltas.deltas.size(), is(twoWay ? 328 : 228));
+			assertThat(deltas.deltas.get(0), is("0 NEW"));
+		}
+	}
+
+	@Test
+	public void aLaterRunShouldOnlyCompareTheKeysWhichHaveChanged() throws Exception {
+		reconcileAndKeep(newData(false, -1, -1, -1), newData(true, -1, -1, -1), new RecordingListener(),
+		        new DeltaRecorder());
+
+		// 7 is fixed, 200 now differs, and 0, which was missing from the second source, has gone
+		RecordingListener listener = new RecordingListener();
+		DeltaRecorder deltas = new DeltaRecorder();
+		Dataset data1 = newData(false, -1, 200, 0);
+		Dataset data2 = newData(true, 7, -1, -1);
+		IncrementalReconciler reconciler = reconcileAndKeep(data1, data2, listener, deltas);
+
+		assertThat(reconciler.getComparedKeys(), is(1));
+		assertThat(reconciler.getUnchangedKeys(), is(1098));
+		assertThat(listener.differences, is(Arrays.asList("200 Price 200.5 200.0")));
+		assertThat(deltas.deltas.contains("200 NEW"), is(true));
+		assertThat(deltas.deltas.contains("0 RESOLVED"), is(true));
+		assertThat(deltas.deltas.contains("161 OPEN"), is(true));
+		// 7 was never in the second source, so it is still missing
+		assertThat(deltas.deltas.contains("7 OPEN"), is(true));
+
+		// the counts are the same as a full reconciliation's
+		ComparisonPlan plan = new ComparisonPlan(data1, COMPARE_COLUMNS, data2, COMPARE_COLUMNS, 0f, 0.0001f);
+		ReconciliationCounts fullCounts =
+		        new Reconciler(data1, COMPARE_COLUMNS, data2, COMPARE_COLUMNS, plan, true).reconcile(1,
+		                new RecordingListener());
+		assertThat(lastCounts.toString(), is(fullCounts.toString()));
+
+		// and with nothing changed nothing is compared, and every break is still open
+		deltas = new DeltaRecorder();
+		reconciler = reconcileAndKeep(data1, data2, listener = new RecordingListener(), deltas);
+		assertThat(reconciler.getComparedKeys(), is(0));
+		assertThat(listener.differences.isEmpty(), is(true));
+		for (String delta : deltas.deltas) {
+			assertThat(delta, delta.endsWith(" OPEN"), is(true));
+		}
+	}
+
+	@Test
+	public void aStateKeptForAnotherReconciliationShouldBeIgnored() throws Exception {
+		reconcileAndKeep(newData(false, -1, -1, -1), newData(true, -1, -1, -1), new RecordingListener(),
+		        new DeltaRecorder());
+
+		assertThat(ReconciliationState.read(stateFile, "tag").size(), is(1100));
+		assertThat(ReconciliationState.read(stateFile, "other tag").size(), is(0));
+	}
+
+	@Test
+	public void aSnapshotWithTheSameTagShouldNotBeReadAsAState() throws Exception {
+		new SnapshotFile(stateFile, "tag").write(newData(false, -1, -1, -1), 1000);
+
+		assertThat(ReconciliationState.read(stateFile, "tag").size(), is(0));
+	}
+
+	private IncrementalReconciler reconcileAndKeep(Dataset data1, Dataset data2, DifferenceListener listener,
+	        BreakDeltaListener deltas) throws Exception {
+		ComparisonPlan plan = new ComparisonPlan(data1, COMPARE_COLUMNS, data2, COMPARE_COLUMNS, 0f, 0.0001f);
+		IncrementalReconciler reconciler =
+		        new IncrementalReconciler(data1, COMPARE_COLUMNS, data2, COMPARE_COLUMNS, plan, true);
+		ReconciliationState state = new ReconciliationState("tag");
+		lastCounts = reconciler.reconcile(ReconciliationState.read(stateFile, "tag"), state, listener, deltas);
+		state.write(stateFile);
+		return reconciler;
+	}
+
+	private static class DeltaRecorder implements BreakDeltaListener {
+
+		final List<String> deltas = new ArrayList<String>();
+
+		public void delta(CompositeKey key, Delta delta) {
+			deltas.add(key + " " + delta);
+		}
+	}
+}
@@ -0,0 +1,93 @@
+package org.recxx.compare;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.recxx.compare.ReconcilerFixture.COMPARE_COLUMNS;
+import static org.recxx.compare.ReconcilerFixture.addRow;
+import static org.recxx.compare.ReconcilerFixture.newData;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.recxx.compare.KeyStatusListener.Status;
+import org.recxx.data.CompositeKey;
+import org.recxx.data.Dataset;
+
+public class MultiwayReconcilerTest {
+
+	private Dataset golden;
+
+	private Dataset second;
+
+	private Dataset third;
+
+	@Before
+	public void setUp() {
+		golden = newData(true);
+		second = newData(true);
+		third = newData(true);
+
+		// 1 agrees everywhere, 2 breaks in the second, 3 is missing from the third, 4 is only in the second and third
+		addRow(golden, 1, 10.0, "B1");
+		addRow(golden, 2, 20.0, "B1");
+		addRow(golden, 3, 30.0, "B2");
+		addRow(second, 1, 10.0, "B1");
+		addRow(second, 2, 21.0, "B1");
+		addRow(second, 3, 30.0, "B2");
+		addRow(second, 4, 40.0, "B2");
+		addRow(third, 4, 40.0, "B2");
+		addRow(third, 2, 20.0, "B1");
+		addRow(third, 1, 10.0, "B1");
+	}
+
+	@Test
+	public void shouldReportTheStatusOfEachSourceOnEachKeyTheyDontAllAgreeOn() {
+		final List<String> statuses = new ArrayList<String>();
+		KeyStatusListener statusListener = new KeyStatusListener() {
+			public void status(CompositeKey key, Status[] keyStatuses) {
+				statuses.add(key + " " + Arrays.toString(keyStatuses));
+			}
+		};
+
+		newReconciler(true).reconcile(newListeners(), statusListener);
+
+		assertThat(statuses, is(Arrays.asList("2 [PRESENT, BREAK, AGREE]", "3 [PRESENT, AGREE, MISSING]",
+		        "4 [MISSING, PRESENT, PRESENT]")));
+	}
+
+	@Test
+	public void eachPairShouldBeReconciledAsTwoSourcesWouldBe() throws Exception {
+		for (boolean twoWay : new boolean[] { true, false }) {
+			DifferenceListener[] listeners = newListeners();
+			ReconciliationCounts[] counts = newReconciler(twoWay).reconcile(listeners, new KeyStatusListener() {
+				public void status(CompositeKey key, Status[] keyStatuses) {
+				}
+			});
+
+			Dataset[] others = { second, third };
+			for (int i = 1; i <= 2; i++) {
+				RecordingListener pair = new RecordingListener();
+				ComparisonPlan plan =
+				        new ComparisonPlan(golden, COMPARE_COLUMNS, others[i - 1], COMPARE_COLUMNS, 0f, 0.0001f);
+				ReconciliationCounts pairCounts =
+				        new Reconciler(golden, COMPARE_COLUMNS, others[i - 1], COMPARE_COLUMNS, plan, twoWay)
+				                .reconcile(1, pair);
+
+				assertThat(counts[i].toString(), is(pairCounts.toString()));
+				assertThat(((RecordingListener) listeners[i]).differences, is(pair.differences));
+			}
+		}
+	}
+
+	private MultiwayReconciler newReconciler(boolean twoWay) {
+		return new MultiwayReconciler(new Dataset[] { golden, second, third }, new int[][] { COMPARE_COLUMNS,
+		        COMPARE_COLUMNS, COMPARE_COLUMNS }, 0f, 0.0001f, twoWay);
+	}
+
+	private static DifferenceListener[] newListeners() {
+		return new DifferenceListener[] { null, new RecordingListener(), new RecordingListener() };
+	}
+}
@@ -0,0 +1,146 @@
+package org.recxx.compare;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.recxx.compare.ReconcilerFixture.COMPARE_COLUMNS;
+import static org.recxx.compare.ReconcilerFixture.addOverlappingRows;
+import static org.recxx.compare.ReconcilerFixture.addRow;
+import static org.recxx.compare.ReconcilerFixture.newData;
+import static org.recxx.compare.ReconcilerFixture.reconcileLoaded;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.recxx.data.Dataset;
+import org.recxx.data.RowBuffer;
+
+public class PipelinedReconcilerTest {
+
+	private Dataset data1;
+
+	private Dataset data2;
+
+	@Before
+	public void setUp() {
+		data1 = newData(false);
+		data2 = newData(false);
+
+		// ids 0-17999 in the first source, 2000-19999 in the second, with every 7th price different
+		addOverlappingRows(data1, data2, 18000, 2000);
+	}
+
+	@Test
+	public void shouldGiveTheSameResultAsLoadedSourcesWhicheverIsStreamed() throws Exception {
+		for (boolean twoWay : new boolean[] { true, false }) {
+			for (boolean firstIsSlower : new boolean[] { true, false }) {
+				// the slower source is held back part way through until the other has been read to the end
+				CountDownLatch fasterFinished = new CountDownLatch(1);
+				DatasetCursor faster = new GatedCursor(firstIsSlower ? data2 : data1, null, fasterFinished);
+				DatasetCursor slower = new GatedCursor(firstIsSlower ? data1 : data2, fasterFinished, null);
+
+				RecordingListener pipelined = new RecordingListener();
+				PipelinedReconciler reconciler =
+				        new PipelinedReconciler(firstIsSlower ? slower : faster, COMPARE_COLUMNS, false,
+				                firstIsSlower ? faster : slower, COMPARE_COLUMNS, false, 0f, 0.0001f, twoWay);
+				ReconciliationCounts pipelinedCounts = reconciler.reconcile(pipelined);
+
+				RecordingListener loaded = new RecordingListener();
+				ReconciliationCounts loadedCounts = reconcileLoaded(data1, data2, twoWay, loaded);
+
+				assertThat(pipelinedCounts.toString(), is(loadedCounts.toString()));
+				assertThat(reconciler.getRows1(), is(18000));
+				assertThat(reconciler.getRows2(), is(18000));
+				Collections.sort(pipelined.differences);
+				Collections.sort(loaded.differences);
+				assertThat(pipelined.differences, is(loaded.differences));
+			}
+		}
+	}
+
+	@Test
+	public void aRepeatedKeyWithNoMatchShouldOnlyBeReportedOnce() throws Exception {
+		// 0, loaded before the switch, and 100000, streamed after it, have no match in the second source
+		Dataset repeated = newData(false);
+		RowBuffer row = repeated.newRowBuffer();
+		for (int i = 0; i < data1.size(); i++) {
+			data1.copyTo(i, row);
+			repeated.add(data1.getKey(i), row);
+		}
+		addRow(repeated, 0, 5, "X");
+		addRow(repeated, 100000, 1, "B0");
+		addRow(repeated, 100000, 2, "B0");
+
+		CountDownLatch fasterFinished = new CountDownLatch(1);
+		RecordingListener pipelined = new RecordingListener();
+		PipelinedReconciler reconciler =
+		        new PipelinedReconciler(new GatedCursor(repeated, fasterFinished, null), COMPARE_COLUMNS, false,
+		                new GatedCursor(data2, null, fasterFinished), COMPARE_COLUMNS, false, 0f, 0.0001f, true);
+		ReconciliationCounts pipelinedCounts = reconciler.reconcile(pipelined);
+
+		// as loaded, the first of each key is kept
+		addRow(data1, 100000, 1, "B0");
+		RecordingListener loaded = new RecordingListener();
+		ReconciliationCounts loadedCounts = reconcileLoaded(data1, data2, true, loaded);
+
+		assertThat(pipelinedCounts.toString(), is(loadedCounts.toString()));
+		assertThat(reconciler.getRows1(), is(18001));
+		Collections.sort(pipelined.differences);
+		Collections.sort(loaded.differences);
+		assertThat(pipelined.differences, is(loaded.differences));
+	}
+
+	@Test(timeout = 10000)
+	public void aFailedSourceShouldFailTheReconciliationWithoutWaitingForTheOther() throws Exception {
+		// the second source would wait for ever for the first to finish
+		DatasetCursor failing = new DatasetCursor(data1) {
+			public boolean next() {
+				throw new IllegalStateException("connection lost");
+			}
+		};
+		DatasetCursor waiting = new GatedCursor(data2, new CountDownLatch(1), null);
+
+		try {
+			new PipelinedReconciler(failing, COMPARE_COLUMNS, false, waiting, COMPARE_COLUMNS, false, 0f, 0.0001f,
+			        true).reconcile(new RecordingListener());
+			throw new AssertionError("expected the reconciliation to fail");
+		} catch (ExecutionException e) {
+			assertThat(e.getCause().getMessage(), is("connection lost"));
+		}
+	}
+
+	/**
+	 * a cursor which waits for a latch before its 5000th row, and counts down another once it has been read to the end
+	 */
+	private static class GatedCursor extends DatasetCursor {
+
+		private final CountDownLatch waitFor;
+
+		private final CountDownLatch finished;
+
+		private int rows;
+
+		GatedCursor(Dataset data, CountDownLatch waitFor, CountDownLatch finished) {
+			super(data);
+			this.waitFor = waitFor;
+			this.finished = finished;
+		}
+
+		public boolean next() {
+			if (++rows == 5000 && waitFor != null) {
+				try {
+					waitFor.await();
+				} catch (InterruptedException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+			boolean next = super.next();
+			if (!next && finished != null) {
+				finished.countDown();
+			}
+			return next;
+		}
+	}
+}
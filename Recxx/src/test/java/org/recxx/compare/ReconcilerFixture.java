@@ -0,0 +1,87 @@
+package org.recxx.compare;
+
+import org.recxx.data.ColumnType;
+import org.recxx.data.CompositeKey;
+import org.recxx.data.Dataset;
+import org.recxx.data.RowBuffer;
+
+/**
+ * the data sets the reconciler tests share: an Id key, a Price and a Book, with the Price and Book compared
+ */
+final class ReconcilerFixture {
+
+	static final String[] COLUMNS = { "Id", "Price", "Book" };
+
+	static final ColumnType[] TYPES = { ColumnType.INTEGER, ColumnType.DOUBLE, ColumnType.STRING };
+
+	static final int[] COMPARE_COLUMNS = { 1, 2 };
+
+	private ReconcilerFixture() {
+	}
+
+	/**
+	 * @param indexed
+	 *            index the rows by key?
+	 * @return an empty data set keyed by Id
+	 */
+	static Dataset newData(boolean indexed) {
+		return new Dataset(COLUMNS, TYPES, new int[] { 0 }, indexed);
+	}
+
+	/**
+	 * add a row keyed by its id, leaving out the book if it is null
+	 */
+	static void addRow(Dataset data, int id, double price, String book) {
+		RowBuffer row = data.newRowBuffer();
+		row.setLong(0, id);
+		row.setDouble(1, price);
+		if (book != null) {
+			row.setObject(2, book);
+		}
+		data.add(new CompositeKey.Builder().addLong(id).build(), row);
+	}
+
+	/**
+	 * ids 0 to rows - 1 in the first source and offset to offset + rows - 1 in the second, with every 7th price
+	 * different in the second
+	 */
+	static void addOverlappingRows(Dataset data1, Dataset data2, int rows, int offset) {
+		for (int id = 0; id < rows + offset; id++) {
+			if (id < rows) {
+				addRow(data1, id, id, "B" + id % 10);
+			}
+			if (id >= offset) {
+				addRow(data2, id, id % 7 == 0 ? id + 1 : id, "B" + id % 10);
+			}
+		}
+	}
+
+	/**
+	 * @return an indexed copy of a data set, as a loaded source would be
+	 */
+	static Dataset index(Dataset data) {
+		ColumnType[] types = new ColumnType[data.getColumnCount()];
+		for (int i = 0; i < types.length; i++) {
+			types[i] = data.getType(i);
+		}
+		Dataset indexed = new Dataset(data.getColumnNames(), types, data.getKeyPositions());
+		RowBuffer row = indexed.newRowBuffer();
+		for (int i = 0; i < data.size(); i++) {
+			data.copyTo(i, row);
+			indexed.add(data.getKey(i), row);
+		}
+		return indexed;
+	}
+
+	/**
+	 * reconcile indexed copies of two data sets on a single thread, as loaded sources would be
+	 */
+	static ReconciliationCounts reconcileLoaded(Dataset data1, Dataset data2, boolean twoWay,
+	        DifferenceListener listener) throws Exception {
+		Dataset indexed1 = index(data1);
+		Dataset indexed2 = index(data2);
+		ComparisonPlan plan = new ComparisonPlan(indexed1, COMPARE_COLUMNS, indexed2, COMPARE_COLUMNS, 0f, 0.0001f);
+		return new Reconciler(indexed1, COMPARE_COLUMNS, indexed2, COMPARE_COLUMNS, plan, twoWay).reconcile(1,
+		        listener);
+	}
+}
@@ -0,0 +1,73 @@
+package org.recxx.compare;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.recxx.compare.ReconcilerFixture.COMPARE_COLUMNS;
+import static org.recxx.compare.ReconcilerFixture.addOverlappingRows;
+import static org.recxx.compare.ReconcilerFixture.newData;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.recxx.data.Dataset;
+
+public class ReconcilerTest {
+
+	private Dataset data1;
+
+	private Dataset data2;
+
+	@Before
+	public void setUp() {
+		data1 = newData(true);
+		data2 = newData(true);
+
+		// ids 0-999 in the first source, 100-1099 in the second, with every 7th price different
+		addOverlappingRows(data1, data2, 1000, 100);
+	}
+
+	private ReconciliationCounts reconcile(boolean twoWay, int partitions, RecordingListener listener)
+	        throws Exception {
+		ComparisonPlan plan = new ComparisonPlan(data1, COMPARE_COLUMNS, data2, COMPARE_COLUMNS, 0f, 0.0001f);
+		return new Reconciler(data1, COMPARE_COLUMNS, data2, COMPARE_COLUMNS, plan, twoWay).reconcile(partitions,
+		        listener);
+	}
+
+	@Test
+	public void shouldCountMatchedAndMissingRowsTwoWay() throws Exception {
+		RecordingListener listener = new RecordingListener();
+		ReconciliationCounts counts = reconcile(true, 1, listener);
+		// ids 100-999 are on both sides, and the 128 multiples of 7 among them differ
+		assertThat(counts.getDifferentRows(), is(128));
+		assertThat(counts.getMatchedRows(), is(900 - 128));
+		assertThat(counts.getMissingFromSecond(), is(100));
+		assertThat(counts.getMissingFromFirst(), is(100));
+		// 2 values for each missing row, and 1 for each different row
+		assertThat(listener.differences.size(), is(400 + 128));
+	}
+
+	@Test
+	public void shouldReportRowsMissingFromTheSecondSourceOnlyOneWay() throws Exception {
+		RecordingListener listener = new RecordingListener();
+		ReconciliationCounts counts = reconcile(false, 1, listener);
+		assertThat(counts.getMissingFromSecond(), is(100));
+		assertThat(counts.getMissingFromFirst(), is(0));
+		assertThat(listener.differences.size(), is(200 + 128));
+	}
+
+	@Test
+	public void partitionsShouldGiveTheSameResultAsASingleThread() throws Exception {
+		for (boolean twoWay : new boolean[] { true, false }) {
+			RecordingListener single = new RecordingListener();
+			RecordingListener partitioned = new RecordingListener();
+			ReconciliationCounts singleCounts = reconcile(twoWay, 1, single);
+			ReconciliationCounts partitionedCounts = reconcile(twoWay, 8, partitioned);
+
+			assertThat(partitionedCounts.toString(), is(singleCounts.toString()));
+			Collections.sort(single.differences);
+			Collections.sort(partitioned.differences);
+			assertThat(partitioned.differences, is(single.differences));
+		}
+	}
+}
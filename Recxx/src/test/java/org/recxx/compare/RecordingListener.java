@@ -0,0 +1,24 @@
+package org.recxx.compare;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.recxx.data.CompositeKey;
+
+/**
+ * records each difference as a line of text, for the reconciler tests to compare
+ */
+class RecordingListener implements DifferenceListener {
+
+	final List<String> differences = new ArrayList<String>();
+
+	public void difference(CompositeKey key, String columnName1, Object value1, String columnName2, Object value2,
+	        String percentageDiff, String absDiff) {
+		differences.add(key + " " + columnName1 + " " + value1 + " " + value2);
+	}
+
+	public void missing(CompositeKey key, boolean inFirst, String columnName, Object value) {
+		differences.add(key + " " + columnName + " " + value + (inFirst ? " missing from second"
+		        : " missing from first"));
+	}
+}
@@ -0,0 +1,95 @@
+package org.recxx.compare;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.recxx.compare.ReconcilerFixture.COMPARE_COLUMNS;
+import static org.recxx.compare.ReconcilerFixture.addOverlappingRows;
+import static org.recxx.compare.ReconcilerFixture.addRow;
+import static org.recxx.compare.ReconcilerFixture.newData;
+import static org.recxx.compare.ReconcilerFixture.reconcileLoaded;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.recxx.data.ColumnType;
+import org.recxx.data.Dataset;
+
+public class SortedMergeReconcilerTest {
+
+	private Dataset data1;
+
+	private Dataset data2;
+
+	@Before
+	public void setUp() {
+		data1 = newData(false);
+		data2 = newData(false);
+	}
+
+	private SortedMergeReconciler newReconciler(int[] compareColumns, boolean aggregate) {
+		return new SortedMergeReconciler(new DatasetCursor(data1), compareColumns, aggregate, new DatasetCursor(
+		        data2), compareColumns, aggregate, 0f, 0.0001f);
+	}
+
+	@Test
+	public void shouldGiveTheSameResultAsReconcilingLoadedData() throws Exception {
+		// ids 0-999 in the first source, 100-1099 in the second, with every 7th price different
+		addOverlappingRows(data1, data2, 1000, 100);
+
+		RecordingListener merged = new RecordingListener();
+		SortedMergeReconciler reconciler = newReconciler(COMPARE_COLUMNS, false);
+		ReconciliationCounts mergedCounts = reconciler.reconcile(merged);
+
+		RecordingListener loaded = new RecordingListener();
+		ReconciliationCounts loadedCounts = reconcileLoaded(data1, data2, true, loaded);
+
+		assertThat(mergedCounts.toString(), is(loadedCounts.toString()));
+		assertThat(reconciler.getRows1(), is(1000));
+		assertThat(reconciler.getRows2(), is(1000));
+		Collections.sort(merged.differences);
+		Collections.sort(loaded.differences);
+		assertThat(merged.differences, is(loaded.differences));
+	}
+
+	@Test
+	public void shouldAggregateConsecutiveRowsWithTheSameKey() throws Exception {
+		// only numeric columns can be aggregated
+		String[] columns = { "Id", "Price" };
+		ColumnType[] types = { ColumnType.INTEGER, ColumnType.DOUBLE };
+		data1 = new Dataset(columns, types, new int[] { 0 }, false);
+		data2 = new Dataset(columns, types, new int[] { 0 }, false);
+		addRow(data1, 1, 1.5, null);
+		addRow(data1, 1, 2.5, null);
+		addRow(data1, 2, 7, null);
+		addRow(data2, 1, 4, null);
+		addRow(data2, 2, 3, null);
+		addRow(data2, 2, 4, null);
+
+		RecordingListener listener = new RecordingListener();
+		ReconciliationCounts counts = newReconciler(new int[] { 1 }, true).reconcile(listener);
+
+		assertThat(counts.getMatchedRows(), is(2));
+		assertThat(listener.differences.size(), is(0));
+	}
+
+	@Test
+	public void shouldKeepTheFirstOfConsecutiveRowsWithTheSameKeyUnlessAggregating() throws Exception {
+		addRow(data1, 1, 1.5, "A");
+		addRow(data1, 1, 2.5, "A");
+		addRow(data2, 1, 1.5, "A");
+
+		ReconciliationCounts counts = newReconciler(COMPARE_COLUMNS, false).reconcile(new RecordingListener());
+
+		assertThat(counts.getMatchedRows(), is(1));
+	}
+
+	@Test(expected = Exception.class)
+	public void shouldFailIfASourceIsNotSortedByKey() throws Exception {
+		addRow(data1, 2, 1, "A");
+		addRow(data1, 1, 1, "A");
+		addRow(data2, 1, 1, "A");
+
+		newReconciler(COMPARE_COLUMNS, false).reconcile(new RecordingListener());
+	}
+}
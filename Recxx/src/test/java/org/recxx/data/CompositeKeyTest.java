@@ -0,0 +1,130 @@
+package org.recxx.data;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.math.BigDecimal;
+import java.util.Date;
+
+import org.junit.Test;
+
+public class CompositeKeyTest {
+
+	private final CompositeKey.Builder builder = new CompositeKey.Builder();
+
+	private CompositeKey keyOf(Object... parts) {
+		builder.reset();
+		for (Object part : parts) {
+			builder.add(part);
+		}
+		return builder.build();
+	}
+
+	@Test
+	public void keysWithSameValuesShouldBeEqualWithSameHashCode() throws Exception {
+		CompositeKey one = keyOf("20110823", "Book A", 5, 1.5);
+		CompositeKey two = keyOf("20110823", "Book A", 5, 1.5);
+		assertThat(one, is(two));
+		assertThat(one.hashCode(), is(two.hashCode()));
+	}
+
+	@Test
+	public void wholeNumbersOfDifferentTypesShouldBeEqual() throws Exception {
+		assertThat(keyOf(5), is(keyOf(5L)));
+		assertThat(keyOf(5), is(keyOf(5.0)));
+		assertThat(keyOf(5), is(keyOf(new BigDecimal("5.00"))));
+		assertThat(keyOf(1.25), is(keyOf(new BigDecimal("1.250"))));
+	}
+
+	@Test
+	public void wholeDoublesShouldStillBeHandedBackAsDoubles() throws Exception {
+		CompositeKey key = keyOf(1.0, 2, 3f);
+		assertThat(key, is(keyOf(1, 2, 3)));
+		assertThat(key.toString(), is("1.0+2+3.0"));
+		assertThat(key.get(0), is((Object) 1.0));
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		key.writeTo(new DataOutputStream(bytes));
+		CompositeKey read = CompositeKey.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+		assertThat(read, is(key));
+		assertThat(read.toString(), is("1.0+2+3.0"));
+	}
+
+	@Test
+	public void decimalsWhichAreNotExactlyADoubleShouldBeKeptExactly() throws Exception {
+		BigDecimal tenth = new BigDecimal("0.1");
+		// the nearest double to 0.1 is slightly more than it, and a decimal between the two rounds to the same double
+		BigDecimal nearlyTenth = new BigDecimal("0.10000000000000000001");
+		assertThat(keyOf(tenth), is(not(keyOf(nearlyTenth))));
+		assertThat(keyOf(tenth), is(keyOf(new BigDecimal("0.100"))));
+		assertThat(keyOf(tenth), is(not(keyOf(0.1))));
+		assertThat(keyOf(tenth).get(0), is((Object) tenth));
+
+		assertThat(keyOf(tenth).compareTo(keyOf(nearlyTenth)), is(lessThan(0)));
+		assertThat(keyOf(nearlyTenth).compareTo(keyOf(0.1)), is(lessThan(0)));
+		assertThat(keyOf(tenth).compareTo(keyOf(0)), is(greaterThan(0)));
+		assertThat(keyOf(tenth).compareTo(keyOf(Double.NEGATIVE_INFINITY)), is(greaterThan(0)));
+	}
+
+	@Test
+	public void stringsShouldNotEqualNumbers() throws Exception {
+		assertThat(keyOf("5"), is(not(keyOf(5))));
+	}
+
+	@Test
+	public void partsShouldNotRunIntoEachOther() throws Exception {
+		assertThat(keyOf("ab", "c"), is(not(keyOf("a", "bc"))));
+		assertThat(keyOf(null, "a"), is(not(keyOf("a", null))));
+	}
+
+	@Test
+	public void toStringsShouldRenderEachPart() throws Exception {
+		Date date = new Date(1314057600000L);
+		CompositeKey key = keyOf("Book \u00e9", -42, 2.5, date, null, true);
+		String[] strings = key.toStrings();
+		assertThat(key.size(), is(6));
+		assertThat(strings[0], is("Book \u00e9"));
+		assertThat(strings[1], is("-42"));
+		assertThat(strings[2], is("2.5"));
+		assertThat(strings[3], is(date.toString()));
+		assertThat(strings[4], is(nullValue()));
+		assertThat(strings[5], is("true"));
+		assertThat(key.get(1), is((Object) (-42L)));
+	}
+
+	@Test
+	public void isEmptyShouldOnlyBeTrueWhenEveryPartIsNull() throws Exception {
+		assertThat(keyOf(null, null).isEmpty(), is(true));
+		assertThat(keyOf(null, 0).isEmpty(), is(false));
+		assertThat(keyOf("").isEmpty(), is(false));
+	}
+
+	@Test
+	public void compareToShouldOrderNumbersByValueAndStringsAsStrings() throws Exception {
+		assertThat(keyOf(2).compareTo(keyOf(10)), is(lessThan(0)));
+		assertThat(keyOf(-1.5).compareTo(keyOf(-1)), is(lessThan(0)));
+		assertThat(keyOf(1.5).compareTo(keyOf(1)), is(greaterThan(0)));
+		assertThat(keyOf(new BigDecimal("3.00")).compareTo(keyOf(3)), is(0));
+		assertThat(keyOf("B10").compareTo(keyOf("B2")), is(lessThan(0)));
+		assertThat(keyOf("ab").compareTo(keyOf("abc")), is(lessThan(0)));
+		assertThat(keyOf("\u00e9").compareTo(keyOf("z")), is(greaterThan(0)));
+		assertThat(keyOf("\u00e9").compareTo(keyOf("\u00e9")), is(0));
+	}
+
+	@Test
+	public void compareToShouldOrderPartByPart() throws Exception {
+		assertThat(keyOf("A", 2).compareTo(keyOf("A", 10)), is(lessThan(0)));
+		assertThat(keyOf("B", 1).compareTo(keyOf("A", 10)), is(greaterThan(0)));
+		assertThat(keyOf(null, 5).compareTo(keyOf(0, 1)), is(lessThan(0)));
+		assertThat(keyOf(5, "x").compareTo(keyOf("5", "a")), is(lessThan(0)));
+		assertThat(keyOf("A", new Date(2000)).compareTo(keyOf("A", new Date(1000))), is(greaterThan(0)));
+	}
+}
@@ -0,0 +1,215 @@
+package org.recxx.data;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.Date;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class DatasetTest {
+
+	private Dataset dataset;
+
+	private RowBuffer row;
+
+	private final CompositeKey.Builder builder = new CompositeKey.Builder();
+
+	@Before
+	public void setUp() {
+		dataset = new Dataset(new String[] { "Book", "Price", "Quantity", "Currency", "Date" }, new ColumnType[] {
+		        ColumnType.STRING, ColumnType.DOUBLE, ColumnType.INTEGER, ColumnType.STRING, ColumnType.DATE },
+		        new int[] { 0 });
+		row = dataset.newRowBuffer();
+	}
+
+	private CompositeKey key(String book) {
+		return builder.reset().addString(book).build();
+	}
+
+	private int givenRow(String book, Double price, Integer quantity, String currency, Date date) {
+		row.clear();
+		row.setObject(0, book);
+		row.set(1, price);
+		row.set(2, quantity);
+		row.setObject(3, currency);
+		row.set(4, date);
+		return dataset.add(key(book), row);
+	}
+
+	@Test
+	public void shouldFindRowsByKey() {
+		givenRow("A", 1.5, 10, "GBP", new Date(1000));
+		givenRow("B", 2.5, 20, "USD", null);
+		assertThat(dataset.size(), is(2));
+		assertThat(dataset.find(key("B")), is(1));
+		assertThat(dataset.find(key("C")), is(-1));
+		assertThat(dataset.get(0, 1), is((Object) 1.5));
+		assertThat(dataset.get(0, 2), is((Object) 10));
+		assertThat(dataset.get(0, 4), is((Object) new Date(1000)));
+	}
+
+	@Test
+	public void shouldReadKeyColumnsBackFromTheKey() {
+		givenRow("A", 1.5, 10, "GBP", null);
+		assertThat(dataset.get(0, 0), is((Object) "A"));
+	}
+
+	@Test
+	public void shouldKeepNullsSeparateFromValues() {
+		givenRow("A", null, null, null, null);
+		givenRow("B", 0d, 0, "0", new Date(0));
+		for (int column = 1; column < 5; column++) {
+			assertThat(dataset.isNull(0, column), is(true));
+			assertThat(dataset.get(0, column), is(nullValue()));
+			assertThat(dataset.isNull(1, column), is(false));
+		}
+	}
+
+	@Test
+	public void shouldIndexManyRows() {
+		for (int i = 0; i < 10000; i++) {
+			givenRow("B" + i, (double) i, i, i % 2 == 0 ? "GBP" : "USD", null);
+		}
+		for (int i = 0; i < 10000; i++) {
+			int id = dataset.find(key("B" + i));
+			assertThat(id, is(i));
+			assertThat(((DoubleColumn) dataset.getColumn(1)).getDouble(id), is((double) i));
+		}
+		assertThat(((StringColumn) dataset.getColumn(3)).isDictionaryEncoded(), is(true));
+	}
+
+	@Test
+	public void stringColumnShouldFallBackFromDictionaryWhenValuesAreMostlyDistinct() {
+		StringColumn column = new StringColumn();
+		int rows = StringColumn.MAX_DICTIONARY_SIZE + 10;
+		column.ensureCapacity(rows);
+		for (int i = 0; i < rows; i++) {
+			column.setString(i, "S" + i);
+		}
+		assertThat(column.isDictionaryEncoded(), is(false));
+		for (int i = 0; i < rows; i++) {
+			assertThat(column.getString(i), is("S" + i));
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void indexedDatasetShouldRejectDuplicateKeys() {
+		givenRow("A", 1.5, 10, "GBP", null);
+		givenRow("A", 1.5, 10, "GBP", null);
+	}
+
+	@Test
+	public void unindexedDatasetShouldKeepDuplicateKeys() {
+		Dataset chunk = new Dataset(new String[] { "Book", "Price" }, new ColumnType[] { ColumnType.STRING,
+		        ColumnType.DOUBLE }, new int[] { 0 }, false);
+		RowBuffer chunkRow = chunk.newRowBuffer();
+		chunkRow.setDouble(1, 1d);
+		chunk.add(key("A"), chunkRow);
+		chunk.add(key("A"), chunkRow);
+		assertThat(chunk.size(), is(2));
+	}
+
+	@Test
+	public void shouldAddRowsOfAnotherDatasetAColumnAtATime() {
+		givenRow("A", 1.5, 10, "GBP", new Date(5));
+		Dataset chunk = new Dataset(dataset.getColumnNames(), new ColumnType[] { ColumnType.STRING,
+		        ColumnType.DOUBLE, ColumnType.INTEGER, ColumnType.STRING, ColumnType.DATE }, new int[] { 0 }, false);
+		RowBuffer chunkRow = chunk.newRowBuffer();
+		for (String book : new String[] { "B", "C", "D" }) {
+			chunkRow.clear();
+			chunkRow.setObject(0, book);
+			if (!book.equals("C")) {
+				chunkRow.set(1, 2.5);
+				chunkRow.set(2, 20);
+				chunkRow.setObject(3, book.equals("B") ? "USD" : "GBP");
+				chunkRow.set(4, new Date(6));
+			}
+			chunk.add(key(book), chunkRow);
+		}
+
+		// C, with every value null, and D
+		dataset.addAll(chunk, new int[] { 1, 2 }, 2);
+
+		assertThat(dataset.size(), is(3));
+		assertThat(dataset.find(key("B")), is(-1));
+		assertThat(dataset.find(key("C")), is(1));
+		assertThat(dataset.find(key("D")), is(2));
+		for (int column = 1; column < 5; column++) {
+			assertThat(dataset.isNull(1, column), is(true));
+			assertThat(dataset.get(2, column), is(chunk.get(2, column)));
+		}
+		assertThat(dataset.get(2, 0), is((Object) "D"));
+		assertThat(((StringColumn) dataset.getColumn(3)).isDictionaryEncoded(), is(true));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void shouldOnlyAddRowsOfADatasetWithTheSameColumns() {
+		Dataset other = new Dataset(new String[] { "Book", "Price" }, new ColumnType[] { ColumnType.STRING,
+		        ColumnType.DOUBLE }, new int[] { 0 }, false);
+		dataset.addAll(other, new int[0], 0);
+	}
+
+	@Test
+	public void shouldAggregateDoubleColumnsOnly() {
+		int id = givenRow("A", 1.5, 10, "GBP", null);
+		row.set(1, 2.25);
+		assertThat(dataset.aggregate(id, new int[] { 1 }, row), is(true));
+		assertThat(dataset.get(id, 1), is((Object) 3.75));
+		assertThat(dataset.aggregate(id, new int[] { 1, 2 }, row), is(false));
+		assertThat(dataset.get(id, 1), is((Object) 3.75));
+	}
+
+	@Test
+	public void shouldCopyRowsIntoARowBuffer() {
+		int id = givenRow("A", 1.5, 10, "GBP", new Date(5));
+		RowBuffer copy = dataset.newRowBuffer();
+		dataset.copyTo(id, copy);
+		for (int column = 0; column < 5; column++) {
+			assertThat(copy.get(column), is(dataset.get(id, column)));
+		}
+	}
+
+	@Test
+	public void aDateWhichFailedToParseShouldBeKeptAsItWasRead() throws Exception {
+		row.clear();
+		row.setObject(0, "A");
+		row.set(4, "31/13/2011");
+		dataset.add(key("A"), row);
+		givenRow("B", 1.5, 10, "GBP", new Date(5));
+
+		assertThat(dataset.isNull(0, 4), is(false));
+		assertThat(dataset.get(0, 4), is((Object) "31/13/2011"));
+		assertThat(dataset.get(1, 4), is((Object) new Date(5)));
+
+		// as the reconcilers copy rows, and spill files and snapshots write them
+		RowBuffer copy = dataset.newRowBuffer();
+		dataset.copyTo(0, copy);
+		assertThat(copy.get(4), is((Object) "31/13/2011"));
+		RowCodec codec = new RowCodec(new ColumnType[] { ColumnType.STRING, ColumnType.DOUBLE,
+		        ColumnType.INTEGER, ColumnType.STRING, ColumnType.DATE }, dataset.getKeyPositions());
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		codec.write(key("A"), copy, new DataOutputStream(bytes));
+		RowBuffer read = dataset.newRowBuffer();
+		codec.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), read);
+		assertThat(read.get(4), is((Object) "31/13/2011"));
+	}
+
+	@Test
+	public void addingARowShouldThrowTheFingerprintsAway() {
+		givenRow("B1", 1.5, 10, "GBP", null);
+
+		dataset.fingerprint(new int[] { 1, 2 });
+		assertThat(dataset.getFingerprints(new int[] { 1, 2 }).length, is(1));
+		assertThat(dataset.getFingerprints(new int[] { 1 }), is(nullValue()));
+
+		givenRow("B2", 2.5, 20, "GBP", null);
+		assertThat(dataset.getFingerprints(new int[] { 1, 2 }), is(nullValue()));
+	}
+}
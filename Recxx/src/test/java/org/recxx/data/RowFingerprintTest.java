@@ -0,0 +1,67 @@
+package org.recxx.data;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+import java.math.BigDecimal;
+
+import org.junit.Test;
+
+public class RowFingerprintTest {
+
+	private static final String[] COLUMNS = { "Id", "Value", "Book" };
+
+	private final CompositeKey.Builder builder = new CompositeKey.Builder();
+
+	private static Dataset newData(ColumnType valueType) {
+		return new Dataset(COLUMNS, new ColumnType[] { ColumnType.INTEGER, valueType, ColumnType.STRING },
+		        new int[] { 0 });
+	}
+
+	private int addRow(Dataset data, int id, Object value, String book) {
+		RowBuffer row = data.newRowBuffer();
+		row.setLong(0, id);
+		row.set(1, value);
+		row.setObject(2, book);
+		return data.add(builder.reset().addLong(id).build(), row);
+	}
+
+	private static long fingerprint(Dataset data, int row) {
+		return new RowFingerprint(data, new int[] { 1, 2 }).of(row);
+	}
+
+	@Test
+	public void theSameNumberShouldHaveTheSameFingerprintHoweverItIsHeld() {
+		Dataset doubles = newData(ColumnType.DOUBLE);
+		Dataset integers = newData(ColumnType.INTEGER);
+		Dataset decimals = newData(ColumnType.DECIMAL);
+		Dataset objects = newData(ColumnType.OBJECT);
+
+		long expected = fingerprint(doubles, addRow(doubles, 1, 42.0, "B"));
+		assertThat(fingerprint(integers, addRow(integers, 1, 42, "B")), is(expected));
+		assertThat(fingerprint(decimals, addRow(decimals, 1, new BigDecimal("42.000"), "B")), is(expected));
+		assertThat(fingerprint(objects, addRow(objects, 1, 42L, "B")), is(expected));
+		assertThat(fingerprint(doubles, addRow(doubles, 2, -0.0, "B")),
+		        is(fingerprint(doubles, addRow(doubles, 3, 0.0, "B"))));
+	}
+
+	@Test
+	public void differentValuesShouldHaveDifferentFingerprints() {
+		Dataset doubles = newData(ColumnType.DOUBLE);
+		Dataset decimals = newData(ColumnType.DECIMAL);
+		Dataset strings = newData(ColumnType.STRING);
+
+		long fingerprint = fingerprint(doubles, addRow(doubles, 1, 42.0, "B"));
+		assertThat(fingerprint(doubles, addRow(doubles, 2, 42.000001, "B")), is(not(fingerprint)));
+		assertThat(fingerprint(doubles, addRow(doubles, 3, 42.0, "C")), is(not(fingerprint)));
+		assertThat(fingerprint(doubles, addRow(doubles, 4, null, "B")), is(not(fingerprint)));
+		assertThat(fingerprint(strings, addRow(strings, 1, "42.0", "B")), is(not(fingerprint)));
+		// the order of the values counts too
+		assertThat(fingerprint(strings, addRow(strings, 2, "B", "C")),
+		        is(not(fingerprint(strings, addRow(strings, 3, "C", "B")))));
+		// as does a digit beyond what a double holds
+		assertThat(fingerprint(decimals, addRow(decimals, 1, new BigDecimal("0.10000000000000000001"), "B")),
+		        is(not(fingerprint(decimals, addRow(decimals, 2, new BigDecimal("0.1"), "B")))));
+	}
+}
@@ -0,0 +1,98 @@
+package org.recxx.data;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SnapshotFileTest {
+
+	private static final String[] COLUMNS = { "Value", "Book", "Id", "Amount", "Date" };
+
+	private static final ColumnType[] TYPES = { ColumnType.DOUBLE, ColumnType.STRING, ColumnType.INTEGER,
+	        ColumnType.DECIMAL, ColumnType.DATE };
+
+	// a key of Id then Book, out of column order
+	private static final int[] KEY_POSITIONS = { 2, 1 };
+
+	private File file;
+
+	private Dataset data;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("recxx", ".snapshot");
+		file.delete();
+
+		data = new Dataset(COLUMNS, TYPES, KEY_POSITIONS);
+		RowBuffer row = data.newRowBuffer();
+		CompositeKey.Builder builder = new CompositeKey.Builder();
+		for (int id = 0; id < 1000; id++) {
+			row.clear();
+			row.setDouble(0, id * 1.5);
+			row.setObject(1, "B" + id % 3);
+			row.setLong(2, id);
+			if (id % 2 == 0) {
+				row.setObject(3, new BigDecimal(id).movePointLeft(2));
+			}
+			row.setLong(4, 1314057600000L + id);
+			data.add(builder.reset().addLong(id).addString("B" + id % 3).build(), row);
+		}
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void aSnapshotShouldReadBackAsItWasWrittenAndBeIndexed() throws Exception {
+		new SnapshotFile(file, "tag").write(data, 1234);
+
+		SnapshotFile snapshot = new SnapshotFile(file, "tag");
+		Dataset readBack = snapshot.read();
+
+		assertThat(snapshot.getRowsRead(), is(1234));
+		assertThat(readBack.getColumnNames(), is(COLUMNS));
+		assertThat(readBack.getKeyPositions(), is(KEY_POSITIONS));
+		assertThat(readBack.isIndexed(), is(true));
+		assertThat(readBack.size(), is(data.size()));
+		for (int i = 0; i < data.size(); i++) {
+			assertThat(readBack.find(data.getKey(i)), is(i));
+			for (int column = 0; column < COLUMNS.length; column++) {
+				assertThat(readBack.getType(column), is(TYPES[column]));
+				assertThat(readBack.get(i, column), is(data.get(i, column)));
+			}
+		}
+		assertThat(readBack.get(1, 3), is(nullValue()));
+	}
+
+	@Test
+	public void aSnapshotWithAnotherTagOrNoSnapshotShouldNotBeRead() throws Exception {
+		assertThat(new SnapshotFile(file, "tag").read(), is(nullValue()));
+
+		new SnapshotFile(file, "tag").write(data, 1000);
+
+		assertThat(new SnapshotFile(file, "other tag").read(), is(nullValue()));
+	}
+
+	@Test(expected = java.io.IOException.class)
+	public void aTruncatedSnapshotShouldFailToRead() throws Exception {
+		new SnapshotFile(file, "tag").write(data, 1000);
+		RandomAccessFile truncate = new RandomAccessFile(file, "rw");
+		try {
+			truncate.setLength(file.length() / 2);
+		} finally {
+			truncate.close();
+		}
+
+		new SnapshotFile(file, "tag").read();
+	}
+}
@@ -0,0 +1,87 @@
+package org.recxx.data;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.math.BigDecimal;
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SpillFileTest {
+
+	private static final String[] COLUMNS = { "Value", "Book", "Id", "Amount", "Count", "Date", "Flag", "Other" };
+
+	private static final ColumnType[] TYPES = { ColumnType.DOUBLE, ColumnType.STRING, ColumnType.INTEGER,
+	        ColumnType.DECIMAL, ColumnType.LONG, ColumnType.DATE, ColumnType.BOOLEAN, ColumnType.OBJECT };
+
+	// a key of Id then Book, out of column order
+	private static final int[] KEY_POSITIONS = { 2, 1 };
+
+	private SpillFile file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = new SpillFile(null, COLUMNS, TYPES, KEY_POSITIONS);
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	@Test
+	public void rowsShouldReadBackAsTheyWereWritten() throws Exception {
+		Dataset data = new Dataset(COLUMNS, TYPES, KEY_POSITIONS, false);
+		RowBuffer row = data.newRowBuffer();
+		CompositeKey.Builder builder = new CompositeKey.Builder();
+
+		row.setDouble(0, -1.25);
+		row.setObject(1, "Book \u00e9");
+		row.setLong(2, 42);
+		row.setObject(3, new BigDecimal("-12345678901234567890.125"));
+		row.setLong(4, Long.MIN_VALUE);
+		row.setLong(5, 1314057600000L);
+		row.setObject(6, Boolean.TRUE);
+		row.setObject(7, 1.5f);
+		data.add(builder.reset().addLong(42).addString("Book \u00e9").build(), row);
+
+		row.clear();
+		row.setLong(2, 7);
+		row.setObject(1, "B");
+		data.add(builder.reset().addLong(7).addString("B").build(), row);
+
+		for (int i = 0; i < data.size(); i++) {
+			data.copyTo(i, row);
+			file.write(data.getKey(i), row);
+		}
+		file.finish();
+		assertThat(file.size(), is(2));
+
+		Dataset readBack = new Dataset(COLUMNS, TYPES, KEY_POSITIONS, false);
+		RowCursor cursor = file.openCursor();
+		try {
+			while (cursor.next()) {
+				readBack.add(cursor.getKey(), cursor.getRow());
+				assertThat(cursor.getRow().get(2), is(readBack.get(readBack.size() - 1, 2)));
+			}
+		} finally {
+			cursor.close();
+		}
+
+		assertThat(readBack.size(), is(2));
+		for (int i = 0; i < data.size(); i++) {
+			assertThat(readBack.getKey(i), is(data.getKey(i)));
+			for (int column = 0; column < COLUMNS.length; column++) {
+				assertThat(readBack.get(i, column), is(data.get(i, column)));
+			}
+		}
+		assertThat(readBack.get(0, 7), is((Object) 1.5f));
+		assertThat(readBack.get(1, 0), is(nullValue()));
+		assertThat(readBack.get(1, 5), is(nullValue()));
+		assertThat(readBack.get(0, 5), is((Object) new Date(1314057600000L)));
+	}
+}
@@ -0,0 +1,254 @@
+package org.recxx.facades;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.io.File;
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.text.DecimalFormat;
+import java.util.HashMap;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.recxx.Recxx;
+import org.recxx.data.ColumnType;
+import org.recxx.data.CompositeKey;
+import org.recxx.data.Dataset;
+import org.recxx.data.RowCursor;
+
+public class DatabaseFacadeWorkerTest {
+
+	private static final String URL = "jdbc:h2:mem:databaseFacadeWorkerTest;DB_CLOSE_DELAY=-1";
+
+	private File propertiesFile;
+
+	private Connection connection;
+
+	@Before
+	public void setUp() throws Exception {
+		Recxx.m_dpFormatter = new DecimalFormat("#.00");
+		propertiesFile = File.createTempFile("databaseFacadeWorkerTest", ".properties");
+
+		Class.forName("org.h2.Driver");
+		connection = DriverManager.getConnection(URL, "sa", "");
+		execute("CREATE TABLE TRADES (BOOK VARCHAR(10), ID INT, PRICE DOUBLE, QUANTITY BIGINT, "
+		        + "AMOUNT DECIMAL(20, 4), ACTIVE BOOLEAN, TRADED TIMESTAMP, RATE REAL)");
+		execute("INSERT INTO TRADES VALUES ('B1', 1, 100.126, 10, 1000.5, TRUE, '2011-08-23 10:15:00', 1.5)");
+		execute("INSERT INTO TRADES VALUES ('B1', 2, NULL, NULL, NULL, NULL, NULL, NULL)");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		execute("DROP ALL OBJECTS");
+		connection.close();
+		propertiesFile.delete();
+	}
+
+	private void execute(String sql) throws Exception {
+		Statement statement = connection.createStatement();
+		try {
+			statement.execute(sql);
+		} finally {
+			statement.close();
+		}
+	}
+
+	private Properties givenProperties(String sql, String key, String handleNullsAsZero) {
+		Properties properties = new Properties();
+		properties.setProperty("uid", "sa");
+		properties.setProperty("pwd", "");
+		properties.setProperty("url", URL);
+		properties.setProperty("driver", "org.h2.Driver");
+		properties.setProperty("sql", sql);
+		properties.setProperty("key", key);
+		properties.setProperty("aggregate", "false");
+		properties.setProperty("handleNullsAsZero", handleNullsAsZero);
+		properties.setProperty("order", "1");
+		return properties;
+	}
+
+	private DatabaseFacadeWorker givenWorker(Properties properties) {
+		DatabaseFacadeWorker worker = new DatabaseFacadeWorker("test", propertiesFile.getPath());
+		worker.setRunTimeProperties(properties);
+		return worker;
+	}
+
+	@Test
+	public void cursorShouldReadEachColumnThroughItsTypedReader() throws Exception {
+		RowCursor cursor =
+		        givenWorker(givenProperties("SELECT * FROM TRADES ORDER BY ID", "BOOK ID", "false")).openCursor();
+		try {
+			assertThat(cursor.getColumnTypes(), is(new ColumnType[] { ColumnType.STRING, ColumnType.INTEGER,
+			        ColumnType.DOUBLE, ColumnType.LONG, ColumnType.DECIMAL, ColumnType.BOOLEAN, ColumnType.OBJECT,
+			        ColumnType.OBJECT }));
+
+			assertThat(cursor.next(), is(true));
+			assertThat(cursor.getKey(), is(new CompositeKey.Builder().addString("B1").addLong(1).build()));
+			assertThat(cursor.getRow().getDouble(2), is(100.13));
+			assertThat(cursor.getRow().getLong(3), is(10L));
+			assertThat(cursor.getRow().getObject(4), is((Object) new BigDecimal("1000.5000")));
+			assertThat(cursor.getRow().getObject(5), is((Object) Boolean.TRUE));
+			assertThat(cursor.getRow().getObject(6), is((Object) Timestamp.valueOf("2011-08-23 10:15:00")));
+			assertThat(cursor.getRow().getObject(7), is((Object) 1.5f));
+
+			assertThat(cursor.next(), is(true));
+			for (int column = 2; column < 8; column++) {
+				assertThat(cursor.getRow().get(column), is(nullValue()));
+			}
+
+			assertThat(cursor.next(), is(false));
+		} finally {
+			cursor.close();
+		}
+	}
+
+	@Test
+	public void nullDoublesShouldBeDefaultedToZeroIfHandledAsZero() throws Exception {
+		RowCursor cursor =
+		        givenWorker(givenProperties("SELECT ID, PRICE, QUANTITY FROM TRADES WHERE ID = 2", "ID", "true"))
+		                .openCursor();
+		try {
+			assertThat(cursor.next(), is(true));
+			assertThat(cursor.getRow().get(1), is((Object) 0.0));
+			assertThat(cursor.getRow().get(2), is(nullValue()));
+		} finally {
+			cursor.close();
+		}
+	}
+
+	@Test
+	public void resultSetShouldLoadAllItsRowsAFetchAtATime() throws Exception {
+		execute("CREATE TABLE NUMBERS AS SELECT X AS ID, CAST(X * 1.5 AS DOUBLE) AS PRICE "
+		        + "FROM SYSTEM_RANGE(1, 10000)");
+		Properties properties = givenProperties("SELECT ID, PRICE FROM NUMBERS", "ID", "false");
+		properties.setProperty("fetchSize", "7");
+
+		int rows = 0;
+		double total = 0;
+		RowCursor cursor = givenWorker(properties).openCursor();
+		try {
+			while (cursor.next()) {
+				rows++;
+				total += cursor.getRow().getDouble(1);
+			}
+		} finally {
+			cursor.close();
+		}
+
+		assertThat(rows, is(10000));
+		assertThat(total, is(1.5 * 10000 * 10001 / 2));
+	}
+
+	@Test
+	public void processResultSetShouldLoadTheRowsIntoADataset() throws Exception {
+		Properties properties = givenProperties("", "BOOK ID", "true");
+		Statement statement = connection.createStatement();
+		try {
+			ResultSet rs = statement.executeQuery("SELECT BOOK, ID, PRICE FROM TRADES");
+			Dataset data = givenWorker(properties).processResultSet("BOOK ID", rs, properties);
+
+			assertThat(data.size(), is(2));
+			int row = data.find(new CompositeKey.Builder().addString("B1").addLong(2).build());
+			assertThat(data.get(row, 2), is((Object) 0.0));
+		} finally {
+			statement.close();
+		}
+	}
+
+	@Test(expected = Exception.class)
+	public void fetchSizeShouldBeANumber() throws Exception {
+		Properties properties = givenProperties("SELECT * FROM TRADES", "ID", "false");
+		properties.setProperty("fetchSize", "lots");
+
+		givenWorker(properties).openCursor();
+	}
+
+	@Test(expected = Exception.class)
+	public void loadShouldThrowAFailureRatherThanLogIt() throws Exception {
+		DatabaseFacadeWorker worker = givenWorker(givenProperties("SELECT * FROM NO_SUCH_TABLE", "ID", "false"));
+		worker.setDataStore(mock(Recxx.class));
+
+		worker.load();
+	}
+
+	@Test
+	public void partitionBoundariesShouldSplitTheRangeIntoEqualWidths() {
+		assertThat(DatabaseFacadeWorker.partitionBoundaries(new BigDecimal(1), new BigDecimal(10000), 4),
+		        is(new String[] { "2500", "5000", "7500" }));
+		assertThat(DatabaseFacadeWorker.partitionBoundaries(new BigDecimal("0.5"), new BigDecimal("2.50"), 4),
+		        is(new String[] { "1", "1.5", "2" }));
+		assertThat(DatabaseFacadeWorker.partitionBoundaries(new BigDecimal(1), new BigDecimal(3), 4),
+		        is(new String[] { "2" }));
+		assertThat(DatabaseFacadeWorker.partitionBoundaries(new BigDecimal(5), new BigDecimal(5), 4),
+		        is(new String[0]));
+	}
+
+	@Test
+	public void partitionSqlShouldCoverEveryValueOnce() {
+		String[] boundaries = { "10", "20" };
+
+		assertThat(DatabaseFacadeWorker.partitionSql("SELECT * FROM T;", "ID", boundaries, 0),
+		        is("SELECT * FROM (SELECT * FROM T) recxx_partition WHERE ID < 10 OR ID IS NULL"));
+		assertThat(DatabaseFacadeWorker.partitionSql("SELECT * FROM T", "ID", boundaries, 1),
+		        is("SELECT * FROM (SELECT * FROM T) recxx_partition WHERE ID >= 10 AND ID < 20"));
+		assertThat(DatabaseFacadeWorker.partitionSql("SELECT * FROM T", "ID", boundaries, 2),
+		        is("SELECT * FROM (SELECT * FROM T) recxx_partition WHERE ID >= 20"));
+	}
+
+	@Test
+	public void partitionedQueryShouldLoadTheSameRowsAsOneQuery() throws Exception {
+		// GRP is null for every 10th row, which must still be loaded
+		execute("CREATE TABLE LEDGER AS SELECT X AS ID, CASEWHEN(MOD(X, 10) = 0, NULL, MOD(X, 97)) AS GRP, "
+		        + "CAST(X * 1.5 AS DOUBLE) AS PRICE FROM SYSTEM_RANGE(1, 10000)");
+		String sql = "SELECT ID, GRP, PRICE FROM LEDGER";
+
+		Dataset whole = load(givenProperties(sql, "ID", "false"));
+
+		Properties counted = givenProperties(sql, "ID", "false");
+		counted.setProperty("partitionColumn", "GRP");
+		counted.setProperty("partitions", "4");
+		Properties bounded = givenProperties(sql, "ID", "false");
+		bounded.setProperty("partitionColumn", "GRP");
+		bounded.setProperty("partitionBoundaries", "5 50 90");
+		// one range at a time, with the next loaded ahead of the merge
+		Properties serial = givenProperties(sql, "ID", "false");
+		serial.setProperty("partitionColumn", "GRP");
+		serial.setProperty("partitionBoundaries", "5 50 90");
+		serial.setProperty("parallelism", "1");
+
+		for (Properties properties : new Properties[] { counted, bounded, serial }) {
+			Dataset partitioned = load(properties);
+
+			assertThat(partitioned.size(), is(10000));
+			for (int i = 0; i < whole.size(); i++) {
+				int row = partitioned.find(whole.getKey(i));
+				for (int column = 0; column < 3; column++) {
+					assertThat(partitioned.get(row, column), is(whole.get(i, column)));
+				}
+			}
+		}
+	}
+
+	private Dataset load(Properties properties) {
+		Recxx rec = mock(Recxx.class);
+		DatabaseFacadeWorker worker = givenWorker(properties);
+		worker.setDataStore(rec);
+		worker.run();
+
+		ArgumentCaptor<HashMap> loaded = ArgumentCaptor.forClass(HashMap.class);
+		verify(rec).setDataToCompare(loaded.capture(), eq("1"));
+		return (Dataset) loaded.getValue().get(Recxx.DATA);
+	}
+}
@@ -1,5 +1,33 @@
 package org.recxx.facades;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.DecimalFormat;
+import java.util.HashMap;
+import java.util.Properties;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.recxx.Recxx;
+import org.recxx.data.Dataset;
+import org.recxx.data.RowCursor;
+import org.recxx.data.SnapshotFile;
+
 /**
  * Created by Shaine Ismail.
  * User: sismail
@@ -8,4 +36,176 @@ package org.recxx.facades;
  * Copyright SNI-Services ltd
  */
 public class FileFacadeWorkerTest {
+
+	private File propertiesFile;
+
+	private File dataFile;
+
+	@Before
+	public void setUp() throws Exception {
+		Recxx.m_dpFormatter = new DecimalFormat("#.00000000000");
+		propertiesFile = File.createTempFile("fileFacadeWorkerTest", ".properties");
+		dataFile = File.createTempFile("fileFacadeWorkerTest", ".csv");
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		propertiesFile.delete();
+		dataFile.delete();
+	}
+
+	private void givenDataFileContaining(String contents) throws IOException {
+		FileWriter writer = new FileWriter(dataFile);
+		try {
+			writer.write(contents);
+		} finally {
+			writer.close();
+		}
+	}
+
+	private Properties givenProperties(String aggregate) {
+		Properties properties = new Properties();
+		properties.setProperty("filePath", dataFile.getPath());
+		properties.setProperty("delimiter", ",");
+		properties.setProperty("columnsSupplied", "true");
+		properties.setProperty("dataTypesSupplied", "false");
+		properties.setProperty("columnDataTypes",
+		        "java.lang.String java.lang.Integer java.lang.String java.lang.Double java.lang.Double");
+		properties.setProperty("key", "Book Id");
+		properties.setProperty("columnsToCompare", "Price Quantity");
+		properties.setProperty("aggregate", aggregate);
+		properties.setProperty("appendDelimiter", "false");
+		properties.setProperty("handleNullsAsZero", "true");
+		properties.setProperty("dateFormat", "yyyyMMdd");
+		return properties;
+	}
+
+	private FileFacadeWorker givenWorker(Properties properties) {
+		FileFacadeWorker worker = new FileFacadeWorker("test", propertiesFile.getPath());
+		worker.setRunTimeProperties(properties);
+		return worker;
+	}
+
+	private Dataset loadWithStreamReader(Properties properties) throws Exception {
+		BufferedReader reader = new BufferedReader(new FileReader(dataFile));
+		try {
+			return givenWorker(properties).processFile(properties.getProperty("key"), reader, properties);
+		} finally {
+			reader.close();
+		}
+	}
+
+	private Dataset loadWithMappedReader(Properties properties) throws Exception {
+		return givenWorker(properties).processMappedFile(properties.getProperty("key"), dataFile, properties);
+	}
+
+	private void assertSameRows(Dataset actual, Dataset expected) {
+		assertThat(actual.size(), is(expected.size()));
+		assertThat(actual.getColumnNames(), is(expected.getColumnNames()));
+		for (int row = 0; row < expected.size(); row++) {
+			int actualRow = actual.find(expected.getKey(row));
+			assertThat(actualRow >= 0, is(true));
+			for (int column = 0; column < expected.getColumnCount(); column++) {
+				assertThat(actual.get(actualRow, column), is(expected.get(row, column)));
+			}
+		}
+	}
+
+	@Test
+	public void mappedReaderShouldLoadSameDataAsStreamReader() throws Exception {
+		givenDataFileContaining("Book,Id,Desc,Price,Quantity\r\n" + "A,1, padded ,10.5,100\r\n"
+		        + "B,2,ignored,,3.14159\r\n" + "C,3,ignored,-7.125,1e3\r\n" + ",D,4,leading delimiter,2.5,7\r\n");
+		Dataset streamed = loadWithStreamReader(givenProperties("false"));
+		Dataset mapped = loadWithMappedReader(givenProperties("false"));
+		assertThat(mapped.size(), is(4));
+		assertSameRows(mapped, streamed);
+	}
+
+	@Test
+	public void aSnapshotShouldOnlyBeUsedWithTheReaderWhichLoadedIt() throws Exception {
+		givenDataFileContaining("Book,Id,Desc,Price,Quantity\n" + "A,1,x,1.5,10\n");
+		Properties properties = givenProperties("false");
+		properties.setProperty("snapshotDirectory", dataFile.getParent());
+		SnapshotFile streamed = givenWorker(properties).getSnapshot(dataFile);
+		properties.setProperty("reader", FileFacadeWorker.MMAP_READER);
+		SnapshotFile mapped = givenWorker(properties).getSnapshot(dataFile);
+		assertThat(mapped.getFile(), is(not(streamed.getFile())));
+	}
+
+	@Test
+	public void mappedReaderShouldAggregateDuplicateKeys() throws Exception {
+		givenDataFileContaining("Book,Id,Desc,Price,Quantity\n" + "A,1,x,1.5,10\n" + "A,1,y,2.25,5\n" + "B,1,z,4,1\n");
+		Dataset streamed = loadWithStreamReader(givenProperties("true"));
+		Dataset mapped = loadWithMappedReader(givenProperties("true"));
+		assertThat(mapped.size(), is(2));
+		assertSameRows(mapped, streamed);
+	}
+
+	@Test
+	public void parallelChunksShouldLoadSameDataAsSingleReader() throws Exception {
+		StringBuilder contents = new StringBuilder("Book,Id,Desc,Price,Quantity\n");
+		for (int i = 0; i < 500; i++) {
+			contents.append("B").append(i % 37).append(',').append(i % 5).append(",x,").append(i).append(".25,")
+			        .append(i % 11).append('\n');
+		}
+		givenDataFileContaining(contents.toString());
+		// aggregated chunks are merged a row at a time, and the others a column at a time keeping the first of each key
+		for (String aggregate : new String[] { "true", "false" }) {
+			Dataset streamed = loadWithStreamReader(givenProperties(aggregate));
+			Properties properties = givenProperties(aggregate);
+			properties.setProperty("parallelism", "4");
+			properties.setProperty("chunkSize", "100");
+			Dataset chunked = loadWithMappedReader(properties);
+			assertThat(chunked.size(), is(37 * 5));
+			assertSameRows(chunked, streamed);
+		}
+	}
+
+	@Test
+	public void gzippedFileShouldLoadSameDataAsPlainFile() throws Exception {
+		String contents = "Book,Id,Desc,Price,Quantity\n" + "A,1,x,1.5,10\n" + "A,1,y,2.25,5\n" + "B,1,z,4,1\n";
+		givenDataFileContaining(contents);
+		Dataset plain = loadWithStreamReader(givenProperties("true"));
+
+		OutputStream out = new GZIPOutputStream(new FileOutputStream(dataFile));
+		try {
+			out.write(contents.getBytes("US-ASCII"));
+		} finally {
+			out.close();
+		}
+		// the mmap reader can't map a compressed file, so reads it line by line
+		Properties properties = givenProperties("true");
+		properties.setProperty("reader", FileFacadeWorker.MMAP_READER);
+		properties.setProperty("order", "1");
+		Recxx rec = mock(Recxx.class);
+		FileFacadeWorker worker = givenWorker(properties);
+		worker.setDataStore(rec);
+		worker.run();
+
+		ArgumentCaptor<HashMap> loaded = ArgumentCaptor.forClass(HashMap.class);
+		verify(rec).setDataToCompare(loaded.capture(), eq("1"));
+		Dataset gzipped = (Dataset) loaded.getValue().get(Recxx.DATA);
+		assertThat(gzipped.size(), is(2));
+		assertSameRows(gzipped, plain);
+	}
+
+	@Test
+	public void cursorShouldReadRowsInFileOrderWithEitherReader() throws Exception {
+		givenDataFileContaining("Book,Id,Desc,Price,Quantity\n" + "B,2,x,1.5,10\n" + "A,1,y,2.25,5\n" + "A,1,z,4,1\n");
+		for (String reader : new String[] { FileFacadeWorker.STREAM_READER, FileFacadeWorker.MMAP_READER }) {
+			Properties properties = givenProperties("false");
+			properties.setProperty("reader", reader);
+			RowCursor cursor = givenWorker(properties).openCursor();
+			try {
+				assertThat(cursor.getColumnNames(), is(new String[] { "Book", "Id", "Price", "Quantity" }));
+				StringBuilder rows = new StringBuilder();
+				while (cursor.next()) {
+					rows.append(cursor.getKey()).append('=').append(cursor.getRow().getDouble(2)).append(' ');
+				}
+				assertThat(rows.toString(), is("B+2=1.5 A+1=2.25 A+1=4.0 "));
+			} finally {
+				cursor.close();
+			}
+		}
+	}
 }
@@ -0,0 +1,51 @@
+package org.recxx.facades;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+
+import org.junit.Test;
+
+public class WorkerSchedulerTest {
+
+	private static final Callable<String> THREAD_NAME = new Callable<String>() {
+		public String call() {
+			return Thread.currentThread().getName();
+		}
+	};
+
+	@Test
+	public void platformThreadsShouldBeNamedDaemons() throws Exception {
+		ExecutorService executor = new WorkerScheduler(WorkerScheduler.PLATFORM_THREADS).newExecutor("Worker", 2);
+		try {
+			assertThat(executor.submit(THREAD_NAME).get(), is("Worker-1"));
+			assertThat(executor.submit(new Callable<Boolean>() {
+				public Boolean call() {
+					return Thread.currentThread().isDaemon();
+				}
+			}).get(), is(true));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void virtualThreadsShouldRunTasksWhetherOrNotTheJvmHasThem() throws Exception {
+		WorkerScheduler scheduler = new WorkerScheduler("VIRTUAL");
+		ExecutorService executor = scheduler.newExecutor("Worker", 1);
+		try {
+			String name = executor.submit(THREAD_NAME).get();
+			// a virtual thread has no name unless given one
+			assertThat(name, is(scheduler.isVirtual() ? "" : "Worker-1"));
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void unknownThreadsShouldBeRejected() {
+		new WorkerScheduler("green");
+	}
+}
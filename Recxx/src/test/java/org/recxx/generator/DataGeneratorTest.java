@@ -0,0 +1,173 @@
+package org.recxx.generator;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.DecimalFormat;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.recxx.Recxx;
+import org.recxx.compare.ComparisonPlan;
+import org.recxx.compare.DifferenceListener;
+import org.recxx.compare.Reconciler;
+import org.recxx.compare.ReconciliationCounts;
+import org.recxx.data.CompositeKey;
+import org.recxx.data.Dataset;
+import org.recxx.facades.FileFacadeWorker;
+
+public class DataGeneratorTest {
+
+	private File directory;
+
+	@Before
+	public void setUp() throws Exception {
+		Recxx.m_dpFormatter = new DecimalFormat("#.00000000000");
+		directory = File.createTempFile("dataGeneratorTest", "");
+		directory.delete();
+	}
+
+	@After
+	public void tearDown() {
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		directory.delete();
+	}
+
+	private Properties givenSettings(String name, long seed) {
+		Properties settings = new Properties();
+		settings.setProperty("generator.rows", "2000");
+		settings.setProperty("generator.seed", String.valueOf(seed));
+		settings.setProperty("generator.missingRate", "0.05");
+		settings.setProperty("generator.breakRate", "0.1");
+		settings.setProperty("generator.withinToleranceRate", "0.2");
+		settings.setProperty("generator.duplicateRate", "0.03");
+		settings.setProperty("generator.outputDirectory", directory.getPath());
+		settings.setProperty("generator.name", name);
+		return settings;
+	}
+
+	private static byte[] bytes(File file) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[8192];
+			int count;
+			while ((count = in.read(buffer)) > 0) {
+				bytes.write(buffer, 0, count);
+			}
+		} finally {
+			in.close();
+		}
+		return bytes.toByteArray();
+	}
+
+	private static int lines(File file) throws IOException {
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			int lines = 0;
+			while (reader.readLine() != null) {
+				lines++;
+			}
+			return lines;
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * load a source as Recxx would, from the generated properties
+	 */
+	private Dataset load(Properties generated, String source, File propertiesFile) throws Exception {
+		String stub = "props.rec.inputSource" + source + ".file.";
+		Properties properties = new Properties();
+		properties.setProperty("filePath", generated.getProperty(stub + "filePath"));
+		properties.setProperty("delimiter", generated.getProperty(stub + "delimiter"));
+		properties.setProperty("columnsSupplied", "true");
+		properties.setProperty("dataTypesSupplied", "false");
+		properties.setProperty("columnDataTypes", generated.getProperty(stub + "columnDataTypes"));
+		properties.setProperty("key", generated.getProperty(stub + "key"));
+		properties.setProperty("columnsToCompare", generated.getProperty(stub + "columnsToCompare"));
+		properties.setProperty("aggregate", generated.getProperty(stub + "aggregate"));
+		properties.setProperty("appendDelimiter", "false");
+		properties.setProperty("handleNullsAsZero", "true");
+		properties.setProperty("dateFormat", "yyyyMMdd");
+
+		FileFacadeWorker worker = new FileFacadeWorker("test", propertiesFile.getPath());
+		worker.setRunTimeProperties(properties);
+		BufferedReader reader = new BufferedReader(new FileReader(properties.getProperty("filePath")));
+		try {
+			return worker.processFile(properties.getProperty("key"), reader, properties);
+		} finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void sameSeedShouldWriteTheSameFiles() throws Exception {
+		DataGenerator first = new DataGenerator(givenSettings("first", 42));
+		first.generate();
+		DataGenerator second = new DataGenerator(givenSettings("second", 42));
+		second.generate();
+		DataGenerator other = new DataGenerator(givenSettings("other", 43));
+		other.generate();
+
+		assertThat(bytes(second.getFile1()), is(bytes(first.getFile1())));
+		assertThat(bytes(second.getFile2()), is(bytes(first.getFile2())));
+		assertThat(bytes(other.getFile1()), is(not(bytes(first.getFile1()))));
+	}
+
+	@Test
+	public void reconcilingTheFilesShouldFindWhatWasGenerated() throws Exception {
+		DataGenerator generator = new DataGenerator(givenSettings("rec", 7));
+		DataGenerator.Counts counts = generator.generate();
+		assertThat(lines(generator.getFile1()), is((int) counts.getRows1() + 1));
+		assertThat(lines(generator.getFile2()), is((int) counts.getRows2() + 1));
+		assertThat(counts.getMatched() + counts.getBreaks() + counts.getMissingFrom1() + counts.getMissingFrom2(),
+		        is(2000L));
+		assertThat(counts.getBreaks() > 0 && counts.getMissingFrom1() > 0 && counts.getDuplicated() > 0, is(true));
+
+		Properties generated = new Properties();
+		InputStream in = new FileInputStream(generator.getPropertiesFile());
+		try {
+			generated.load(in);
+		} finally {
+			in.close();
+		}
+		Dataset data1 = load(generated, "1", generator.getPropertiesFile());
+		Dataset data2 = load(generated, "2", generator.getPropertiesFile());
+		int[] compare1 = data1.getNonKeyPositions();
+		int[] compare2 = data2.getNonKeyPositions();
+		float tolerance = Float.parseFloat(generated.getProperty("props.rec.toleranceLevel"));
+		ComparisonPlan plan = new ComparisonPlan(data1, compare1, data2, compare2, tolerance, 0.0001f);
+		ReconciliationCounts recCounts =
+		        new Reconciler(data1, compare1, data2, compare2, plan, true).reconcile(1, new DifferenceListener() {
+			        public void difference(CompositeKey key, String columnName1, Object value1, String columnName2,
+			                Object value2, String percentageDiff, String absDiff) {
+			        }
+
+			        public void missing(CompositeKey key, boolean inFirst, String columnName, Object value) {
+			        }
+		        });
+
+		assertThat(data1.size(), is((int) (counts.getMatched() + counts.getBreaks() + counts.getMissingFrom2())));
+		assertThat(recCounts.getMatchedRows(), is((int) counts.getMatched()));
+		assertThat(recCounts.getDifferentRows(), is((int) counts.getBreaks()));
+		assertThat(recCounts.getMissingFromSecond(), is((int) counts.getMissingFrom2()));
+		assertThat(recCounts.getMissingFromFirst(), is((int) counts.getMissingFrom1()));
+	}
+}
@@ -0,0 +1,56 @@
+package org.recxx.metrics;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.File;
+import java.util.List;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+
+public class FlightRecordingTest {
+
+	@Test
+	public void shouldWriteTheRecxxEventsToTheFile() throws Exception {
+		File file = File.createTempFile("flightRecordingTest", ".jfr");
+		try {
+			// nothing is recorded, nor is jdk.jfr reached, without a recording
+			assertThat(EventBatch.begin(EventBatch.Kind.PARSE).isRecorded(), is(false));
+
+			FlightRecording recording = new FlightRecording(file, FlightRecording.NO_CONFIGURATION);
+			EventBatch parse = EventBatch.begin(EventBatch.Kind.PARSE);
+			assertThat(parse.isRecorded(), is(true));
+			parse.source = "one";
+			parse.rows = 10000;
+			parse.bytes = 123456;
+			parse.commit();
+			EventBatch flush = EventBatch.begin(EventBatch.Kind.FLUSH);
+			flush.source = "breaks.csv";
+			flush.rows = 3;
+			flush.commit();
+			recording.close();
+
+			List<RecordedEvent> events = RecordingFile.readAllEvents(file.toPath());
+			RecordedEvent recordedParse = find(events, "org.recxx.Parse");
+			assertThat(recordedParse.getString("source"), is("one"));
+			assertThat(recordedParse.getLong("rows"), is(10000L));
+			assertThat(recordedParse.getLong("bytes"), is(123456L));
+			assertThat(find(events, "org.recxx.Flush").getString("file"), is("breaks.csv"));
+			assertThat(find(events, "org.recxx.Flush").getLong("lines"), is(3L));
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static RecordedEvent find(List<RecordedEvent> events, String name) {
+		for (RecordedEvent event : events) {
+			if (event.getEventType().getName().equals(name)) {
+				return event;
+			}
+		}
+		throw new AssertionError("No " + name + " event recorded");
+	}
+}
@@ -0,0 +1,136 @@
+package org.recxx.metrics;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.lang.management.ManagementFactory;
+
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+public class RunMetricsTest {
+
+	@Test
+	public void phasesWithTheSameNameShouldAddUp() throws Exception {
+		RunMetrics metrics = new RunMetrics("test");
+		metrics.addPhase("flush", 2000000);
+		metrics.addPhase("compare", 5000000);
+		metrics.addPhase("flush", 3000000);
+
+		assertThat(metrics.getPhaseMillis().get("flush"), is(5L));
+		assertThat(metrics.getPhaseMillis().get("compare"), is(5L));
+		assertThat(metrics.getPhaseMillis().keySet().iterator().next(), is("flush"));
+	}
+
+	@Test
+	public void endingAPhaseShouldReturnItsLength() throws Exception {
+		RunMetrics metrics = new RunMetrics("test");
+		RunMetrics.Phase phase = metrics.startPhase("load");
+		Thread.sleep(20);
+		long nanos = phase.end();
+
+		assertThat(nanos >= 20000000, is(true));
+		assertThat(metrics.getPhaseMillis().get("load"), is(nanos / 1000000));
+	}
+
+	@Test
+	public void shouldWorkOutRowsPerSecondFromTheLoadTime() {
+		RunMetrics metrics = new RunMetrics("test");
+		metrics.sourceLoaded("one", 5000, 4000, 123456, 2000000000L);
+
+		assertThat(metrics.getRowsRead().get("one"), is(5000L));
+		assertThat(metrics.getRowsPerSecond().get("one"), is(2500.0));
+	}
+
+	@Test
+	public void shouldCountBreaksByColumn() {
+		RunMetrics metrics = new RunMetrics("test");
+		metrics.difference("Price");
+		metrics.difference("Quantity");
+		metrics.difference("Price");
+
+		assertThat(metrics.getBreaksByColumn().get("Price"), is(2L));
+		assertThat(metrics.getBreaksByColumn().get("Quantity"), is(1L));
+	}
+
+	@Test
+	public void elapsedTimeShouldStopWhenFinished() throws Exception {
+		RunMetrics metrics = new RunMetrics("test");
+		metrics.finish();
+		long elapsed = metrics.getElapsedMillis();
+		Thread.sleep(20);
+
+		assertThat(metrics.getElapsedMillis(), is(elapsed));
+	}
+
+	@Test
+	public void reportShouldBeJson() throws Exception {
+		RunMetrics metrics = new RunMetrics("a \"quoted\" run");
+		metrics.addPhase("compare", 1000000);
+		metrics.sourceLoaded("one", 10, 10, -1, 1000000);
+		metrics.difference("Price");
+		metrics.finish();
+
+		String report = metrics.getReport();
+		assertThat(report, containsString("\"name\": \"a \\\"quoted\\\" run\""));
+		assertThat(report, containsString("\"name\": \"compare\",\n      \"millis\": 1,"));
+		assertThat(report, containsString("\"alias\": \"one\",\n      \"rowsRead\": 10,\n      \"rowsLoaded\": 10,\n"
+		        + "      \"loadMillis\": 1,"));
+		assertThat(report, containsString("\"breaksByColumn\": {\n    \"Price\": 1\n  },"));
+		assertThat(report.startsWith("{\n  \"name\""), is(true));
+		assertThat(report.endsWith("\n}\n"), is(true));
+	}
+
+	@Test
+	public void shouldWriteTheReportToAFile() throws Exception {
+		RunMetrics metrics = new RunMetrics("test");
+		metrics.finish();
+		File file = File.createTempFile("runMetricsTest", ".json");
+		try {
+			metrics.writeReport(file);
+
+			byte[] bytes = new byte[(int) file.length()];
+			FileInputStream in = new FileInputStream(file);
+			try {
+				in.read(bytes);
+			} finally {
+				in.close();
+			}
+			// the heap figures are read as the report is written, so only the part before them is fixed
+			String report = metrics.getReport();
+			String fixed = report.substring(0, report.indexOf("\"memory\""));
+			assertThat(new String(bytes, "UTF-8").startsWith(fixed), is(true));
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void reportShouldGoNextToTheCsvFile() {
+		assertThat(RunMetrics.reportFileFor("/tmp/recs/breaks.csv"), is("/tmp/recs/breaks.metrics.json"));
+		assertThat(RunMetrics.reportFileFor("/tmp/recs/breaks.csv.gz"), is("/tmp/recs/breaks.metrics.json"));
+		assertThat(RunMetrics.reportFileFor("/tmp/recs.d/breaks"), is("/tmp/recs.d/breaks.metrics.json"));
+	}
+
+	@Test
+	public void shouldPublishAnMBeanUntilUnregistered() throws Exception {
+		RunMetrics metrics = new RunMetrics("mbean test");
+		ObjectName name = new ObjectName("org.recxx:type=RunMetrics,name=" + ObjectName.quote("mbean test"));
+		metrics.register();
+		try {
+			assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(name), is(true));
+			metrics.difference("Price");
+			assertThat(ManagementFactory.getPlatformMBeanServer().getAttribute(name, "BreaksByColumn"),
+			        is((Object) metrics.getBreaksByColumn()));
+			assertThat((String) ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Report"),
+			        containsString("\"name\": \"mbean test\""));
+		} finally {
+			metrics.unregister();
+		}
+		assertThat(ManagementFactory.getPlatformMBeanServer().isRegistered(name), is(false));
+	}
+}
@@ -0,0 +1,200 @@
+package org.recxx.reader;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DecompressionTest {
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("decompressionTest", ".dat");
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	private static byte[] contents(int lines) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		for (int i = 0; i < lines; i++) {
+			bytes.write(("B" + (i % 13) + "," + i + ",x," + (i * 0.25) + "\n").getBytes("US-ASCII"));
+		}
+		return bytes.toByteArray();
+	}
+
+	private void givenFile(byte[] bytes) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(bytes);
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * gzip each part as a member of its own, one after the other
+	 */
+	private void givenGzipMembers(byte[] contents, int memberSize) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			for (int offset = 0; offset < contents.length; offset += memberSize) {
+				GZIPOutputStream member = new GZIPOutputStream(new NonClosingOutputStream(out));
+				member.write(contents, offset, Math.min(memberSize, contents.length - offset));
+				member.close();
+			}
+		} finally {
+			out.close();
+		}
+	}
+
+	/**
+	 * write the contents in blocks, as bgzip would, with its empty block at the end
+	 */
+	private void givenBlockGzip(byte[] contents, int blockSize) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			for (int offset = 0; offset < contents.length; offset += blockSize) {
+				writeBlock(out, contents, offset, Math.min(blockSize, contents.length - offset));
+			}
+			writeBlock(out, contents, 0, 0);
+		} finally {
+			out.close();
+		}
+	}
+
+	private static void writeBlock(OutputStream out, byte[] contents, int offset, int length) throws IOException {
+		Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+		deflater.setInput(contents, offset, length);
+		deflater.finish();
+		byte[] deflated = new byte[length + 1024];
+		int deflatedLength = 0;
+		while (!deflater.finished()) {
+			deflatedLength += deflater.deflate(deflated, deflatedLength, deflated.length - deflatedLength);
+		}
+		deflater.end();
+
+		CRC32 crc = new CRC32();
+		crc.update(contents, offset, length);
+		int blockSize = BlockGzipInputStream.HEADER_SIZE + deflatedLength + 8;
+
+		out.write(new byte[] { 0x1f, (byte) 0x8b, 8, 4, 0, 0, 0, 0, 0, (byte) 0xff, 6, 0, 'B', 'C', 2, 0 });
+		writeLittleEndian(out, blockSize - 1, 2);
+		out.write(deflated, 0, deflatedLength);
+		writeLittleEndian(out, (int) crc.getValue(), 4);
+		writeLittleEndian(out, length, 4);
+	}
+
+	private static void writeLittleEndian(OutputStream out, int value, int bytes) throws IOException {
+		for (int i = 0; i < bytes; i++) {
+			out.write(value >>> (8 * i));
+		}
+	}
+
+	private byte[] read(int threads) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		InputStream in = Decompression.detect(file).open(file, threads);
+		try {
+			byte[] buffer = new byte[1000];
+			int count;
+			while ((count = in.read(buffer)) >= 0) {
+				bytes.write(buffer, 0, count);
+			}
+			// and so does a single byte read
+			assertThat(in.read(), is(-1));
+		} finally {
+			in.close();
+		}
+		return bytes.toByteArray();
+	}
+
+	@Test
+	public void plainFileShouldBeReadAsItIs() throws Exception {
+		byte[] contents = contents(100);
+		givenFile(contents);
+		assertThat(Decompression.detect(file), is(Decompression.NONE));
+		assertThat(read(1), is(contents));
+	}
+
+	@Test
+	public void everyGzipMemberShouldBeDecompressed() throws Exception {
+		byte[] contents = contents(50000);
+		givenGzipMembers(contents, 300000);
+		assertThat(Decompression.detect(file), is(Decompression.GZIP));
+		assertThat(read(4), is(contents));
+	}
+
+	@Test
+	public void blockGzipShouldReadTheSameWhateverTheThreads() throws Exception {
+		byte[] contents = contents(50000);
+		givenBlockGzip(contents, 65280);
+		assertThat(Decompression.detect(file), is(Decompression.BLOCK_GZIP));
+		for (int threads : new int[] { 1, 2, 8 }) {
+			assertThat("threads " + threads, read(threads), is(contents));
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void corruptBlockShouldFailTheRead() throws Exception {
+		givenBlockGzip(contents(1000), 4096);
+		byte[] bytes = new byte[(int) file.length()];
+		InputStream in = new FileInputStream(file);
+		try {
+			new DataInputStream(in).readFully(bytes);
+		} finally {
+			in.close();
+		}
+		// the first byte of the first block's CRC
+		int crcOffset = (bytes[16] & 0xff | (bytes[17] & 0xff) << 8) + 1 - 8;
+		bytes[crcOffset] ^= 1;
+		givenFile(bytes);
+
+		read(4);
+	}
+
+	@Test
+	public void closingBeforeTheEndShouldStopTheBackgroundThread() throws Exception {
+		givenGzipMembers(contents(50000), 1000000);
+		InputStream in = new BackgroundInputStream(new GZIPInputStream(new FileInputStream(file)), "test", 16, 1);
+		assertThat(in.read(), is((int) 'B'));
+		in.close();
+		in.close();
+	}
+
+	private static final class NonClosingOutputStream extends FilterOutputStream {
+
+		NonClosingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			out.write(bytes, offset, length);
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package org.recxx.reader;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+import org.junit.After;
+import org.junit.Test;
+
+public class MappedFileReaderTest {
+
+	private static final Charset ASCII = Charset.forName("US-ASCII");
+
+	private File file;
+
+	private MappedFileReader reader;
+
+	@After
+	public void tearDown() throws Exception {
+		if (reader != null) {
+			reader.close();
+		}
+		if (file != null) {
+			file.delete();
+		}
+	}
+
+	private void givenFileContaining(String contents) throws IOException {
+		file = File.createTempFile("mappedFileReaderTest", ".csv");
+		FileOutputStream out = new FileOutputStream(file);
+		try {
+			out.write(contents.getBytes(ASCII));
+		} finally {
+			out.close();
+		}
+	}
+
+	private void givenReaderIsOpen(boolean trailingDelimiterStartsField, int windowSize) throws IOException {
+		reader = new MappedFileReader(file, 0, file.length(), (byte) ',', trailingDelimiterStartsField, ASCII,
+		        windowSize);
+	}
+
+	@Test
+	public void nextLineShouldSplitFieldsAndSkipBlankLines() throws Exception {
+		givenFileContaining("a,b,c\r\n\r\nd,,f\n");
+		givenReaderIsOpen(false, MappedFileReader.DEFAULT_WINDOW_SIZE);
+		assertThat(reader.nextLine(), is(true));
+		assertThat(reader.fieldCount(), is(3));
+		assertThat(reader.getString(2), is("c"));
+		assertThat(reader.nextLine(), is(true));
+		assertThat(reader.getString(0), is("d"));
+		assertThat(reader.isEmpty(1), is(true));
+		assertThat(reader.getString(1), is("0"));
+		assertThat(reader.nextLine(), is(false));
+	}
+
+	@Test
+	public void trailingDelimiterShouldOnlyStartFieldWhenAsked() throws Exception {
+		givenFileContaining("a,b,\na,b,");
+		givenReaderIsOpen(false, MappedFileReader.DEFAULT_WINDOW_SIZE);
+		reader.nextLine();
+		assertThat(reader.fieldCount(), is(2));
+		reader.close();
+		givenReaderIsOpen(true, MappedFileReader.DEFAULT_WINDOW_SIZE);
+		reader.nextLine();
+		assertThat(reader.fieldCount(), is(3));
+		assertThat(reader.getString(2), is("0"));
+	}
+
+	@Test
+	public void getTrimmedStringShouldRemoveSurroundingWhiteSpace() throws Exception {
+		givenFileContaining("  padded\t,x");
+		givenReaderIsOpen(false, MappedFileReader.DEFAULT_WINDOW_SIZE);
+		reader.nextLine();
+		assertThat(reader.getTrimmedString(0), is("padded"));
+		assertThat(reader.getString(0), is("  padded\t"));
+	}
+
+	@Test
+	public void getDecimalShouldMatchParseDoubleForPlainDecimals() throws Exception {
+		String[] values = { "0", "-0.5", "+12.25", "123456789.012345", "1.", ".75", "0.1", "-987654.321" };
+		StringBuilder contents = new StringBuilder();
+		for (String value : values) {
+			contents.append(value).append(',');
+		}
+		givenFileContaining(contents.toString());
+		givenReaderIsOpen(false, MappedFileReader.DEFAULT_WINDOW_SIZE);
+		reader.nextLine();
+		for (int i = 0; i < values.length; i++) {
+			assertThat(reader.getDecimal(i, 11), is(Double.parseDouble(values[i])));
+		}
+	}
+
+	@Test
+	public void getDecimalShouldReturnNaNWhenValueIsNotAPlainDecimal() throws Exception {
+		givenFileContaining("1e5,1.123,abc, 1,1234567890123456,-");
+		givenReaderIsOpen(false, MappedFileReader.DEFAULT_WINDOW_SIZE);
+		reader.nextLine();
+		assertThat(Double.isNaN(reader.getDecimal(0, 11)), is(true));
+		assertThat(Double.isNaN(reader.getDecimal(1, 2)), is(true));
+		assertThat(Double.isNaN(reader.getDecimal(2, 11)), is(true));
+		assertThat(Double.isNaN(reader.getDecimal(3, 11)), is(true));
+		assertThat(Double.isNaN(reader.getDecimal(4, 11)), is(true));
+		assertThat(Double.isNaN(reader.getDecimal(5, 11)), is(true));
+	}
+
+	@Test
+	public void getLongShouldParsePlainIntegers() throws Exception {
+		givenFileContaining("42,-17,+3,4.0");
+		givenReaderIsOpen(false, MappedFileReader.DEFAULT_WINDOW_SIZE);
+		reader.nextLine();
+		assertThat(reader.getLong(0), is(42L));
+		assertThat(reader.getLong(1), is(-17L));
+		assertThat(reader.getLong(2), is(3L));
+		assertThat(reader.getLong(3), is(Long.MIN_VALUE));
+	}
+
+	@Test
+	public void linesShouldBeReadAcrossWindows() throws Exception {
+		StringBuilder contents = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			contents.append("key").append(i).append(',').append(i).append('\n');
+		}
+		givenFileContaining(contents.toString());
+		givenReaderIsOpen(false, 16);
+		int lines = 0;
+		while (reader.nextLine()) {
+			assertThat(reader.getString(0), is("key" + lines));
+			assertThat(reader.getLong(1), is((long) lines));
+			lines++;
+		}
+		assertThat(lines, is(100));
+	}
+
+	@Test(expected = IOException.class)
+	public void nextLineShouldThrowWhenLineIsLongerThanWindow() throws Exception {
+		givenFileContaining("a long line which will not fit\nshort\n");
+		givenReaderIsOpen(false, 8);
+		reader.nextLine();
+	}
+
+	@Test
+	public void lineAlignedSplitsShouldStartEachRangeOnANewLine() throws Exception {
+		givenFileContaining("header\naaaa\nbb\ncccccc\nd\n");
+		long[] splits = MappedFileReader.lineAlignedSplits(file, 7, file.length(), 4);
+		assertThat(splits.length, is(4));
+		assertThat(splits[0], is(7L));
+		assertThat(splits[1], is(12L));
+		assertThat(splits[2], is(22L));
+		assertThat(splits[3], is(file.length()));
+	}
+}
@@ -0,0 +1,159 @@
+package org.recxx.writer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.recxx.data.CompositeKey;
+import org.recxx.utils.CloseableUtils;
+
+public class AsyncDifferenceWriterTest {
+
+	private File file1;
+
+	private File file2;
+
+	@Before
+	public void setUp() throws Exception {
+		file1 = File.createTempFile("asyncDifferenceWriterTest", ".csv");
+		file2 = File.createTempFile("asyncDifferenceWriterTest", ".csv");
+	}
+
+	@After
+	public void tearDown() {
+		file1.delete();
+		file2.delete();
+	}
+
+	private CSVLogger givenOpenLogger(File file) throws IOException {
+		CSVLogger logger = new CSVLogger();
+		logger.setBufferedWriterManager(new BufferedWriterManager(new CloseableUtils()));
+		logger.setFilename(file.getPath());
+		logger.setDelimiter("|");
+		logger.open();
+		return logger;
+	}
+
+	private static CompositeKey key(String book, long id) {
+		return new CompositeKey.Builder().add(book).addLong(id).build();
+	}
+
+	private static List<String> readLines(File file) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader = new BufferedReader(new FileReader(file));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+		} finally {
+			reader.close();
+		}
+		return lines;
+	}
+
+	@Test
+	public void linesShouldBeThoseTheLoggerWouldWrite() throws Exception {
+		CSVLogger logger = givenOpenLogger(file1);
+		for (String keyColumn : key(null, 1).toStrings()) {
+			logger.write(keyColumn);
+		}
+		logger.write("Price");
+		logger.write("1.5");
+		logger.write("Price");
+		logger.write("null");
+		logger.write("");
+		logger.writeLine("");
+		for (String keyColumn : key("B1", 2).toStrings()) {
+			logger.write(keyColumn);
+		}
+		logger.write("Price");
+		logger.write("1.5");
+		logger.write("Price");
+		logger.write("2.0");
+		logger.write("33.33%");
+		logger.writeLine("0.5");
+		logger.close();
+
+		logger = givenOpenLogger(file2);
+		AsyncDifferenceWriter writer = new AsyncDifferenceWriter(logger, 1);
+		writer.write(key(null, 1), "Price", 1.5, "Price", null, "", "");
+		writer.write(key("B1", 2), "Price", 1.5, "Price", 2.0, "33.33%", "0.5");
+		writer.close();
+		logger.close();
+
+		assertThat(readLines(file2), is(readLines(file1)));
+	}
+
+	@Test
+	public void everyDifferenceShouldBeWrittenBeforeTheDrainReturns() throws Exception {
+		final int threads = 4;
+		final int differences = 10000;
+		CSVLogger logger = givenOpenLogger(file1);
+		// a tiny ring, so that the threads have to wait for the writer
+		final AsyncDifferenceWriter writer = new AsyncDifferenceWriter(logger, 4);
+
+		List<Thread> writers = new ArrayList<Thread>();
+		for (int t = 0; t < threads; t++) {
+			final String book = "B" + t;
+			Thread thread = new Thread(new Runnable() {
+				public void run() {
+					for (int i = 0; i < differences; i++) {
+						writer.write(key(book, i), "Price", (double) i, "Price", i + 1.0, "", "1.0");
+					}
+				}
+			});
+			thread.start();
+			writers.add(thread);
+		}
+		for (Thread thread : writers) {
+			thread.join();
+		}
+		writer.drain();
+		logger.writeLine("Summary");
+		writer.close();
+		logger.close();
+
+		List<String> lines = readLines(file1);
+		assertThat(lines.size(), is(threads * differences + 1));
+		assertThat(lines.get(lines.size() - 1), is("Summary"));
+		Set<String> distinct = new HashSet<String>(lines);
+		assertThat(distinct.size(), is(lines.size()));
+		assertThat(distinct.contains("B3|9999|Price|9999.0|Price|10000.0||1.0"), is(true));
+	}
+
+	@Test(expected = IOException.class)
+	public void failureShouldBeThrownByTheDrainWithoutBlockingTheWriters() throws Exception {
+		BufferedWriter failingWriter = mock(BufferedWriter.class);
+		doThrow(new IOException("disk full")).when(failingWriter).write(any(char[].class), anyInt(), anyInt());
+		BufferedWriterManager manager = mock(BufferedWriterManager.class);
+		when(manager.open(any(File.class))).thenReturn(failingWriter);
+		CSVLogger logger = new CSVLogger();
+		logger.setBufferedWriterManager(manager);
+		logger.setFilename(file1.getPath());
+		logger.open();
+
+		AsyncDifferenceWriter writer = new AsyncDifferenceWriter(logger, 2);
+		for (int i = 0; i < 1000; i++) {
+			writer.write(key("B1", i), "Price", 1.0, "Price", 2.0, "", "");
+		}
+		writer.drain();
+	}
+}
@@ -0,0 +1,119 @@
+package org.recxx.writer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.recxx.utils.CloseableUtils;
+
+public class ChannelBufferedWriterTest {
+
+	private static final String[] VALUES = { "Book", "B1", "caf\u00e9", "100.5", "\u20ac12", "", "\ud83d\ude00 smile",
+	        "a much longer value which will never fit into a sixteen byte buffer in one go" };
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("channelBufferedWriterTest", ".csv");
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	private static void writeValues(Writer writer) throws IOException {
+		for (int i = 0; i < 50; i++) {
+			for (String value : VALUES) {
+				writer.write(value);
+				writer.write(',');
+			}
+			char[] chars = ("line " + i + " \u00e9\u00e8").toCharArray();
+			writer.write(chars, 0, chars.length);
+			writer.write("\ud83d");
+			writer.write("\ude00\n");
+		}
+	}
+
+	private static byte[] expectedBytes(Charset charset) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		Writer writer = new OutputStreamWriter(bytes, charset);
+		writeValues(writer);
+		writer.close();
+		return bytes.toByteArray();
+	}
+
+	private byte[] fileBytes() throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[4096];
+			int read;
+			while ((read = in.read(buffer)) > 0) {
+				bytes.write(buffer, 0, read);
+			}
+		} finally {
+			in.close();
+		}
+		return bytes.toByteArray();
+	}
+
+	@Test
+	public void bytesShouldBeThoseOfAnOutputStreamWriterWhateverTheBufferSize() throws Exception {
+		for (String charsetName : new String[] { "UTF-8", "ISO-8859-1", "UTF-16" }) {
+			Charset charset = Charset.forName(charsetName);
+			for (int bufferSize : new int[] { 16, 17, 1024 }) {
+				for (ChannelBufferedWriter.Fsync fsync : ChannelBufferedWriter.Fsync.values()) {
+					ChannelBufferedWriter writer = new ChannelBufferedWriter(file, bufferSize, fsync, charset);
+					writeValues(writer);
+					writer.flush();
+					writer.close();
+
+					assertThat(charsetName + " " + bufferSize + " " + fsync, fileBytes(), is(expectedBytes(charset)));
+				}
+			}
+		}
+	}
+
+	@Test(expected = IOException.class)
+	public void writingAfterCloseShouldFail() throws Exception {
+		ChannelBufferedWriter writer =
+		        new ChannelBufferedWriter(file, 1024, ChannelBufferedWriter.Fsync.NEVER, Charset.forName("UTF-8"));
+		writer.close();
+		writer.close();
+
+		writer.write("too late");
+	}
+
+	@Test
+	public void managerShouldOpenTheFileForACsvLogger() throws Exception {
+		CSVLogger logger = new CSVLogger();
+		logger.setBufferedWriterManager(new ChannelWriterManager(new CloseableUtils(), 64,
+		        ChannelBufferedWriter.Fsync.ON_CLOSE));
+		logger.setFilename(file.getPath());
+		logger.open();
+		logger.write("Key");
+		logger.writeLine(new String[] { "a", "b" });
+		logger.close();
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		BufferedWriter expected = new BufferedWriter(new OutputStreamWriter(bytes, Charset.defaultCharset()));
+		expected.write("Key,a,b");
+		expected.newLine();
+		expected.close();
+		assertThat(fileBytes(), is(bytes.toByteArray()));
+	}
+}
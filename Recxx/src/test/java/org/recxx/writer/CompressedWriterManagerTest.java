@@ -0,0 +1,121 @@
+package org.recxx.writer;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.recxx.utils.CloseableUtils;
+
+public class CompressedWriterManagerTest {
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("compressedWriterManagerTest", ".csv.gz");
+	}
+
+	@After
+	public void tearDown() {
+		file.delete();
+	}
+
+	private List<String> readCompressedLines() throws IOException {
+		List<String> lines = new ArrayList<String>();
+		BufferedReader reader =
+		        new BufferedReader(new InputStreamReader(new GZIPInputStream(new FileInputStream(file)),
+		                Charset.defaultCharset()));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				lines.add(line);
+			}
+		} finally {
+			reader.close();
+		}
+		return lines;
+	}
+
+	@Test
+	public void linesShouldReadBackThroughGzip() throws Exception {
+		CSVLogger logger = new CSVLogger();
+		logger.setBufferedWriterManager(new CompressedWriterManager(new CloseableUtils(), Compression.GZIP));
+		logger.setFilename(file.getPath());
+		logger.setDelimiter("|");
+		logger.open();
+		for (int i = 0; i < 100000; i++) {
+			logger.write("B" + (i % 7));
+			logger.write(String.valueOf(i));
+			logger.writeLine("Price");
+		}
+		logger.close();
+
+		List<String> lines = readCompressedLines();
+		assertThat(lines.size(), is(100000));
+		assertThat(lines.get(0), is("B0|0|Price"));
+		assertThat(lines.get(99999), is("B4|99999|Price"));
+	}
+
+	@Test
+	public void compressionShouldFollowTheExtension() {
+		assertThat(Compression.forFile("breaks.csv.gz"), is(Compression.GZIP));
+		assertThat(Compression.forFile("BREAKS.GZ"), is(Compression.GZIP));
+		assertThat(Compression.forFile("breaks.csv"), is(Compression.NONE));
+		assertThat(Compression.forFile(null), is(Compression.NONE));
+	}
+
+	@Test
+	public void backgroundStreamShouldWriteEveryByteInOrder() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		// small blocks, so that most writes span several of them
+		BackgroundOutputStream out = new BackgroundOutputStream(bytes, "test", 7, 2);
+		for (int i = 0; i < 5000; i++) {
+			byte[] chunk = ("row " + i + ";").getBytes("US-ASCII");
+			out.write(chunk, 0, chunk.length);
+			out.write('\n');
+			expected.write(chunk, 0, chunk.length);
+			expected.write('\n');
+			if (i % 1000 == 0) {
+				out.flush();
+			}
+		}
+		out.close();
+		out.close();
+
+		assertThat(bytes.toByteArray(), is(expected.toByteArray()));
+	}
+
+	@Test(expected = IOException.class)
+	public void failureShouldBeThrownWithoutBlockingTheWriter() throws Exception {
+		OutputStream failing = new OutputStream() {
+			@Override
+			public void write(int b) throws IOException {
+				throw new IOException("disk full");
+			}
+		};
+		BackgroundOutputStream out = new BackgroundOutputStream(failing, "test", 16, 1);
+		byte[] chunk = new byte[10];
+		try {
+			for (int i = 0; i < 1000; i++) {
+				out.write(chunk, 0, chunk.length);
+			}
+		} finally {
+			out.close();
+		}
+	}
+}